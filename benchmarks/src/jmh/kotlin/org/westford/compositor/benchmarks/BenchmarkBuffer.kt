@@ -0,0 +1,36 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.benchmarks
+
+import org.freedesktop.wayland.server.WlBufferResource
+import org.westford.compositor.core.Buffer
+import org.westford.compositor.core.BufferVisitor
+
+data class BenchmarkBuffer(override val wlBufferResource: WlBufferResource) : Buffer {
+    override val width: Int
+        get() = WIDTH
+    override val height: Int
+        get() = HEIGHT
+
+    override fun accept(bufferVisitor: BufferVisitor) = bufferVisitor.visit(this)
+
+    companion object {
+        const val WIDTH = 256
+        const val HEIGHT = 256
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.benchmarks
+
+import org.freedesktop.wayland.server.WlBufferResource
+import org.freedesktop.wayland.server.WlSurfaceResource
+import org.westford.compositor.core.Buffer
+import org.westford.compositor.core.Renderer
+import org.westford.compositor.core.Surface
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * A renderer that draws nothing and reports every buffer as a [BenchmarkBuffer] of a fixed size.
+ */
+@Singleton class BenchmarkRenderer @Inject internal constructor() : Renderer {
+
+    override fun onApply(surface: Surface) {
+        //nothing to import
+    }
+
+    override fun onDestroy(wlSurfaceResource: WlSurfaceResource) {
+        //nothing to clean up
+    }
+
+    override fun queryBuffer(wlBufferResource: WlBufferResource): Buffer = BenchmarkBuffer(wlBufferResource)
+}
@@ -0,0 +1,77 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.benchmarks
+
+import org.openjdk.jmh.annotations.*
+import org.westford.compositor.core.FiniteRegion
+import org.westford.compositor.core.Point
+import org.westford.compositor.core.Rectangle
+import java.util.*
+
+/**
+ * Region operations done for damage tracking, output clipping and input picking. Each operation allocates a native
+ * pixman region.
+ */
+@State(Scope.Thread) open class FiniteRegionBenchmark {
+
+    private lateinit var fragmented: FiniteRegion
+    private lateinit var other: FiniteRegion
+    private val rectangle = Rectangle(300,
+                                      200,
+                                      640,
+                                      480)
+    private val point = Point(500,
+                              400)
+
+    @Setup fun setup() {
+        val finiteRegionFactory = DaggerBenchmarkComponent.create().finiteRegionFactory()
+        val random = Random(SEED)
+
+        //scattered damage, like a few busy clients would produce
+        var fragmented = finiteRegionFactory.create()
+        var other = finiteRegionFactory.create()
+        for (i in 0..RECTANGLES - 1) {
+            fragmented += randomRectangle(random)
+            other += randomRectangle(random)
+        }
+        this.fragmented = fragmented
+        this.other = other
+    }
+
+    private fun randomRectangle(random: Random) = Rectangle(random.nextInt(1920),
+                                                            random.nextInt(1080),
+                                                            1 + random.nextInt(256),
+                                                            1 + random.nextInt(256))
+
+    @Benchmark fun unionRectangle(): FiniteRegion = this.fragmented + this.rectangle
+
+    @Benchmark fun unionRegion(): FiniteRegion = this.fragmented + this.other
+
+    @Benchmark fun subtractRectangle(): FiniteRegion = this.fragmented - this.rectangle
+
+    @Benchmark fun subtractRegion(): FiniteRegion = this.fragmented - this.other
+
+    @Benchmark fun containsPoint(): Boolean = this.fragmented.contains(this.point)
+
+    @Benchmark fun asList(): List<Rectangle> = this.fragmented.asList()
+
+    companion object {
+        private val SEED = 42L
+        private val RECTANGLES = 32
+    }
+}
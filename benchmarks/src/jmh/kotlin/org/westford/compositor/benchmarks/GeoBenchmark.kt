@@ -0,0 +1,61 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.benchmarks
+
+import org.openjdk.jmh.annotations.*
+import org.westford.compositor.core.FiniteRegion
+import org.westford.compositor.core.Point
+import org.westford.compositor.core.Rectangle
+import org.westford.compositor.core.calc.Geo
+
+/**
+ * Pointer clamping, done on every pointer motion.
+ */
+@State(Scope.Thread) open class GeoBenchmark {
+
+    private lateinit var geo: Geo
+    private lateinit var region: FiniteRegion
+    private val source = Point(1900,
+                               1000)
+    private val inside = Point(1910,
+                               1010)
+    //below the smaller second output
+    private val outside = Point(2000,
+                                1100)
+
+    @Setup fun setup() {
+        val benchmarkComponent = DaggerBenchmarkComponent.create()
+        this.geo = benchmarkComponent.geo()
+        //2 outputs side by side
+        this.region = benchmarkComponent.finiteRegionFactory().create() + Rectangle(0,
+                                                                                    0,
+                                                                                    1920,
+                                                                                    1080) + Rectangle(1920,
+                                                                                                      0,
+                                                                                                      1280,
+                                                                                                      1024)
+    }
+
+    @Benchmark fun clampInside(): Point = this.geo.clamp(this.source,
+                                                         this.inside,
+                                                         this.region)
+
+    @Benchmark fun clampOutside(): Point = this.geo.clamp(this.source,
+                                                          this.outside,
+                                                          this.region)
+}
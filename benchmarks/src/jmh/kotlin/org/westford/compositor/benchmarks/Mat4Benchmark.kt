@@ -0,0 +1,45 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.benchmarks
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import org.westford.compositor.core.Point
+import org.westford.compositor.core.Transforms
+import org.westford.compositor.core.calc.Mat4
+
+/**
+ * Matrix math done for every view and output transformation change, and for every pointer event.
+ */
+@State(Scope.Thread) open class Mat4Benchmark {
+
+    //a rotated, scaled & moved view
+    private val transform = Transforms._90 * Transforms.SCALE(2f) * Transforms.TRANSLATE(100,
+                                                                                        50)
+    private val other = Transforms.TRANSLATE(-20,
+                                             30) * Transforms.FLIPPED
+    private val point = Point(10,
+                              20)
+
+    @Benchmark fun multiply(): Mat4 = this.transform * this.other
+
+    @Benchmark fun invert(): Mat4 = this.transform.invert()
+
+    @Benchmark fun multiplyPoint(): Point = this.transform * this.point
+}
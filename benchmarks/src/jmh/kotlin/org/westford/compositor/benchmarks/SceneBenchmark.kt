@@ -0,0 +1,115 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.benchmarks
+
+import org.freedesktop.jaccall.Pointer
+import org.freedesktop.wayland.server.Client
+import org.freedesktop.wayland.server.Display
+import org.freedesktop.wayland.server.WlBufferRequests
+import org.freedesktop.wayland.server.WlBufferResource
+import org.freedesktop.wayland.server.WlSurfaceRequestsV4
+import org.openjdk.jmh.annotations.*
+import org.westford.compositor.core.*
+import org.westford.nativ.glibc.Libc
+import java.util.*
+
+/**
+ * Input picking, done on every pointer motion, and splitting the scene per output, done on every render.
+ */
+@State(Scope.Thread) open class SceneBenchmark {
+
+    @Param("10",
+           "100",
+           "1000") @JvmField var views: Int = 0
+
+    private lateinit var display: Display
+    private lateinit var client: Client
+    private lateinit var scene: Scene
+    private lateinit var outputRegion: FiniteRegion
+    private lateinit var points: List<Point>
+    private var pointIndex = 0
+
+    @Setup fun setup() {
+        val benchmarkComponent = DaggerBenchmarkComponent.create()
+        this.display = benchmarkComponent.display()
+        this.scene = benchmarkComponent.scene()
+        this.outputRegion = benchmarkComponent.finiteRegionFactory().create() + Rectangle(0,
+                                                                                          0,
+                                                                                          1920,
+                                                                                          1080)
+
+        //a client without a real connection, it never reads what is sent to it.
+        val fds = Pointer.nref(0,
+                               0)
+        benchmarkComponent.libc().socketpair(Libc.AF_LOCAL,
+                                             Libc.SOCK_STREAM,
+                                             0,
+                                             fds.address)
+        this.client = Client.create(this.display,
+                                    fds.get(0))
+
+        //overlapping views spread over a full hd output
+        val random = Random(SEED)
+        val surfaceFactory = benchmarkComponent.surfaceFactory()
+        val wlSurfaceFactory = benchmarkComponent.wlSurfaceFactory()
+        for (i in 0..this.views - 1) {
+            val surface = surfaceFactory.create()
+            //an id of 0 lets the server pick one
+            val wlSurfaceResource = wlSurfaceFactory.create(surface).add(this.client,
+                                                                         WlSurfaceRequestsV4.VERSION,
+                                                                         0)
+            val surfaceView = surface.createView(wlSurfaceResource,
+                                                 Point(random.nextInt(1920 - BenchmarkBuffer.WIDTH),
+                                                       random.nextInt(1080 - BenchmarkBuffer.HEIGHT)))
+            surface.siblings.add(Sibling(wlSurfaceResource))
+
+            surface.attachBuffer(WlBufferResource(this.client,
+                                                  1,
+                                                  0,
+                                                  object : WlBufferRequests {
+                                                      override fun destroy(resource: WlBufferResource) = resource.destroy()
+                                                  }),
+                                 0,
+                                 0)
+            surface.commit()
+            this.scene.applicationLayer.surfaceViews.add(surfaceView)
+        }
+
+        this.points = (0..POINTS - 1).map {
+            Point(random.nextInt(1920),
+                  random.nextInt(1080))
+        }
+    }
+
+    @TearDown fun tearDown() {
+        this.client.destroy()
+        this.display.destroy()
+    }
+
+    @Benchmark fun pickSurfaceView(): SurfaceView? {
+        this.pointIndex = (this.pointIndex + 1) % POINTS
+        return this.scene.pickSurfaceView(this.points[this.pointIndex])
+    }
+
+    @Benchmark fun subsection(): Subscene = this.scene.subsection(this.outputRegion)
+
+    companion object {
+        private val SEED = 42L
+        private val POINTS = 64
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.benchmarks
+
+import org.openjdk.jmh.annotations.*
+import org.westford.Signal
+
+/**
+ * Signals are emitted for every input event and surface commit.
+ */
+@State(Scope.Thread) open class SignalBenchmark {
+
+    @Param("1",
+           "10") @JvmField var slots: Int = 0
+
+    private val signal = Signal<Int>()
+    private var sum = 0
+
+    @Setup fun setup() {
+        for (i in 0..this.slots - 1) {
+            this.signal.connect { this.sum += it }
+        }
+    }
+
+    @Benchmark fun emit(): Int {
+        this.signal.emit(1)
+        return this.sum
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/**
+ * Server side bindings of the linux-dmabuf protocol, generated from src/main/protocol/linux-dmabuf-unstable-v1.xml.
+ */
+@Protocols(path = "src/main/protocol/linux-dmabuf-unstable-v1.xml",
+           pkgName = "org.westford.compositor.protocol.dmabuf",
+           sharedPackage = "org.westford.compositor.protocol.dmabuf",
+           side = Protocols.Side.SERVER)
+package org.westford.compositor.protocol.dmabuf;
+
+import org.freedesktop.wayland.generator.api.Protocols;
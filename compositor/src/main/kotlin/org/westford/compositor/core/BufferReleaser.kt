@@ -0,0 +1,74 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core
+
+import org.freedesktop.wayland.server.WlBufferResource
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Releases client buffers once the compositor no longer uses them. A buffer that is scanned out directly by an output
+ * is still in use after the client committed a new one, until the page flip that replaces it.
+ */
+@Singleton class BufferReleaser @Inject internal constructor() {
+
+    private val holds = mutableMapOf<WlBufferResource, Hold>()
+
+    /**
+     * Keep a buffer from being released, eg. while it is on screen.
+     */
+    fun hold(wlBufferResource: WlBufferResource) {
+        val hold = this.holds.getOrPut(wlBufferResource) {
+            wlBufferResource.register {
+                this.holds.remove(wlBufferResource)
+            }
+            Hold()
+        }
+        hold.count++
+    }
+
+    /**
+     * Undo a [hold]. The buffer is released if it was released while it was held.
+     */
+    fun unhold(wlBufferResource: WlBufferResource) {
+        val hold = this.holds[wlBufferResource] ?: return
+        hold.count--
+        if (hold.count == 0 && hold.releasePending) {
+            hold.releasePending = false
+            wlBufferResource.release()
+        }
+    }
+
+    /**
+     * Signal the client that it can reuse a buffer, as soon as the buffer is no longer held.
+     */
+    fun release(wlBufferResource: WlBufferResource) {
+        val hold = this.holds[wlBufferResource]
+        if (hold != null && hold.count > 0) {
+            hold.releasePending = true
+        }
+        else {
+            wlBufferResource.release()
+        }
+    }
+
+    private class Hold {
+        var count = 0
+        var releasePending = false
+    }
+}
@@ -24,4 +24,6 @@ interface BufferVisitor {
     fun visit(eglBuffer: EglBuffer) {}
 
     fun visit(smBuffer: SmBuffer) {}
+
+    fun visit(dmabufBuffer: DmabufBuffer) {}
 }
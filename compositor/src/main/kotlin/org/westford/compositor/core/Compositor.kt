@@ -25,7 +25,65 @@ import javax.inject.Singleton
 
 @Singleton class Compositor @Inject internal constructor(private val renderPlatform: RenderPlatform) {
 
-    fun requestRender() = this.renderPlatform.wlOutputs.forEach { this.render(it) }
+    /**
+     * Mark parts of the compositor space as in need of a repaint. Only the outputs that show some of it are rendered.
+
+     * @param damage rectangles in compositor space.
+     */
+    fun requestRender(damage: List<Rectangle>) = this.renderPlatform.wlOutputs.forEach { wlOutput ->
+        val output = wlOutput.output
+        val outputDamage = damage.filter { !output.region.intersect(it).isEmpty() }
+        if (!outputDamage.isEmpty()) {
+            outputDamage.forEach { output.damage(it) }
+            render(wlOutput)
+        }
+    }
+
+    /**
+     * Mark a part of the compositor space as in need of a repaint. Only the outputs that show some of it are rendered.
+
+     * @param damage a rectangle in compositor space.
+     */
+    fun requestRender(damage: Rectangle) = requestRender(listOf(damage))
+
+    /**
+     * Present a surface with the next frame of the outputs that show it, without damaging them. This makes sure
+     * its pending frame callbacks fire, see [RenderOutput.requestFrame].
+
+     * @param surface a surface that waits for its frame callbacks.
+     */
+    fun requestFrame(surface: Surface) = this.renderPlatform.wlOutputs.filter { wlOutput ->
+        surface.views.any { !wlOutput.output.region.intersect(it.bounds).isEmpty() }
+    }.forEach {
+        it.output.renderOutput.requestFrame(it,
+                                            surface)
+    }
+
+    /**
+     * Move a cursor view. Outputs that show the cursor in hardware move it without compositing, other outputs that
+     * show some of the cursor are repainted.
+
+     * @param surfaceView a cursor view.
+     * *
+     * @param global the new position of the view in compositor space.
+     */
+    fun moveCursor(surfaceView: SurfaceView,
+                   global: Point) {
+        val previousBounds = surfaceView.bounds
+        surfaceView.move(global)
+        val bounds = surfaceView.bounds
+
+        this.renderPlatform.wlOutputs.forEach { wlOutput ->
+            val output = wlOutput.output
+            val outputDamage = listOf(previousBounds,
+                                      bounds).filter { !output.region.intersect(it).isEmpty() }
+            if (!outputDamage.isEmpty() && !output.renderOutput.moveCursor(wlOutput,
+                                                                           surfaceView)) {
+                outputDamage.forEach { output.damage(it) }
+                render(wlOutput)
+            }
+        }
+    }
 
     private fun render(wlOutput: WlOutput) = wlOutput.output.renderOutput.render(wlOutput)
 
@@ -18,11 +18,13 @@
 package org.westford.compositor.core
 
 import com.google.auto.factory.AutoFactory
+import com.google.auto.factory.Provided
 import org.freedesktop.wayland.server.WlSurfaceResource
 import org.westford.compositor.protocol.WlSurface
 
 @AutoFactory(className = "CursorFactory",
-             allowSubclasses = true) class Cursor(var wlSurfaceResource: WlSurfaceResource,
+             allowSubclasses = true) class Cursor(@param:Provided private val compositor: Compositor,
+                                                  var wlSurfaceResource: WlSurfaceResource,
                                                   var hotspot: Point) {
 
     var isHidden: Boolean = false
@@ -31,8 +33,10 @@ import org.westford.compositor.protocol.WlSurface
     fun updatePosition(pointerPosition: Point) {
         val wlSurface = this.wlSurfaceResource.implementation as WlSurface
         val surface = wlSurface.surface
+        //moved through the compositor, so hardware cursors don't trigger a repaint.
         surface.views.forEach {
-            it.updatePosition(pointerPosition - hotspot)
+            this.compositor.moveCursor(it,
+                                       pointerPosition - hotspot)
         }
     }
 
@@ -0,0 +1,67 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core
+
+import org.westford.compositor.protocol.dmabuf.ZwpLinuxBufferParamsV1Flags
+import javax.annotation.Nonnegative
+
+/**
+ * Describes a client buffer made of linux dmabufs.
+
+ * @param format a drm fourcc format code.
+ * *
+ * @param flags a combination of zwp_linux_buffer_params_v1 flags.
+ */
+data class DmabufAttributes(@param:Nonnegative val width: Int,
+                            @param:Nonnegative val height: Int,
+                            val format: Int,
+                            val flags: Int,
+                            val planes: List<DmabufPlane>) {
+
+    /**
+     * The format modifier of the buffer, all planes share the same modifier.
+     */
+    val modifier: Long
+        get() = this.planes.first().modifier
+
+    /**
+     * Indicates if the first row of the buffer is the bottom row.
+     */
+    val yInverted: Boolean
+        get() = (this.flags and Y_INVERT) != 0
+
+    companion object {
+        /**
+         * No explicit modifier, the layout is negotiated by the driver.
+         */
+        val MOD_INVALID = 0x00ffffffffffffffL
+        val MOD_LINEAR = 0L
+
+        val Y_INVERT = ZwpLinuxBufferParamsV1Flags.Y_INVERT.value
+        val INTERLACED = ZwpLinuxBufferParamsV1Flags.INTERLACED.value
+        val BOTTOM_FIRST = ZwpLinuxBufferParamsV1Flags.BOTTOM_FIRST.value
+
+        val MAX_PLANES = 4
+
+        /**
+         * Drm fourcc codes of the formats every gl renderer can show.
+         */
+        val FORMAT_ARGB8888 = 0x34325241
+        val FORMAT_XRGB8888 = 0x34325258
+    }
+}
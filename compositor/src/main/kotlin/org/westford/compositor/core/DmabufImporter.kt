@@ -0,0 +1,42 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core
+
+/**
+ * Implemented by renderers that can show client buffers made of linux dmabufs.
+ */
+interface DmabufImporter {
+
+    /**
+     * The dmabuf formats that can be imported, with the format modifiers supported for each of them. Only valid once
+     * the renderer is initialized.
+
+     * @return drm fourcc format codes, mapped to their supported modifiers.
+     */
+    fun dmabufFormats(): Map<Int, List<Long>>
+
+    /**
+     * Check if a dmabuf can be imported.
+
+     * @param dmabufAttributes the buffer to import.
+     * *
+     * *
+     * @return true if the buffer can be shown, false if not.
+     */
+    fun canImport(dmabufAttributes: DmabufAttributes): Boolean
+}
@@ -0,0 +1,36 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core
+
+import javax.annotation.Nonnegative
+
+/**
+ * A plane of a linux dmabuf.
+
+ * @param fd the dmabuf file descriptor, owned by the buffer.
+ * *
+ * @param offset the offset of the plane in the dmabuf, in bytes.
+ * *
+ * @param stride the number of bytes between 2 rows of the plane.
+ * *
+ * @param modifier the layout of the plane, [DmabufAttributes.MOD_INVALID] if implicit.
+ */
+data class DmabufPlane(val fd: Int,
+                       @param:Nonnegative val offset: Int,
+                       @param:Nonnegative val stride: Int,
+                       val modifier: Long)
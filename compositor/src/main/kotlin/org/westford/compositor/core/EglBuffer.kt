@@ -24,7 +24,8 @@ import javax.annotation.Nonnegative
 data class EglBuffer(@param:Nonnegative override val width: Int,
                      @param:Nonnegative override val height: Int,
                      override val wlBufferResource: WlBufferResource,
-                     val textureFormat: Int) : Buffer {
+                     val textureFormat: Int,
+                     val yInverted: Boolean) : Buffer {
     override fun accept(bufferVisitor: BufferVisitor) {
         bufferVisitor.visit(this)
     }
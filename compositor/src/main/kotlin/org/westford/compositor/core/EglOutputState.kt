@@ -19,4 +19,11 @@ package org.westford.compositor.core
 
 import org.westford.compositor.core.calc.Mat4
 
-data class EglOutputState(var glTransform: Mat4)
+/**
+ * @param glTransform projection from compositor space to gl clip space.
+ * @param damageHistory damage of the most recently drawn frames in compositor space, newest first.
+ * @param viewBoxes the views of the most recently drawn frame with their bounding box in compositor space, bottom to top.
+ */
+data class EglOutputState(var glTransform: Mat4,
+                          var damageHistory: List<FiniteRegion> = emptyList(),
+                          var viewBoxes: List<Pair<SurfaceView, Rectangle>> = emptyList())
@@ -0,0 +1,74 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core
+
+/**
+ * Timings of the frames of a single output, see [RenderMetrics].
+ */
+class FrameMetrics {
+
+    /**
+     * Time spent splitting the scene into the views shown on the output.
+     */
+    val sceneTime = Histogram()
+    /**
+     * Cpu time spent handing the frame to the renderer, from gathering damage until the buffer swap returns.
+     */
+    val drawTime = Histogram()
+    /**
+     * Time the gpu spent executing the draw commands of a frame. Only recorded if the driver supports timer queries.
+     */
+    val gpuTime = Histogram()
+    /**
+     * Time spent in the buffer swap. A swap can block when the driver has no free buffer to draw the next frame in.
+     */
+    val swapTime = Histogram()
+    /**
+     * Time from requesting a page flip until the new buffer is scanned out. Only recorded by outputs that are told when
+     * their buffer is scanned out.
+     */
+    val flipLatency = Histogram()
+    /**
+     * The number of vertical retraces a new frame arrived too late for.
+     */
+    var missedVblanks: Long = 0
+        private set
+
+    /**
+     * Register a page flip that completed.
+
+     * @param latency nanoseconds between the request and the completion of the flip.
+     * *
+     * @param refresh nanoseconds between two vertical retraces, 0 if unknown.
+     */
+    fun flipped(latency: Long,
+                refresh: Int) {
+        this.flipLatency.record(latency)
+        if (refresh > 0) {
+            //a flip is requested for the next retrace, each whole refresh cycle it took longer means a retrace was missed.
+            this.missedVblanks += latency / refresh
+        }
+    }
+
+    override fun toString(): String = "scene: $sceneTime\n" +
+                                      "draw: $drawTime\n" +
+                                      "gpu: $gpuTime\n" +
+                                      "swap: $swapTime\n" +
+                                      "flip: $flipLatency\n" +
+                                      "missed vblanks: $missedVblanks"
+}
@@ -19,6 +19,19 @@ package org.westford.compositor.core
 
 interface GlRenderer : Renderer {
 
+    /**
+     * Find an egl config that this renderer can draw with.
+
+     * @param eglDisplay the egl display to find a config for.
+     * *
+     * @param eglExtensions the extensions supported by the egl display.
+     * *
+     * @param surfaceType the kind of egl surfaces the config has to support, eg. EGL_WINDOW_BIT or EGL_PBUFFER_BIT.
+     * *
+     * *
+     * @return a matching egl config.
+     */
     fun eglConfig(eglDisplay: Long,
-                  eglExtensions: String): Long
+                  eglExtensions: String,
+                  surfaceType: Int): Long
 }
@@ -0,0 +1,87 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Keeps the most recent samples of a duration so its distribution can be queried. Recording a sample is cheap, the
+ * statistics are computed when queried.
+ */
+class Histogram(samples: Int = 512) {
+
+    private val samples = LongArray(samples)
+
+    /**
+     * The number of samples recorded so far, including the ones that no longer fit.
+     */
+    var count: Long = 0
+        private set
+
+    /**
+     * @param sample a duration in nanoseconds.
+     */
+    fun record(sample: Long) {
+        this.samples[(this.count % this.samples.size).toInt()] = sample
+        this.count++
+    }
+
+    /**
+     * @param percentile a percentile between 0 and 100.
+     * *
+     * *
+     * @return the duration in nanoseconds below which the given percentage of the recent samples fall, 0 if nothing
+     * was recorded.
+     */
+    fun percentile(percentile: Double): Long {
+        val recent = recent()
+        if (recent.isEmpty()) {
+            return 0
+        }
+        val index = (percentile / 100.0 * recent.size).toInt()
+        return recent[Math.min(index,
+                               recent.size - 1)]
+    }
+
+    /**
+     * The most recent sample in nanoseconds, null if nothing was recorded.
+     */
+    val latest: Long?
+        get() = if (this.count == 0L) null else this.samples[((this.count - 1) % this.samples.size).toInt()]
+
+    /**
+     * The slowest recent sample in nanoseconds, 0 if nothing was recorded.
+     */
+    val max: Long
+        get() = recent().max() ?: 0
+
+    private fun recent(): LongArray {
+        val recent = this.samples.copyOf(Math.min(this.count,
+                                                  this.samples.size.toLong()).toInt())
+        recent.sort()
+        return recent
+    }
+
+    override fun toString(): String = String.format("p50 %.2fms, p99 %.2fms, max %.2fms (%d samples)",
+                                                    millis(percentile(50.0)),
+                                                    millis(percentile(99.0)),
+                                                    millis(this.max),
+                                                    this.count)
+
+    private fun millis(nanos: Long): Double = nanos.toDouble() / TimeUnit.MILLISECONDS.toNanos(1)
+}
@@ -9,6 +9,8 @@ import org.westford.compositor.protocol.WlCompositor
 import org.westford.compositor.protocol.WlDataDeviceManager
 import org.westford.compositor.protocol.WlShell
 import org.westford.compositor.protocol.WlSubcompositor
+import org.westford.compositor.protocol.WpPresentation
+import org.westford.compositor.protocol.ZwpLinuxDmabuf
 import org.westford.launch.LifeCycleSignals
 import javax.inject.Inject
 
@@ -18,7 +20,9 @@ class LifeCycle @Inject internal constructor(private val lifeCycleSignals: LifeC
                                              private val wlCompositor: WlCompositor,
                                              private val wlDataDeviceManager: WlDataDeviceManager,
                                              private val wlShell: WlShell,
-                                             private val wlSubcompositor: WlSubcompositor) {
+                                             private val wlSubcompositor: WlSubcompositor,
+                                             private val wpPresentation: WpPresentation,
+                                             private val zwpLinuxDmabuf: ZwpLinuxDmabuf) {
 
     fun start() {
         this.jobExecutor.start()
@@ -36,6 +40,8 @@ class LifeCycle @Inject internal constructor(private val lifeCycleSignals: LifeC
         this.wlDataDeviceManager.destroy()
         this.wlShell.destroy()
         this.wlSubcompositor.destroy()
+        this.wpPresentation.destroy()
+        this.zwpLinuxDmabuf.destroy()
 
         this.lifeCycleSignals.deactivateSignal.emit(Deactivate())
         this.lifeCycleSignals.stopSignal.emit(Stop())
@@ -69,6 +69,36 @@ import javax.annotation.Nonnegative
                           refresh = 0,
                           flags = 0)
         private set
+    /**
+     * Nanoseconds between two refreshes of the current mode, or 0 if unknown.
+     */
+    val refreshInterval: Int
+        get() = if (this.mode.refresh > 0) (1000000000000L / this.mode.refresh).toInt() else 0
+    /**
+     * Damage in compositor space that has not yet been repainted on this output.
+     */
+    var damage: FiniteRegion = this.regionFactory.create()
+        private set
+
+    /**
+     * Mark a part of the compositor space as in need of a repaint on this output.
+
+     * @param rectangle a rectangle in compositor space.
+     */
+    fun damage(rectangle: Rectangle) {
+        this.damage += rectangle
+    }
+
+    /**
+     * Take all damage that has not yet been repainted on this output, leaving this output undamaged.
+
+     * @return damage in compositor space.
+     */
+    fun flushDamage(): FiniteRegion {
+        val damage = this.damage
+        this.damage = this.regionFactory.create()
+        return damage
+    }
 
     fun update(resources: Set<WlOutputResource>,
                outputGeometry: OutputGeometry) {
@@ -134,6 +164,8 @@ import javax.annotation.Nonnegative
         //TODO check if the region is properly updated in the unit tests
         this.region = this.regionFactory.create() + Rectangle.create(regionTopLeft,
                                                                      regionBottomRight)
+        //everything needs to be repainted
+        this.damage += this.region
     }
 
     fun update(resources: Set<WlOutputResource>,
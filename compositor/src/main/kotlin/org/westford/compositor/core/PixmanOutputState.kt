@@ -0,0 +1,25 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core
+
+/**
+ * @param viewBoxes the views of the most recently drawn frame with their bounding box in compositor space, bottom to top.
+ * @param damageHistory damage of the frames drawn in each framebuffer since it was last drawn, in compositor space.
+ */
+data class PixmanOutputState(var viewBoxes: List<Pair<SurfaceView, Rectangle>> = emptyList(),
+                             var damageHistory: Map<Long, FiniteRegion> = emptyMap())
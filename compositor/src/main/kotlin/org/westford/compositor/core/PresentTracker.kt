@@ -0,0 +1,203 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core
+
+import org.westford.compositor.core.events.Presentation
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Keeps track of the surface content that was painted on an output but is not yet shown on screen. Once every output
+ * the content of a commit was painted on has presented it, the frame callbacks of that commit are fired and its
+ * [SurfaceFrame.presentedSignal] is emitted. Frame callbacks and presentation feedback committed afterwards wait for the
+ * content they were committed with.
+ *
+ * Outputs that render ahead can queue several frames, each of them is presented by its own [presented] call in the
+ * order they were queued.
+ */
+@Singleton class PresentTracker @Inject internal constructor() {
+
+    //surface content that was painted but is not yet presented by every output it was painted on.
+    private val paintedFrames = mutableMapOf<SurfaceFrame, PaintedFrame>()
+    //surface content painted on each output since its last queued frame, and whether it is scanned out directly.
+    private val paintedSurfaces = mutableMapOf<Output, MutableMap<SurfaceFrame, Boolean>>()
+    //frames of each output that wait for their presentation, oldest first.
+    private val queuedFrames = mutableMapOf<Output, MutableList<MutableMap<SurfaceFrame, Boolean>>>()
+
+    /**
+     * Register surfaces that were painted on an output and will be shown with its next presentation. The surfaces are
+     * painted with their current [Surface.frame].
+
+     * @param output the output the surfaces were painted on.
+     * *
+     * @param surfaces the painted surfaces.
+     * *
+     * @param zeroCopy true if the buffers of the surfaces are scanned out directly.
+     */
+    fun painted(output: Output,
+                surfaces: Iterable<Surface>,
+                zeroCopy: Boolean = false) {
+        val paintedSurfaces = this.paintedSurfaces.getOrPut(output) { mutableMapOf() }
+        surfaces.forEach {
+            val frame = it.frame
+            frame.isPainted = true
+            if (paintedSurfaces.put(frame,
+                                    zeroCopy) == null) {
+                this.paintedFrames.getOrPut(frame) { PaintedFrame(it) }.queue(output,
+                                                                              1)
+            }
+        }
+    }
+
+    /**
+     * Close the surfaces painted on an output so far as a frame that is presented after all frames queued before it.
+     * Surfaces painted afterwards belong to the next frame.
+
+     * @param output the output the frame was painted on.
+     * *
+     * @param merge true to add the surfaces to the most recently queued frame instead, eg. when nothing changed on
+     * * screen.
+     */
+    fun queued(output: Output,
+               merge: Boolean = false) {
+        val paintedSurfaces = this.paintedSurfaces.remove(output) ?: mutableMapOf()
+        val queuedFrames = this.queuedFrames.getOrPut(output) { mutableListOf() }
+        val lastFrame = queuedFrames.lastOrNull()
+        if (!merge || lastFrame == null) {
+            queuedFrames += paintedSurfaces
+            return
+        }
+
+        paintedSurfaces.forEach { (frame, zeroCopy) ->
+            if (lastFrame.put(frame,
+                              zeroCopy) != null) {
+                //already waiting for this frame
+                this.paintedFrames[frame]?.queue(output,
+                                                 -1)
+            }
+        }
+    }
+
+    /**
+     * Signal that an output has shown its oldest queued frame, or everything that was painted on it if no frames
+     * were queued.
+
+     * @param presentation the presentation of the output.
+     */
+    fun presented(presentation: Presentation) {
+        val output = presentation.output
+        val queuedFrames = this.queuedFrames[output]
+        val surfaces = if (queuedFrames == null || queuedFrames.isEmpty()) this.paintedSurfaces.remove(output) else queuedFrames.removeAt(0)
+        surfaces?.forEach { (frame, zeroCopy) ->
+            val paintedFrame = this.paintedFrames[frame] ?: return@forEach
+            paintedFrame.queue(output,
+                               -1)
+            paintedFrame.presented(if (zeroCopy) presentation.copy(flags = presentation.flags or Presentation.ZERO_COPY) else presentation)
+            finish(frame,
+                   paintedFrame)
+        }
+    }
+
+    /**
+     * Signal that an output will never show its most recently queued frames. The frames that were queued before them
+     * are still presented in order. Content that is not shown by any other frame is discarded, its frame callbacks
+     * wait for the next content of the surface that is painted.
+
+     * @param output the output that dropped its frames.
+     * *
+     * @param frames the number of most recently queued frames to drop.
+     */
+    fun dropped(output: Output,
+                frames: Int) {
+        val queuedFrames = this.queuedFrames[output] ?: return
+        repeat(minOf(frames,
+                     queuedFrames.size)) {
+            queuedFrames.removeAt(queuedFrames.size - 1).forEach { (frame, _) ->
+                val paintedFrame = this.paintedFrames[frame] ?: return@forEach
+                paintedFrame.queue(output,
+                                   -1)
+                finish(frame,
+                       paintedFrame)
+            }
+        }
+    }
+
+    private fun finish(frame: SurfaceFrame,
+                       paintedFrame: PaintedFrame) {
+        if (!paintedFrame.isFinished) {
+            return
+        }
+        this.paintedFrames.remove(frame)
+
+        val surface = paintedFrame.surface
+        if (surface.isDestroyed) {
+            frame.discardedSignal.emit(Unit)
+            return
+        }
+        val presentation = paintedFrame.presentation
+        if (presentation == null) {
+            //never shown, the callbacks move on to what is painted next.
+            if (surface.frame !== frame) {
+                surface.frame.callbacks.addAll(0,
+                                               frame.callbacks)
+                frame.callbacks.clear()
+            }
+            frame.discardedSignal.emit(Unit)
+            return
+        }
+
+        val callbacks = frame.callbacks.toList()
+        frame.callbacks.clear()
+        val time = TimeUnit.NANOSECONDS.toMillis(presentation.time).toInt()
+        callbacks.forEach {
+            it.done(time)
+            it.destroy()
+        }
+        frame.presentedSignal.emit(presentation)
+    }
+
+    /**
+     * The outputs that still have to present the content of a surface commit.
+     */
+    private class PaintedFrame(val surface: Surface) {
+
+        //frames of each output that show the content and are not yet presented or dropped.
+        private val pendingFrames = mutableMapOf<Output, Int>()
+        private val presentedOutputs = mutableSetOf<Output>()
+
+        var presentation: Presentation? = null
+            private set
+
+        /**
+         * True once every output the content was painted on has either presented it, or dropped all frames with it.
+         */
+        val isFinished: Boolean
+            get() = this.pendingFrames.none { (output, frames) -> frames > 0 && output !in this.presentedOutputs }
+
+        fun queue(output: Output,
+                  frames: Int) {
+            this.pendingFrames[output] = (this.pendingFrames[output] ?: 0) + frames
+        }
+
+        fun presented(presentation: Presentation) {
+            this.presentedOutputs += presentation.output
+            this.presentation = presentation
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core
+
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Collects per output frame timings. Enabled with the `westford.metrics` system property, or at runtime with
+ * [isEnabled]. Nothing is measured while disabled.
+ */
+@Singleton class RenderMetrics @Inject internal constructor() {
+
+    private val frameMetrics = mutableMapOf<Output, FrameMetrics>()
+
+    var isEnabled: Boolean = java.lang.Boolean.getBoolean("westford.metrics")
+
+    /**
+     * The timings recorded so far of each output.
+     */
+    val outputs: Map<Output, FrameMetrics>
+        get() = this.frameMetrics
+
+    /**
+     * @param output the output to record timings of.
+     * *
+     * *
+     * @return the timings of the output, null if metrics are disabled.
+     */
+    fun frameMetrics(output: Output): FrameMetrics? {
+        if (!this.isEnabled) {
+            return null
+        }
+        return this.frameMetrics.getOrPut(output) { FrameMetrics() }
+    }
+}
@@ -31,6 +31,18 @@ interface RenderOutput {
      */
     fun render(wlOutput: WlOutput)
 
+    /**
+     * Request a frame for a surface whose commit changed nothing on this output, but whose client waits for its frame
+     * callbacks. The surface goes with the frame that is on its way to the screen, or else with the next scheduled
+     * repaint, so a client that keeps asking for frame callbacks is throttled to the refresh rate.
+
+     * @param wlOutput a wayland output used as the rendering context.
+     * *
+     * @param surface the surface that waits for its frame callbacks.
+     */
+    fun requestFrame(wlOutput: WlOutput,
+                     surface: Surface) = render(wlOutput)
+
     /**
      * Disables any pending and future rendering for this connector.
      */
@@ -43,4 +55,18 @@ interface RenderOutput {
      */
     fun enable(wlOutput: WlOutput) {}
 
+    /**
+     * Move a cursor view that is shown by the hardware, without compositing.
+
+     * @param wlOutput a wayland output used as the rendering context.
+     * *
+     * @param surfaceView the cursor view that moved.
+     * *
+     * *
+     * @return true if the cursor was moved, false if the output has to be repainted instead. An output that returns
+     * false no longer shows the cursor in hardware, the repaint composites it.
+     */
+    fun moveCursor(wlOutput: WlOutput,
+                   surfaceView: SurfaceView): Boolean = false
+
 }
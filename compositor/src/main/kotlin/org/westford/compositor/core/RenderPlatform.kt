@@ -29,4 +29,11 @@ interface RenderPlatform {
     val renderOutputNewSignal: Signal<RenderOutputNew>
 
     val renderOutputDestroyedSignal: Signal<RenderOutputDestroyed>
+
+    /**
+     * Indicates if the outputs know when a frame is actually shown on screen. If not, presentation feedback is
+     * discarded instead of reporting a guess.
+     */
+    val hasPresentationClock: Boolean
+        get() = true
 }
@@ -22,6 +22,12 @@ import org.freedesktop.wayland.server.WlSurfaceResource
 
 interface Renderer {
 
+    /**
+     * Called each time a new state is applied to a surface. A renderer can use this to import the new surface content.
+     * @param surface the surface who's state was applied.
+     */
+    fun onApply(surface: Surface)
+
     /**
      * @param wlSurfaceResource the destroyed surface resource.
      */
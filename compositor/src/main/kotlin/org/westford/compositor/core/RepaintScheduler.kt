@@ -0,0 +1,160 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core
+
+import com.google.auto.factory.AutoFactory
+import com.google.auto.factory.Provided
+import org.freedesktop.wayland.server.Display
+import org.freedesktop.wayland.server.EventSource
+import java.util.concurrent.TimeUnit
+
+/**
+ * Schedules the repaints of an output as late as possible before its next vertical retrace, so commits that arrive
+ * late in a refresh cycle still make it on screen in that same cycle. How long before the retrace a repaint starts is
+ * based on the most recent repaint durations, on the cpu and on the gpu.
+ */
+@AutoFactory(className = "RepaintSchedulerFactory",
+             allowSubclasses = true) class RepaintScheduler(@param:Provided private val display: Display) {
+
+    private val renderTimes = LongArray(RENDER_TIME_SAMPLES)
+    //gpu time of each repaint, UNMEASURED if it is not known.
+    private val gpuTimes = LongArray(RENDER_TIME_SAMPLES)
+    private var renderTimeCount = 0
+    private var lastPresentation: Long = 0
+    private var refresh: Int = 0
+    private var repaint: (() -> Unit)? = null
+    private var idleEventSource: EventSource? = null
+    private val timerEventSource = this.display.eventLoop.addTimer {
+        fire()
+        0
+    }
+
+    /**
+     * Indicates if a repaint is scheduled but did not start yet.
+     */
+    val isScheduled: Boolean
+        get() = this.repaint != null
+
+    /**
+     * Register a vertical retrace of the output.
+
+     * @param time the time of the retrace in nanoseconds of the monotonic clock.
+     * *
+     * @param refresh the nanoseconds between two retraces, 0 if unknown.
+     */
+    fun presented(time: Long,
+                  refresh: Int) {
+        this.lastPresentation = time
+        this.refresh = refresh
+    }
+
+    /**
+     * Register how long a repaint took, from start until it was handed to the display hardware.
+
+     * @param duration the duration of the repaint on the cpu in nanoseconds.
+     * *
+     * @param gpuDuration the nanoseconds the gpu spent on a recent repaint, 0 if repaints don't use the gpu, null if
+     * it is not measured.
+     */
+    fun rendered(duration: Long,
+                 gpuDuration: Long?) {
+        this.renderTimes[this.renderTimeCount % RENDER_TIME_SAMPLES] = duration
+        this.gpuTimes[this.renderTimeCount % RENDER_TIME_SAMPLES] = gpuDuration ?: UNMEASURED
+        this.renderTimeCount++
+    }
+
+    /**
+     * Schedule a repaint so it finishes just before the next vertical retrace it can still make. Does nothing if a
+     * repaint is already scheduled.
+
+     * @param repaint the repaint to run.
+     */
+    fun schedule(repaint: () -> Unit) {
+        if (this.repaint != null) {
+            return
+        }
+        this.repaint = repaint
+
+        val delay = TimeUnit.NANOSECONDS.toMillis(delay(System.nanoTime()))
+        if (delay > 0) {
+            this.timerEventSource.updateTimer(delay.toInt())
+        }
+        else {
+            this.idleEventSource = this.display.eventLoop.addIdle { fire() }
+        }
+    }
+
+    /**
+     * Cancel the scheduled repaint, if any.
+     */
+    fun cancel() {
+        this.repaint = null
+        this.idleEventSource?.remove()
+        this.idleEventSource = null
+        //a timeout of 0 disarms the timer
+        this.timerEventSource.updateTimer(0)
+    }
+
+    private fun fire() {
+        this.idleEventSource = null
+        val repaint = this.repaint ?: return
+        this.repaint = null
+        repaint()
+    }
+
+    /**
+     * Nanoseconds to wait before starting a repaint so it's done right before the next vertical retrace.
+     */
+    private fun delay(now: Long): Long {
+        if (this.refresh <= 0 || this.lastPresentation == 0L) {
+            //we don't know when the retraces happen, repaint right away.
+            return 0
+        }
+
+        val renderBudget = Math.min(renderBudget(),
+                                    this.refresh.toLong())
+        //retraces happen at a fixed rate after the last one we know of, find the first one we can still make.
+        val retraces = (now + renderBudget - this.lastPresentation) / this.refresh + 1
+        val nextRetrace = this.lastPresentation + retraces * this.refresh
+        return Math.max(0,
+                        nextRetrace - renderBudget - now)
+    }
+
+    private fun renderBudget(): Long {
+        val samples = Math.min(this.renderTimeCount,
+                               RENDER_TIME_SAMPLES)
+        if (samples == 0) {
+            //no idea how long a repaint takes, play safe.
+            return this.refresh.toLong()
+        }
+        //the gpu finishes a repaint after the cpu handed it over, whichever took longest decides when it is done.
+        val gpuTimes = this.gpuTimes.take(samples)
+        val renderTime = Math.max(this.renderTimes.take(samples).max() ?: 0,
+                                  gpuTimes.max() ?: 0)
+        //the slowest recent repaint, with some slack for the unexpected. Without gpu timings the gpu might still be
+        //busy long after the cpu is done, keep more slack.
+        val margin = if (gpuTimes.contains(UNMEASURED)) SAFETY_MARGIN + this.refresh / 4 else SAFETY_MARGIN
+        return renderTime + margin
+    }
+
+    companion object {
+        private val RENDER_TIME_SAMPLES = 16
+        private val SAFETY_MARGIN = TimeUnit.MILLISECONDS.toNanos(2)
+        private val UNMEASURED = -1L
+    }
+}
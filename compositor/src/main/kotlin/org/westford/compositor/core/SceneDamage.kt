@@ -0,0 +1,68 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core
+
+/**
+ * Damage caused by changes to the views of an output, rather than by changes to their content.
+ */
+object SceneDamage {
+
+    /**
+     * Find the parts of an output that need to be repainted because views were moved, resized, (un)mapped or
+     * restacked.
+
+     * @param previousViewBoxes the views of the previous frame with their bounding box in compositor space, bottom to top.
+     * *
+     * @param viewBoxes the views of the new frame with their bounding box in compositor space, bottom to top.
+     * *
+     * *
+     * @return the changed parts in compositor space.
+     */
+    fun between(previousViewBoxes: List<Pair<SurfaceView, Rectangle>>,
+                viewBoxes: List<Pair<SurfaceView, Rectangle>>): List<Rectangle> {
+        val damage = mutableListOf<Rectangle>()
+        val previousBoxes = previousViewBoxes.toMap()
+        val boxes = viewBoxes.toMap()
+
+        //moved, resized & new views
+        viewBoxes.forEach { (surfaceView, viewBox) ->
+            val previousBox = previousBoxes[surfaceView]
+            if (previousBox != viewBox) {
+                damage += viewBox
+                previousBox?.let { damage += it }
+            }
+        }
+        //removed views
+        previousViewBoxes.forEach { (surfaceView, previousBox) ->
+            if (!boxes.containsKey(surfaceView)) {
+                damage += previousBox
+            }
+        }
+        //restacked views
+        val previousOrder = previousViewBoxes.map { it.first }.filter { boxes.containsKey(it) }
+        val order = viewBoxes.map { it.first }.filter { previousBoxes.containsKey(it) }
+        previousOrder.zip(order).forEach { (previousView, surfaceView) ->
+            if (previousView !== surfaceView) {
+                damage += boxes[previousView]!!
+                damage += boxes[surfaceView]!!
+            }
+        }
+
+        return damage
+    }
+}
@@ -19,13 +19,19 @@ package org.westford.compositor.core
 
 import javax.annotation.Nonnegative
 
+/**
+ * @param atlasRectangle the part of the texture that holds the surface content if the texture is a shared atlas, or
+ * null if the surface has a texture of its own.
+ */
 data class ShmSurfaceState(@param:Nonnegative val pitch: Int,
                            @param: Nonnegative val height: Int,
                            val target: Int,
                            val shaderProgram: Int,
                            val glFormat: Int,
                            val glPixelType: Int,
-                           val texture: Int) : SurfaceRenderState {
+                           val texture: Int,
+                           val damage: Region,
+                           val atlasRectangle: Rectangle?) : SurfaceRenderState {
 
     override fun accept(surfaceRenderStateVisitor: SurfaceRenderStateVisitor): SurfaceRenderState? {
         return surfaceRenderStateVisitor.visit(this)
@@ -25,7 +25,9 @@ import javax.annotation.Nonnegative
 data class SmBuffer(@param:Nonnegative override val width: Int,
                     @param:Nonnegative override val height: Int,
                     override val wlBufferResource: WlBufferResource,
-                    val shmBuffer: ShmBuffer) : Buffer {
+                    val shmBuffer: ShmBuffer,
+                    @param:Nonnegative val stride: Int,
+                    val format: Int) : Buffer {
 
     override fun accept(bufferVisitor: BufferVisitor) {
         bufferVisitor.visit(this)
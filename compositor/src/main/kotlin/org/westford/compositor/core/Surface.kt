@@ -32,6 +32,7 @@ import javax.annotation.Nonnegative
              allowSubclasses = true) class Surface(@param:Provided private val finiteRegionFactory: FiniteRegionFactory,
                                                    @param:Provided private val compositor: Compositor,
                                                    @param:Provided private val renderer: Renderer,
+                                                   @param:Provided private val bufferReleaser: BufferReleaser,
                                                    @param:Provided private val surfaceViewFactory: SurfaceViewFactory) {
 
     val keyboardFocusLostSignal = Signal<KeyboardFocusLost>()
@@ -39,7 +40,10 @@ import javax.annotation.Nonnegative
     val applySurfaceStateSignal = Signal<SurfaceState>()
     val viewCreatedSignal = Signal<SurfaceView>()
 
-    val frameCallbacks = mutableListOf<WlCallbackResource>()
+    /**
+     * Frame callbacks requested for the next commit.
+     */
+    val pendingFrameCallbacks = mutableListOf<WlCallbackResource>()
     /**
      * The keyboards that will be used to notify the client of any keyboard events on this surface. This collection is
      * updated each time the keyboard focus changes for this surface. To keep the client from receiving keyboard events,
@@ -51,6 +55,7 @@ import javax.annotation.Nonnegative
     val pendingState: SurfaceState = SurfaceState(opaqueRegion = null,
                                                   inputRegion = null,
                                                   damage = null,
+                                                  bufferDamage = null,
                                                   buffer = null,
                                                   bufferTransform = Mat4.IDENTITY,
                                                   deltaPosition = Point.ZERO,
@@ -67,6 +72,11 @@ import javax.annotation.Nonnegative
     var state = this.pendingState.copy()
     var role: Role? = null
     var renderState: SurfaceRenderState? = null
+    /**
+     * The committed content, with the frame callbacks that wait for it to be presented.
+     */
+    var frame = SurfaceFrame()
+        private set
 
     /**
      * Surface level transformation. Contains transformations that should be applied on all views of this surface.
@@ -79,6 +89,11 @@ import javax.annotation.Nonnegative
         private set
     var size = Rectangle.ZERO
         private set
+    /**
+     * The size of the attached buffer, in buffer coordinates.
+     */
+    var bufferBox = Rectangle.ZERO
+        private set
     var isDestroyed: Boolean = false
         private set
 
@@ -86,6 +101,10 @@ import javax.annotation.Nonnegative
 
     fun markDestroyed() {
         this.isDestroyed = true
+        //content that is painted is discarded once its frames are done.
+        if (!this.frame.isPainted) {
+            this.frame.discardedSignal.emit(Unit)
+        }
     }
 
     fun markDamaged(damage: Rectangle) {
@@ -93,6 +112,11 @@ import javax.annotation.Nonnegative
         this.pendingState.damage = (pendingDamage + damage)
     }
 
+    fun markBufferDamaged(damage: Rectangle) {
+        val pendingBufferDamage = this.pendingState.bufferDamage ?: this.finiteRegionFactory.create()
+        this.pendingState.bufferDamage = (pendingBufferDamage + damage)
+    }
+
     fun attachBuffer(wlBufferResource: WlBufferResource,
                      dx: Int,
                      dy: Int) {
@@ -105,8 +129,18 @@ import javax.annotation.Nonnegative
 
     fun commit() {
         //signal client that the previous buffer can be reused as we will now use the
-        //newly attached buffer.
-        state.buffer?.release()
+        //newly attached buffer. A buffer that is still scanned out is released once it's off screen.
+        state.buffer?.let { this.bufferReleaser.release(it) }
+
+        //content that is replaced before it was painted is never shown, its callbacks wait for the new content.
+        val frame = SurfaceFrame()
+        if (!this.frame.isPainted) {
+            frame.callbacks += this.frame.callbacks
+            this.frame.discardedSignal.emit(Unit)
+        }
+        frame.callbacks += this.pendingFrameCallbacks
+        this.pendingFrameCallbacks.clear()
+        this.frame = frame
 
         //flush states
         apply(this.pendingState)
@@ -116,9 +150,13 @@ import javax.annotation.Nonnegative
     }
 
     fun apply(surfaceState: SurfaceState) {
+        val previousBounds = this.views.map { it.bounds }
+        val previousSiblings = this.siblings.toList()
+
         state = surfaceState.copy()
         updateTransform()
         updateSize()
+        this.renderer.onApply(this)
 
         //copy subsurface stack to siblings list. subsurfaces always go first in the sibling list.
         this.pendingSubsurfaces.forEach {
@@ -128,15 +166,74 @@ import javax.annotation.Nonnegative
             this.siblings += it.sibling
         }
 
-        this.compositor.requestRender()
-
         applySurfaceStateSignal.emit(state)
+
+        //views are up to date with the new state, we can now damage what has changed.
+        val bufferDamage = bufferDamage()
+        val damage = mutableListOf<Rectangle>()
+        this.views.forEachIndexed { i, surfaceView ->
+            bufferDamage.mapTo(damage) { surfaceView.global(it) }
+            //moved, resized, mapped or unmapped views
+            val bounds = surfaceView.bounds
+            val previous = previousBounds.getOrNull(i)
+            if (previous != bounds) {
+                damage += bounds
+                previous?.let { damage += it }
+            }
+        }
+        //restacked subsurfaces
+        if (previousSiblings != this.siblings) {
+            this.siblings.forEach {
+                (it.wlSurfaceResource.implementation as WlSurface).surface.views.mapTo(damage) { it.bounds }
+            }
+        }
+        this.compositor.requestRender(damage)
+
+        //nothing visible might have changed, but the client still expects its frame callbacks.
+        if (!this.frame.callbacks.isEmpty()) {
+            this.compositor.requestFrame(this)
+        }
+    }
+
+    /**
+     * Gather the damage of the current state in buffer coordinates.
+     */
+    fun bufferDamage(): List<Rectangle> {
+        val damage = mutableListOf<Rectangle>()
+
+        state.bufferDamage?.let {
+            damage += it.asList()
+        }
+        state.damage?.let {
+            if (state.bufferTransform == Transforms.NORMAL) {
+                val scale = state.scale
+                it.asList().mapTo(damage) {
+                    Rectangle(it.x * scale,
+                              it.y * scale,
+                              it.width * scale,
+                              it.height * scale)
+                }
+            }
+            else {
+                //TODO map surface damage through the buffer transform, for now we simply damage the whole buffer.
+                state.buffer?.let {
+                    val buffer = this.renderer.queryBuffer(it)
+                    damage += Rectangle(0,
+                                        0,
+                                        buffer.width,
+                                        buffer.height)
+                }
+            }
+        }
+
+        return damage
     }
 
     fun detachBuffer() {
         pendingState.buffer?.unregister(this::detachBuffer)
         pendingState.buffer = null
         pendingState.damage = null
+        pendingState.bufferDamage = null
     }
 
     fun updateTransform() {
@@ -146,6 +243,7 @@ import javax.annotation.Nonnegative
 
     fun updateSize() {
         this.size = Rectangle.ZERO
+        this.bufferBox = Rectangle.ZERO
 
         state.buffer?.let {
             val buffer = this.renderer.queryBuffer(it)
@@ -155,10 +253,13 @@ import javax.annotation.Nonnegative
             this.size = Rectangle(Point.ZERO,
                                   width,
                                   height)
+            this.bufferBox = Rectangle(Point.ZERO,
+                                       buffer.width,
+                                       buffer.height)
         }
     }
 
-    fun addCallback(callback: WlCallbackResource) = this.frameCallbacks.add(callback)
+    fun addCallback(callback: WlCallbackResource) = this.pendingFrameCallbacks.add(callback)
 
     fun removeOpaqueRegion() {
         this.pendingState.opaqueRegion = null
@@ -178,15 +279,6 @@ import javax.annotation.Nonnegative
         this.pendingState.inputRegion = wlRegion.region
     }
 
-    fun firePaintCallbacks(serial: Int) {
-        val callbacks = ArrayList(frameCallbacks)
-        frameCallbacks.clear()
-        callbacks.forEach {
-            it.done(serial)
-            it.destroy()
-        }
-    }
-
     fun setScale(@Nonnegative scale: Int) {
         pendingState.scale = scale
     }
@@ -0,0 +1,49 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core
+
+import org.freedesktop.wayland.server.WlCallbackResource
+import org.westford.Signal
+import org.westford.compositor.core.events.Presentation
+
+/**
+ * The content of one commit of a [Surface], as far as its presentation is concerned. Once every output the content
+ * was painted on has presented it, [PresentTracker] fires its frame callbacks and emits [presentedSignal].
+ */
+class SurfaceFrame {
+
+    /**
+     * The frame callbacks that were committed with the content.
+     */
+    val callbacks = mutableListOf<WlCallbackResource>()
+
+    /**
+     * Emitted once every output the content was painted on has presented it.
+     */
+    val presentedSignal = Signal<Presentation>()
+    /**
+     * Emitted if the content will never be presented, because it was replaced before it was painted, all frames that
+     * show it were dropped or the surface was destroyed.
+     */
+    val discardedSignal = Signal<Unit>()
+
+    /**
+     * Indicates if the content was painted on an output.
+     */
+    var isPainted = false
+}
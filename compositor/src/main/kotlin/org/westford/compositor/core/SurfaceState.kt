@@ -24,6 +24,7 @@ import javax.annotation.Nonnegative
 data class SurfaceState(var opaqueRegion: Region?,
                         var inputRegion: Region?,
                         var damage: Region?,
+                        var bufferDamage: Region?,
                         var buffer: WlBufferResource?,
                         var bufferTransform: Mat4,
                         var deltaPosition: Point,
@@ -74,12 +74,30 @@ import org.westford.compositor.protocol.WlSurface
         this.inverseTransform = this.transform.invert()
     }
 
+    /**
+     * The area this view covers in the compositor space.
+     */
+    val bounds: Rectangle
+        get() = global((this.wlSurfaceResource.implementation as WlSurface).surface.bufferBox)
+
     fun updatePosition(global: Point) {
+        val previousBounds = this.bounds
+        move(global)
+
+        //both the area we left and the area we moved to have to be repainted
+        this.compositor.requestRender(listOf(previousBounds,
+                                             this.bounds))
+    }
+
+    /**
+     * Move this view without requesting a repaint. Used for views that might not be composited, like cursors.
+
+     * @param global the new position in compositor space.
+     */
+    fun move(global: Point) {
         setPosition(Transforms.TRANSLATE(global.x,
                                          global.y))
         positionSignal.emit(global)
-
-        this.compositor.requestRender()
     }
 
     fun onApply(surfaceState: SurfaceState) {
@@ -134,4 +152,29 @@ import org.westford.compositor.protocol.WlSurface
         return Point(globalPoint.x.toInt(),
                      globalPoint.y.toInt())
     }
+
+    /**
+     * Conveniently translate a rectangle from the view local plane to its bounding box in the compositor global plane.
+
+     * @param surfaceLocal A rectangle from the view local plane.
+     * *
+     * *
+     * @return A rectangle in the compositor global plane.
+     */
+    fun global(surfaceLocal: Rectangle): Rectangle {
+        val corners = listOf(global(surfaceLocal.position),
+                             global(Point(surfaceLocal.x + surfaceLocal.width,
+                                          surfaceLocal.y)),
+                             global(Point(surfaceLocal.x,
+                                          surfaceLocal.y + surfaceLocal.height)),
+                             global(Point(surfaceLocal.x + surfaceLocal.width,
+                                          surfaceLocal.y + surfaceLocal.height)))
+        val x = corners.map { it.x }.min() ?: 0
+        val y = corners.map { it.y }.min() ?: 0
+
+        return Rectangle(x,
+                         y,
+                         (corners.map { it.x }.max() ?: 0) - x,
+                         (corners.map { it.y }.max() ?: 0) - y)
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.core.events
+
+import org.westford.compositor.core.Output
+
+/**
+ * New content shown on screen by an output.
+
+ * @param output the output that presented.
+ * *
+ * @param time the time the content turned into light, in nanoseconds of the monotonic clock.
+ * *
+ * @param refresh the nanoseconds until the next presentation can happen, 0 if unknown.
+ * *
+ * @param sequence the vertical retrace counter of the output, 0 if unknown.
+ * *
+ * @param flags how the presentation happened, a combination of [VSYNC], [HW_CLOCK], [HW_COMPLETION] and [ZERO_COPY].
+ */
+data class Presentation(val output: Output,
+                        val time: Long,
+                        val refresh: Int,
+                        val sequence: Long,
+                        val flags: Int) {
+    companion object {
+        /**
+         * Presentation was synchronized to the vertical retrace of the output.
+         */
+        val VSYNC = 0x1
+        /**
+         * The time was provided by the display hardware.
+         */
+        val HW_CLOCK = 0x2
+        /**
+         * The display hardware signalled that it started using the new content.
+         */
+        val HW_COMPLETION = 0x4
+        /**
+         * The client buffer was scanned out directly, without a copy.
+         */
+        val ZERO_COPY = 0x8
+    }
+}
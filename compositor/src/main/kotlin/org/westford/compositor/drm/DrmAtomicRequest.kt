@@ -0,0 +1,157 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.drm
+
+import com.google.auto.factory.AutoFactory
+import com.google.auto.factory.Provided
+import org.westford.compositor.core.Rectangle
+import org.westford.nativ.libdrm.Libdrm
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_MODE_ATOMIC_TEST_ONLY
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_MODE_OBJECT_PLANE
+
+/**
+ * A set of drm object property changes that the kernel applies all at once, or not at all. Properties are set by name.
+ */
+@AutoFactory(allowSubclasses = true,
+             className = "DrmAtomicRequestFactory") class DrmAtomicRequest(@param:Provided private val libdrm: Libdrm,
+                                                                            @param:Provided private val drmProperties: DrmProperties,
+                                                                            private val drmFd: Int) : AutoCloseable {
+
+    private var req = this.libdrm.drmModeAtomicAlloc()
+
+    /**
+     * The number of property changes in this request so far, to roll back to with [rollback].
+     */
+    val cursor: Int
+        get() = this.libdrm.drmModeAtomicGetCursor(this.req)
+
+    /**
+     * Add a property change.
+
+     * @param objectType the type of the object, eg. [Libdrm.DRM_MODE_OBJECT_CRTC].
+     * *
+     * *
+     * @return false if the object has no such property.
+     */
+    fun add(objectId: Int,
+            objectType: Int,
+            name: String,
+            value: Long): Boolean {
+        val propertyId = this.drmProperties.id(this.drmFd,
+                                               objectId,
+                                               objectType,
+                                               name)
+        if (propertyId == 0) {
+            return false
+        }
+        return this.libdrm.drmModeAtomicAddProperty(this.req,
+                                                    objectId,
+                                                    propertyId,
+                                                    value) >= 0
+    }
+
+    /**
+     * Show a whole framebuffer unscaled on a plane, or take the plane offline when the framebuffer is 0.
+
+     * @param rectangle where the framebuffer is shown, in crtc coordinates.
+     * *
+     * *
+     * @return false if one of the plane properties could not be set.
+     */
+    fun plane(planeId: Int,
+              crtcId: Int,
+              fbId: Int,
+              rectangle: Rectangle): Boolean {
+        val properties = if (fbId == 0) {
+            listOf(Pair("FB_ID",
+                        0L),
+                   Pair("CRTC_ID",
+                        0L))
+        }
+        else {
+            //source coordinates are in 16.16 fixed point
+            listOf(Pair("FB_ID",
+                        fbId.toLong()),
+                   Pair("CRTC_ID",
+                        crtcId.toLong()),
+                   Pair("SRC_X",
+                        0L),
+                   Pair("SRC_Y",
+                        0L),
+                   Pair("SRC_W",
+                        rectangle.width.toLong() shl 16),
+                   Pair("SRC_H",
+                        rectangle.height.toLong() shl 16),
+                   Pair("CRTC_X",
+                        rectangle.x.toLong()),
+                   Pair("CRTC_Y",
+                        rectangle.y.toLong()),
+                   Pair("CRTC_W",
+                        rectangle.width.toLong()),
+                   Pair("CRTC_H",
+                        rectangle.height.toLong()))
+        }
+
+        return properties.all {
+            add(planeId,
+                DRM_MODE_OBJECT_PLANE,
+                it.first,
+                it.second)
+        }
+    }
+
+    /**
+     * Drop all property changes that were added after [cursor] was read.
+     */
+    fun rollback(cursor: Int) {
+        this.libdrm.drmModeAtomicSetCursor(this.req,
+                                           cursor)
+    }
+
+    /**
+     * Ask the kernel if this request would be accepted, without applying anything.
+
+     * @param flags the flags the request would be committed with.
+     */
+    fun test(flags: Int = 0): Boolean = commit(flags or DRM_MODE_ATOMIC_TEST_ONLY,
+                                               0L) == 0
+
+    /**
+     * Apply this request.
+
+     * @param flags eg. [Libdrm.DRM_MODE_ATOMIC_NONBLOCK] or [Libdrm.DRM_MODE_PAGE_FLIP_EVENT].
+     * *
+     * @param userData passed to the page flip handler of each crtc in this request.
+     * *
+     * *
+     * @return 0 on success, a negative errno on failure.
+     */
+    fun commit(flags: Int,
+               userData: Long): Int = this.libdrm.drmModeAtomicCommit(this.drmFd,
+                                                                      this.req,
+                                                                      flags,
+                                                                      userData)
+
+    override fun close() {
+        //closing twice is a no-op, a refused commit is closed both by its frame and when the frame is dropped.
+        if (this.req != 0L) {
+            this.libdrm.drmModeAtomicFree(this.req)
+            this.req = 0L
+        }
+    }
+}
@@ -28,4 +28,11 @@ import javax.annotation.Nonnegative
              className = "DrmOutputFactory") class DrmOutput(val drmModeRes: DrmModeRes,
                                                              val drmModeConnector: DrmModeConnector,
                                                              @param:Nonnegative val crtcId: Int,
-                                                             val mode: DrmModeModeInfo)
+                                                             val mode: DrmModeModeInfo) {
+
+    /**
+     * The position of the crtc in the drm resources, as used by the possible crtcs bitmask of planes and encoders.
+     */
+    val crtcIndex: Int
+        get() = (0 until this.drmModeRes.count_crtcs).first { this.drmModeRes.crtcs[it] == this.crtcId }
+}
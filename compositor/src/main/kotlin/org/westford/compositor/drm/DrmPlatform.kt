@@ -27,6 +27,7 @@ import org.westford.compositor.core.events.RenderOutputNew
              className = "PrivateDrmPlatformFactory") class DrmPlatform(val drmDevice: Long,
                                                                         val drmFd: Int,
                                                                         val drmEventBus: DrmEventBus,
+                                                                        val atomic: Boolean,
                                                                         val renderOutputs: List<DrmOutput>) {
     val renderOutputNewSignal = Signal<RenderOutputNew>()
     val renderOutputDestroyedSignal = Signal<RenderOutputDestroyed>()
@@ -24,8 +24,10 @@ import org.freedesktop.wayland.server.jaccall.WaylandServerCore
 import org.westford.launch.Privileges
 import org.westford.nativ.glibc.Libc
 import org.westford.nativ.libdrm.*
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_CLIENT_CAP_ATOMIC
 import org.westford.nativ.libdrm.Libdrm.Companion.DRM_MODE_CONNECTED
 import org.westford.nativ.libudev.Libudev
+import java.util.logging.Logger
 import javax.inject.Inject
 
 //TODO tests tests tests!
@@ -50,6 +52,11 @@ class DrmPlatformFactory @Inject internal constructor(private val libudev: Libud
         }
 
         val drmFd = initDrm(drmDevice)
+        //atomic modesetting also exposes the primary and cursor planes, older kernels and drivers refuse it.
+        val atomic = this.libdrm.drmSetClientCap(drmFd,
+                                                 DRM_CLIENT_CAP_ATOMIC,
+                                                 1L) == 0
+        LOGGER.info(if (atomic) "Using atomic modesetting." else "Atomic modesetting not available, using legacy modesetting.")
 
         val drmOutputs = createDrmRenderOutputs(drmFd)
 
@@ -63,6 +70,7 @@ class DrmPlatformFactory @Inject internal constructor(private val libudev: Libud
         return this.privateDrmPlatformFactory.create(drmDevice,
                                                      drmFd,
                                                      drmEventBus,
+                                                     atomic,
                                                      drmOutputs)
     }
 
@@ -258,4 +266,9 @@ class DrmPlatformFactory @Inject internal constructor(private val libudev: Libud
                                             crtcId,
                                             mode)
     }
+
+    companion object {
+
+        private val LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.drm
+
+import org.freedesktop.jaccall.Pointer.wrap
+import org.westford.nativ.libdrm.Libdrm
+import org.westford.nativ.libdrm.drmModeObjectProperties
+import org.westford.nativ.libdrm.drmModePropertyRes
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Looks up the properties of drm objects by name. Property ids never change, so the properties of an object are only
+ * queried once.
+ */
+@Singleton class DrmProperties @Inject internal constructor(private val libdrm: Libdrm) {
+
+    private val propertyIds = mutableMapOf<Int, Map<String, Int>>()
+
+    /**
+     * The id of a property of a drm object.
+
+     * @param objectType the type of the object, eg. [Libdrm.DRM_MODE_OBJECT_CRTC].
+     * *
+     * *
+     * @return the property id, or 0 if the object has no such property.
+     */
+    fun id(drmFd: Int,
+           objectId: Int,
+           objectType: Int,
+           name: String): Int {
+        val ids = this.propertyIds.getOrPut(objectId) {
+            query(drmFd,
+                  objectId,
+                  objectType).mapValues { it.value.first }
+        }
+        return ids[name] ?: 0
+    }
+
+    /**
+     * The current value of a property of a drm object.
+
+     * @param objectType the type of the object, eg. [Libdrm.DRM_MODE_OBJECT_PLANE].
+     * *
+     * *
+     * @return the property value, or null if the object has no such property.
+     */
+    fun value(drmFd: Int,
+              objectId: Int,
+              objectType: Int,
+              name: String): Long? = query(drmFd,
+                                           objectId,
+                                           objectType)[name]?.second
+
+    /**
+     * @return the id and value of each property, by name.
+     */
+    private fun query(drmFd: Int,
+                      objectId: Int,
+                      objectType: Int): Map<String, Pair<Int, Long>> {
+        val objectProperties = this.libdrm.drmModeObjectGetProperties(drmFd,
+                                                                      objectId,
+                                                                      objectType)
+        if (objectProperties == 0L) {
+            return emptyMap()
+        }
+
+        val drmModeObjectProperties = wrap<drmModeObjectProperties>(drmModeObjectProperties::class.java,
+                                                                    objectProperties).get()
+        val properties = (0 until drmModeObjectProperties.count_props).mapNotNull {
+            val property = this.libdrm.drmModeGetProperty(drmFd,
+                                                          drmModeObjectProperties.props[it])
+            if (property == 0L) {
+                return@mapNotNull null
+            }
+
+            val drmModePropertyRes = wrap<drmModePropertyRes>(drmModePropertyRes::class.java,
+                                                              property).get()
+            val entry = Pair(drmModePropertyRes.name,
+                             Pair(drmModePropertyRes.prop_id,
+                                  drmModeObjectProperties.prop_values[it]))
+            this.libdrm.drmModeFreeProperty(property)
+            entry
+        }.toMap()
+        this.libdrm.drmModeFreeObjectProperties(objectProperties)
+
+        return properties
+    }
+}
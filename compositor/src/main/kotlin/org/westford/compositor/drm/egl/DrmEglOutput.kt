@@ -19,13 +19,19 @@ package org.westford.compositor.drm.egl
 
 import com.google.auto.factory.AutoFactory
 import com.google.auto.factory.Provided
+import org.freedesktop.jaccall.JNI
 import org.freedesktop.jaccall.Pointer
 import org.freedesktop.jaccall.Ptr
 import org.freedesktop.jaccall.Size
 import org.freedesktop.jaccall.Unsigned
 import org.freedesktop.wayland.server.Display
-import org.freedesktop.wayland.server.EventSource
+import org.freedesktop.wayland.server.ShmBuffer
+import org.freedesktop.wayland.server.WlBufferResource
+import org.freedesktop.wayland.shared.WlShmFormat
 import org.westford.compositor.core.*
+import org.westford.compositor.core.events.Presentation
+import org.westford.compositor.drm.DrmAtomicRequest
+import org.westford.compositor.drm.DrmAtomicRequestFactory
 import org.westford.compositor.drm.DrmOutput
 import org.westford.compositor.drm.DrmPageFlipCallback
 import org.westford.compositor.gles2.Gles2Painter
@@ -34,12 +40,25 @@ import org.westford.compositor.protocol.WlOutput
 import org.westford.compositor.protocol.WlSurface
 import org.westford.nativ.glibc.Libc
 import org.westford.nativ.libdrm.Libdrm
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_CAP_CURSOR_HEIGHT
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_CAP_CURSOR_WIDTH
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_MODE_ATOMIC_NONBLOCK
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_MODE_OBJECT_CONNECTOR
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_MODE_OBJECT_CRTC
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_MODE_OBJECT_PLANE
 import org.westford.nativ.libdrm.Libdrm.Companion.DRM_MODE_PAGE_FLIP_EVENT
+import org.westford.nativ.libdrm.Struct_DrmModeModeInfo
 import org.westford.nativ.libgbm.Libgbm
+import org.westford.nativ.libgbm.Libgbm.Companion.GBM_BO_USE_CURSOR
+import org.westford.nativ.libgbm.Libgbm.Companion.GBM_BO_USE_WRITE
 import org.westford.nativ.libgbm.Libgbm.Companion.GBM_FORMAT_ARGB8888
 import org.westford.nativ.libgbm.Libgbm.Companion.GBM_FORMAT_XRGB8888
 import org.westford.nativ.libgbm.Pointerdestroy_user_data
 import org.westford.nativ.libgbm.destroy_user_data
+import java.nio.ByteBuffer
+import java.util.ArrayDeque
+import java.util.concurrent.TimeUnit
+import java.util.logging.Logger
 
 @AutoFactory(allowSubclasses = true,
              className = "DrmEglOutputFactory") class DrmEglOutput(@param:Provided private val libc: Libc,
@@ -50,74 +69,228 @@ import org.westford.nativ.libgbm.destroy_user_data
                                                                    @param:Provided private val gles2Renderer: Gles2Renderer,
                                                                    @param:Provided private val scene: Scene,
                                                                    @param:Provided private val gbmBoFactory: GbmBoFactory,
+                                                                   @param:Provided private val gbmBoCache: GbmBoCache,
+                                                                   @param:Provided private val presentTracker: PresentTracker,
+                                                                   @param:Provided private val renderMetrics: RenderMetrics,
+                                                                   @param:Provided private val drmPlaneAssigner: DrmPlaneAssigner,
+                                                                   @param:Provided private val drmAtomicRequestFactory: DrmAtomicRequestFactory,
+                                                                   @param:Provided repaintSchedulerFactory: RepaintSchedulerFactory,
                                                                    private val drmFd: Int,
                                                                    private val gbmDevice: Long,
                                                                    private var gbmBo: GbmBo,
                                                                    private val gbmSurface: Long,
                                                                    val drmOutput: DrmOutput,
+                                                                   private val drmPlanes: List<DrmPlane>,
+                                                                   private val primaryPlane: DrmPlane?,
                                                                    override val eglSurface: Long,
                                                                    override val eglContext: Long,
                                                                    override val eglDisplay: Long) : EglOutput, DrmPageFlipCallback {
     override var state: EglOutputState? = null
+    /**
+     * True if this output is updated with atomic commits, false if it uses the legacy modesetting calls.
+     */
+    val isAtomic: Boolean
+        get() = this.primaryPlane != null
 
+    //the primary plane buffer of the frame that is being rendered
     private var nextGbmBo: GbmBo
-    private var renderPending = false
+    private val repaintScheduler = repaintSchedulerFactory.create()
+    //rendered frames that are not on screen yet, oldest first. If a page flip is pending, it's for the oldest one.
+    private val frames = ArrayDeque<Frame>()
     private var pageFlipPending = false
     private var afterPageFlipRender: (() -> Unit)? = null
-    private var onIdleEventSource: EventSource? = null
+    //vertical retrace counter of the most recent page flip
+    private var sequence: Long = 0
     private var enabled: Boolean = false
+    //views scanned out by an overlay plane
+    private var overlays = mapOf<SurfaceView, Overlay>()
+    private var overlaysChanged = false
+    //overlay buffers that were replaced, but are scanned out until the frame that is being rendered is on screen.
+    private val releasedOverlayBos = mutableListOf<GbmBo>()
+    //the view shown by the hardware cursor, and the state of its surface when its image was written.
+    private var cursorView: SurfaceView? = null
+    private var cursorState: SurfaceState? = null
+    //cursor images are written to the buffer that is not being shown.
+    private val cursorBos = LongArray(2)
+    private var cursorBo = 0
+    private val cursorWidth by lazy { cursorCap(DRM_CAP_CURSOR_WIDTH) }
+    private val cursorHeight by lazy { cursorCap(DRM_CAP_CURSOR_HEIGHT) }
+    //plane changes that go out with the atomic commit of the frame that is being rendered
+    private var atomicRequest: DrmAtomicRequest? = null
+    private val modeBlobId by lazy { createModeBlob() }
 
     init {
         this.nextGbmBo = gbmBo
     }
 
-    private fun schedulePageFlip() {
-        this.libdrm.drmModePageFlip(this.drmFd,
-                                    this.drmOutput.crtcId,
-                                    getFbId(this.nextGbmBo),
-                                    DRM_MODE_PAGE_FLIP_EVENT,
-                                    Pointer.from(this).address)
-        this.pageFlipPending = true
+    /**
+     * The primary plane buffer of the most recently rendered frame, on screen or not.
+     */
+    private val latestGbmBo: GbmBo
+        get() = this.frames.peekLast()?.gbmBo ?: this.gbmBo
+
+    /**
+     * Queue the frame that was just rendered. It's flipped to right away, or after the frames queued before it.
+     */
+    private fun queueFrame(wlOutput: WlOutput) {
+        this.frames += Frame(wlOutput,
+                             this.nextGbmBo,
+                             this.atomicRequest,
+                             this.releasedOverlayBos.toList())
+        this.atomicRequest = null
+        this.releasedOverlayBos.clear()
+        this.presentTracker.queued(wlOutput.output)
+
+        if (!this.pageFlipPending) {
+            schedulePageFlip(this.frames.first)
+        }
+    }
+
+    private fun schedulePageFlip(frame: Frame) {
+        frame.pageFlipRequested = if (this.renderMetrics.isEnabled) System.nanoTime() else 0L
+
+        val atomicRequest = frame.atomicRequest
+        val primaryPlane = this.primaryPlane
+        if (atomicRequest == null || primaryPlane == null) {
+            val pageFlipCallback = Pointer.from(this)
+            val error = this.libdrm.drmModePageFlip(this.drmFd,
+                                                    this.drmOutput.crtcId,
+                                                    getFbId(frame.gbmBo),
+                                                    DRM_MODE_PAGE_FLIP_EVENT,
+                                                    pageFlipCallback.address)
+            if (error == 0) {
+                this.pageFlipPending = true
+            }
+            else {
+                //eg. EBUSY after a vt switch, no page flip event will follow.
+                pageFlipCallback.close()
+                LOGGER.warning(String.format("failed to schedule page flip. [%d]",
+                                             -error))
+                commitFailed(frame.wlOutput)
+            }
+            return
+        }
+
+        //the primary plane and the overlay planes change with the same vertical retrace.
+        atomicRequest.add(primaryPlane.planeId,
+                          DRM_MODE_OBJECT_PLANE,
+                          "FB_ID",
+                          getFbId(frame.gbmBo).toLong())
+        val pageFlipCallback = Pointer.from(this)
+        val error = atomicRequest.commit(DRM_MODE_ATOMIC_NONBLOCK or DRM_MODE_PAGE_FLIP_EVENT,
+                                         pageFlipCallback.address)
+        atomicRequest.close()
+        if (error == 0) {
+            this.pageFlipPending = true
+        }
+        else {
+            pageFlipCallback.close()
+            LOGGER.warning(String.format("failed to commit atomic page flip. [%d]",
+                                         -error))
+            commitFailed(frame.wlOutput)
+        }
+    }
+
+    /**
+     * Recover from a page flip or atomic commit that was refused, the screen still shows the previous frame. The
+     * refused frame and the frames rendered after it are dropped, the next frame is repainted from scratch.
+     */
+    private fun commitFailed(wlOutput: WlOutput) {
+        val output = wlOutput.output
+        dropFrames()
+
+        //overlay buffers are released once the next frame is on screen, the planes are taken offline with it.
+        if (this.isAtomic && this.atomicRequest == null) {
+            this.atomicRequest = this.drmAtomicRequestFactory.create(this.drmFd)
+        }
+        this.overlays.values.forEach {
+            this.releasedOverlayBos += it.gbmBo
+            disablePlane(it.drmPlane)
+        }
+        this.overlays = emptyMap()
+
+        output.region.asList().forEach { output.damage(it) }
+        render(wlOutput)
+    }
+
+    /**
+     * Drop the queued frames that are not being flipped to. The frame callbacks of the content they show wait for the
+     * repaint that replaces them.
+     */
+    private fun dropFrames() {
+        val pendingFrame = if (this.pageFlipPending) this.frames.pollFirst() else null
+        val keptGbmBos = listOf(this.gbmBo) + (pendingFrame?.gbmBo?.let { listOf(it) } ?: emptyList())
+
+        //consecutive frames share their primary plane buffer if only the overlays changed.
+        this.frames.map { it.gbmBo }.distinct().filter { gbmBo -> keptGbmBos.none { it === gbmBo } }.forEach { it.close() }
+        this.frames.forEach {
+            it.atomicRequest?.close()
+            //still on screen until the next frame replaces them
+            this.releasedOverlayBos += it.releasedOverlayBos
+        }
+        //the dropped frames are the most recently queued ones, the pending frame is still presented by its page flip.
+        this.frames.firstOrNull()?.let {
+            this.presentTracker.dropped(it.wlOutput.output,
+                                        this.frames.size)
+        }
+        this.frames.clear()
+        pendingFrame?.let { this.frames += it }
     }
 
     private fun getFbId(gbmBo: GbmBo): Int {
-        val fbIdP = this.libgbm.gbm_bo_get_user_data(gbmBo.gbmBo)
+        val fbId = fbId(gbmBo)
+        if (fbId == 0) {
+            throw RuntimeException("failed to create fb")
+        }
+        return fbId
+    }
+
+    /**
+     * The framebuffer of a gbm buffer, created on first use and removed when the buffer is destroyed.
+
+     * @return the framebuffer id, or 0 if no framebuffer could be created.
+     */
+    private fun fbId(gbmBo: GbmBo): Int {
+        val gbmBoPtr = gbmBo.gbmBo
+        val fbIdP = this.libgbm.gbm_bo_get_user_data(gbmBoPtr)
         if (fbIdP != 0L) {
             return Pointer.wrap<Int>(Int::class.java,
                                      fbIdP).get()
         }
 
-        val fb = Pointer.calloc<Int>(1,
-                                     Size.sizeof(null as Int),
-                                     Int::class.java)
-        val gbmBoPtr = this.gbmBo.gbmBo
         val format = this.libgbm.gbm_bo_get_format(gbmBoPtr)
         val width = this.libgbm.gbm_bo_get_width(gbmBoPtr)
         val height = this.libgbm.gbm_bo_get_height(gbmBoPtr)
-        val stride = this.libgbm.gbm_bo_get_stride(gbmBoPtr)
-        val handle = this.libgbm.gbm_bo_get_handle(gbmBoPtr).toInt()
-
-        val handles = Pointer.nref(handle,
-                                   0,
-                                   0,
-                                   0)
-        val pitches = Pointer.nref(stride,
-                                   0,
-                                   0,
-                                   0)
-        val offsets = Pointer.nref(*IntArray(4))
 
+        //multi planar formats, like the yuv formats of video, have a handle, pitch and offset for each plane.
+        val handles = IntArray(4)
+        val pitches = IntArray(4)
+        val offsets = IntArray(4)
+        (0 until Math.min(this.libgbm.gbm_bo_get_plane_count(gbmBoPtr),
+                          4)).forEach {
+            handles[it] = this.libgbm.gbm_bo_get_handle_for_plane(gbmBoPtr,
+                                                                  it).toInt()
+            pitches[it] = this.libgbm.gbm_bo_get_stride_for_plane(gbmBoPtr,
+                                                                  it)
+            offsets[it] = this.libgbm.gbm_bo_get_offset(gbmBoPtr,
+                                                        it)
+        }
+
+        val fb = Pointer.calloc<Int>(1,
+                                     Size.sizeof(null as Int),
+                                     Int::class.java)
         val ret = this.libdrm.drmModeAddFB2(this.drmFd,
                                             width,
                                             height,
                                             format,
-                                            handles.address,
-                                            pitches.address,
-                                            offsets.address,
+                                            Pointer.nref(*handles).address,
+                                            Pointer.nref(*pitches).address,
+                                            Pointer.nref(*offsets).address,
                                             fb.address,
                                             0)
         if (ret != 0) {
-            throw RuntimeException("failed to create fb")
+            fb.close()
+            return 0
         }
 
         this.libgbm.gbm_bo_set_user_data(gbmBoPtr,
@@ -130,11 +303,34 @@ import org.westford.nativ.libgbm.destroy_user_data
     override fun onPageFlip(@Unsigned sequence: Int,
                             @Unsigned tv_sec: Int,
                             @Unsigned tv_usec: Int) {
-        this.gbmBo.close()
-
-        this.gbmBo = this.nextGbmBo
+        val frame = this.frames.pollFirst() ?: return
+        //the flip might only have been scheduled for the overlay planes
+        if (frame.gbmBo !== this.gbmBo) {
+            this.gbmBo.close()
+            this.gbmBo = frame.gbmBo
+        }
+        frame.releasedOverlayBos.forEach { it.close() }
         this.pageFlipPending = false
 
+        this.sequence = sequence.toLong() and 0xffffffffL
+        //the kernel reports the time of the vertical retrace that started scanning out the new buffer.
+        val time = TimeUnit.SECONDS.toNanos(tv_sec.toLong() and 0xffffffffL) + TimeUnit.MICROSECONDS.toNanos(tv_usec.toLong() and 0xffffffffL)
+        val output = frame.wlOutput.output
+        if (frame.pageFlipRequested != 0L) {
+            this.renderMetrics.frameMetrics(output)?.flipped(time - frame.pageFlipRequested,
+                                                            output.refreshInterval)
+        }
+        this.repaintScheduler.presented(time,
+                                        output.refreshInterval)
+        this.presentTracker.presented(Presentation(output,
+                                                   time,
+                                                   output.refreshInterval,
+                                                   this.sequence,
+                                                   Presentation.VSYNC or Presentation.HW_CLOCK or Presentation.HW_COMPLETION))
+
+        //a frame that was rendered ahead goes out with the next vertical retrace.
+        this.frames.peekFirst()?.let { schedulePageFlip(it) }
+
         this.afterPageFlipRender?.invoke()
         this.afterPageFlipRender = null
     }
@@ -150,108 +346,424 @@ import org.westford.nativ.libgbm.destroy_user_data
     }
 
     private fun doRender(wlOutput: WlOutput) {
-        this.onIdleEventSource = null
+        val renderStart = System.nanoTime()
         val painter = this.gles2PainterFactory.create(this,
                                                       wlOutput)
+        val frameMetrics = this.renderMetrics.frameMetrics(wlOutput.output)
         val subscene = this.scene.subsection(wlOutput.output.region)
+        frameMetrics?.sceneTime?.record(System.nanoTime() - renderStart)
+        if (this.isAtomic && this.atomicRequest == null) {
+            this.atomicRequest = this.drmAtomicRequestFactory.create(this.drmFd)
+        }
+        this.nextGbmBo = this.latestGbmBo
 
-        val cursorPlane = toCursorPlane(wlOutput,
-                                        subscene.cursorViews)
+        val hardwareCursor = toCursorPlane(wlOutput,
+                                           subscene.cursorViews)
         //If we can't offload to some kind of cursor plane then we are forced to put it on the primary plane.
-        //This means we can't really offload anything to other planes as hey would be shown on top of the cursor
-        //primary plane
-        if (cursorPlane != null) {
-            //continue offloading to overlay planes
-            val lockViewsPlane = toOverlayPlane(wlOutput,
-                                                subscene.lockViews)
-            if (lockViewsPlane != null) {
-                return
+        //Overlay planes are shown on top of the primary plane, so they have to stay clear of the cursor.
+        val primaryCursorViews = if (hardwareCursor) emptyList() else subscene.cursorViews
+
+        //views on overlay planes are scanned out as is, only the remainder is composited on the primary plane.
+        val overlayViews = toOverlayPlanes(wlOutput,
+                                           subscene,
+                                           primaryCursorViews)
+        //a composited cursor has to be drawn over the fullscreen view, so the fullscreen view can't be scanned out.
+        paint(wlOutput,
+              painter,
+              subscene.copy(underViews = subscene.underViews - overlayViews,
+                            applicationViews = subscene.applicationViews - overlayViews,
+                            overViews = subscene.overViews - overlayViews),
+              primaryCursorViews.isEmpty())
+
+        primaryCursorViews.forEach { painter.paint(it) }
+
+        if (painter.commit()) {
+            //a client buffer leased for scanout is replaced by the composited frame, give it back.
+            val nextGbmBo = this.nextGbmBo
+            if (nextGbmBo is GbmBoCache.Lease && nextGbmBo !== this.latestGbmBo) {
+                nextGbmBo.close()
             }
+            this.nextGbmBo = this.gbmBoFactory.create(this.gbmSurface)
+        }
+        //a changed overlay configuration is shown with the next page flip, even if the primary plane didn't change.
+        if (this.nextGbmBo !== this.latestGbmBo || this.overlaysChanged) {
+            queueFrame(wlOutput)
+            this.repaintScheduler.rendered(System.nanoTime() - renderStart,
+                                           frameMetrics?.gpuTime?.latest)
+        }
+        else if (this.frames.isEmpty()) {
+            //nothing changed, keep scanning out the current buffer. Whatever was painted is on screen already.
+            val output = wlOutput.output
+            this.presentTracker.presented(Presentation(output,
+                                                       System.nanoTime(),
+                                                       output.refreshInterval,
+                                                       this.sequence,
+                                                       0))
+        }
+        else {
+            //nothing changed, whatever was painted is shown with the frames that are on their way.
+            this.presentTracker.queued(wlOutput.output,
+                                       merge = true)
+        }
+
+        this.display.flushClients()
+    }
+
+    /**
+     * Show views on overlay planes where possible. Only views with a client buffer that can be scanned out as is,
+     * without scaling, transforming or cropping, qualify.
 
-            val fullscreenPlane = toPrimaryPlane(wlOutput,
-                                                 subscene.fullscreenView)
-            if (fullscreenPlane != null) {
-                return
+     * @param obstacles views that are composited on top of all other views.
+     * *
+     * *
+     * @return the views that are shown on an overlay plane.
+     */
+    private fun toOverlayPlanes(wlOutput: WlOutput,
+                                subscene: Subscene,
+                                obstacles: List<SurfaceView>): Set<SurfaceView> {
+        val output = wlOutput.output
+        val mode = output.mode
+        //lock screens and fullscreen views hide all other views.
+        val views = if (this.drmPlanes.isEmpty() || !subscene.lockViews.isEmpty() || subscene.fullscreenView != null || !DrmPlaneAssigner.isTranslation(output.transform)) {
+            emptyList()
+        }
+        else {
+            (subscene.underViews + subscene.applicationViews + subscene.overViews).asReversed().filter { it.isEnabled && it.isDrawable }
+        }
+
+        val gbmBos = mutableMapOf<SurfaceView, GbmBo>()
+        val assignments = this.drmPlaneAssigner.assign(this.drmPlanes,
+                                                       views.map {
+                                                           DrmPlaneAssigner.Candidate(it,
+                                                                                      outputRectangle(output,
+                                                                                                      it),
+                                                                                      it.transform)
+                                                       },
+                                                       obstacles.map {
+                                                           outputRectangle(output,
+                                                                           it)
+                                                       },
+                                                       Rectangle(0,
+                                                                 0,
+                                                                 mode.width,
+                                                                 mode.height)) {
+            val gbmBo = overlayGbmBo(it)
+            if (gbmBo == null) {
+                0
+            }
+            else {
+                gbmBos[it] = gbmBo
+                this.libgbm.gbm_bo_get_format(gbmBo.gbmBo)
             }
+        }
+
+        val overlays = mutableMapOf<SurfaceView, Overlay>()
+        var overlaysChanged = false
+        assignments.forEach { (surfaceView, drmPlane) ->
+            val gbmBo = gbmBos.getValue(surfaceView)
+            val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
+            val wlBufferResource = wlSurface.surface.state.buffer!!
+            val rectangle = outputRectangle(output,
+                                            surfaceView)
+            val previous = this.overlays[surfaceView]
 
-            val overPlane = toOverlayPlane(wlOutput,
-                                           subscene.overViews)
-            if (overPlane == null) {
-                toPrimaryPlane(wlOutput,
-                               subscene.backgroundView,
-                               subscene.underViews,
-                               subscene.applicationViews,
-                               subscene.overViews)
+            if (previous != null && previous.drmPlane === drmPlane && previous.gbmBo === gbmBo && previous.rectangle == rectangle) {
+                //same buffer in the same place, the plane is still showing the latest content.
+                overlays[surfaceView] = previous
             }
+            else if (setPlane(drmPlane,
+                              gbmBo,
+                              rectangle)) {
+                overlays[surfaceView] = Overlay(drmPlane,
+                                                wlBufferResource,
+                                                gbmBo,
+                                                rectangle)
+                overlaysChanged = true
+            }
+            //the plane refused the buffer, the view is composited instead.
+        }
 
-            val applicationsPlane = toOverlayPlane(wlOutput,
-                                                   subscene.applicationViews)
-            if (applicationsPlane == null) {
-                toPrimaryPlane(wlOutput,
-                               subscene.backgroundView,
-                               subscene.underViews,
-                               subscene.applicationViews)
+        //cleanup everything that is not scanned out (anymore)
+        gbmBos.values.filter { gbmBo -> overlays.values.none { it.gbmBo === gbmBo } && this.overlays.values.none { it.gbmBo === gbmBo } }.forEach { it.close() }
+        this.overlays.values.forEach { previous ->
+            if (overlays.values.none { it.gbmBo === previous.gbmBo }) {
+                this.releasedOverlayBos += previous.gbmBo
+                overlaysChanged = true
+            }
+            if (overlays.values.none { it.drmPlane === previous.drmPlane }) {
+                disablePlane(previous.drmPlane)
             }
+        }
+
+        this.overlays = overlays
+        this.overlaysChanged = overlaysChanged
+        this.presentTracker.painted(output,
+                                    overlays.keys.map { (it.wlSurfaceResource.implementation as WlSurface).surface },
+                                    zeroCopy = true)
+
+        return overlays.keys
+    }
+
+    /**
+     * Import the buffer of a view so it can be scanned out.
+
+     * @return the imported buffer, or null if the view can not be scanned out.
+     */
+    private fun overlayGbmBo(surfaceView: SurfaceView): GbmBo? {
+        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
+        val wlBufferResource = wlSurface.surface.state.buffer ?: return null
 
-            val underPlane = toOverlayPlane(wlOutput,
-                                            subscene.underViews)
-            if (underPlane == null) {
-                toPrimaryPlane(wlOutput,
-                               subscene.backgroundView,
-                               subscene.underViews)
+        //the buffer is already scanned out
+        this.overlays[surfaceView]?.let {
+            if (it.wlBufferResource == wlBufferResource) {
+                return it.gbmBo
             }
+        }
+
+        return this.gbmBoCache.lease(this.gbmDevice,
+                                     wlBufferResource,
+                                     this.gles2Renderer.queryBuffer(wlBufferResource))
+    }
 
-            toPrimaryPlane(wlOutput,
-                           subscene.backgroundView)
+    private fun setPlane(drmPlane: DrmPlane,
+                         gbmBo: GbmBo,
+                         rectangle: Rectangle): Boolean {
+        val fbId = fbId(gbmBo)
+        if (fbId == 0) {
+            return false
         }
-        else {
-            //put everything on the primary plane
-            toPrimaryPlane(wlOutput,
-                           subscene)
+
+        //with atomic modesetting the kernel tells us up front if the plane can show the buffer together with
+        //everything else that is on screen.
+        this.atomicRequest?.let {
+            val cursor = it.cursor
+            if (it.plane(drmPlane.planeId,
+                         this.drmOutput.crtcId,
+                         fbId,
+                         rectangle) && it.test(DRM_MODE_ATOMIC_NONBLOCK)) {
+                return true
+            }
+            it.rollback(cursor)
+            return false
         }
 
+        //source coordinates are in 16.16 fixed point
+        return this.libdrm.drmModeSetPlane(this.drmFd,
+                                           drmPlane.planeId,
+                                           this.drmOutput.crtcId,
+                                           fbId,
+                                           0,
+                                           rectangle.x,
+                                           rectangle.y,
+                                           rectangle.width,
+                                           rectangle.height,
+                                           0,
+                                           0,
+                                           rectangle.width shl 16,
+                                           rectangle.height shl 16) == 0
+    }
 
-        paint(wlOutput,
-              painter,
-              subscene)
+    private fun disablePlane(drmPlane: DrmPlane) {
+        this.atomicRequest?.let {
+            it.plane(drmPlane.planeId,
+                     0,
+                     0,
+                     Rectangle.ZERO)
+            return
+        }
 
-        //TODO paint cursors on separate overlay
-        subscene.cursorViews.forEach { painter.paint(it) }
+        this.libdrm.drmModeSetPlane(this.drmFd,
+                                    drmPlane.planeId,
+                                    this.drmOutput.crtcId,
+                                    0,
+                                    0,
+                                    0,
+                                    0,
+                                    0,
+                                    0,
+                                    0,
+                                    0,
+                                    0,
+                                    0)
+    }
 
-        //FIXME how to compose different gbm_bos?
-        if (painter.commit()) {
-            this.nextGbmBo = this.gbmBoFactory.create(this.gbmSurface)
+    /**
+     * The area a view covers on an output without transformations, in output coordinates.
+     */
+    private fun outputRectangle(output: Output,
+                                surfaceView: SurfaceView): Rectangle {
+        val bounds = surfaceView.bounds
+        return Rectangle(output.local(bounds.position),
+                         bounds.width,
+                         bounds.height)
+    }
+
+    /**
+     * Show the cursor with the hardware cursor of the crtc, so moving it doesn't need a repaint. The hardware cursor
+     * is turned off if it can't show the cursor, so the cursor is never shown twice once it is composited.
+
+     * @return true if there is no cursor to composite, false if the cursor can't be shown by the hardware.
+     */
+    private fun toCursorPlane(wlOutput: WlOutput,
+                              surfaceViews: List<SurfaceView>): Boolean {
+        val cursorViews = surfaceViews.filter { it.isEnabled && it.isDrawable }
+        if (cursorViews.isEmpty()) {
+            hideCursor()
+            return true
         }
-        schedulePageFlip()
 
-        this.display.flushClients()
-        this.renderPending = false
+        val output = wlOutput.output
+        //only a single small argb cursor, drawn as is, fits in the cursor buffer.
+        val surfaceView = cursorViews.singleOrNull()
+        val shmBuffer = surfaceView?.let {
+            cursorBuffer(output,
+                         it)
+        }
+        if (surfaceView == null || shmBuffer == null || !createCursorBos()) {
+            hideCursor()
+            return false
+        }
+
+        val surface = (surfaceView.wlSurfaceResource.implementation as WlSurface).surface
+        if (surfaceView !== this.cursorView || surface.state !== this.cursorState) {
+            this.cursorBo = (this.cursorBo + 1) % this.cursorBos.size
+            val cursorBo = this.cursorBos[this.cursorBo]
+            writeCursor(shmBuffer,
+                        cursorBo)
+            if (this.libdrm.drmModeSetCursor(this.drmFd,
+                                             this.drmOutput.crtcId,
+                                             this.libgbm.gbm_bo_get_handle(cursorBo).toInt(),
+                                             this.cursorWidth,
+                                             this.cursorHeight) != 0) {
+                hideCursor()
+                return false
+            }
+            this.cursorView = surfaceView
+            this.cursorState = surface.state
+        }
+
+        val position = output.local(surfaceView.bounds.position)
+        if (this.libdrm.drmModeMoveCursor(this.drmFd,
+                                          this.drmOutput.crtcId,
+                                          position.x,
+                                          position.y) != 0) {
+            hideCursor()
+            return false
+        }
+        this.presentTracker.painted(output,
+                                    listOf(surface))
+        return true
     }
 
-    private fun toPrimaryPlane(wlOutput: WlOutput,
-                               subscene: Subscene): DrmPlane? {
-        return null
+    override fun moveCursor(wlOutput: WlOutput,
+                            surfaceView: SurfaceView): Boolean {
+        if (!this.enabled || surfaceView !== this.cursorView) {
+            return false
+        }
+
+        val position = wlOutput.output.local(surfaceView.bounds.position)
+        if (this.libdrm.drmModeMoveCursor(this.drmFd,
+                                          this.drmOutput.crtcId,
+                                          position.x,
+                                          position.y) != 0) {
+            //the cursor will be composited instead, it shouldn't linger on the hardware cursor.
+            hideCursor()
+            return false
+        }
+        return true
     }
 
-    private fun toPrimaryPlane(wlOutput: WlOutput,
-                               view: SurfaceView?,
-                               vararg views: List<SurfaceView>): DrmPlane? {
-        return null
+    /**
+     * The buffer of a cursor view if it can be shown by the hardware cursor.
+     */
+    private fun cursorBuffer(output: Output,
+                             surfaceView: SurfaceView): ShmBuffer? {
+        if (!DrmPlaneAssigner.isTranslation(output.transform) || !DrmPlaneAssigner.isTranslation(surfaceView.transform)) {
+            return null
+        }
+
+        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
+        val wlBufferResource = wlSurface.surface.state.buffer ?: return null
+        val shmBuffer = ShmBuffer.get(wlBufferResource) ?: return null
+        if (shmBuffer.format != WlShmFormat.ARGB8888.value || shmBuffer.width > this.cursorWidth || shmBuffer.height > this.cursorHeight) {
+            return null
+        }
+
+        return shmBuffer
     }
 
-    private fun toOverlayPlane(wlOutput: WlOutput,
-                               views: List<SurfaceView>): DrmPlane? {
-        return null
+    private fun createCursorBos(): Boolean {
+        this.cursorBos.indices.forEach {
+            if (this.cursorBos[it] == 0L) {
+                this.cursorBos[it] = this.libgbm.gbm_bo_create(this.gbmDevice,
+                                                               this.cursorWidth,
+                                                               this.cursorHeight,
+                                                               GBM_FORMAT_ARGB8888,
+                                                               GBM_BO_USE_CURSOR or GBM_BO_USE_WRITE)
+            }
+            if (this.cursorBos[it] == 0L) {
+                return false
+            }
+        }
+        return true
     }
 
-    private fun toCursorPlane(wlOutput: WlOutput,
-                              surfaceViews: List<SurfaceView>): DrmPlane? {
-        return null
+    /**
+     * Copy a cursor image to a cursor buffer, the part of the buffer outside the image is left transparent.
+     */
+    private fun writeCursor(shmBuffer: ShmBuffer,
+                            cursorBo: Long) {
+        val cursorStride = this.cursorWidth * 4
+        val cursorImage = ByteBuffer.allocateDirect(cursorStride * this.cursorHeight)
+        val stride = shmBuffer.stride
+        val rowSize = shmBuffer.width * 4
+
+        shmBuffer.beginAccess()
+        val data = shmBuffer.data
+        (0 until shmBuffer.height).forEach {
+            val row = data.duplicate()
+            row.limit(it * stride + rowSize)
+            row.position(it * stride)
+            cursorImage.position(it * cursorStride)
+            cursorImage.put(row)
+        }
+        shmBuffer.endAccess()
+
+        this.libgbm.gbm_bo_write(cursorBo,
+                                 JNI.unwrap(cursorImage),
+                                 cursorImage.capacity().toLong())
+    }
+
+    private fun hideCursor() {
+        if (this.cursorView != null) {
+            this.libdrm.drmModeSetCursor(this.drmFd,
+                                         this.drmOutput.crtcId,
+                                         0,
+                                         0,
+                                         0)
+            this.cursorView = null
+            this.cursorState = null
+        }
     }
 
+    private fun cursorCap(capability: Long): Int {
+        val value = Pointer.nref(0L)
+        if (this.libdrm.drmGetCap(this.drmFd,
+                                  capability,
+                                  value.address) != 0 || value.get() == 0L) {
+            //the size every driver supports
+            return 64
+        }
+        return value.get().toInt()
+    }
+
+    /**
+     * @param scanout true if a fullscreen view may be scanned out directly, instead of being composited.
+     */
     private fun paint(wlOutput: WlOutput,
                       gles2Painter: Gles2Painter,
-                      subscene: Subscene) {
+                      subscene: Subscene,
+                      scanout: Boolean) {
 
         //naive generic single pass, bottom to top overdraw rendering.
         val lockViews = subscene.lockViews
@@ -267,7 +779,8 @@ import org.westford.nativ.libgbm.destroy_user_data
 
         if (fullscreenView != null && paintFullscreen(gles2Painter,
                                                       wlOutput,
-                                                      fullscreenView)) {
+                                                      fullscreenView,
+                                                      scanout)) {
             //fullscreen view painted, don't bother painting underlying views
             return
         }
@@ -279,8 +792,29 @@ import org.westford.nativ.libgbm.destroy_user_data
     }
 
     override fun disable() {
+        //take the overlay planes offline before their buffers are released, else they keep scanning out client
+        //buffers that may be freed.
+        this.atomicRequest?.close()
+        this.atomicRequest = if (this.isAtomic) this.drmAtomicRequestFactory.create(this.drmFd) else null
+        this.overlays.values.forEach { disablePlane(it.drmPlane) }
+        this.atomicRequest?.let {
+            val error = it.commit(0,
+                                  0L)
+            if (error != 0) {
+                LOGGER.warning(String.format("failed to take overlay planes offline. [%d]",
+                                             -error))
+            }
+            it.close()
+        }
+        this.atomicRequest = null
+        this.overlays.values.forEach { it.gbmBo.close() }
+        this.overlays = emptyMap()
+        //the cursor image is written again once enabled.
+        this.cursorView = null
+        this.cursorState = null
+        dropFrames()
         this.afterPageFlipRender = null
-        this.onIdleEventSource?.remove()
+        this.repaintScheduler.cancel()
         this.enabled = false
     }
 
@@ -295,23 +829,39 @@ import org.westford.nativ.libgbm.destroy_user_data
         }
     }
 
+    override fun requestFrame(wlOutput: WlOutput,
+                              surface: Surface) {
+        if (this.enabled && !this.frames.isEmpty()) {
+            //the most recent frame on its way shows the surface as it is now, its callbacks go with that frame.
+            this.presentTracker.painted(wlOutput.output,
+                                        listOf(surface))
+            this.presentTracker.queued(wlOutput.output,
+                                       merge = true)
+        }
+        else {
+            render(wlOutput)
+        }
+    }
+
     private fun scheduleRender(wlOutput: WlOutput) {
-        //TODO unit test 3 cases here: schedule idle, no-op when already scheduled, delayed render when pageflip pending
+        //TODO unit test 3 cases here: schedule repaint, no-op when already scheduled, delayed render when pageflip pending
 
-        //schedule a new render as soon as the pageflip ends, but only if we haven't scheduled one already
-        if (this.pageFlipPending) {
+        //render ahead while page flips are pending, as long as the swapchain has a buffer left to render in. If not,
+        //schedule a new render once the pageflip ends, but only if we haven't scheduled one already.
+        if (this.frames.size + 2 > SWAPCHAIN_DEPTH) {
             if (this.afterPageFlipRender == null) {
-                this.afterPageFlipRender = { whenIdleDoRender(wlOutput) }
+                this.afterPageFlipRender = { scheduleRepaint(wlOutput) }
             }
         }
-        else if (!this.renderPending) {
-            whenIdleDoRender(wlOutput)
-        }//schedule a new render but only if we haven't scheduled one already.
+        else {
+            //no-op if a repaint is already scheduled.
+            scheduleRepaint(wlOutput)
+        }
     }
 
-    private fun whenIdleDoRender(wlOutput: WlOutput) {
-        this.renderPending = true
-        this.onIdleEventSource = this.display.eventLoop.addIdle { doRender(wlOutput) }
+    private fun scheduleRepaint(wlOutput: WlOutput) {
+        //start as late as we safely can before the next vertical retrace so late client commits still make it.
+        this.repaintScheduler.schedule { doRender(wlOutput) }
     }
 
     fun setDefaultMode() {
@@ -331,9 +881,59 @@ import org.westford.nativ.libgbm.destroy_user_data
         }
     }
 
+    /**
+     * Add the default mode of this output to an atomic modeset, so several outputs can be lit in a single commit.
+
+     * @param drmAtomicRequest the modeset, committed with [Libdrm.DRM_MODE_ATOMIC_ALLOW_MODESET].
+     */
+    fun setDefaultMode(drmAtomicRequest: DrmAtomicRequest) {
+        val primaryPlane = this.primaryPlane ?: throw IllegalStateException("Output does not do atomic modesetting.")
+        val crtcId = this.drmOutput.crtcId
+        val mode = this.drmOutput.mode
+
+        val connector = drmAtomicRequest.add(this.drmOutput.drmModeConnector.connector_id,
+                                             DRM_MODE_OBJECT_CONNECTOR,
+                                             "CRTC_ID",
+                                             crtcId.toLong())
+        val modeId = drmAtomicRequest.add(crtcId,
+                                          DRM_MODE_OBJECT_CRTC,
+                                          "MODE_ID",
+                                          this.modeBlobId.toLong())
+        val active = drmAtomicRequest.add(crtcId,
+                                          DRM_MODE_OBJECT_CRTC,
+                                          "ACTIVE",
+                                          1L)
+        val plane = drmAtomicRequest.plane(primaryPlane.planeId,
+                                           crtcId,
+                                           getFbId(this.gbmBo),
+                                           Rectangle(0,
+                                                     0,
+                                                     mode.hdisplay.toInt(),
+                                                     mode.vdisplay.toInt()))
+        if (!connector || !modeId || !active || !plane) {
+            throw RuntimeException("failed to add atomic modeset properties.")
+        }
+    }
+
+    /**
+     * Wrap the mode of this output in a property blob, the way atomic modesetting takes a mode.
+     */
+    private fun createModeBlob(): Int {
+        val blobId = Pointer.nref(0)
+        if (this.libdrm.drmModeCreatePropertyBlob(this.drmFd,
+                                                  Pointer.ref(this.drmOutput.mode).address,
+                                                  Struct_DrmModeModeInfo.SIZE.toLong(),
+                                                  blobId.address) != 0) {
+            throw RuntimeException(String.format("failed to create mode blob. [%d]",
+                                                 this.libc.errno))
+        }
+        return blobId.get()
+    }
+
     private fun paintFullscreen(gles2Painter: Gles2Painter,
                                 wlOutput: WlOutput,
-                                surfaceView: SurfaceView): Boolean {
+                                surfaceView: SurfaceView,
+                                scanout: Boolean): Boolean {
 
         if (!surfaceView.isEnabled || !surfaceView.isDrawable) {
             return false
@@ -349,11 +949,22 @@ import org.westford.nativ.libgbm.destroy_user_data
         val mode = output.mode
 
 
-        if (buffer.width == mode.width && buffer.height == mode.height) {
+        if (scanout && buffer.width == mode.width && buffer.height == mode.height) {
+
+            val scannedOut = this.nextGbmBo
+            if (scannedOut is GbmBoCache.Lease && scannedOut.wlBufferResource == wlBufferResource) {
+                //the buffer is scanned out already, nothing to flip.
+                this.presentTracker.painted(output,
+                                            listOf(surface),
+                                            zeroCopy = true)
+                return true
+            }
 
-            val gbmBo = this.gbmBoFactory.create(this.gbmDevice,
-                                                 wlBufferResource)
-            if (gbmBo.gbmBo == 0L) {
+            //imports are cached per client buffer, only a new buffer is imported.
+            val gbmBo = this.gbmBoCache.lease(this.gbmDevice,
+                                              wlBufferResource,
+                                              buffer)
+            if (gbmBo == null) {
                 //buffer import failed, fallback to painter
                 return gles2Painter.paint(surfaceView)
             }
@@ -368,6 +979,9 @@ import org.westford.nativ.libgbm.destroy_user_data
             }
 
             this.nextGbmBo = gbmBo
+            this.presentTracker.painted(output,
+                                        listOf(surface),
+                                        zeroCopy = true)
             return true
         }
         else {
@@ -403,4 +1017,37 @@ import org.westford.nativ.libgbm.destroy_user_data
 
         return 0
     }
+
+    /**
+     * A view that is scanned out by an overlay plane.
+     */
+    private class Overlay(val drmPlane: DrmPlane,
+                          val wlBufferResource: WlBufferResource,
+                          val gbmBo: GbmBo,
+                          val rectangle: Rectangle)
+
+    /**
+     * A rendered frame that waits for its page flip.
+
+     * @param releasedOverlayBos overlay buffers this frame no longer shows, released once it's on screen.
+     */
+    private class Frame(val wlOutput: WlOutput,
+                        val gbmBo: GbmBo,
+                        val atomicRequest: DrmAtomicRequest?,
+                        val releasedOverlayBos: List<GbmBo>) {
+        //when the page flip was requested, only tracked when metrics are enabled.
+        var pageFlipRequested: Long = 0
+    }
+
+    companion object {
+
+        private val LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+        /**
+         * The number of primary plane buffers an output uses: 2 for double buffering, or 3 for triple buffering so the
+         * next frame can be rendered while the previous one waits for its vertical retrace.
+         */
+        private val SWAPCHAIN_DEPTH = java.lang.Integer.getInteger("westford.drm.swapchain",
+                                                                   2).coerceIn(2,
+                                                                               3)
+    }
 }
@@ -22,12 +22,14 @@ import org.westford.compositor.core.GlRenderer
 import org.westford.compositor.core.OutputFactory
 import org.westford.compositor.core.OutputGeometry
 import org.westford.compositor.core.OutputMode
+import org.westford.compositor.drm.DrmAtomicRequestFactory
 import org.westford.compositor.drm.DrmOutput
 import org.westford.compositor.drm.DrmPlatform
 import org.westford.compositor.protocol.WlOutput
 import org.westford.compositor.protocol.WlOutputFactory
 import org.westford.launch.LifeCycleSignals
 import org.westford.launch.Privileges
+import org.westford.nativ.glibc.Libc
 import org.westford.nativ.libEGL.EglCreatePlatformWindowSurfaceEXT
 import org.westford.nativ.libEGL.EglGetPlatformDisplayEXT
 import org.westford.nativ.libEGL.LibEGL
@@ -42,7 +44,10 @@ import org.westford.nativ.libEGL.LibEGL.Companion.EGL_PLATFORM_GBM_KHR
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_RENDER_BUFFER
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_VENDOR
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_VERSION
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_WINDOW_BIT
 import org.westford.nativ.libGLESv2.LibGLESv2
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_MODE_ATOMIC_ALLOW_MODESET
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_PLANE_TYPE_PRIMARY
 import org.westford.nativ.libgbm.Libgbm
 import java.lang.String.format
 import java.util.*
@@ -54,6 +59,10 @@ class DrmEglPlatformFactory @Inject internal constructor(private val wlOutputFac
                                                          private val privateDrmEglPlatformFactory: PrivateDrmEglPlatformFactory,
                                                          private val libgbm: Libgbm,
                                                          private val gbmBoFactory: GbmBoFactory,
+                                                         private val drmPlaneFactory: DrmPlaneFactory,
+                                                         private val drmPlaneAssigner: DrmPlaneAssigner,
+                                                         private val drmAtomicRequestFactory: DrmAtomicRequestFactory,
+                                                         private val libc: Libc,
                                                          private val libEGL: LibEGL,
                                                          private val libGLESv2: LibGLESv2,
                                                          private val drmPlatform: DrmPlatform,
@@ -86,30 +95,39 @@ class DrmEglPlatformFactory @Inject internal constructor(private val wlOutputFac
                            eglExtensions))
 
         val eglConfig = this.glRenderer.eglConfig(eglDisplay,
-                                                  eglExtensions)
+                                                  eglExtensions,
+                                                  EGL_WINDOW_BIT)
         val eglContext = createEglContext(eglDisplay,
                                           eglConfig)
 
         val drmOutputs = this.drmPlatform.renderOutputs
         val drmEglRenderOutputs = ArrayList<DrmEglOutput>(drmOutputs.size)
         val wlOutputs = ArrayList<WlOutput>(drmEglRenderOutputs.size)
-
-        drmOutputs.forEach {
-            drmEglRenderOutputs.add(createDrmEglRenderOutput(it,
+        val drmPlanes = this.drmPlaneFactory.create(this.drmPlatform.drmFd)
+        val overlayPlanes = this.drmPlaneAssigner.divide(drmPlanes,
+                                                         drmOutputs) { it.crtcIndex }
+
+        drmOutputs.forEach { drmOutput ->
+            //atomic commits set the framebuffer of the primary plane instead of the crtc.
+            val primaryPlane = if (this.drmPlatform.atomic) drmPlanes.firstOrNull { it.type == DRM_PLANE_TYPE_PRIMARY && it.supports(drmOutput.crtcIndex) } else null
+            drmEglRenderOutputs.add(createDrmEglRenderOutput(drmOutput,
+                                                             overlayPlanes.getValue(drmOutput),
+                                                             primaryPlane,
                                                              gbmDevice,
                                                              eglDisplay,
                                                              eglContext,
                                                              eglConfig))
         }
+        setDefaultModes(drmEglRenderOutputs)
         drmEglRenderOutputs.forEach {
             wlOutputs.add(createWlOutput(it))
         }
 
         this.lifeCycleSignals.activateSignal.connect {
             this.privileges.setDrmMaster(this.drmPlatform.drmFd)
+            restoreDefaultModes(drmEglRenderOutputs)
             wlOutputs.forEach {
                 val drmEglOutput = it.output.renderOutput as DrmEglOutput
-                drmEglOutput.setDefaultMode()
                 drmEglOutput.enable(it)
             }
         }
@@ -128,6 +146,55 @@ class DrmEglPlatformFactory @Inject internal constructor(private val wlOutputFac
                                                         wlOutputs)
     }
 
+    /**
+     * Set the default mode of all outputs. Outputs that do atomic modesetting are set in a single commit, so they all
+     * light up with the same vertical retrace.
+     */
+    private fun setDefaultModes(drmEglOutputs: List<DrmEglOutput>) {
+        val atomicOutputs = drmEglOutputs.filter { it.isAtomic }
+        drmEglOutputs.filter { !it.isAtomic }.forEach { it.setDefaultMode() }
+        if (atomicOutputs.isEmpty()) {
+            return
+        }
+
+        val drmAtomicRequest = this.drmAtomicRequestFactory.create(this.drmPlatform.drmFd)
+        try {
+            atomicOutputs.forEach { it.setDefaultMode(drmAtomicRequest) }
+            if (drmAtomicRequest.commit(DRM_MODE_ATOMIC_ALLOW_MODESET,
+                                        0L) != 0) {
+                throw RuntimeException(format("failed to commit atomic modeset. [%d]",
+                                              this.libc.errno))
+            }
+        }
+        finally {
+            drmAtomicRequest.close()
+        }
+    }
+
+    /**
+     * Set the default mode of all outputs again when we become drm master. The previous master might have left the
+     * crtcs in a state that makes an atomic modeset fail, the outputs are then set one by one with legacy modesetting.
+     */
+    private fun restoreDefaultModes(drmEglOutputs: List<DrmEglOutput>) {
+        try {
+            setDefaultModes(drmEglOutputs)
+            return
+        }
+        catch (e: RuntimeException) {
+            LOGGER.warning("Failed to restore the default modes, falling back to legacy modesetting: ${e.message}")
+        }
+
+        drmEglOutputs.forEach {
+            try {
+                it.setDefaultMode()
+            }
+            catch (e: RuntimeException) {
+                //keep going, the other outputs might still light up.
+                LOGGER.severe("Failed to restore the default mode of crtc ${it.drmOutput.crtcId}: ${e.message}")
+            }
+        }
+    }
+
     private fun createWlOutput(drmEglOutput: DrmEglOutput): WlOutput {
 
         val drmOutput = drmEglOutput.drmOutput
@@ -220,6 +287,8 @@ class DrmEglPlatformFactory @Inject internal constructor(private val wlOutputFac
     }
 
     private fun createDrmEglRenderOutput(drmOutput: DrmOutput,
+                                         drmPlanes: List<DrmPlane>,
+                                         primaryPlane: DrmPlane?,
                                          gbmDevice: Long,
                                          eglDisplay: Long,
                                          eglContext: Long,
@@ -255,17 +324,16 @@ class DrmEglPlatformFactory @Inject internal constructor(private val wlOutputFac
                                    eglSurface)
 
         val gbmBo = this.gbmBoFactory.create(gbmSurface)
-        val drmEglRenderOutput = this.drmEglOutputFactory.create(this.drmPlatform.drmFd,
-                                                                 gbmDevice,
-                                                                 gbmBo,
-                                                                 gbmSurface,
-                                                                 drmOutput,
-                                                                 eglSurface,
-                                                                 eglContext,
-                                                                 eglDisplay)
-        drmEglRenderOutput.setDefaultMode()
-
-        return drmEglRenderOutput
+        return this.drmEglOutputFactory.create(this.drmPlatform.drmFd,
+                                               gbmDevice,
+                                               gbmBo,
+                                               gbmSurface,
+                                               drmOutput,
+                                               drmPlanes,
+                                               primaryPlane,
+                                               eglSurface,
+                                               eglContext,
+                                               eglDisplay)
     }
 
     private fun createEglSurface(eglDisplay: Long,
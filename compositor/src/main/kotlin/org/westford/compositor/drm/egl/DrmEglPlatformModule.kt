@@ -35,4 +35,8 @@ import javax.inject.Singleton
     @Provides @Singleton internal fun createPlatform(drmEglPlatformFactory: DrmEglPlatformFactory): RenderPlatform {
         return drmEglPlatformFactory.create()
     }
+
+    @Provides @Singleton internal fun createGbmBoImporter(libgbmBoImporter: LibgbmBoImporter): GbmBoImporter {
+        return libgbmBoImporter
+    }
 }
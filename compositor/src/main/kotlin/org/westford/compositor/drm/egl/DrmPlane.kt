@@ -1,3 +1,38 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
 package org.westford.compositor.drm.egl
 
-class DrmPlane
+import org.westford.nativ.libdrm.Libdrm
+import javax.annotation.Nonnegative
+
+/**
+ * A hardware plane of a crtc. Overlay planes scan out a buffer on top of the primary plane.
+
+ * @param possibleCrtcs bitmask of the crtc indices this plane can be used with.
+ * *
+ * @param formats the drm fourcc formats this plane can scan out.
+ * *
+ * @param type the kind of plane, eg. [Libdrm.DRM_PLANE_TYPE_OVERLAY].
+ */
+class DrmPlane(@param:Nonnegative val planeId: Int,
+               val possibleCrtcs: Int,
+               val formats: Set<Int>,
+               val type: Long) {
+
+    fun supports(@Nonnegative crtcIndex: Int): Boolean = (this.possibleCrtcs and (1 shl crtcIndex)) != 0
+}
@@ -0,0 +1,134 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.drm.egl
+
+import org.westford.compositor.core.Rectangle
+import org.westford.compositor.core.calc.Mat4
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_PLANE_TYPE_OVERLAY
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Decides which views are scanned out by overlay planes instead of being composited on the primary plane. Overlay
+ * planes are shown on top of the primary plane and their order among each other is undefined, so a view can only
+ * go on an overlay plane if nothing above it overlaps it.
+ */
+@Singleton class DrmPlaneAssigner @Inject internal constructor() {
+
+    /**
+     * A view that might be scanned out.
+
+     * @param rectangle the rectangle the view covers, in output coordinates.
+     * *
+     * @param transform the transformation of the view, from buffer to compositor coordinates.
+     */
+    data class Candidate<out T>(val view: T,
+                                val rectangle: Rectangle,
+                                val transform: Mat4)
+
+    /**
+     * Divide the overlay planes over the outputs, a plane can only be used by one crtc at a time.
+
+     * @param crtcIndex the index of the crtc of an output.
+     * *
+     * *
+     * @return the overlay planes of each output.
+     */
+    fun <T> divide(drmPlanes: List<DrmPlane>,
+                   outputs: List<T>,
+                   crtcIndex: (T) -> Int): Map<T, List<DrmPlane>> {
+        val overlayPlanes = outputs.associate {
+            Pair(it,
+                 mutableListOf<DrmPlane>())
+        }
+        drmPlanes.filter { it.type == DRM_PLANE_TYPE_OVERLAY }.forEach { drmPlane ->
+            //planes that can be used with multiple crtcs go to the output with the fewest planes so far.
+            outputs.filter { drmPlane.supports(crtcIndex(it)) }.minBy { overlayPlanes.getValue(it).size }?.let {
+                overlayPlanes.getValue(it).add(drmPlane)
+            }
+        }
+        return overlayPlanes
+    }
+
+    /**
+     * Assign views to overlay planes.
+
+     * @param drmPlanes the overlay planes available to the output.
+     * *
+     * @param candidates the views on the output from top to bottom.
+     * *
+     * @param obstacles rectangles in output coordinates that are drawn above all views on the primary plane.
+     * *
+     * @param screen the rectangle of the output, in output coordinates.
+     * *
+     * @param format the drm fourcc format a view can be scanned out with, or 0 if it can't be scanned out. Only asked
+     * for views that could otherwise be put on a plane.
+     * *
+     * *
+     * @return the views that go on an overlay plane, with their plane.
+     */
+    fun <T> assign(drmPlanes: List<DrmPlane>,
+                   candidates: List<Candidate<T>>,
+                   obstacles: List<Rectangle>,
+                   screen: Rectangle,
+                   format: (T) -> Int): Map<T, DrmPlane> {
+        val assignments = mutableMapOf<T, DrmPlane>()
+        val freePlanes = drmPlanes.toMutableList()
+        val occupied = obstacles.toMutableList()
+
+        candidates.forEach { (view, rectangle, transform) ->
+            if (freePlanes.isEmpty()) {
+                return assignments
+            }
+
+            //planes can not crop, scale or rotate, the view has to be completely on screen, completely visible and
+            //drawn as is.
+            if (isTranslation(transform) && contains(screen,
+                                                     rectangle) && occupied.none {
+                intersects(it,
+                           rectangle)
+            }) {
+                val viewFormat = format(view)
+                if (viewFormat != 0) {
+                    freePlanes.firstOrNull { it.formats.contains(viewFormat) }?.let {
+                        assignments[view] = it
+                        freePlanes -= it
+                    }
+                }
+            }
+
+            occupied += rectangle
+        }
+
+        return assignments
+    }
+
+    private fun contains(a: Rectangle,
+                         b: Rectangle): Boolean = b.width > 0 && b.height > 0 && b.x >= a.x && b.y >= a.y && b.x + b.width <= a.x + a.width && b.y + b.height <= a.y + a.height
+
+    private fun intersects(a: Rectangle,
+                           b: Rectangle): Boolean = a.x < b.x + b.width && b.x < a.x + a.width && a.y < b.y + b.height && b.y < a.y + a.height
+
+    companion object {
+
+        /**
+         * Indicates if a transformation is a plain whole pixel translation.
+         */
+        fun isTranslation(transform: Mat4): Boolean = transform.m00 == 1f && transform.m10 == 0f && transform.m01 == 0f && transform.m11 == 1f && transform.m30 == Math.round(transform.m30).toFloat() && transform.m31 == Math.round(transform.m31).toFloat()
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.drm.egl
+
+import org.freedesktop.jaccall.Pointer.wrap
+import org.westford.compositor.drm.DrmProperties
+import org.westford.nativ.libdrm.Libdrm
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_MODE_OBJECT_PLANE
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_PLANE_TYPE_OVERLAY
+import org.westford.nativ.libdrm.drmModePlane
+import org.westford.nativ.libdrm.drmModePlaneRes
+import javax.inject.Inject
+
+class DrmPlaneFactory @Inject internal constructor(private val libdrm: Libdrm,
+                                                   private val drmProperties: DrmProperties) {
+
+    /**
+     * Enumerate the planes of a drm device. Without the universal planes client capability, which comes with atomic
+     * modesetting, the kernel only reports overlay planes.
+
+     * @param drmFd
+     * *
+     * *
+     * @return
+     */
+    fun create(drmFd: Int): List<DrmPlane> {
+        val planeResources = this.libdrm.drmModeGetPlaneResources(drmFd)
+        if (planeResources == 0L) {
+            return emptyList()
+        }
+
+        val drmModePlaneRes = wrap<drmModePlaneRes>(drmModePlaneRes::class.java,
+                                                    planeResources).get()
+        val drmPlanes = (0 until drmModePlaneRes.count_planes).mapNotNull {
+            val plane = this.libdrm.drmModeGetPlane(drmFd,
+                                                    drmModePlaneRes.planes[it])
+            if (plane == 0L) {
+                return@mapNotNull null
+            }
+
+            val drmModePlane = wrap<drmModePlane>(drmModePlane::class.java,
+                                                  plane).get()
+            val drmPlane = DrmPlane(drmModePlane.plane_id,
+                                    drmModePlane.possible_crtcs,
+                                    (0 until drmModePlane.count_formats).map { drmModePlane.formats[it] }.toSet(),
+                                    this.drmProperties.value(drmFd,
+                                                             drmModePlane.plane_id,
+                                                             DRM_MODE_OBJECT_PLANE,
+                                                             "type") ?: DRM_PLANE_TYPE_OVERLAY)
+            this.libdrm.drmModeFreePlane(plane)
+            drmPlane
+        }
+        this.libdrm.drmModeFreePlaneResources(planeResources)
+
+        return drmPlanes
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.drm.egl
+
+import org.freedesktop.wayland.server.WlBufferResource
+import org.westford.compositor.core.Buffer
+import org.westford.compositor.core.BufferReleaser
+import org.westford.compositor.core.DmabufBuffer
+import org.westford.compositor.core.EglBuffer
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Imports client buffers for direct scanout once, instead of on every frame. The framebuffer of an import is kept
+ * with it, so a client that cycles through a few buffers doesn't cause any imports or framebuffer creation after the
+ * first frames. Imports are destroyed with their buffer.
+ */
+@Singleton class GbmBoCache @Inject internal constructor(private val gbmBoFactory: GbmBoFactory,
+                                                         private val bufferReleaser: BufferReleaser) {
+
+    private val imports = mutableMapOf<WlBufferResource, Import>()
+
+    /**
+     * Get the import of a client buffer for as long as it's scanned out. The client buffer is not released until the
+     * lease is closed.
+
+     * @param buffer the buffer of the wayland buffer resource.
+     * *
+     * *
+     * @return a lease on the import, or null if the buffer can not be scanned out.
+     */
+    fun lease(gbmDevice: Long,
+              wlBufferResource: WlBufferResource,
+              buffer: Buffer): Lease? {
+        val import = this.imports[wlBufferResource] ?: createImport(gbmDevice,
+                                                                    wlBufferResource,
+                                                                    buffer)?.also {
+            this.imports[wlBufferResource] = it
+            wlBufferResource.register {
+                this.imports.remove(wlBufferResource)
+                it.destroyed = true
+                it.destroyIfUnused()
+            }
+        } ?: return null
+
+        //failed imports are remembered as well, so they are not retried every frame.
+        if (import.gbmBo.gbmBo == 0L) {
+            return null
+        }
+
+        import.leases++
+        this.bufferReleaser.hold(wlBufferResource)
+        return Lease(wlBufferResource,
+                     import)
+    }
+
+    private fun createImport(gbmDevice: Long,
+                             wlBufferResource: WlBufferResource,
+                             buffer: Buffer): Import? {
+        val gbmBo = when (buffer) {
+            is DmabufBuffer -> this.gbmBoFactory.create(gbmDevice,
+                                                        buffer.dmabufAttributes)
+            is EglBuffer    -> this.gbmBoFactory.create(gbmDevice,
+                                                        wlBufferResource)
+            //shm buffers live in client memory that can't be scanned out.
+            else            -> return null
+        }
+        return Import(gbmBo)
+    }
+
+    internal class Import(val gbmBo: GbmBo) {
+        var leases = 0
+        var destroyed = false
+
+        /**
+         * Destroy the import, and with it its framebuffer, once its buffer is gone and it's no longer scanned out.
+         */
+        fun destroyIfUnused() {
+            if (this.destroyed && this.leases == 0 && this.gbmBo.gbmBo != 0L) {
+                this.gbmBo.close()
+            }
+        }
+    }
+
+    /**
+     * An imported client buffer that is in use for scanout. Closing the lease only gives up the use of the import.
+     */
+    inner class Lease internal constructor(val wlBufferResource: WlBufferResource,
+                                           private val import: Import) : GbmBo {
+
+        private var closed = false
+
+        override val gbmBo: Long
+            get() = this.import.gbmBo.gbmBo
+
+        override fun close() {
+            if (this.closed) {
+                return
+            }
+            this.closed = true
+            this.import.leases--
+            this@GbmBoCache.bufferReleaser.unhold(this.wlBufferResource)
+            this.import.destroyIfUnused()
+        }
+    }
+}
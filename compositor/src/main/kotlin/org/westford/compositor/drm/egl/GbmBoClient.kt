@@ -2,11 +2,10 @@ package org.westford.compositor.drm.egl
 
 import com.google.auto.factory.AutoFactory
 import com.google.auto.factory.Provided
-import org.westford.nativ.libgbm.Libgbm
 
 @AutoFactory(allowSubclasses = true,
-             className = "PrivateGbmBoClientFactory") class GbmBoClient(@param:Provided private val libgbm: Libgbm,
+             className = "PrivateGbmBoClientFactory") class GbmBoClient(@param:Provided private val gbmBoImporter: GbmBoImporter,
                                                                         override val gbmBo: Long) : GbmBo {
 
-    override fun close() = this.libgbm.gbm_bo_destroy(this.gbmBo)
+    override fun close() = this.gbmBoImporter.destroy(this.gbmBo)
 }
@@ -1,12 +1,20 @@
 package org.westford.compositor.drm.egl
 
+import org.freedesktop.jaccall.JNI
+import org.freedesktop.jaccall.Pointer
 import org.freedesktop.wayland.server.WlBufferResource
+import org.westford.compositor.core.DmabufAttributes
 import org.westford.nativ.libgbm.Libgbm
+import org.westford.nativ.libgbm.Libgbm.Companion.GBM_BO_IMPORT_FD
+import org.westford.nativ.libgbm.Libgbm.Companion.GBM_BO_IMPORT_FD_MODIFIER
 import org.westford.nativ.libgbm.Libgbm.Companion.GBM_BO_IMPORT_WL_BUFFER
 import org.westford.nativ.libgbm.Libgbm.Companion.GBM_BO_USE_SCANOUT
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
 import javax.inject.Inject
 
 class GbmBoFactory @Inject internal constructor(private val libgbm: Libgbm,
+                                                private val gbmBoImporter: GbmBoImporter,
                                                 private val privateGbmBoClientFactory: PrivateGbmBoClientFactory,
                                                 private val privateGbmBoServerFactory: PrivateGbmBoServerFactory) {
 
@@ -36,10 +44,65 @@ class GbmBoFactory @Inject internal constructor(private val libgbm: Libgbm,
      */
     fun create(gbmDevice: Long,
                wlBufferResource: WlBufferResource): GbmBo {
-        val gbmBo = this.libgbm.gbm_bo_import(gbmDevice,
+        val gbmBo = this.gbmBoImporter.import(gbmDevice,
                                               GBM_BO_IMPORT_WL_BUFFER,
                                               wlBufferResource.pointer,
                                               GBM_BO_USE_SCANOUT)
         return this.privateGbmBoClientFactory.create(gbmBo)
     }
+
+    /**
+     * Create a gbm object from a client dmabuf.
+
+     * @param gbmDevice
+     * *
+     * @param dmabufAttributes
+     * *
+     * *
+     * @return
+     */
+    fun create(gbmDevice: Long,
+               dmabufAttributes: DmabufAttributes): GbmBo {
+        val planes = dmabufAttributes.planes
+        val gbmBo: Long
+        if (planes.size == 1 && dmabufAttributes.modifier == DmabufAttributes.MOD_INVALID && planes[0].offset == 0) {
+            //struct gbm_import_fd_data
+            val plane = planes[0]
+            gbmBo = this.gbmBoImporter.import(gbmDevice,
+                                              GBM_BO_IMPORT_FD,
+                                              Pointer.nref(plane.fd,
+                                                           dmabufAttributes.width,
+                                                           dmabufAttributes.height,
+                                                           plane.stride,
+                                                           dmabufAttributes.format).address,
+                                              GBM_BO_USE_SCANOUT)
+        }
+        else {
+            //struct gbm_import_fd_modifier_data
+            val importData = ByteBuffer.allocateDirect(72).order(ByteOrder.nativeOrder())
+            importData.putInt(0,
+                              dmabufAttributes.width)
+            importData.putInt(4,
+                              dmabufAttributes.height)
+            importData.putInt(8,
+                              dmabufAttributes.format)
+            importData.putInt(12,
+                              planes.size)
+            planes.forEachIndexed { i, plane ->
+                importData.putInt(16 + i * 4,
+                                  plane.fd)
+                importData.putInt(32 + i * 4,
+                                  plane.stride)
+                importData.putInt(48 + i * 4,
+                                  plane.offset)
+            }
+            importData.putLong(64,
+                               dmabufAttributes.modifier)
+            gbmBo = this.gbmBoImporter.import(gbmDevice,
+                                              GBM_BO_IMPORT_FD_MODIFIER,
+                                              JNI.unwrap(importData),
+                                              GBM_BO_USE_SCANOUT)
+        }
+        return this.privateGbmBoClientFactory.create(gbmBo)
+    }
 }
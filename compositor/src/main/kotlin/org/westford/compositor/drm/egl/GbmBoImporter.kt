@@ -0,0 +1,48 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.drm.egl
+
+/**
+ * Imports client buffers as gbm buffer objects so they can be scanned out, see [LibgbmBoImporter].
+ */
+interface GbmBoImporter {
+
+    /**
+     * Import a client buffer.
+
+     * @param gbmDevice the gbm device to import with.
+     * *
+     * @param type the type of the buffer, eg. [org.westford.nativ.libgbm.Libgbm.GBM_BO_IMPORT_FD].
+     * *
+     * @param buffer a pointer to the buffer or its import data, depending on the type.
+     * *
+     * @param usage the union of the gbm usage flags for the buffer.
+     * *
+     * *
+     * @return the imported buffer object, or 0 if the import failed.
+     */
+    fun import(gbmDevice: Long,
+               type: Int,
+               buffer: Long,
+               usage: Int): Long
+
+    /**
+     * Destroy an imported buffer object.
+     */
+    fun destroy(gbmBo: Long)
+}
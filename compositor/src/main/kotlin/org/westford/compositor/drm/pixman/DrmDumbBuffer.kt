@@ -0,0 +1,53 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.drm.pixman
+
+import com.google.auto.factory.AutoFactory
+import com.google.auto.factory.Provided
+import org.freedesktop.jaccall.Pointer
+import org.westford.nativ.glibc.Libc
+import org.westford.nativ.libdrm.Libdrm
+import org.westford.nativ.libpixman1.Libpixman1
+
+/**
+ * A kernel allocated, cpu mapped scanout buffer.
+
+ * @param image a pixman image of the mapped buffer memory.
+ */
+@AutoFactory(allowSubclasses = true,
+             className = "PrivateDrmDumbBufferFactory") class DrmDumbBuffer(@param:Provided private val libc: Libc,
+                                                                            @param:Provided private val libdrm: Libdrm,
+                                                                            @param:Provided private val libpixman1: Libpixman1,
+                                                                            private val drmFd: Int,
+                                                                            private val handle: Int,
+                                                                            private val data: Long,
+                                                                            private val size: Long,
+                                                                            val fbId: Int,
+                                                                            val image: Long) : AutoCloseable {
+
+    override fun close() {
+        this.libpixman1.pixman_image_unref(this.image)
+        this.libc.munmap(this.data,
+                         this.size)
+        this.libdrm.drmModeRmFB(this.drmFd,
+                                this.fbId)
+        this.libdrm.drmIoctl(this.drmFd,
+                             Libdrm.DRM_IOCTL_MODE_DESTROY_DUMB,
+                             Pointer.nref(this.handle).address)
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.drm.pixman
+
+import org.freedesktop.jaccall.Pointer
+import org.westford.nativ.glibc.Libc
+import org.westford.nativ.libdrm.Libdrm
+import org.westford.nativ.libpixman1.Libpixman1
+import javax.inject.Inject
+
+class DrmDumbBufferFactory @Inject internal constructor(private val libc: Libc,
+                                                        private val libdrm: Libdrm,
+                                                        private val libpixman1: Libpixman1,
+                                                        private val privateDrmDumbBufferFactory: PrivateDrmDumbBufferFactory) {
+
+    /**
+     * Create a 32 bit xrgb scanout buffer that can be drawn on by the cpu.
+
+     * @param drmFd the drm device to allocate the buffer on.
+     * *
+     * @param width the width of the buffer in pixels.
+     * *
+     * @param height the height of the buffer in pixels.
+     * *
+     * *
+     * @return a mapped dumb buffer with a drm framebuffer.
+     */
+    fun create(drmFd: Int,
+               width: Int,
+               height: Int): DrmDumbBuffer {
+        //struct drm_mode_create_dumb: height, width, bpp, flags, handle, pitch & a 64 bit size.
+        val createDumb = Pointer.nref(height,
+                                      width,
+                                      32,
+                                      0,
+                                      0,
+                                      0,
+                                      0,
+                                      0)
+        if (this.libdrm.drmIoctl(drmFd,
+                                 Libdrm.DRM_IOCTL_MODE_CREATE_DUMB,
+                                 createDumb.address) != 0) {
+            throw RuntimeException(String.format("failed to create dumb buffer. [%d]",
+                                                 this.libc.errno))
+        }
+        val handle = createDumb.get(4)
+        val pitch = createDumb.get(5)
+        val size = pitch.toLong() * height
+
+        val fbId = Pointer.nref(0)
+        if (this.libdrm.drmModeAddFB(drmFd,
+                                     width,
+                                     height,
+                                     24.toByte(),
+                                     32.toByte(),
+                                     pitch,
+                                     handle,
+                                     fbId.address) != 0) {
+            throw RuntimeException(String.format("failed to create fb. [%d]",
+                                                 this.libc.errno))
+        }
+
+        //struct drm_mode_map_dumb: handle, padding & a 64 bit offset to pass to mmap.
+        val mapDumb = Pointer.nref(handle,
+                                   0,
+                                   0,
+                                   0)
+        if (this.libdrm.drmIoctl(drmFd,
+                                 Libdrm.DRM_IOCTL_MODE_MAP_DUMB,
+                                 mapDumb.address) != 0) {
+            throw RuntimeException(String.format("failed to map dumb buffer. [%d]",
+                                                 this.libc.errno))
+        }
+        val offset = Pointer.wrap<Long>(Long::class.java,
+                                        mapDumb.address + 8).get()
+
+        val data = this.libc.mmap64(0L,
+                                    size,
+                                    Libc.PROT_READ or Libc.PROT_WRITE,
+                                    Libc.MAP_SHARED,
+                                    drmFd,
+                                    offset)
+        //MAP_FAILED is (void *) -1
+        if (data == -1L) {
+            throw RuntimeException(String.format("failed to mmap dumb buffer. [%d]",
+                                                 this.libc.errno))
+        }
+
+        val image = this.libpixman1.pixman_image_create_bits(Libpixman1.PIXMAN_x8r8g8b8,
+                                                             width,
+                                                             height,
+                                                             data,
+                                                             pitch)
+
+        return this.privateDrmDumbBufferFactory.create(drmFd,
+                                                       handle,
+                                                       data,
+                                                       size,
+                                                       fbId.get(),
+                                                       image)
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.drm.pixman
+
+import com.google.auto.factory.AutoFactory
+import com.google.auto.factory.Provided
+import org.freedesktop.jaccall.Pointer
+import org.freedesktop.jaccall.Unsigned
+import org.freedesktop.wayland.server.Display
+import org.westford.compositor.core.*
+import org.westford.compositor.core.events.Presentation
+import org.westford.compositor.drm.DrmOutput
+import org.westford.compositor.drm.DrmPageFlipCallback
+import org.westford.compositor.pixman.PixmanPainterFactory
+import org.westford.compositor.protocol.WlOutput
+import org.westford.nativ.glibc.Libc
+import org.westford.nativ.libdrm.Libdrm
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_MODE_PAGE_FLIP_EVENT
+import java.util.concurrent.TimeUnit
+
+/**
+ * A drm output drawn by the cpu in 2 dumb buffers, one is scanned out while the other is drawn.
+ */
+@AutoFactory(allowSubclasses = true,
+             className = "DrmPixmanOutputFactory") class DrmPixmanOutput(@param:Provided private val libc: Libc,
+                                                                         @param:Provided private val libdrm: Libdrm,
+                                                                         @param:Provided private val display: Display,
+                                                                         @param:Provided private val pixmanPainterFactory: PixmanPainterFactory,
+                                                                         @param:Provided private val scene: Scene,
+                                                                         @param:Provided private val presentTracker: PresentTracker,
+                                                                         @param:Provided repaintSchedulerFactory: RepaintSchedulerFactory,
+                                                                         private val drmFd: Int,
+                                                                         private val dumbBuffers: List<DrmDumbBuffer>,
+                                                                         val drmOutput: DrmOutput) : PixmanOutput, DrmPageFlipCallback {
+    override var state: PixmanOutputState? = null
+
+    override val framebuffer: Long
+        get() = this.dumbBuffers[this.backBuffer].image
+
+    private val repaintScheduler = repaintSchedulerFactory.create()
+    //index of the dumb buffer that is not scanned out
+    private var backBuffer = 0
+    private var pageFlipPending = false
+    private var afterPageFlipRender: (() -> Unit)? = null
+    private var pageFlipOutput: Output? = null
+    //vertical retrace counter of the most recent page flip
+    private var sequence: Long = 0
+    private var enabled: Boolean = false
+
+    private fun schedulePageFlip(output: Output) {
+        this.pageFlipOutput = output
+        this.libdrm.drmModePageFlip(this.drmFd,
+                                    this.drmOutput.crtcId,
+                                    this.dumbBuffers[this.backBuffer].fbId,
+                                    DRM_MODE_PAGE_FLIP_EVENT,
+                                    Pointer.from(this).address)
+        this.pageFlipPending = true
+    }
+
+    override fun onPageFlip(@Unsigned sequence: Int,
+                            @Unsigned tv_sec: Int,
+                            @Unsigned tv_usec: Int) {
+        //the buffer we drew is on screen now, draw the next frame in the other one.
+        this.backBuffer = 1 - this.backBuffer
+        this.pageFlipPending = false
+
+        this.sequence = sequence.toLong() and 0xffffffffL
+        //the kernel reports the time of the vertical retrace that started scanning out the new buffer.
+        val time = TimeUnit.SECONDS.toNanos(tv_sec.toLong() and 0xffffffffL) + TimeUnit.MICROSECONDS.toNanos(tv_usec.toLong() and 0xffffffffL)
+        this.pageFlipOutput?.let {
+            this.repaintScheduler.presented(time,
+                                            it.refreshInterval)
+            this.presentTracker.presented(Presentation(it,
+                                                       time,
+                                                       it.refreshInterval,
+                                                       this.sequence,
+                                                       Presentation.VSYNC or Presentation.HW_CLOCK or Presentation.HW_COMPLETION))
+        }
+        this.pageFlipOutput = null
+
+        this.afterPageFlipRender?.invoke()
+        this.afterPageFlipRender = null
+    }
+
+    private fun doRender(wlOutput: WlOutput) {
+        val renderStart = System.nanoTime()
+        val output = wlOutput.output
+
+        if (paint(wlOutput)) {
+            schedulePageFlip(output)
+            this.repaintScheduler.rendered(System.nanoTime() - renderStart,
+                                           0)
+        }
+        else {
+            //nothing changed, keep scanning out the current buffer. Whatever was painted is on screen already.
+            this.presentTracker.presented(Presentation(output,
+                                                       System.nanoTime(),
+                                                       output.refreshInterval,
+                                                       this.sequence,
+                                                       0))
+        }
+
+        this.display.flushClients()
+    }
+
+    private fun paint(wlOutput: WlOutput): Boolean {
+
+        val subscene = this.scene.subsection(wlOutput.output.region)
+
+        val pixmanPainter = this.pixmanPainterFactory.create(this,
+                                                             wlOutput)
+
+        //lockscreen(s) hide all other screens.
+        if (!subscene.lockViews.isEmpty()) {
+            subscene.lockViews.forEach {
+                pixmanPainter.paint(it)
+            }
+        }
+        else {
+            val fullscreenPainted = subscene.fullscreenView?.let {
+                pixmanPainter.paint(it)
+            } ?: false
+
+            if (!fullscreenPainted) {
+                //fullscreen view not visible, paint the rest of the subscene.
+                subscene.backgroundView?.let {
+                    pixmanPainter.paint(it)
+                }
+                subscene.underViews.forEach {
+                    pixmanPainter.paint(it)
+                }
+                subscene.applicationViews.forEach {
+                    pixmanPainter.paint(it)
+                }
+                subscene.overViews.forEach {
+                    pixmanPainter.paint(it)
+                }
+            }
+        }
+
+        subscene.cursorViews.forEach {
+            pixmanPainter.paint(it)
+        }
+        return pixmanPainter.commit()
+    }
+
+    override fun disable() {
+        this.afterPageFlipRender = null
+        this.repaintScheduler.cancel()
+        this.enabled = false
+    }
+
+    override fun enable(wlOutput: WlOutput) {
+        this.enabled = true
+        render(wlOutput)
+    }
+
+    override fun render(wlOutput: WlOutput) {
+        if (!this.enabled) {
+            return
+        }
+
+        //schedule a new render once the pageflip ends, but only if we haven't scheduled one already
+        if (this.pageFlipPending) {
+            if (this.afterPageFlipRender == null) {
+                this.afterPageFlipRender = { scheduleRepaint(wlOutput) }
+            }
+        }
+        else {
+            //no-op if a repaint is already scheduled.
+            scheduleRepaint(wlOutput)
+        }
+    }
+
+    override fun requestFrame(wlOutput: WlOutput,
+                              surface: Surface) {
+        if (this.enabled && this.pageFlipPending) {
+            //the page flip on its way shows the surface as it is now, its callbacks go with it.
+            this.presentTracker.painted(wlOutput.output,
+                                        listOf(surface))
+        }
+        else {
+            render(wlOutput)
+        }
+    }
+
+    private fun scheduleRepaint(wlOutput: WlOutput) {
+        //start as late as we safely can before the next vertical retrace so late client commits still make it.
+        this.repaintScheduler.schedule { doRender(wlOutput) }
+    }
+
+    fun setDefaultMode() {
+        //scan out the buffer we're not drawing in
+        val error = this.libdrm.drmModeSetCrtc(this.drmFd,
+                                               this.drmOutput.crtcId,
+                                               this.dumbBuffers[1 - this.backBuffer].fbId,
+                                               0,
+                                               0,
+                                               Pointer.nref(this.drmOutput.drmModeConnector.connector_id).address,
+                                               1,
+                                               Pointer.ref(this.drmOutput.mode).address)
+        if (error != 0) {
+            throw RuntimeException(String.format("failed to drmModeSetCrtc. [%d]",
+                                                 this.libc.errno))
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.drm.pixman
+
+import org.westford.compositor.core.OutputFactory
+import org.westford.compositor.core.OutputGeometry
+import org.westford.compositor.core.OutputMode
+import org.westford.compositor.drm.DrmOutput
+import org.westford.compositor.drm.DrmPlatform
+import org.westford.compositor.protocol.WlOutput
+import org.westford.compositor.protocol.WlOutputFactory
+import org.westford.launch.LifeCycleSignals
+import org.westford.launch.Privileges
+import javax.inject.Inject
+
+class DrmPixmanPlatformFactory @Inject internal constructor(private val wlOutputFactory: WlOutputFactory,
+                                                            private val outputFactory: OutputFactory,
+                                                            private val privateDrmPixmanPlatformFactory: PrivateDrmPixmanPlatformFactory,
+                                                            private val drmPlatform: DrmPlatform,
+                                                            private val drmDumbBufferFactory: DrmDumbBufferFactory,
+                                                            private val drmPixmanOutputFactory: DrmPixmanOutputFactory,
+                                                            private val lifeCycleSignals: LifeCycleSignals,
+                                                            private val privileges: Privileges) {
+
+    fun create(): DrmPixmanPlatform {
+        val drmPixmanOutputs = this.drmPlatform.renderOutputs.map {
+            createDrmPixmanOutput(it)
+        }
+        val wlOutputs = drmPixmanOutputs.map {
+            createWlOutput(it)
+        }
+
+        this.lifeCycleSignals.activateSignal.connect {
+            this.privileges.setDrmMaster(this.drmPlatform.drmFd)
+            wlOutputs.forEach {
+                val drmPixmanOutput = it.output.renderOutput as DrmPixmanOutput
+                drmPixmanOutput.setDefaultMode()
+                drmPixmanOutput.enable(it)
+            }
+        }
+        this.lifeCycleSignals.deactivateSignal.connect {
+            drmPixmanOutputs.forEach {
+                it.disable()
+            }
+            this.privileges.dropDrmMaster(this.drmPlatform.drmFd)
+        }
+
+        return this.privateDrmPixmanPlatformFactory.create(wlOutputs)
+    }
+
+    private fun createWlOutput(drmPixmanOutput: DrmPixmanOutput): WlOutput {
+
+        val drmOutput = drmPixmanOutput.drmOutput
+
+        val drmModeConnector = drmOutput.drmModeConnector
+        val drmModeModeInfo = drmOutput.mode
+
+        val fallBackDpi = 96
+
+        var mmWidth = drmModeConnector.mmWidth
+        val hdisplay = drmOutput.mode.hdisplay
+        if (mmWidth == 0) {
+            mmWidth = (hdisplay * 25.4 / fallBackDpi).toInt()
+        }
+
+        var mmHeight = drmModeConnector.mmHeight
+        val vdisplay = drmOutput.mode.vdisplay
+        if (mmHeight == 0) {
+            mmHeight = (vdisplay * 25.4 / fallBackDpi).toInt()
+        }
+
+        val outputGeometry = OutputGeometry(physicalWidth = mmWidth,
+                                            physicalHeight = mmHeight,
+                                            make = "unknown",
+                                            model = "unknown",
+                                            x = 0,
+                                            y = 0,
+                                            subpixel = drmModeConnector.drmModeSubPixel,
+                                            transform = 0)
+        val outputMode = OutputMode(width = hdisplay.toInt(),
+                                    height = vdisplay.toInt(),
+                                    refresh = drmOutput.mode.vrefresh,
+                                    flags = drmModeModeInfo.flags)
+
+        //FIXME deduce an output name from the drm connector
+        return this.wlOutputFactory.create(this.outputFactory.create(drmPixmanOutput,
+                                                                     "fixme",
+                                                                     outputGeometry,
+                                                                     outputMode))
+    }
+
+    private fun createDrmPixmanOutput(drmOutput: DrmOutput): DrmPixmanOutput {
+        val drmFd = this.drmPlatform.drmFd
+        val width = drmOutput.mode.hdisplay.toInt()
+        val height = drmOutput.mode.vdisplay.toInt()
+
+        //one buffer is scanned out while the other is drawn.
+        val dumbBuffers = listOf(this.drmDumbBufferFactory.create(drmFd,
+                                                                  width,
+                                                                  height),
+                                 this.drmDumbBufferFactory.create(drmFd,
+                                                                  width,
+                                                                  height))
+        val drmPixmanOutput = this.drmPixmanOutputFactory.create(drmFd,
+                                                                 dumbBuffers,
+                                                                 drmOutput)
+        drmPixmanOutput.setDefaultMode()
+
+        return drmPixmanOutput
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.gles2
+
+import org.westford.compositor.core.Rectangle
+
+/**
+ * Packs small textures in one big texture so views that use them can be drawn in a single batch. Space is handed
+ * out in shelves: horizontal strips with the height of the first texture that opened them, filled from left to
+ * right. Space that is freed is merged with its free neighbours, and a shelf that becomes empty is removed so its
+ * strip can be reused by a shelf of a different height.
+
+ * @param texture the gl texture that backs this atlas.
+ */
+class Gles2Atlas(val texture: Int) {
+
+    //sorted from top to bottom
+    private val shelves = mutableListOf<Shelf>()
+
+    val isEmpty: Boolean
+        get() = this.shelves.isEmpty()
+
+    /**
+     * Reserve space in this atlas.
+
+     * @param width the width of the texture to place.
+     * *
+     * @param height the height of the texture to place.
+     * *
+     * *
+     * @return the reserved space in atlas texture coordinates or null if there is not enough space left, or if the
+     * * texture is larger than [MAX_ENTRY_SIZE].
+     */
+    fun allocate(width: Int,
+                 height: Int): Rectangle? {
+        if (width > MAX_ENTRY_SIZE || height > MAX_ENTRY_SIZE) {
+            return null
+        }
+
+        //keep some space between neighbours so they don't bleed into each other when sampled.
+        val paddedWidth = width + PADDING
+        val paddedHeight = height + PADDING
+
+        //prefer a shelf that does not waste too much height, then a new shelf, then any shelf that fits.
+        val shelf = findShelf(paddedWidth,
+                              paddedHeight,
+                              paddedHeight * 3 / 2) ?: openShelf(paddedHeight) ?: findShelf(paddedWidth,
+                                                                                            paddedHeight,
+                                                                                            SIZE) ?: return null
+
+        val x = shelf.allocate(paddedWidth)
+        return Rectangle(x,
+                         shelf.y,
+                         width,
+                         height)
+    }
+
+    /**
+     * Release space previously reserved with [allocate].
+
+     * @param rectangle the reserved space.
+     */
+    fun free(rectangle: Rectangle) {
+        val shelf = this.shelves.first { it.y == rectangle.y }
+        shelf.free(rectangle.x,
+                   rectangle.width + PADDING)
+        if (shelf.isEmpty) {
+            this.shelves -= shelf
+        }
+    }
+
+    private fun findShelf(width: Int,
+                          minHeight: Int,
+                          maxHeight: Int): Shelf? = this.shelves.filter { it.height in minHeight..maxHeight && it.canFit(width) }.minBy { it.height }
+
+    private fun openShelf(height: Int): Shelf? {
+        //find the first gap between the existing shelves that is high enough.
+        var y = 0
+        for ((i, shelf) in this.shelves.withIndex()) {
+            if (shelf.y - y >= height) {
+                return Shelf(y,
+                             height).also { this.shelves.add(i,
+                                                             it) }
+            }
+            y = shelf.y + shelf.height
+        }
+        if (SIZE - y >= height) {
+            return Shelf(y,
+                         height).also { this.shelves += it }
+        }
+        return null
+    }
+
+    private class Shelf(val y: Int,
+                        val height: Int) {
+        //free spans as (x, width), sorted from left to right
+        private val spans = mutableListOf(Pair(0,
+                                               SIZE))
+
+        val isEmpty: Boolean
+            get() = this.spans.size == 1 && this.spans[0].second == SIZE
+
+        fun canFit(width: Int): Boolean = this.spans.any { it.second >= width }
+
+        fun allocate(width: Int): Int {
+            val i = this.spans.indexOfFirst { it.second >= width }
+            val (x, spanWidth) = this.spans[i]
+            if (spanWidth == width) {
+                this.spans.removeAt(i)
+            }
+            else {
+                this.spans[i] = Pair(x + width,
+                                     spanWidth - width)
+            }
+            return x
+        }
+
+        fun free(x: Int,
+                 width: Int) {
+            var i = this.spans.indexOfFirst { it.first > x }
+            if (i < 0) {
+                i = this.spans.size
+            }
+            var start = x
+            var end = x + width
+            //merge with the free span on the right
+            if (i < this.spans.size && this.spans[i].first == end) {
+                end += this.spans[i].second
+                this.spans.removeAt(i)
+            }
+            //merge with the free span on the left
+            if (i > 0 && this.spans[i - 1].first + this.spans[i - 1].second == start) {
+                start = this.spans[i - 1].first
+                this.spans.removeAt(i - 1)
+                i--
+            }
+            this.spans.add(i,
+                           Pair(start,
+                                end - start))
+        }
+    }
+
+    companion object {
+        /**
+         * Width and height of an atlas texture.
+         */
+        val SIZE = 1024
+        /**
+         * Textures larger than this in either dimension don't benefit from an atlas and get a texture of their own.
+         */
+        val MAX_ENTRY_SIZE = 128
+        private val PADDING = 1
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.gles2
+
+import org.freedesktop.jaccall.Pointer
+import org.freedesktop.jaccall.Pointer.wrap
+import org.westford.compositor.core.FrameMetrics
+import org.westford.nativ.libEGL.LibEGL
+import org.westford.nativ.libGLESv2.*
+import java.util.*
+import java.util.logging.Logger
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Measures how long the gpu spends executing the draw commands of a frame, using GL_EXT_disjoint_timer_query. Query
+ * results arrive a few frames later, they're collected when the next frame of the same output starts.
+ */
+@Singleton class Gles2GpuTimer @Inject internal constructor(private val libEGL: LibEGL,
+                                                           private val libGLESv2: LibGLESv2) {
+
+    private var glGenQueriesEXT: GlGenQueriesEXT? = null
+    private var glBeginQueryEXT: GlBeginQueryEXT? = null
+    private var glEndQueryEXT: GlEndQueryEXT? = null
+    private var glGetQueryObjectuivEXT: GlGetQueryObjectuivEXT? = null
+    private var glGetQueryObjectui64vEXT: GlGetQueryObjectui64vEXT? = null
+
+    //queries that were issued but not yet collected, oldest first.
+    private val pendingQueries = mutableMapOf<FrameMetrics, ArrayDeque<Int>>()
+    //collected queries, ready for reuse.
+    private val freeQueries = ArrayDeque<Int>()
+
+    /**
+     * Enable gpu timing if the driver supports timer queries. Requires a current gl context.
+
+     * @param glExtensions the extensions of the current gl context.
+     */
+    fun bind(glExtensions: String) {
+        if (!glExtensions.contains("GL_EXT_disjoint_timer_query")) {
+            LOGGER.info("Extension GL_EXT_disjoint_timer_query not available. Gpu frame times will not be measured.")
+            return
+        }
+
+        this.glGenQueriesEXT = wrap(GlGenQueriesEXT::class.java,
+                                    this.libEGL.eglGetProcAddress(Pointer.nref("glGenQueriesEXT").address)).get()
+        this.glBeginQueryEXT = wrap(GlBeginQueryEXT::class.java,
+                                    this.libEGL.eglGetProcAddress(Pointer.nref("glBeginQueryEXT").address)).get()
+        this.glEndQueryEXT = wrap(GlEndQueryEXT::class.java,
+                                  this.libEGL.eglGetProcAddress(Pointer.nref("glEndQueryEXT").address)).get()
+        this.glGetQueryObjectuivEXT = wrap(GlGetQueryObjectuivEXT::class.java,
+                                           this.libEGL.eglGetProcAddress(Pointer.nref("glGetQueryObjectuivEXT").address)).get()
+        this.glGetQueryObjectui64vEXT = wrap(GlGetQueryObjectui64vEXT::class.java,
+                                             this.libEGL.eglGetProcAddress(Pointer.nref("glGetQueryObjectui64vEXT").address)).get()
+    }
+
+    /**
+     * Start timing the draw commands of a frame. Results of earlier frames that are available are recorded first.
+
+     * @param frameMetrics the metrics of the output that is drawn.
+     */
+    fun begin(frameMetrics: FrameMetrics) {
+        val glBeginQueryEXT = this.glBeginQueryEXT ?: return
+
+        collect(frameMetrics)
+
+        val query = this.freeQueries.poll() ?: genQuery()
+        glBeginQueryEXT(LibGLESv2.GL_TIME_ELAPSED_EXT,
+                        query)
+        this.pendingQueries.getOrPut(frameMetrics) { ArrayDeque() }.add(query)
+    }
+
+    /**
+     * Stop timing the draw commands of the frame started with [begin].
+     */
+    fun end() {
+        this.glEndQueryEXT?.invoke(LibGLESv2.GL_TIME_ELAPSED_EXT)
+    }
+
+    private fun genQuery(): Int {
+        val query = Pointer.nref(0)
+        this.glGenQueriesEXT?.invoke(1,
+                                     query.address)
+        return query.get()
+    }
+
+    private fun collect(frameMetrics: FrameMetrics) {
+        val glGetQueryObjectuivEXT = this.glGetQueryObjectuivEXT ?: return
+        val glGetQueryObjectui64vEXT = this.glGetQueryObjectui64vEXT ?: return
+        val pendingQueries = this.pendingQueries[frameMetrics] ?: return
+
+        //results are meaningless if something like a gpu clock change happened while they were measured.
+        val disjoint = Pointer.nref(0)
+        this.libGLESv2.glGetIntegerv(LibGLESv2.GL_GPU_DISJOINT_EXT,
+                                     disjoint.address)
+
+        val available = Pointer.nref(0)
+        val elapsed = Pointer.nref(0L)
+        while (!pendingQueries.isEmpty()) {
+            val query = pendingQueries.peek()
+            glGetQueryObjectuivEXT(query,
+                                   LibGLESv2.GL_QUERY_RESULT_AVAILABLE_EXT,
+                                   available.address)
+            if (available.get() == 0) {
+                //queries finish in order, the next ones won't be available either.
+                return
+            }
+
+            pendingQueries.poll()
+            if (disjoint.get() == 0) {
+                glGetQueryObjectui64vEXT(query,
+                                         LibGLESv2.GL_QUERY_RESULT_EXT,
+                                         elapsed.address)
+                frameMetrics.gpuTime.record(elapsed.get())
+            }
+            this.freeQueries.add(query)
+        }
+    }
+
+    companion object {
+        private val LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+    }
+}
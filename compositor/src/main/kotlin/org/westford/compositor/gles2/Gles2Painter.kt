@@ -3,26 +3,32 @@ package org.westford.compositor.gles2
 import com.google.auto.factory.AutoFactory
 import com.google.auto.factory.Provided
 import org.westford.compositor.core.EglOutput
+import org.westford.compositor.core.PresentTracker
+import org.westford.compositor.core.RenderMetrics
 import org.westford.compositor.core.SurfaceView
 import org.westford.compositor.protocol.WlOutput
+import org.westford.compositor.protocol.WlSurface
 
 /**
- * Convenience class to lazily setup, draw and flush using a [Gles2Renderer].
+ * Convenience class to lazily collect, draw and flush using a [Gles2Renderer].
  */
 @AutoFactory(allowSubclasses = true,
              className = "Gles2PainterFactory") class Gles2Painter(@param:Provided private val gles2Renderer: Gles2Renderer,
+                                                                   @param:Provided private val presentTracker: PresentTracker,
+                                                                   @param:Provided private val renderMetrics: RenderMetrics,
                                                                    private val eglOutput: EglOutput,
                                                                    private val wlOutput: WlOutput) {
 
-    private var painted = false
+    private val surfaceViews = mutableListOf<SurfaceView>()
 
     /**
-     * Paint a surface using a [Gles2Renderer], doing a one time draw setup if needed.
+     * Paint a surface using a [Gles2Renderer]. The actual drawing is done when this painter is committed, so only
+     * the damaged parts of the output have to be redrawn.
 
      * @param surfaceView the view to paint.
      * *
      * *
-     * @return true if the view was painted, false if not due to eg. an absent buffer.
+     * @return true if the view will be painted, false if not due to eg. an absent buffer.
      */
     fun paint(surfaceView: SurfaceView): Boolean {
 
@@ -31,22 +37,32 @@ import org.westford.compositor.protocol.WlOutput
             return false
         }
 
-        if (!this.painted) {
-            this.gles2Renderer.prepareDraw(this.eglOutput,
-                                           this.wlOutput)
-            this.painted = true
-        }
-
-        this.gles2Renderer.drawView(surfaceView)
+        this.surfaceViews += surfaceView
 
         return true
     }
 
+    /**
+     * Draw all painted views. The frame callbacks of the painted surfaces are fired once the output presents them, see
+     * [PresentTracker].
+
+     * @return true if the output was redrawn, false if nothing was painted or nothing changed.
+     */
     fun commit(): Boolean {
-        if (this.painted) {
-            this.gles2Renderer.finishDraw(this.eglOutput)
+        if (this.surfaceViews.isEmpty()) {
+            return false
         }
 
-        return this.painted
+        val frameMetrics = this.renderMetrics.frameMetrics(this.wlOutput.output)
+        val drawStart = if (frameMetrics != null) System.nanoTime() else 0L
+        val redraw = this.gles2Renderer.draw(this.eglOutput,
+                                             this.wlOutput,
+                                             this.surfaceViews)
+        if (redraw) {
+            frameMetrics?.drawTime?.record(System.nanoTime() - drawStart)
+        }
+        this.presentTracker.painted(this.wlOutput.output,
+                                    this.surfaceViews.map { (it.wlSurfaceResource.implementation as WlSurface).surface })
+        return redraw
     }
 }
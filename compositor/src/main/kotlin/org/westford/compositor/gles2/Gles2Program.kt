@@ -0,0 +1,41 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.gles2
+
+/**
+ * A linked shader program together with the locations of its arguments. Locations are only valid for the program
+ * they were queried from.
+
+ * @param program the gl program name.
+ * *
+ * @param projectionArg location of the u_projection uniform.
+ * *
+ * @param transformArg location of the u_transform uniform.
+ * *
+ * @param positionArg location of the a_position attribute.
+ * *
+ * @param textureCoordinateArg location of the a_texCoord attribute.
+ * *
+ * @param textureArgs locations of the u_texture uniforms, one for each texture the program samples.
+ */
+class Gles2Program(val program: Int,
+                   val projectionArg: Int,
+                   val transformArg: Int,
+                   val positionArg: Int,
+                   val textureCoordinateArg: Int,
+                   val textureArgs: IntArray)
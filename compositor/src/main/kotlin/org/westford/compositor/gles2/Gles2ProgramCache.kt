@@ -0,0 +1,218 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.gles2
+
+import org.freedesktop.jaccall.JNI
+import org.freedesktop.jaccall.Pointer
+import org.freedesktop.jaccall.Pointer.wrap
+import org.westford.nativ.libEGL.LibEGL
+import org.westford.nativ.libGLESv2.GlGetProgramBinaryOES
+import org.westford.nativ.libGLESv2.GlProgramBinaryOES
+import org.westford.nativ.libGLESv2.LibGLESv2
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.logging.Logger
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Keeps linked shader program binaries on disk so they don't have to be compiled again on the next start. Binaries
+ * are stored under XDG_CACHE_HOME and are keyed on the gl vendor, renderer and driver version so a driver update
+ * never picks up a stale binary.
+ */
+@Singleton class Gles2ProgramCache @Inject internal constructor(private val libEGL: LibEGL,
+                                                               private val libGLESv2: LibGLESv2) {
+
+    private var glGetProgramBinaryOES: GlGetProgramBinaryOES? = null
+    private var glProgramBinaryOES: GlProgramBinaryOES? = null
+    private var driver = ""
+    private val directory = cacheDirectory()
+
+    /**
+     * Enable the cache if the driver supports program binaries. Requires a current gl context.
+
+     * @param glExtensions the extensions of the current gl context.
+     */
+    fun bind(glExtensions: String) {
+        if (!glExtensions.contains("GL_OES_get_program_binary")) {
+            LOGGER.warning("Extension GL_OES_get_program_binary not available. Shader programs will be compiled on every start.")
+            return
+        }
+
+        this.glGetProgramBinaryOES = wrap(GlGetProgramBinaryOES::class.java,
+                                          this.libEGL.eglGetProcAddress(Pointer.nref("glGetProgramBinaryOES").address)).get()
+        this.glProgramBinaryOES = wrap(GlProgramBinaryOES::class.java,
+                                       this.libEGL.eglGetProcAddress(Pointer.nref("glProgramBinaryOES").address)).get()
+        this.driver = listOf(LibGLESv2.GL_VENDOR,
+                             LibGLESv2.GL_RENDERER,
+                             LibGLESv2.GL_VERSION).joinToString("\n") {
+            wrap<String>(String::class.java,
+                         this.libGLESv2.glGetString(it)).get()
+        }
+    }
+
+    /**
+     * Link a shader program from a cached binary.
+
+     * @param shaderProgram an empty shader program.
+     * *
+     * @param vertexShaderSource the source of the vertex shader the binary was made from.
+     * *
+     * @param fragmentShaderSource the source of the fragment shader the binary was made from.
+     * *
+     * *
+     * @return true if the program was linked, false if no binary was cached or if it was rejected by the driver.
+     */
+    fun load(shaderProgram: Int,
+             vertexShaderSource: String,
+             fragmentShaderSource: String): Boolean {
+        val glProgramBinaryOES = this.glProgramBinaryOES ?: return false
+        val file = file(vertexShaderSource,
+                        fragmentShaderSource) ?: return false
+        if (!Files.isRegularFile(file)) {
+            return false
+        }
+
+        val bytes: ByteArray
+        try {
+            bytes = Files.readAllBytes(file)
+        }
+        catch (e: IOException) {
+            LOGGER.warning("Failed to read cached shader program $file: ${e.message}")
+            return false
+        }
+        if (bytes.size <= java.lang.Integer.BYTES) {
+            return false
+        }
+
+        //binary format followed by the binary itself
+        val binary = ByteBuffer.allocateDirect(bytes.size).order(ByteOrder.nativeOrder())
+        binary.put(bytes)
+        glProgramBinaryOES(shaderProgram,
+                           binary.getInt(0),
+                           JNI.unwrap(binary) + java.lang.Integer.BYTES,
+                           bytes.size - java.lang.Integer.BYTES)
+
+        val linked = Pointer.nref(0)
+        this.libGLESv2.glGetProgramiv(shaderProgram,
+                                      LibGLESv2.GL_LINK_STATUS,
+                                      linked.address)
+        if (linked.get() == 0) {
+            //drivers are free to reject binaries at any time, eg. after an update that did not change the version.
+            LOGGER.info("Cached shader program $file rejected, compiling from source.")
+            delete(file)
+            return false
+        }
+
+        return true
+    }
+
+    /**
+     * Store the binary of a linked shader program.
+
+     * @param shaderProgram a linked shader program.
+     * *
+     * @param vertexShaderSource the source of the vertex shader the program was made from.
+     * *
+     * @param fragmentShaderSource the source of the fragment shader the program was made from.
+     */
+    fun store(shaderProgram: Int,
+              vertexShaderSource: String,
+              fragmentShaderSource: String) {
+        val glGetProgramBinaryOES = this.glGetProgramBinaryOES ?: return
+        val file = file(vertexShaderSource,
+                        fragmentShaderSource) ?: return
+
+        val binaryLength = Pointer.nref(0)
+        this.libGLESv2.glGetProgramiv(shaderProgram,
+                                      LibGLESv2.GL_PROGRAM_BINARY_LENGTH_OES,
+                                      binaryLength.address)
+        if (binaryLength.get() <= 0) {
+            return
+        }
+
+        val binary = ByteBuffer.allocateDirect(java.lang.Integer.BYTES + binaryLength.get()).order(ByteOrder.nativeOrder())
+        val length = Pointer.nref(0)
+        val binaryFormat = Pointer.nref(0)
+        glGetProgramBinaryOES(shaderProgram,
+                              binaryLength.get(),
+                              length.address,
+                              binaryFormat.address,
+                              JNI.unwrap(binary) + java.lang.Integer.BYTES)
+        binary.putInt(0,
+                      binaryFormat.get())
+        val bytes = ByteArray(java.lang.Integer.BYTES + length.get())
+        binary.get(bytes)
+
+        try {
+            Files.createDirectories(file.parent)
+            //write to a temporary file first so a crash never leaves a truncated binary behind.
+            val tmp = Files.createTempFile(file.parent,
+                                           file.fileName.toString(),
+                                           ".tmp")
+            Files.write(tmp,
+                        bytes)
+            Files.move(tmp,
+                       file,
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE)
+        }
+        catch (e: IOException) {
+            LOGGER.warning("Failed to cache shader program $file: ${e.message}")
+        }
+    }
+
+    private fun file(vertexShaderSource: String,
+                     fragmentShaderSource: String): Path? {
+        val digest = MessageDigest.getInstance("SHA-1").digest(listOf(this.driver,
+                                                                      vertexShaderSource,
+                                                                      fragmentShaderSource).joinToString("\u0000").toByteArray())
+        return this.directory?.resolve(digest.joinToString("") { String.format("%02x",
+                                                                                it) } + ".bin")
+    }
+
+    private fun delete(file: Path) {
+        try {
+            Files.deleteIfExists(file)
+        }
+        catch (e: IOException) {
+            LOGGER.warning("Failed to delete cached shader program $file: ${e.message}")
+        }
+    }
+
+    private fun cacheDirectory(): Path? {
+        val cacheHome = System.getenv("XDG_CACHE_HOME")?.takeIf { it.isNotEmpty() } ?: System.getenv("HOME")?.let { "$it/.cache" }
+        if (cacheHome == null) {
+            LOGGER.warning("XDG_CACHE_HOME and HOME not set. Shader programs will be compiled on every start.")
+            return null
+        }
+        return Paths.get(cacheHome,
+                         "westford",
+                         "programs")
+    }
+
+    companion object {
+        private val LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+    }
+}
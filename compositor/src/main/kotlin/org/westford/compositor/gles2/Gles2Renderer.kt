@@ -29,18 +29,46 @@ import org.freedesktop.wayland.server.WlSurfaceResource
 import org.freedesktop.wayland.shared.WlShmFormat
 import org.westford.compositor.core.*
 import org.westford.compositor.core.calc.Mat4
+import org.westford.compositor.core.calc.Vec4
 import org.westford.compositor.gles2.Gles2Shaders.FRAGMENT_SHADER_EGL_EXTERNAL
 import org.westford.compositor.gles2.Gles2Shaders.FRAGMENT_SHADER_EGL_Y_UV
 import org.westford.compositor.gles2.Gles2Shaders.FRAGMENT_SHADER_EGL_Y_U_V
 import org.westford.compositor.gles2.Gles2Shaders.FRAGMENT_SHADER_EGL_Y_XUXV
 import org.westford.compositor.gles2.Gles2Shaders.VERTEX_SHADER
+import org.westford.compositor.core.DmabufAttributes.Companion.FORMAT_ARGB8888
+import org.westford.compositor.core.DmabufAttributes.Companion.FORMAT_XRGB8888
+import org.westford.compositor.core.DmabufAttributes.Companion.MOD_INVALID
+import org.westford.compositor.protocol.WlBuffer
 import org.westford.compositor.protocol.WlOutput
 import org.westford.compositor.protocol.WlSurface
 import org.westford.nativ.libEGL.*
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_ALPHA_SIZE
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_BLUE_SIZE
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_BUFFER_AGE_EXT
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_GREEN_SIZE
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE0_FD_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE0_MODIFIER_HI_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE0_MODIFIER_LO_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE0_OFFSET_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE0_PITCH_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE1_FD_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE1_MODIFIER_HI_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE1_MODIFIER_LO_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE1_OFFSET_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE1_PITCH_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE2_FD_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE2_MODIFIER_HI_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE2_MODIFIER_LO_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE2_OFFSET_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE2_PITCH_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE3_FD_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE3_MODIFIER_HI_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE3_MODIFIER_LO_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE3_OFFSET_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DMA_BUF_PLANE3_PITCH_EXT
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_HEIGHT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_LINUX_DMA_BUF_EXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_LINUX_DRM_FOURCC_EXT
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_NONE
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_NO_CONTEXT
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_NO_DISPLAY
@@ -61,68 +89,160 @@ import org.westford.nativ.libEGL.LibEGL.Companion.EGL_WAYLAND_BUFFER_WL
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_WAYLAND_PLANE_WL
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_WAYLAND_Y_INVERTED_WL
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_WIDTH
-import org.westford.nativ.libEGL.LibEGL.Companion.EGL_WINDOW_BIT
 import org.westford.nativ.libGLESv2.GlEGLImageTargetTexture2DOES
 import org.westford.nativ.libGLESv2.LibGLESv2
-import java.util.concurrent.TimeUnit.NANOSECONDS
 import java.util.logging.Logger
 import javax.inject.Inject
 import javax.inject.Singleton
 
 @Singleton class Gles2Renderer @Inject internal constructor(private val libEGL: LibEGL,
                                                             private val libGLESv2: LibGLESv2,
-                                                            private val display: Display) : GlRenderer {
+                                                            private val gles2State: Gles2State,
+                                                            private val gles2ProgramCache: Gles2ProgramCache,
+                                                            private val gles2TextureResidency: Gles2TextureResidency,
+                                                            private val gles2GpuTimer: Gles2GpuTimer,
+                                                            private val renderMetrics: RenderMetrics,
+                                                            private val display: Display,
+                                                            private val finiteRegionFactory: FiniteRegionFactory) : GlRenderer, DmabufImporter {
 
-    private val textureArgs = IntArray(3)
     private var eglQueryWaylandBufferWL: EglQueryWaylandBufferWL? = null
     private var eglCreateImageKHR: EglCreateImageKHR? = null
     private var eglDestroyImageKHR: EglDestroyImageKHR? = null
     private var glEGLImageTargetTexture2DOES: GlEGLImageTargetTexture2DOES? = null
+    private var eglSwapBuffersWithDamage: EglSwapBuffersWithDamageKHR? = null
+    private var eglQueryDmaBufFormatsEXT: EglQueryDmaBufFormatsEXT? = null
+    private var eglQueryDmaBufModifiersEXT: EglQueryDmaBufModifiersEXT? = null
     //shader programs
     //used by shm & egl
     private var argb8888ShaderProgram: Int = 0
     //used by shm
     private var xrgb8888ShaderProgram: Int = 0
-    //used by egl
-    private var y_u_vShaderProgram: Int = 0
-    private var y_uvShaderProgram: Int = 0
-    private var y_xuxvShaderProgram: Int = 0
-    private var externalImageShaderProgram: Int = 0
-    //shader args:
-    //used by shm & egl
-    private var projectionArg: Int = 0
-    private var transformArg: Int = 0
-    private var positionArg: Int = 0
-    private var textureCoordinateArg: Int = 0
+    //used by egl, only compiled once a client uses them
+    private val y_u_vShaderProgram by lazy {
+        createShaderProgram(VERTEX_SHADER,
+                            FRAGMENT_SHADER_EGL_Y_U_V,
+                            3)
+    }
+    private val y_uvShaderProgram by lazy {
+        createShaderProgram(VERTEX_SHADER,
+                            FRAGMENT_SHADER_EGL_Y_UV,
+                            2)
+    }
+    private val y_xuxvShaderProgram by lazy {
+        createShaderProgram(VERTEX_SHADER,
+                            FRAGMENT_SHADER_EGL_Y_XUXV,
+                            2)
+    }
+    private val externalImageShaderProgram by lazy {
+        createShaderProgram(VERTEX_SHADER,
+                            FRAGMENT_SHADER_EGL_EXTERNAL,
+                            1)
+    }
+    //shader args of each shader program
+    private val shaderPrograms = mutableMapOf<Int, Gles2Program>()
     private var eglDisplay = EGL_NO_DISPLAY
     private var hasWlEglDisplay = false
+    private var hasUnpackSubimage = false
+    private var hasImageExternal = false
+    private var hasBufferAge = false
+    private var hasDmabufImport = false
+    private var dmabufFormats: Map<Int, List<Long>>? = null
     private var init = false
 
+    /**
+     * Total number of bytes uploaded to shm surface textures, mainly useful to verify damage tracking.
+     */
+    var uploadedBytes: Long = 0
+        private set
+    /**
+     * Total number of draw calls issued to draw views, mainly useful to verify batching.
+     */
+    var drawCalls: Long = 0
+        private set
+    //persistent vertex buffer object that holds the quads of a frame
+    private var vertexBuffer: Int = 0
+
     private var eglOutputState: EglOutputState? = null
     private var newEglOutputState: EglOutputState = EglOutputState(Mat4.IDENTITY)
 
-    override fun onDestroy(wlSurfaceResource: WlSurfaceResource) {
+    //surfaces that were committed but who's content has not yet been imported
+    private val pendingImports = mutableSetOf<Surface>()
+    //buffer metadata, a buffer's size and format can not change as long as it exists
+    private val buffers = mutableMapOf<WlBufferResource, Buffer>()
+    //imported egl buffers, their egl images and textures live as long as the buffer itself
+    private val eglBufferStates = mutableMapOf<WlBufferResource, EglSurfaceState>()
+    //textures shared by small shm surfaces
+    private val atlases = mutableListOf<Gles2Atlas>()
+
+    override fun onApply(surface: Surface) {
+        surface.renderState?.accept(object : SurfaceRenderStateVisitor {
+            override fun visit(shmSurfaceState: ShmSurfaceState): SurfaceRenderState? {
+                //accumulate the damage of every commit, so we only have to upload the damaged parts of the shm buffer.
+                var damage = shmSurfaceState.damage
+                surface.bufferDamage().forEach {
+                    damage += it
+                }
+                surface.renderState = shmSurfaceState.copy(damage = damage)
+                return null
+            }
+        })
+        this.pendingImports += surface
+    }
 
+    override fun onDestroy(wlSurfaceResource: WlSurfaceResource) {
         val wlSurface = wlSurfaceResource.implementation as WlSurface
-        wlSurface.surface.renderState?.accept(object : SurfaceRenderStateVisitor {
+        val surface = wlSurface.surface
+        this.pendingImports -= surface
+        destroyRenderState(surface)
+        this.gles2TextureResidency.evicted(surface)
+    }
+
+    /**
+     * Drop a texture registered with [Gles2TextureResidency] to free gpu memory. The texture of an shm surface is
+     * registered with the surface, the textures and egl images of an egl buffer with the buffer. They are imported
+     * again when a surface that shows them is drawn.
+     */
+    private fun evict(owner: Any) {
+        when (owner) {
+            is Surface          -> destroyRenderState(owner)
+            is WlBufferResource -> this.eglBufferStates.remove(owner)?.let { destroy(it) }
+        }
+        this.gles2TextureResidency.evicted(owner)
+    }
+
+    private fun isResident(surface: Surface): Boolean {
+        var resident = false
+        surface.renderState?.accept(object : SurfaceRenderStateVisitor {
             override fun visit(shmSurfaceState: ShmSurfaceState): SurfaceRenderState? {
-                destroy(shmSurfaceState)
+                resident = true
                 return null
             }
 
             override fun visit(eglSurfaceState: EglSurfaceState): SurfaceRenderState? {
-                destroy(eglSurfaceState)
+                //the egl images might have been evicted through a different surface that uses the same buffer.
+                resident = surface.state.buffer?.let { eglBufferStates[it] } === eglSurfaceState
+                return null
+            }
+        })
+        return resident
+    }
+
+    private fun destroyRenderState(surface: Surface) {
+        surface.renderState?.accept(object : SurfaceRenderStateVisitor {
+            override fun visit(shmSurfaceState: ShmSurfaceState): SurfaceRenderState? {
+                destroy(shmSurfaceState)
                 return null
             }
         })
+        //egl render states are destroyed together with their buffer
+        surface.renderState = null
     }
 
     private fun destroy(eglSurfaceState: EglSurfaceState) {
 
         //delete textures & egl images
         for (texture in eglSurfaceState.textures) {
-            this.libGLESv2.glDeleteTextures(1,
-                                            Pointer.nref(texture).address)
+            this.gles2State.deleteTexture(texture)
         }
 
         for (eglImage in eglSurfaceState.eglImages) {
@@ -136,22 +256,48 @@ import javax.inject.Singleton
 
     private fun destroy(shmSurfaceState: ShmSurfaceState) {
 
-        //delete texture
-        this.libGLESv2.glDeleteTextures(1,
-                                        Pointer.nref(shmSurfaceState.texture).address)
-
+        val atlasRectangle = shmSurfaceState.atlasRectangle
+        if (atlasRectangle == null) {
+            //delete texture
+            this.gles2State.deleteTexture(shmSurfaceState.texture)
+        }
+        else {
+            //give back the space in the atlas, delete the atlas once nobody uses it anymore.
+            val atlas = this.atlases.first { it.texture == shmSurfaceState.texture }
+            atlas.free(atlasRectangle)
+            if (atlas.isEmpty) {
+                this.atlases -= atlas
+                this.gles2State.deleteTexture(atlas.texture)
+            }
+        }
     }
 
     override fun queryBuffer(wlBufferResource: WlBufferResource): Buffer {
+        return this.buffers[wlBufferResource] ?: createBuffer(wlBufferResource).also {
+            this.buffers[wlBufferResource] = it
+            wlBufferResource.register {
+                this.buffers.remove(wlBufferResource)
+            }
+        }
+    }
+
+    private fun createBuffer(wlBufferResource: WlBufferResource): Buffer {
 
         val buffer: Buffer
 
         val shmBuffer = ShmBuffer.get(wlBufferResource)
+        val wlBuffer = wlBufferResource.implementation as? WlBuffer
         if (shmBuffer != null) {
             buffer = SmBuffer(shmBuffer.width,
                               shmBuffer.height,
                               wlBufferResource,
-                              shmBuffer)
+                              shmBuffer,
+                              shmBuffer.stride,
+                              shmBuffer.format)
+        }
+        else if (wlBuffer != null) {
+            buffer = DmabufBuffer(wlBufferResource,
+                                  wlBuffer.dmabufAttributes)
         }
         else if (this.eglQueryWaylandBufferWL != null) {
             val queryWlEglBuffer = this.eglQueryWaylandBufferWL
@@ -184,17 +330,27 @@ import javax.inject.Singleton
                 val width = widthP.get()
                 val height = heightP.get()
 
+                val yInvertedP = Pointer.nref(0)
+                var yInverted = false
+                if (queryWlEglBuffer != null) {
+                    //buffers that don't report an orientation are y-inverted
+                    yInverted = queryWlEglBuffer(this.eglDisplay,
+                                                 bufferPointer,
+                                                 EGL_WAYLAND_Y_INVERTED_WL,
+                                                 yInvertedP.address) == 0 || yInvertedP.get() != 0
+                }
+
                 buffer = EglBuffer(width,
                                    height,
                                    wlBufferResource,
-                                   textureFormat)
+                                   textureFormat,
+                                   yInverted)
             }
             else {
                 buffer = UnsupportedBuffer(wlBufferResource)
             }
         }
         else {
-            //TODO dma buffer.
             buffer = UnsupportedBuffer(wlBufferResource)
         }
 
@@ -203,7 +359,8 @@ import javax.inject.Singleton
     }
 
     override fun eglConfig(eglDisplay: Long,
-                           eglExtensions: String): Long {
+                           eglExtensions: String,
+                           surfaceType: Int): Long {
 
         assert(eglDisplay != EGL_NO_DISPLAY)
 
@@ -216,7 +373,7 @@ import javax.inject.Singleton
                              Pointer::class.java)
         val num_configs = Pointer.nref(0)
         val egl_config_attribs = Pointer.nref(//@formatter:off
-                EGL_SURFACE_TYPE, EGL_WINDOW_BIT,
+                EGL_SURFACE_TYPE, surfaceType,
                 EGL_RED_SIZE, 1,
                 EGL_GREEN_SIZE, 1,
                 EGL_BLUE_SIZE, 1,
@@ -238,6 +395,8 @@ import javax.inject.Singleton
 
         bindWlEglDisplay(eglDisplay,
                          eglExtensions)
+        bindDamageExtensions(eglExtensions)
+        bindDmabufExtensions(eglExtensions)
         this.eglDisplay = eglDisplay
 
         return configs.get().address
@@ -270,6 +429,165 @@ import javax.inject.Singleton
 
     }
 
+    private fun bindDamageExtensions(eglExtensions: String) {
+
+        this.hasBufferAge = eglExtensions.contains("EGL_EXT_buffer_age")
+        if (!this.hasBufferAge) {
+            LOGGER.warning("Extension EGL_EXT_buffer_age not available. Damaged outputs will be repainted completely.")
+        }
+
+        if (eglExtensions.contains("EGL_KHR_swap_buffers_with_damage")) {
+            this.eglSwapBuffersWithDamage = wrap(EglSwapBuffersWithDamageKHR::class.java,
+                                                 this.libEGL.eglGetProcAddress(Pointer.nref("eglSwapBuffersWithDamageKHR").address)).get()
+        }
+        else if (eglExtensions.contains("EGL_EXT_swap_buffers_with_damage")) {
+            this.eglSwapBuffersWithDamage = wrap(EglSwapBuffersWithDamageKHR::class.java,
+                                                 this.libEGL.eglGetProcAddress(Pointer.nref("eglSwapBuffersWithDamageEXT").address)).get()
+        }
+    }
+
+    private fun bindDmabufExtensions(eglExtensions: String) {
+
+        if (!eglExtensions.contains("EGL_EXT_image_dma_buf_import") || !eglExtensions.contains("EGL_KHR_image_base")) {
+            LOGGER.warning("Extension EGL_EXT_image_dma_buf_import not available. Required for dmabuf support.")
+            return
+        }
+
+        //might already be bound for wayland egl buffers
+        if (this.eglCreateImageKHR == null) {
+            this.eglCreateImageKHR = wrap(EglCreateImageKHR::class.java,
+                                          this.libEGL.eglGetProcAddress(Pointer.nref("eglCreateImageKHR").address)).get()
+            this.eglDestroyImageKHR = wrap(EglDestroyImageKHR::class.java,
+                                           this.libEGL.eglGetProcAddress(Pointer.nref("eglDestroyImageKHR").address)).get()
+        }
+        if (this.glEGLImageTargetTexture2DOES == null) {
+            this.glEGLImageTargetTexture2DOES = wrap(GlEGLImageTargetTexture2DOES::class.java,
+                                                     this.libEGL.eglGetProcAddress(Pointer.nref("glEGLImageTargetTexture2DOES").address)).get()
+        }
+
+        if (eglExtensions.contains("EGL_EXT_image_dma_buf_import_modifiers")) {
+            this.eglQueryDmaBufFormatsEXT = wrap(EglQueryDmaBufFormatsEXT::class.java,
+                                                 this.libEGL.eglGetProcAddress(Pointer.nref("eglQueryDmaBufFormatsEXT").address)).get()
+            this.eglQueryDmaBufModifiersEXT = wrap(EglQueryDmaBufModifiersEXT::class.java,
+                                                   this.libEGL.eglGetProcAddress(Pointer.nref("eglQueryDmaBufModifiersEXT").address)).get()
+        }
+
+        this.hasDmabufImport = true
+    }
+
+    override fun dmabufFormats(): Map<Int, List<Long>> = this.dmabufFormats ?: queryDmabufFormats().also {
+        this.dmabufFormats = it
+    }
+
+    private fun queryDmabufFormats(): Map<Int, List<Long>> {
+        if (!this.hasDmabufImport) {
+            return emptyMap()
+        }
+
+        val queryFormats = this.eglQueryDmaBufFormatsEXT
+        val queryModifiers = this.eglQueryDmaBufModifiersEXT
+        if (queryFormats == null || queryModifiers == null) {
+            //no way to ask the driver, assume the formats every driver supports with an implicit layout.
+            return mapOf(Pair(FORMAT_ARGB8888,
+                              listOf(MOD_INVALID)),
+                         Pair(FORMAT_XRGB8888,
+                              listOf(MOD_INVALID)))
+        }
+
+        val numFormats = Pointer.nref(0)
+        if (queryFormats(this.eglDisplay,
+                         0,
+                         0L,
+                         numFormats.address) == 0 || numFormats.get() == 0) {
+            return emptyMap()
+        }
+        val formats = Pointer.nref(*IntArray(numFormats.get()))
+        queryFormats(this.eglDisplay,
+                     numFormats.get(),
+                     formats.address,
+                     numFormats.address)
+
+        val dmabufFormats = mutableMapOf<Int, List<Long>>()
+        (0 until numFormats.get()).forEach {
+            val format = formats.get(it)
+            val numModifiers = Pointer.nref(0)
+            queryModifiers(this.eglDisplay,
+                           format,
+                           0,
+                           0L,
+                           0L,
+                           numModifiers.address)
+            if (numModifiers.get() == 0) {
+                //only an implicit layout is supported
+                dmabufFormats[format] = listOf(MOD_INVALID)
+                return@forEach
+            }
+            val modifiers = Pointer.nref(*LongArray(numModifiers.get()))
+            queryModifiers(this.eglDisplay,
+                           format,
+                           numModifiers.get(),
+                           modifiers.address,
+                           0L,
+                           numModifiers.address)
+            dmabufFormats[format] = (0 until numModifiers.get()).map { modifiers.get(it) }
+        }
+
+        return dmabufFormats
+    }
+
+    override fun canImport(dmabufAttributes: DmabufAttributes): Boolean {
+        //the only reliable check is asking the driver to import it.
+        val eglImage = createDmabufImage(dmabufAttributes)
+        if (eglImage == EGL_NO_IMAGE_KHR) {
+            return false
+        }
+        this.eglDestroyImageKHR?.let {
+            it(this.eglDisplay,
+               eglImage)
+        }
+        return true
+    }
+
+    private fun createDmabufImage(dmabufAttributes: DmabufAttributes): Long {
+        if (!this.hasDmabufImport) {
+            return EGL_NO_IMAGE_KHR
+        }
+
+        val attribs = mutableListOf(EGL_WIDTH,
+                                    dmabufAttributes.width,
+                                    EGL_HEIGHT,
+                                    dmabufAttributes.height,
+                                    EGL_LINUX_DRM_FOURCC_EXT,
+                                    dmabufAttributes.format)
+        dmabufAttributes.planes.forEachIndexed { i, plane ->
+            attribs += listOf(DMA_BUF_PLANE_FD[i],
+                              plane.fd,
+                              DMA_BUF_PLANE_OFFSET[i],
+                              plane.offset,
+                              DMA_BUF_PLANE_PITCH[i],
+                              plane.stride)
+            if (plane.modifier != MOD_INVALID) {
+                if (this.eglQueryDmaBufModifiersEXT == null) {
+                    //the driver would guess the layout
+                    return EGL_NO_IMAGE_KHR
+                }
+                attribs += listOf(DMA_BUF_PLANE_MODIFIER_LO[i],
+                                  plane.modifier.toInt(),
+                                  DMA_BUF_PLANE_MODIFIER_HI[i],
+                                  (plane.modifier ushr 32).toInt())
+            }
+        }
+        attribs += EGL_NONE
+
+        return this.eglCreateImageKHR?.let {
+            it(this.eglDisplay,
+               EGL_NO_CONTEXT,
+               EGL_LINUX_DMA_BUF_EXT,
+               0L,
+               Pointer.nref(*attribs.toIntArray()).address)
+        } ?: EGL_NO_IMAGE_KHR
+    }
+
     private fun bindDisplay(eglDisplay: Long,
                             extensions: String): Boolean {
 
@@ -286,18 +604,159 @@ import javax.inject.Singleton
 
     }
 
+    /**
+     * Draw views on an output. Only the parts of the output that changed since the current back buffer was drawn are
+     * repainted. Nothing is drawn if nothing changed.
+
+     * @param eglOutput the output to draw on.
+     * *
+     * @param wlOutput the wayland output of the egl output.
+     * *
+     * @param surfaceViews the views to draw, from bottom to top.
+     * *
+     * *
+     * @return true if the output was redrawn, false if not.
+     */
+    fun draw(eglOutput: EglOutput,
+             wlOutput: WlOutput,
+             surfaceViews: List<SurfaceView>): Boolean {
+
+        prepareDraw(eglOutput,
+                    wlOutput)
+
+        val output = wlOutput.output
+        val eglOutputState = this.newEglOutputState
+        this.gles2TextureResidency.drawing(output)
+        val viewBoxes = surfaceViews.map {
+            Pair(it,
+                 viewBox(it))
+        }
+        //visible surfaces stay resident, whether they are repainted or not. Only the egl buffer that is attached is
+        //shown, the other buffers a client cycles through can go.
+        viewBoxes.filter { !output.region.intersect(it.second).isEmpty() }.forEach {
+            val wlSurface = it.first.wlSurfaceResource.implementation as WlSurface
+            val surface = wlSurface.surface
+            this.gles2TextureResidency.drawn(surface)
+            surface.state.buffer?.let { this.gles2TextureResidency.drawn(it) }
+        }
+
+        //gather everything that changed since the previous frame
+        var pendingDamage = output.flushDamage()
+        SceneDamage.between(eglOutputState.viewBoxes,
+                            viewBoxes).forEach {
+            pendingDamage += it
+        }
+        var damage = this.finiteRegionFactory.create()
+        output.region.asList().forEach {
+            pendingDamage.intersect(it).asList().forEach {
+                damage += it
+            }
+        }
+
+        val redraw = !damage.isEmpty()
+        if (redraw) {
+            val frameMetrics = this.renderMetrics.frameMetrics(output)
+            frameMetrics?.let {
+                this.gles2GpuTimer.begin(it)
+            }
+
+            val repaintRegion = repaintRegion(eglOutput,
+                                              eglOutputState,
+                                              output,
+                                              damage)
+
+            val opaqueRegions = viewBoxes.map { (surfaceView, viewBox) ->
+                opaqueRegion(surfaceView,
+                             viewBox)
+            }
+
+            //front to back occlusion pass, find the visible part of each view.
+            var covered = this.finiteRegionFactory.create()
+            val opaqueQuads = mutableListOf<Quad>()
+            val translucentQuads = mutableListOf<Quad>()
+            viewBoxes.indices.reversed().forEach lit@ {
+                val (surfaceView, viewBox) = viewBoxes[it]
+                val visibleRegion = repaintRegion.intersect(viewBox) - covered
+                if (visibleRegion.isEmpty()) {
+                    //undamaged or completely hidden behind opaque views
+                    return@lit
+                }
+
+                val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
+                val surface = wlSurface.surface
+                if (!isResident(surface)) {
+                    //evicted to stay within the texture budget, import it again now that we need it.
+                    surface.state.buffer?.let {
+                        importBuffer(surface,
+                                     it)
+                    }
+                }
+
+                val translucentRegion = visibleRegion - opaqueRegions[it]
+                val opaqueRegion = visibleRegion - translucentRegion
+                opaqueQuads += quads(surfaceView,
+                                     opaqueRegion)
+                translucentQuads += quads(surfaceView,
+                                          translucentRegion)
+                covered += opaqueRegion
+            }
+
+            //TODO comment out these 2 calls when we have a shell that provides a solid background.
+            this.libGLESv2.glClearColor(1.0f,
+                                        1.0f,
+                                        1.0f,
+                                        1.0f)
+            //parts covered by opaque views don't need clearing
+            this.gles2State.enable(LibGLESv2.GL_SCISSOR_TEST)
+            (repaintRegion - covered).asList().forEach {
+                scissor(output,
+                        it)
+                this.libGLESv2.glClear(LibGLESv2.GL_COLOR_BUFFER_BIT)
+            }
+            this.gles2State.disable(LibGLESv2.GL_SCISSOR_TEST)
+
+            //opaque quads never overlap so their order does not matter, group them by shader program and texture.
+            //translucent quads are drawn bottom to top on top of them.
+            drawQuads(opaqueQuads.sortedWith(compareBy<Quad>({ it.shaderProgram },
+                                                             { it.textures[0] })),
+                      translucentQuads.asReversed())
+
+            eglOutputState.viewBoxes = viewBoxes
+            eglOutputState.damageHistory = (listOf(damage) + eglOutputState.damageHistory).take(MAX_BUFFER_AGE - 1)
+
+            if (frameMetrics != null) {
+                this.gles2GpuTimer.end()
+            }
+
+            val swapStart = if (frameMetrics != null) System.nanoTime() else 0L
+            finishDraw(eglOutput,
+                       damage.asList().map {
+                           framebufferRectangle(output,
+                                                it)
+                       })
+            frameMetrics?.swapTime?.record(System.nanoTime() - swapStart)
+        }
+
+        //surfaces that are drawn again will be imported again
+        this.gles2TextureResidency.evictions().forEach {
+            evict(it)
+        }
+
+        return redraw
+    }
+
     /**
      * Prepare the renderer for drawing.
      *
      *
-     * This makes sure all subsequent calls to [.drawView] have the correct transformations set up for the given output.
+     * This makes sure all subsequent calls to [.drawQuads] have the correct transformations set up for the given output.
 
      * @param eglOutput
      * *
      * @param wlOutput
      */
-    fun prepareDraw(eglOutput: EglOutput,
-                    wlOutput: WlOutput) {
+    private fun prepareDraw(eglOutput: EglOutput,
+                            wlOutput: WlOutput) {
 
         this.libEGL.eglMakeCurrent(this.eglDisplay,
                                    eglOutput.eglSurface,
@@ -310,25 +769,412 @@ import javax.inject.Singleton
             initRenderer()
         }
 
+        importPendingSurfaces()
+
         setupEglOutputState(eglOutput,
                             wlOutput)
-
-        //TODO comment out these 2 calls when we have a shell that provides a solid background.
-        this.libGLESv2.glClearColor(1.0f,
-                                    1.0f,
-                                    1.0f,
-                                    1.0f)
-        this.libGLESv2.glClear(LibGLESv2.GL_COLOR_BUFFER_BIT)
-
     }
 
     /**
      * Flush all pending drawing commands and signal any listeners that drawing has finish for the given output.
 
      * @param eglOutput
+     * *
+     * @param damage the rectangles that changed since the previous frame, in framebuffer coordinates.
      */
-    fun finishDraw(eglOutput: EglOutput) {
-        flushRenderState(eglOutput)
+    private fun finishDraw(eglOutput: EglOutput,
+                           damage: List<Rectangle>) {
+        flushRenderState(eglOutput,
+                         damage)
+    }
+
+    /**
+     * The region that needs to be repainted so the current back buffer shows the new frame.
+     */
+    private fun repaintRegion(eglOutput: EglOutput,
+                              eglOutputState: EglOutputState,
+                              output: Output,
+                              damage: FiniteRegion): FiniteRegion {
+        val bufferAge = bufferAge(eglOutput)
+        //an age of 0 means the content of the back buffer is undefined.
+        if (bufferAge == 0 || bufferAge - 1 > eglOutputState.damageHistory.size) {
+            return output.region
+        }
+
+        //the back buffer is missing the damage of the frames that were drawn since it was last used.
+        var repaintRegion = damage
+        eglOutputState.damageHistory.take(bufferAge - 1).forEach {
+            repaintRegion += it
+        }
+        return repaintRegion
+    }
+
+    private fun bufferAge(eglOutput: EglOutput): Int {
+        if (!this.hasBufferAge) {
+            return 0
+        }
+
+        val bufferAge = Pointer.nref(0)
+        if (this.libEGL.eglQuerySurface(this.eglDisplay,
+                                        eglOutput.eglSurface,
+                                        EGL_BUFFER_AGE_EXT,
+                                        bufferAge.address) == 0) {
+            return 0
+        }
+        return bufferAge.get()
+    }
+
+    /**
+     * The parts of a view in compositor coordinates that are known to be opaque.
+     */
+    private fun opaqueRegion(surfaceView: SurfaceView,
+                             viewBox: Rectangle): FiniteRegion {
+        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
+        val surface = wlSurface.surface
+        var opaqueRegion = this.finiteRegionFactory.create()
+
+        //buffers without an alpha channel are opaque as a whole
+        var opaqueBuffer = false
+        surface.renderState?.accept(object : SurfaceRenderStateVisitor {
+            override fun visit(shmSurfaceState: ShmSurfaceState): SurfaceRenderState? {
+                opaqueBuffer = shmSurfaceState.shaderProgram == xrgb8888ShaderProgram
+                return null
+            }
+
+            override fun visit(eglSurfaceState: EglSurfaceState): SurfaceRenderState? {
+                opaqueBuffer = eglSurfaceState.shaderProgram == xrgb8888ShaderProgram
+                return null
+            }
+        })
+        if (opaqueBuffer) {
+            return opaqueRegion + viewBox
+        }
+
+        val state = surface.state
+        //TODO map the opaque region through the buffer transform
+        if (state.bufferTransform == Transforms.NORMAL) {
+            val bufferBox = bufferBox(surface)
+            val scale = state.scale
+            state.opaqueRegion?.asList()?.forEach {
+                clip(Rectangle(it.x * scale,
+                               it.y * scale,
+                               it.width * scale,
+                               it.height * scale),
+                     bufferBox)?.let {
+                    opaqueRegion += surfaceView.global(it)
+                }
+            }
+        }
+
+        return opaqueRegion
+    }
+
+    /**
+     * Split the visible part of a view in quads that can be batched.
+     */
+    private fun quads(surfaceView: SurfaceView,
+                      region: FiniteRegion): List<Quad> {
+        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
+        val surface = wlSurface.surface
+        val wlBufferResource = surface.state.buffer ?: return emptyList()
+        val rectangles = region.asList()
+        val quads = mutableListOf<Quad>()
+
+        surface.renderState?.accept(object : SurfaceRenderStateVisitor {
+            override fun visit(shmSurfaceState: ShmSurfaceState): SurfaceRenderState? {
+                val atlasRectangle = shmSurfaceState.atlasRectangle
+                val textures = intArrayOf(shmSurfaceState.texture)
+                rectangles.mapTo(quads) {
+                    if (atlasRectangle == null) {
+                        Quad(surfaceView,
+                             shmSurfaceState.shaderProgram,
+                             shmSurfaceState.target,
+                             textures,
+                             Rectangle(0,
+                                       0,
+                                       shmSurfaceState.pitch,
+                                       shmSurfaceState.height),
+                             it)
+                    }
+                    else {
+                        Quad(surfaceView,
+                             shmSurfaceState.shaderProgram,
+                             shmSurfaceState.target,
+                             textures,
+                             Rectangle(atlasRectangle.x,
+                                       atlasRectangle.y,
+                                       Gles2Atlas.SIZE,
+                                       Gles2Atlas.SIZE),
+                             it)
+                    }
+                }
+                return null
+            }
+
+            override fun visit(eglSurfaceState: EglSurfaceState): SurfaceRenderState? {
+                //the buffer might have been destroyed, together with its egl images and textures.
+                if (eglBufferStates[wlBufferResource] === eglSurfaceState) {
+                    rectangles.mapTo(quads) {
+                        Quad(surfaceView,
+                             eglSurfaceState.shaderProgram,
+                             eglSurfaceState.target,
+                             eglSurfaceState.textures,
+                             Rectangle(0,
+                                       0,
+                                       eglSurfaceState.pitch,
+                                       eglSurfaceState.height),
+                             it,
+                             eglSurfaceState.yInverted)
+                    }
+                }
+                return null
+            }
+        })
+
+        return quads
+    }
+
+    /**
+     * Upload all quads to the vertex buffer in one go and draw them with as few draw calls as possible. Consecutive
+     * quads that use the same shader program and textures are drawn together.
+     */
+    private fun drawQuads(opaqueQuads: List<Quad>,
+                          translucentQuads: List<Quad>) {
+        val quads = opaqueQuads + translucentQuads
+        if (quads.isEmpty()) {
+            return
+        }
+
+        //every quad is made out of 2 triangles, each vertex is a vec2 a_position followed by a vec2 a_texCoord.
+        val vertices = FloatArray(quads.size * 6 * 4)
+        quads.forEachIndexed { i, quad ->
+            quadVertices(quad,
+                         vertices,
+                         i * 6 * 4)
+        }
+
+        this.libGLESv2.glBindBuffer(LibGLESv2.GL_ARRAY_BUFFER,
+                                    this.vertexBuffer)
+        val verticesPointer = Pointer.nref(*vertices)
+        //orphan the previous frame's data so we don't have to wait for the gpu to finish using it.
+        this.libGLESv2.glBufferData(LibGLESv2.GL_ARRAY_BUFFER,
+                                    vertices.size.toLong() * java.lang.Float.BYTES,
+                                    verticesPointer.address,
+                                    LibGLESv2.GL_STREAM_DRAW)
+        verticesPointer.close()
+
+        //vertices are in compositor space already.
+        val projection = this.eglOutputState!!.glTransform
+        var vertexAttributes: Gles2Program? = null
+
+        var first = 0
+        while (first < quads.size) {
+            val quad = quads[first]
+            val translucent = first >= opaqueQuads.size
+
+            //find the end of the batch
+            var last = first + 1
+            while (last < quads.size && (last >= opaqueQuads.size) == translucent && quads[last].shaderProgram == quad.shaderProgram && quads[last].textures contentEquals quad.textures) {
+                last++
+            }
+
+            //state that did not change since the previous batch or frame is filtered out by the state tracker.
+            if (translucent) {
+                this.gles2State.enable(LibGLESv2.GL_BLEND)
+            }
+            else {
+                this.gles2State.disable(LibGLESv2.GL_BLEND)
+            }
+
+            val program = this.shaderPrograms.getValue(quad.shaderProgram)
+            this.gles2State.useProgram(program.program)
+            this.gles2State.uniformMatrix4fv(program.projectionArg,
+                                             projection)
+            this.gles2State.uniformMatrix4fv(program.transformArg,
+                                             Mat4.IDENTITY)
+            if (vertexAttributes == null || vertexAttributes.positionArg != program.positionArg || vertexAttributes.textureCoordinateArg != program.textureCoordinateArg) {
+                vertexAttributes = program
+                vertexAttributes(program)
+            }
+
+            quad.textures.forEachIndexed { i, texture ->
+                this.gles2State.activeTexture(LibGLESv2.GL_TEXTURE0 + i)
+                this.gles2State.bindTexture(quad.target,
+                                            texture)
+                this.gles2State.uniform1i(program.textureArgs[i],
+                                          i)
+            }
+
+            this.libGLESv2.glDrawArrays(LibGLESv2.GL_TRIANGLES,
+                                        first * 6,
+                                        (last - first) * 6)
+            this.drawCalls++
+
+            first = last
+        }
+
+        //cleanup
+        this.gles2State.disable(LibGLESv2.GL_BLEND)
+        this.libGLESv2.glBindBuffer(LibGLESv2.GL_ARRAY_BUFFER,
+                                    0)
+    }
+
+    /**
+     * Point the attributes of a shader program to the quad vertices in the bound vertex buffer.
+     */
+    private fun vertexAttributes(program: Gles2Program) {
+        this.gles2State.enableVertexAttribArray(program.positionArg)
+        this.libGLESv2.glVertexAttribPointer(program.positionArg,
+                                             2,
+                                             LibGLESv2.GL_FLOAT,
+                                             0,
+                                             4 * java.lang.Float.BYTES,
+                                             0L)
+        this.gles2State.enableVertexAttribArray(program.textureCoordinateArg)
+        this.libGLESv2.glVertexAttribPointer(program.textureCoordinateArg,
+                                             2,
+                                             LibGLESv2.GL_FLOAT,
+                                             0,
+                                             4 * java.lang.Float.BYTES,
+                                             2L * java.lang.Float.BYTES)
+    }
+
+    /**
+     * Write the 6 vertices of a quad. The texture coordinates are found by mapping the corners of the quad back to
+     * the buffer of the view.
+     */
+    private fun quadVertices(quad: Quad,
+                             vertices: FloatArray,
+                             offset: Int) {
+        val rectangle = quad.rectangle
+        val left = rectangle.x.toFloat()
+        val top = rectangle.y.toFloat()
+        val right = (rectangle.x + rectangle.width).toFloat()
+        val bottom = (rectangle.y + rectangle.height).toFloat()
+
+        //top left, top right, bottom right, bottom right, bottom left, top left
+        val corners = floatArrayOf(left,
+                                   top,
+                                   right,
+                                   top,
+                                   right,
+                                   bottom,
+                                   right,
+                                   bottom,
+                                   left,
+                                   bottom,
+                                   left,
+                                   top)
+        var i = offset
+        for (corner in 0..5) {
+            val x = corners[corner * 2]
+            val y = corners[corner * 2 + 1]
+            val bufferPosition = quad.surfaceView.inverseTransform * Vec4(x,
+                                                                         y,
+                                                                         0f,
+                                                                         1f)
+            val textureCoordinateY = (quad.textureY + bufferPosition.y) / quad.textureHeight
+            vertices[i++] = x
+            vertices[i++] = y
+            vertices[i++] = (quad.textureX + bufferPosition.x) / quad.textureWidth
+            vertices[i++] = if (quad.yInverted) textureCoordinateY else 1f - textureCoordinateY
+        }
+    }
+
+    private fun scissor(output: Output,
+                        rectangle: Rectangle) {
+        val framebufferRectangle = framebufferRectangle(output,
+                                                        rectangle)
+        this.libGLESv2.glScissor(framebufferRectangle.x,
+                                 framebufferRectangle.y,
+                                 framebufferRectangle.width,
+                                 framebufferRectangle.height)
+    }
+
+    /**
+     * The bounding box of the quad of a view in compositor coordinates, as it will be drawn.
+     */
+    private fun viewBox(surfaceView: SurfaceView): Rectangle {
+        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
+        return surfaceView.global(bufferBox(wlSurface.surface))
+    }
+
+    /**
+     * The size of the texture of a surface, as it will be drawn.
+     */
+    private fun bufferBox(surface: Surface): Rectangle {
+        var width = 0
+        var height = 0
+        surface.renderState?.accept(object : SurfaceRenderStateVisitor {
+            override fun visit(shmSurfaceState: ShmSurfaceState): SurfaceRenderState? {
+                width = shmSurfaceState.pitch
+                height = shmSurfaceState.height
+                return null
+            }
+
+            override fun visit(eglSurfaceState: EglSurfaceState): SurfaceRenderState? {
+                width = eglSurfaceState.pitch
+                height = eglSurfaceState.height
+                return null
+            }
+        })
+        if (surface.renderState == null) {
+            //evicted, fall back to the size of the attached buffer
+            surface.state.buffer?.let {
+                val buffer = queryBuffer(it)
+                width = buffer.width
+                height = buffer.height
+            }
+        }
+
+        return Rectangle(0,
+                         0,
+                         width,
+                         height)
+    }
+
+    /**
+     * Translate a rectangle in compositor coordinates to gl framebuffer coordinates of an output.
+     */
+    private fun framebufferRectangle(output: Output,
+                                     rectangle: Rectangle): Rectangle {
+        val topLeft = output.local(rectangle.position)
+        val bottomRight = output.local(Point(rectangle.x + rectangle.width,
+                                             rectangle.y + rectangle.height))
+        val x = Math.min(topLeft.x,
+                         bottomRight.x)
+        val y = Math.min(topLeft.y,
+                         bottomRight.y)
+        val width = Math.abs(bottomRight.x - topLeft.x)
+        val height = Math.abs(bottomRight.y - topLeft.y)
+
+        //gl framebuffer coordinates start at the bottom left.
+        return Rectangle(x,
+                         output.mode.height - (y + height),
+                         width,
+                         height)
+    }
+
+    private fun intersects(a: Rectangle,
+                           b: Rectangle): Boolean = a.x < b.x + b.width && b.x < a.x + a.width && a.y < b.y + b.height && b.y < a.y + a.height
+
+    private fun clip(a: Rectangle,
+                     b: Rectangle): Rectangle? {
+        if (!intersects(a,
+                        b)) {
+            return null
+        }
+
+        val x = Math.max(a.x,
+                         b.x)
+        val y = Math.max(a.y,
+                         b.y)
+        return Rectangle(x,
+                         y,
+                         Math.min(a.x + a.width,
+                                  b.x + b.width) - x,
+                         Math.min(a.y + a.height,
+                                  b.y + b.height) - y)
     }
 
     private fun initRenderer() {
@@ -342,6 +1188,13 @@ import javax.inject.Singleton
             LOGGER.severe("Required extension GL_EXT_texture_format_BGRA8888 not available")
             System.exit(1)
         }
+        this.hasUnpackSubimage = glExtensions.contains("GL_EXT_unpack_subimage")
+        if (!this.hasUnpackSubimage) {
+            LOGGER.warning("Extension GL_EXT_unpack_subimage not available. Partial shm uploads will be done using complete rows.")
+        }
+        this.gles2ProgramCache.bind(glExtensions)
+        this.gles2GpuTimer.bind(glExtensions)
+
         //this shader is reused in wl egl
         this.argb8888ShaderProgram = createShaderProgram(VERTEX_SHADER,
                                                          Gles2Shaders.FRAGMENT_SHADER_ARGB8888,
@@ -350,24 +1203,10 @@ import javax.inject.Singleton
                                                          Gles2Shaders.FRAGMENT_SHADER_XRGB8888,
                                                          1)
 
-        //compile wl egl shaders
+        //wl egl shaders are compiled lazily, the first time a client uses them.
         if (this.hasWlEglDisplay) {
-            this.y_u_vShaderProgram = createShaderProgram(VERTEX_SHADER,
-                                                          FRAGMENT_SHADER_EGL_Y_U_V,
-                                                          3)
-            this.y_uvShaderProgram = createShaderProgram(VERTEX_SHADER,
-                                                         FRAGMENT_SHADER_EGL_Y_UV,
-                                                         2)
-            this.y_xuxvShaderProgram = createShaderProgram(VERTEX_SHADER,
-                                                           FRAGMENT_SHADER_EGL_Y_XUXV,
-                                                           2)
-
-            if (glExtensions.contains("GL_OES_EGL_image_external")) {
-                this.externalImageShaderProgram = createShaderProgram(VERTEX_SHADER,
-                                                                      FRAGMENT_SHADER_EGL_EXTERNAL,
-                                                                      1)
-            }
-            else {
+            this.hasImageExternal = glExtensions.contains("GL_OES_EGL_image_external")
+            if (!this.hasImageExternal) {
                 LOGGER.warning("Extension GL_OES_EGL_image_external not available.")
             }
         }
@@ -375,6 +1214,12 @@ import javax.inject.Singleton
         //configure texture blending
         this.libGLESv2.glBlendFunc(LibGLESv2.GL_ONE,
                                    LibGLESv2.GL_ONE_MINUS_SRC_ALPHA)
+
+        //vertex buffer reused for every frame
+        val vertexBuffer = Pointer.nref(0)
+        this.libGLESv2.glGenBuffers(1,
+                                    vertexBuffer.address)
+        this.vertexBuffer = vertexBuffer.get()
         this.init = true
     }
 
@@ -388,22 +1233,74 @@ import javax.inject.Singleton
         this.eglOutputState = eglOutputState
     }
 
-    private fun flushRenderState(eglOutput: EglOutput) {
+    private fun flushRenderState(eglOutput: EglOutput,
+                                 damage: List<Rectangle>) {
         eglOutput.state = this.newEglOutputState
-        this.libEGL.eglSwapBuffers(this.eglDisplay,
-                                   eglOutput.eglSurface)
+
+        val swapBuffersWithDamage = this.eglSwapBuffersWithDamage
+        if (swapBuffersWithDamage != null && !damage.isEmpty()) {
+            val rects = IntArray(damage.size * 4)
+            damage.forEachIndexed { i, rectangle ->
+                rects[i * 4] = rectangle.x
+                rects[i * 4 + 1] = rectangle.y
+                rects[i * 4 + 2] = rectangle.width
+                rects[i * 4 + 3] = rectangle.height
+            }
+            swapBuffersWithDamage(this.eglDisplay,
+                                  eglOutput.eglSurface,
+                                  Pointer.nref(*rects).address,
+                                  damage.size)
+        }
+        else {
+            this.libEGL.eglSwapBuffers(this.eglDisplay,
+                                       eglOutput.eglSurface)
+        }
     }
 
     private fun createShaderProgram(vertexShaderSource: String,
                                     fragmentShaderSource: String,
                                     nroTextures: Int): Int {
+        //shader program
+        val shaderProgram = this.libGLESv2.glCreateProgram()
+        if (!this.gles2ProgramCache.load(shaderProgram,
+                                         vertexShaderSource,
+                                         fragmentShaderSource)) {
+            linkShaderProgram(shaderProgram,
+                              vertexShaderSource,
+                              fragmentShaderSource)
+            this.gles2ProgramCache.store(shaderProgram,
+                                         vertexShaderSource,
+                                         fragmentShaderSource)
+        }
+
+        //find shader arguments, locations differ between programs.
+        val textureArgs = IntArray(nroTextures)
+        for (i in 0..nroTextures - 1) {
+            textureArgs[i] = this.libGLESv2.glGetUniformLocation(shaderProgram,
+                                                                 Pointer.nref("u_texture" + i).address)
+        }
+        this.shaderPrograms[shaderProgram] = Gles2Program(shaderProgram,
+                                                          this.libGLESv2.glGetUniformLocation(shaderProgram,
+                                                                                              Pointer.nref("u_projection").address),
+                                                          this.libGLESv2.glGetUniformLocation(shaderProgram,
+                                                                                              Pointer.nref("u_transform").address),
+                                                          this.libGLESv2.glGetAttribLocation(shaderProgram,
+                                                                                             Pointer.nref("a_position").address),
+                                                          this.libGLESv2.glGetAttribLocation(shaderProgram,
+                                                                                             Pointer.nref("a_texCoord").address),
+                                                          textureArgs)
+
+        return shaderProgram
+    }
+
+    private fun linkShaderProgram(shaderProgram: Int,
+                                  vertexShaderSource: String,
+                                  fragmentShaderSource: String) {
         val vertexShader = compileShader(vertexShaderSource,
                                          LibGLESv2.GL_VERTEX_SHADER)
         val fragmentShader = compileShader(fragmentShaderSource,
                                            LibGLESv2.GL_FRAGMENT_SHADER)
 
-        //shader program
-        val shaderProgram = this.libGLESv2.glCreateProgram()
         this.libGLESv2.glAttachShader(shaderProgram,
                                       vertexShader)
 
@@ -436,23 +1333,6 @@ import javax.inject.Singleton
             System.err.println("Error compiling the vertex shader: " + log.get())
             System.exit(1)
         }
-
-        //find shader arguments
-        this.projectionArg = this.libGLESv2.glGetUniformLocation(shaderProgram,
-                                                                 Pointer.nref("u_projection").address)
-        this.transformArg = this.libGLESv2.glGetUniformLocation(shaderProgram,
-                                                                Pointer.nref("u_transform").address)
-        this.positionArg = this.libGLESv2.glGetAttribLocation(shaderProgram,
-                                                              Pointer.nref("a_position").address)
-        this.textureCoordinateArg = this.libGLESv2.glGetAttribLocation(shaderProgram,
-                                                                       Pointer.nref("a_texCoord").address)
-
-        for (i in 0..nroTextures - 1) {
-            this.textureArgs[i] = this.libGLESv2.glGetUniformLocation(shaderProgram,
-                                                                      Pointer.nref("u_texture" + i).address)
-        }
-
-        return shaderProgram
     }
 
     private fun initOutputRenderState(eglOutput: EglOutput,
@@ -563,104 +1443,142 @@ import javax.inject.Singleton
         //@formatter:on
     }
 
-    fun drawView(surfaceView: SurfaceView) {
-        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
-        wlSurface.surface.state.buffer?.let {
-            drawView(surfaceView,
-                     it)
+    /**
+     * Import the content of all surfaces that were committed since the last draw. This happens once per commit, no
+     * matter on how many outputs the surface is drawn.
+     */
+    private fun importPendingSurfaces() {
+        if (this.pendingImports.isEmpty()) {
+            return
+        }
+
+        val surfaces = this.pendingImports.toList()
+        this.pendingImports.clear()
+        surfaces.filterNot { it.isDestroyed }.forEach { surface ->
+            surface.state.buffer?.let {
+                importBuffer(surface,
+                             it)
+            }
         }
     }
 
-    private fun drawView(surfaceView: SurfaceView,
-                         wlBufferResource: WlBufferResource) {
+    private fun importBuffer(surface: Surface,
+                             wlBufferResource: WlBufferResource) {
         queryBuffer(wlBufferResource).accept(object : BufferVisitor {
             override fun visit(buffer: Buffer) {
                 LOGGER.warning("Unsupported buffer.")
             }
 
             override fun visit(eglBuffer: EglBuffer) {
-                drawEgl(surfaceView,
-                        eglBuffer)
+                queryEglSurfaceRenderState(surface,
+                                           eglBuffer.wlBufferResource) {
+                    createEglSurfaceRenderState(eglBuffer)
+                }
+            }
+
+            override fun visit(dmabufBuffer: DmabufBuffer) {
+                queryEglSurfaceRenderState(surface,
+                                           dmabufBuffer.wlBufferResource) {
+                    createDmabufSurfaceRenderState(dmabufBuffer)
+                }
             }
 
             override fun visit(smBuffer: SmBuffer) {
-                drawShm(surfaceView,
-                        smBuffer)
+                queryShmSurfaceRenderState(surface,
+                                           smBuffer)
             }
         })
+
+        registerTextures(surface,
+                         wlBufferResource)
     }
 
-    private fun drawShm(surfaceView: SurfaceView,
-                        smBuffer: SmBuffer) {
-        queryShmSurfaceRenderState(surfaceView,
-                                   smBuffer.shmBuffer)?.accept(object : SurfaceRenderStateVisitor {
+    /**
+     * Register the gpu memory held by the render state of a surface with [Gles2TextureResidency]. An shm texture
+     * belongs to the surface, egl images and textures belong to the buffer they were imported from. Space in an atlas
+     * is not counted, evicting it would not free anything.
+     */
+    private fun registerTextures(surface: Surface,
+                                 wlBufferResource: WlBufferResource) {
+        var shmBytes: Long? = null
+        surface.renderState?.accept(object : SurfaceRenderStateVisitor {
             override fun visit(shmSurfaceState: ShmSurfaceState): SurfaceRenderState? {
-                drawShm(surfaceView,
-                        shmSurfaceState)
+                if (shmSurfaceState.atlasRectangle == null) {
+                    shmBytes = shmSurfaceState.pitch.toLong() * shmSurfaceState.height * 4
+                }
+                return null
+            }
+
+            override fun visit(eglSurfaceState: EglSurfaceState): SurfaceRenderState? {
+                gles2TextureResidency.resident(wlBufferResource,
+                                               wlBufferResource.client,
+                                               eglSurfaceState.pitch.toLong() * eglSurfaceState.height * 4)
                 return null
             }
         })
+
+        val bytes = shmBytes
+        if (bytes == null) {
+            this.gles2TextureResidency.evicted(surface)
+        }
+        else {
+            this.gles2TextureResidency.resident(surface,
+                                                wlBufferResource.client,
+                                                bytes)
+        }
     }
 
-    private fun queryShmSurfaceRenderState(surfaceView: SurfaceView,
-                                           shmBuffer: ShmBuffer): SurfaceRenderState? {
-        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
-        val surface = wlSurface.surface
+    private fun queryShmSurfaceRenderState(surface: Surface,
+                                           smBuffer: SmBuffer): SurfaceRenderState? {
         val renderStateOptional = surface.renderState?.accept(object : SurfaceRenderStateVisitor {
             override fun visit(shmSurfaceState: ShmSurfaceState): SurfaceRenderState? {
                 //the surface already has an shm render state associated. update it.
-                return createShmSurfaceRenderState(surfaceView,
-                                                   shmBuffer,
+                return createShmSurfaceRenderState(smBuffer,
                                                    shmSurfaceState)
             }
 
             override fun visit(eglSurfaceState: EglSurfaceState): SurfaceRenderState? {
                 //the surface was previously associated with an egl render state but is now using an shm render state. create it.
-                destroy(eglSurfaceState)
-                //TODO we could reuse the texture id from the egl surface render state
-                return createShmSurfaceRenderState(surfaceView,
-                                                   shmBuffer,
+                return createShmSurfaceRenderState(smBuffer,
                                                    oldRenderState = null)
             }
-        }) ?: createShmSurfaceRenderState(surfaceView,
-                                          shmBuffer,
+        }) ?: createShmSurfaceRenderState(smBuffer,
                                           oldRenderState = null)
 
         if (renderStateOptional != null) {
             surface.renderState = renderStateOptional
         }
         else {
-            onDestroy(surfaceView.wlSurfaceResource)
+            destroyRenderState(surface)
         }
 
         return renderStateOptional
     }
 
-    private fun createShmSurfaceRenderState(surfaceView: SurfaceView,
-                                            shmBuffer: ShmBuffer,
+    private fun createShmSurfaceRenderState(smBuffer: SmBuffer,
                                             oldRenderState: ShmSurfaceState?): SurfaceRenderState? {
+        val shmBuffer = smBuffer.shmBuffer
         //new values
         val pitch: Int
-        val height = shmBuffer.height
+        val height = smBuffer.height
         val target = LibGLESv2.GL_TEXTURE_2D
         val shaderProgram: Int
         val glFormat: Int
         val glPixelType: Int
-        val texture: Int
 
-        val shmBufferFormat = shmBuffer.format
+        val shmBufferFormat = smBuffer.format
         val argb8888 = WlShmFormat.ARGB8888.value
         val xrgb8888 = WlShmFormat.XRGB8888.value
 
         if (argb8888 == shmBufferFormat) {
             shaderProgram = this.argb8888ShaderProgram
-            pitch = shmBuffer.stride / 4
+            pitch = smBuffer.stride / 4
             glFormat = LibGLESv2.GL_BGRA_EXT
             glPixelType = LibGLESv2.GL_UNSIGNED_BYTE
         }
         else if (xrgb8888 == shmBufferFormat) {
             shaderProgram = this.xrgb8888ShaderProgram
-            pitch = shmBuffer.stride / 4
+            pitch = smBuffer.stride / 4
             glFormat = LibGLESv2.GL_BGRA_EXT
             glPixelType = LibGLESv2.GL_UNSIGNED_BYTE
         }
@@ -672,204 +1590,264 @@ import javax.inject.Singleton
 
         val newShmSurfaceState: ShmSurfaceState
 
-
-        if (oldRenderState != null) {
-            val oldShmSurfaceState = oldRenderState
-            texture = oldShmSurfaceState.texture
-
-            newShmSurfaceState = ShmSurfaceState(pitch,
-                                                 height,
-                                                 target,
-                                                 shaderProgram,
-                                                 glFormat,
-                                                 glPixelType,
-                                                 texture)
-
-            if (pitch != oldShmSurfaceState.pitch || height != oldShmSurfaceState.height || glFormat != oldShmSurfaceState.glFormat || glPixelType != oldShmSurfaceState.glPixelType) {
-                //state needs full texture updating
-                shmUpdateAll(surfaceView,
-                             shmBuffer,
-                             newShmSurfaceState)
+        if (oldRenderState != null && pitch == oldRenderState.pitch && height == oldRenderState.height && glFormat == oldRenderState.glFormat && glPixelType == oldRenderState.glPixelType) {
+            //partial texture update
+            newShmSurfaceState = oldRenderState.copy(shaderProgram = shaderProgram,
+                                                     damage = this.finiteRegionFactory.create())
+            shmUpdateDamaged(shmBuffer,
+                             newShmSurfaceState,
+                             oldRenderState.damage)
+        }
+        else {
+            //state needs full texture updating, small surfaces share an atlas, others get a texture of their own.
+            if (oldRenderState != null && oldRenderState.atlasRectangle != null) {
+                destroy(oldRenderState)
+            }
+            val atlasAllocation = allocateAtlas(pitch,
+                                                height)
+            val texture: Int
+            if (atlasAllocation != null) {
+                if (oldRenderState != null && oldRenderState.atlasRectangle == null) {
+                    destroy(oldRenderState)
+                }
+                texture = atlasAllocation.first.texture
             }
             else {
-                //partial texture update
-                shmUpdateDamaged(surfaceView,
-                                 shmBuffer,
-                                 newShmSurfaceState)
+                //reuse the old texture if we had one
+                texture = if (oldRenderState != null && oldRenderState.atlasRectangle == null) oldRenderState.texture else genTexture(target)
             }
-        }
-        else {
-            //allocate new texture id & upload full texture
-            texture = genTexture(target)
+
             newShmSurfaceState = ShmSurfaceState(pitch,
                                                  height,
                                                  target,
                                                  shaderProgram,
                                                  glFormat,
                                                  glPixelType,
-                                                 texture)
-            shmUpdateAll(surfaceView,
-                         shmBuffer,
+                                                 texture,
+                                                 this.finiteRegionFactory.create(),
+                                                 atlasAllocation?.second)
+            shmUpdateAll(shmBuffer,
                          newShmSurfaceState)
         }
 
         return newShmSurfaceState
     }
 
-    private fun shmUpdateDamaged(wlSurfaceResource: SurfaceView,
-                                 shmBuffer: ShmBuffer,
-                                 newShmSurfaceState: ShmSurfaceState) {
-        //TODO implement damage
-        shmUpdateAll(wlSurfaceResource,
-                     shmBuffer,
-                     newShmSurfaceState)
-    }
+    /**
+     * Find space for a small shm buffer in one of the atlases, creating a new atlas if needed.
 
-    private fun shmUpdateAll(surfaceView: SurfaceView,
-                             shmBuffer: ShmBuffer,
-                             newShmSurfaceState: ShmSurfaceState) {
-        this.libGLESv2.glBindTexture(newShmSurfaceState.target,
-                                     newShmSurfaceState.texture)
-        shmBuffer.beginAccess()
-        this.libGLESv2.glTexImage2D(newShmSurfaceState.target,
-                                    0,
-                                    newShmSurfaceState.glFormat,
-                                    newShmSurfaceState.pitch,
-                                    newShmSurfaceState.height,
-                                    0,
-                                    newShmSurfaceState.glFormat,
-                                    newShmSurfaceState.glPixelType,
-                                    JNI.unwrap(shmBuffer.data))
-        shmBuffer.endAccess()
-        this.libGLESv2.glBindTexture(newShmSurfaceState.target,
-                                     0)
+     * @return the atlas and the space reserved in it, or null if the buffer is too big to share a texture.
+     */
+    private fun allocateAtlas(width: Int,
+                              height: Int): Pair<Gles2Atlas, Rectangle>? {
+        if (width > Gles2Atlas.MAX_ENTRY_SIZE || height > Gles2Atlas.MAX_ENTRY_SIZE) {
+            return null
+        }
 
-        //FIXME firing the paint callback here is actually wrong since we might still need to draw on a different output. Only when all views of a surface are processed, we can call the fire paint callback.
-        //TODO Introduce the concept of views => output <-- view (=many2many) --> surface
-        //FIXME we should only fire the callback once all views are rendered
-        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
-        wlSurface.surface.firePaintCallbacks(NANOSECONDS.toMillis(System.nanoTime()).toInt())
+        this.atlases.forEach { atlas ->
+            atlas.allocate(width,
+                           height)?.let {
+                return Pair(atlas,
+                            it)
+            }
+        }
 
+        val texture = genTexture(LibGLESv2.GL_TEXTURE_2D)
+        this.libGLESv2.glTexImage2D(LibGLESv2.GL_TEXTURE_2D,
+                                    0,
+                                    LibGLESv2.GL_BGRA_EXT,
+                                    Gles2Atlas.SIZE,
+                                    Gles2Atlas.SIZE,
+                                    0,
+                                    LibGLESv2.GL_BGRA_EXT,
+                                    LibGLESv2.GL_UNSIGNED_BYTE,
+                                    0L)
+        val atlas = Gles2Atlas(texture)
+        this.atlases += atlas
+        return atlas.allocate(width,
+                              height)?.let {
+            Pair(atlas,
+                 it)
+        }
     }
 
-    private fun drawShm(surfaceView: SurfaceView,
-                        shmSurfaceState: ShmSurfaceState) {
-
-        val shaderProgram = shmSurfaceState.shaderProgram
-
-        //activate & setup shader
-        this.libGLESv2.glUseProgram(shaderProgram)
-        setupVertexParams(surfaceView,
-                          shmSurfaceState.pitch.toFloat(),
-                          shmSurfaceState.height.toFloat())
+    private fun shmUpdateDamaged(shmBuffer: ShmBuffer,
+                                 newShmSurfaceState: ShmSurfaceState,
+                                 damage: Region) {
+        val damageRectangles = ShmUploads.rectangles(damage.asList(),
+                                                     newShmSurfaceState.pitch,
+                                                     newShmSurfaceState.height,
+                                                     this.hasUnpackSubimage)
+        if (!damageRectangles.isEmpty()) {
+            shmUpload(shmBuffer,
+                      newShmSurfaceState,
+                      damageRectangles)
+        }
+    }
 
-        //set the buffer in the shader
-        this.libGLESv2.glActiveTexture(LibGLESv2.GL_TEXTURE0)
-        this.libGLESv2.glBindTexture(shmSurfaceState.target,
-                                     shmSurfaceState.texture)
-        this.libGLESv2.glUniform1i(this.textureArgs[0],
-                                   0)
+    private fun shmUpload(shmBuffer: ShmBuffer,
+                          newShmSurfaceState: ShmSurfaceState,
+                          damageRectangles: List<Rectangle>) {
+        val target = newShmSurfaceState.target
+        val glFormat = newShmSurfaceState.glFormat
+        val glPixelType = newShmSurfaceState.glPixelType
+        val stride = shmBuffer.stride
+        //position of the buffer in its texture
+        val textureX = newShmSurfaceState.atlasRectangle?.x ?: 0
+        val textureY = newShmSurfaceState.atlasRectangle?.y ?: 0
+
+        this.gles2State.bindTexture(target,
+                                    newShmSurfaceState.texture)
+        shmBuffer.beginAccess()
+        val data = JNI.unwrap(shmBuffer.data)
+
+        if (this.hasUnpackSubimage) {
+            //upload each damaged rectangle, the row length lets gl skip over the undamaged part of each row.
+            this.libGLESv2.glPixelStorei(LibGLESv2.GL_UNPACK_ROW_LENGTH_EXT,
+                                         newShmSurfaceState.pitch)
+            damageRectangles.forEach {
+                this.libGLESv2.glPixelStorei(LibGLESv2.GL_UNPACK_SKIP_PIXELS_EXT,
+                                             it.x)
+                this.libGLESv2.glPixelStorei(LibGLESv2.GL_UNPACK_SKIP_ROWS_EXT,
+                                             it.y)
+                this.libGLESv2.glTexSubImage2D(target,
+                                               0,
+                                               textureX + it.x,
+                                               textureY + it.y,
+                                               it.width,
+                                               it.height,
+                                               glFormat,
+                                               glPixelType,
+                                               data)
+                this.uploadedBytes += it.width.toLong() * it.height * 4
+            }
+            this.libGLESv2.glPixelStorei(LibGLESv2.GL_UNPACK_ROW_LENGTH_EXT,
+                                         0)
+            this.libGLESv2.glPixelStorei(LibGLESv2.GL_UNPACK_SKIP_PIXELS_EXT,
+                                         0)
+            this.libGLESv2.glPixelStorei(LibGLESv2.GL_UNPACK_SKIP_ROWS_EXT,
+                                         0)
+        }
+        else {
+            //the rectangles cover complete rows, they start at the first pixel of a row.
+            damageRectangles.forEach {
+                this.libGLESv2.glTexSubImage2D(target,
+                                               0,
+                                               textureX,
+                                               textureY + it.y,
+                                               it.width,
+                                               it.height,
+                                               glFormat,
+                                               glPixelType,
+                                               data + it.y.toLong() * stride)
+                this.uploadedBytes += stride.toLong() * it.height
+            }
+        }
 
-        //draw
-        //enable texture blending
-        this.libGLESv2.glEnable(LibGLESv2.GL_BLEND)
-        this.libGLESv2.glDrawArrays(LibGLESv2.GL_TRIANGLES,
-                                    0,
-                                    6)
+        shmBuffer.endAccess()
+    }
 
-        //cleanup
-        this.libGLESv2.glDisable(LibGLESv2.GL_BLEND)
-        this.libGLESv2.glDisableVertexAttribArray(this.positionArg)
-        this.libGLESv2.glDisableVertexAttribArray(this.textureArgs[0])
-        this.libGLESv2.glUseProgram(0)
+    private fun shmUpdateAll(shmBuffer: ShmBuffer,
+                             newShmSurfaceState: ShmSurfaceState) {
+        this.gles2State.bindTexture(newShmSurfaceState.target,
+                                    newShmSurfaceState.texture)
+        shmBuffer.beginAccess()
+        val atlasRectangle = newShmSurfaceState.atlasRectangle
+        if (atlasRectangle == null) {
+            this.libGLESv2.glTexImage2D(newShmSurfaceState.target,
+                                        0,
+                                        newShmSurfaceState.glFormat,
+                                        newShmSurfaceState.pitch,
+                                        newShmSurfaceState.height,
+                                        0,
+                                        newShmSurfaceState.glFormat,
+                                        newShmSurfaceState.glPixelType,
+                                        JNI.unwrap(shmBuffer.data))
+        }
+        else {
+            //the atlas texture is already allocated, only fill in our part.
+            this.libGLESv2.glTexSubImage2D(newShmSurfaceState.target,
+                                           0,
+                                           atlasRectangle.x,
+                                           atlasRectangle.y,
+                                           newShmSurfaceState.pitch,
+                                           newShmSurfaceState.height,
+                                           newShmSurfaceState.glFormat,
+                                           newShmSurfaceState.glPixelType,
+                                           JNI.unwrap(shmBuffer.data))
+        }
+        shmBuffer.endAccess()
+        this.uploadedBytes += shmBuffer.stride.toLong() * newShmSurfaceState.height
     }
 
-    private fun queryEglSurfaceRenderState(surfaceView: SurfaceView,
-                                           eglBuffer: EglBuffer): SurfaceRenderState? {
+    private fun queryEglSurfaceRenderState(surface: Surface,
+                                           wlBufferResource: WlBufferResource,
+                                           createEglSurfaceRenderState: () -> EglSurfaceState?): SurfaceRenderState? {
 
-        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
-        val surface = wlSurface.surface
-        val renderStateOptional = surface.renderState?.accept(object : SurfaceRenderStateVisitor {
+        surface.renderState?.accept(object : SurfaceRenderStateVisitor {
             override fun visit(shmSurfaceState: ShmSurfaceState): SurfaceRenderState? {
-                //the surface was previously associated with an shm render state but is now using an egl render state. create it.
+                //the surface was previously associated with an shm render state but is now using an egl render state.
                 destroy(shmSurfaceState)
-                return createEglSurfaceRenderState(eglBuffer,
-                                                   oldRenderState = null)
+                return null
             }
+        })
 
-            override fun visit(eglSurfaceState: EglSurfaceState): SurfaceRenderState? {
-                //TODO we could reuse the texture id
-                //the surface already has an egl render state associated. update it.
-                return createEglSurfaceRenderState(eglBuffer,
-                                                   eglSurfaceState)
+        //egl render states belong to the buffer they were imported from, a buffer that was committed before can be used as is.
+        val renderStateOptional = this.eglBufferStates[wlBufferResource] ?: createEglSurfaceRenderState()?.also {
+            this.eglBufferStates[wlBufferResource] = it
+            wlBufferResource.register {
+                this.eglBufferStates.remove(wlBufferResource)?.let {
+                    destroy(it)
+                }
+                this.gles2TextureResidency.evicted(wlBufferResource)
             }
-        }) ?: createEglSurfaceRenderState(eglBuffer,
-                                          oldRenderState = null)
-
-        if (renderStateOptional != null) {
-            surface.renderState = renderStateOptional
-        }
-        else {
-            onDestroy(surfaceView.wlSurfaceResource)
         }
 
+        surface.renderState = renderStateOptional
+
         return renderStateOptional
     }
 
-    private fun createEglSurfaceRenderState(eglBuffer: EglBuffer,
-                                            oldRenderState: EglSurfaceState?): SurfaceRenderState? {
+    private fun createEglSurfaceRenderState(eglBuffer: EglBuffer): EglSurfaceState? {
 
         //surface egl render states:
         val pitch = eglBuffer.width
         val height = eglBuffer.height
-        var yInverted: Boolean = false
+        val yInverted = eglBuffer.yInverted
         val shaderProgram: Int
         val target: Int
-        val textures: IntArray
-        val eglImages: LongArray
+        val planes: Int
 
         //gather render states:
         val buffer = eglBuffer.wlBufferResource.pointer
 
-        val queryWaylandBuffer = this.eglQueryWaylandBufferWL
-
-        val yInvertedP = Pointer.nref(0)
-
-        if (queryWaylandBuffer != null) {
-            yInverted = queryWaylandBuffer(this.eglDisplay,
-                                           buffer,
-                                           EGL_WAYLAND_Y_INVERTED_WL,
-                                           yInvertedP.address) == 0 || yInvertedP.get() != 0
-        }
-
         when (eglBuffer.textureFormat) {
             EGL_TEXTURE_RGB, EGL_TEXTURE_RGBA -> {
-                textures = IntArray(1)
-                eglImages = LongArray(1)
+                planes = 1
                 target = LibGLESv2.GL_TEXTURE_2D
                 shaderProgram = this.argb8888ShaderProgram
             }
             EGL_TEXTURE_EXTERNAL_WL           -> {
-                textures = IntArray(1)
-                eglImages = LongArray(1)
+                if (!this.hasImageExternal) {
+                    LOGGER.warning("Can not draw external egl buffer, extension GL_OES_EGL_image_external not available.")
+                    return null
+                }
+                planes = 1
                 target = LibGLESv2.GL_TEXTURE_EXTERNAL_OES
                 shaderProgram = this.externalImageShaderProgram
             }
             EGL_TEXTURE_Y_UV_WL               -> {
-                textures = IntArray(2)
-                eglImages = LongArray(2)
+                planes = 2
                 target = LibGLESv2.GL_TEXTURE_2D
                 shaderProgram = this.y_uvShaderProgram
             }
             EGL_TEXTURE_Y_U_V_WL              -> {
-                textures = IntArray(3)
-                eglImages = LongArray(3)
+                planes = 3
                 target = LibGLESv2.GL_TEXTURE_2D
                 shaderProgram = this.y_u_vShaderProgram
             }
             EGL_TEXTURE_Y_XUXV_WL             -> {
-                textures = IntArray(2)
-                eglImages = LongArray(2)
+                planes = 2
                 target = LibGLESv2.GL_TEXTURE_2D
                 shaderProgram = this.y_xuxvShaderProgram
             }
@@ -878,17 +1856,9 @@ import javax.inject.Singleton
             }
         }
 
-        //delete old egl images
-        oldRenderState?.let {
-            for (oldEglImage in it.eglImages) {
-                this.eglDestroyImageKHR?.let {
-                    it(eglDisplay,
-                       oldEglImage)
-                }
-            }
-        }
-
         //create egl images
+        val textures = IntArray(planes)
+        val eglImages = LongArray(planes)
         val attribs = IntArray(3)
 
         for (i in eglImages.indices) {
@@ -904,44 +1874,26 @@ import javax.inject.Singleton
                    Pointer.nref(*attribs).address)
             } ?: 0L
             if (eglImage == EGL_NO_IMAGE_KHR) {
+                //cleanup the planes we already imported
+                destroy(EglSurfaceState(pitch,
+                                        height,
+                                        target,
+                                        shaderProgram,
+                                        yInverted,
+                                        textures.copyOf(i),
+                                        eglImages.copyOf(i)))
                 return null
             }
             else {
                 eglImages[i] = eglImage
             }
 
-            //make sure we have valid texture ids
-            oldRenderState?.let {
-
-                val oldTextures = it.textures
-                val deltaNewTextures = textures.size - oldTextures.size
-                val needNewTextures = deltaNewTextures > 0
-
-                //reuse old texture ids
-                System.arraycopy(oldTextures,
-                                 0,
-                                 textures,
-                                 0,
-                                 if (needNewTextures) oldTextures.size else textures.size)
+            //each plane gets its own texture, bound to its egl image only once.
+            textures[i] = genTexture(target)
 
-                if (needNewTextures) {
-                    //generate missing texture ids
-                    for (j in textures.size - 1 downTo textures.size - deltaNewTextures) {
-                        textures[j] = genTexture(target)
-                    }
-                }
-                else if (deltaNewTextures < 0) {
-                    //cleanup old unused texture ids
-                    for (j in oldTextures.size - 1 downTo oldTextures.size + deltaNewTextures) {
-                        this.libGLESv2.glDeleteTextures(1,
-                                                        Pointer.nref(oldTextures[j]).address)
-                    }
-                }
-            }
-
-            this.libGLESv2.glActiveTexture(LibGLESv2.GL_TEXTURE0 + i)
-            this.libGLESv2.glBindTexture(target,
-                                         textures[i])
+            this.gles2State.activeTexture(LibGLESv2.GL_TEXTURE0 + i)
+            this.gles2State.bindTexture(target,
+                                        textures[i])
             this.glEGLImageTargetTexture2DOES?.let {
                 it(target,
                    eglImage)
@@ -958,77 +1910,56 @@ import javax.inject.Singleton
 
     }
 
-    private fun drawEgl(surfaceView: SurfaceView,
-                        eglBuffer: EglBuffer) {
+    private fun createDmabufSurfaceRenderState(dmabufBuffer: DmabufBuffer): EglSurfaceState? {
 
-        queryEglSurfaceRenderState(surfaceView,
-                                   eglBuffer)?.accept(object : SurfaceRenderStateVisitor {
-            override fun visit(eglSurfaceState: EglSurfaceState): SurfaceRenderState? {
-                drawEgl(surfaceView,
-                        eglSurfaceState)
-                return null
+        val dmabufAttributes = dmabufBuffer.dmabufAttributes
+        val shaderProgram: Int
+        val target: Int
+
+        when (dmabufAttributes.format) {
+            FORMAT_ARGB8888 -> {
+                target = LibGLESv2.GL_TEXTURE_2D
+                shaderProgram = this.argb8888ShaderProgram
             }
-        })
-    }
+            FORMAT_XRGB8888 -> {
+                target = LibGLESv2.GL_TEXTURE_2D
+                shaderProgram = this.xrgb8888ShaderProgram
+            }
+            else            -> {
+                //the driver converts all other formats, multi planar yuv included, when sampling an external image.
+                if (!this.hasImageExternal) {
+                    LOGGER.warning("Can not draw dmabuf format ${dmabufAttributes.format}, extension GL_OES_EGL_image_external not available.")
+                    return null
+                }
+                target = LibGLESv2.GL_TEXTURE_EXTERNAL_OES
+                shaderProgram = this.externalImageShaderProgram
+            }
+        }
 
-    private fun drawEgl(surfaceView: SurfaceView,
-                        eglSurfaceState: EglSurfaceState) {
-
-        //TODO unify with drawShm
-        val shaderProgram = eglSurfaceState.shaderProgram
-
-        //activate & setup shader
-        this.libGLESv2.glUseProgram(shaderProgram)
-        setupVertexParams(surfaceView,
-                          eglSurfaceState.pitch.toFloat(),
-                          eglSurfaceState.height.toFloat())
-
-        //set the buffer in the shader
-        val textures = eglSurfaceState.textures
-        run {
-            var i = 0
-            val texturesLength = textures.size
-            while (i < texturesLength) {
-                val texture = textures[i]
-                val target = eglSurfaceState.target
-
-                this.libGLESv2.glActiveTexture(LibGLESv2.GL_TEXTURE0 + i)
-                this.libGLESv2.glBindTexture(target,
-                                             texture)
-                this.libGLESv2.glTexParameteri(target,
-                                               LibGLESv2.GL_TEXTURE_MIN_FILTER,
-                                               LibGLESv2.GL_NEAREST)
-                this.libGLESv2.glTexParameteri(target,
-                                               LibGLESv2.GL_TEXTURE_MAG_FILTER,
-                                               LibGLESv2.GL_NEAREST)
-                this.libGLESv2.glUniform1i(this.textureArgs[i],
-                                           0)
-                i++
-            }
-        }
-
-        //draw
-        //enable texture blending
-        this.libGLESv2.glEnable(LibGLESv2.GL_BLEND)
-        this.libGLESv2.glDrawArrays(LibGLESv2.GL_TRIANGLES,
-                                    0,
-                                    6)
+        //all planes are imported as a single egl image
+        val eglImage = createDmabufImage(dmabufAttributes)
+        if (eglImage == EGL_NO_IMAGE_KHR) {
+            LOGGER.warning("Failed to import dmabuf.")
+            return null
+        }
 
-        //cleanup
-        this.libGLESv2.glDisable(LibGLESv2.GL_BLEND)
-        this.libGLESv2.glDisableVertexAttribArray(this.positionArg)
-        var i = 0
-        val texturesLength = textures.size
-        while (i < texturesLength) {
-            this.libGLESv2.glDisableVertexAttribArray(this.textureArgs[i])
-            i++
-        }
-        this.libGLESv2.glUseProgram(0)
-
-        //FIXME firing the paint callback here is actually wrong since we might still need to draw on a different output. Only when all views of a surface are processed, we can call the fire paint callback.
-        //FIXME we should only fire the callback once all views are rendered
-        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
-        wlSurface.surface.firePaintCallbacks(NANOSECONDS.toMillis(System.nanoTime()).toInt())
+        val texture = genTexture(target)
+        this.gles2State.activeTexture(LibGLESv2.GL_TEXTURE0)
+        this.gles2State.bindTexture(target,
+                                    texture)
+        this.glEGLImageTargetTexture2DOES?.let {
+            it(target,
+               eglImage)
+        }
+
+        //dmabufs start with the top row unless flagged otherwise
+        return EglSurfaceState(dmabufAttributes.width,
+                               dmabufAttributes.height,
+                               target,
+                               shaderProgram,
+                               !dmabufAttributes.yInverted,
+                               intArrayOf(texture),
+                               longArrayOf(eglImage))
     }
 
     private fun genTexture(target: Int): Int {
@@ -1037,8 +1968,8 @@ import javax.inject.Singleton
         this.libGLESv2.glGenTextures(1,
                                      texture.address)
         val textureId = texture.get()
-        this.libGLESv2.glBindTexture(target,
-                                     textureId)
+        this.gles2State.bindTexture(target,
+                                    textureId)
         this.libGLESv2.glTexParameteri(target,
                                        LibGLESv2.GL_TEXTURE_WRAP_S,
                                        LibGLESv2.GL_CLAMP_TO_EDGE)
@@ -1051,87 +1982,52 @@ import javax.inject.Singleton
         this.libGLESv2.glTexParameteri(target,
                                        LibGLESv2.GL_TEXTURE_MAG_FILTER,
                                        LibGLESv2.GL_NEAREST)
-        this.libGLESv2.glBindTexture(target,
-                                     0)
         return textureId
 
     }
 
-    private fun setupVertexParams(surfaceView: SurfaceView,
-                                  bufferWidth: Float,
-                                  bufferHeight: Float) {
-
-        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
-        val surface = wlSurface.surface
-        val transform = (surfaceView.positionTransform * surface.transform).toArray()
-
-        //define vertex data
-        val vertexData = vertexData(bufferWidth,
-                                    bufferHeight)
-
-        //upload uniform vertex data
-        val projectionBuffer = Pointer.nref(*this.eglOutputState!!.glTransform.toArray())
-        this.libGLESv2.glUniformMatrix4fv(this.projectionArg,
-                                          1,
-                                          0,
-                                          projectionBuffer.address)
-
-        val transformBuffer = Pointer.nref(*transform)
-        this.libGLESv2.glUniformMatrix4fv(this.transformArg,
-                                          1,
-                                          0,
-                                          transformBuffer.address)
-        //set vertex data in shader
-        this.libGLESv2.glEnableVertexAttribArray(this.positionArg)
-        this.libGLESv2.glVertexAttribPointer(this.positionArg,
-                                             2,
-                                             LibGLESv2.GL_FLOAT,
-                                             0,
-                                             4 * java.lang.Float.BYTES,
-                                             vertexData.address)
-
-        this.libGLESv2.glEnableVertexAttribArray(this.textureCoordinateArg)
-        this.libGLESv2.glVertexAttribPointer(this.textureCoordinateArg,
-                                             2,
-                                             LibGLESv2.GL_FLOAT,
-                                             0,
-                                             4 * java.lang.Float.BYTES,
-                                             (vertexData + 2).address)
-
-    }
-
-    private fun vertexData(bufferWidth: Float,
-                           bufferHeight: Float): Pointer<Float> {
-        //first pair => attribute vec2 a_position
-        //second pair => attribute vec2 a_texCoord
-        return Pointer.nref(//top left:
-                0f,
-                0f,
-                0f,
-                0f, //top right:
-                bufferWidth,
-                0f,
-                1f,
-                0f, //bottom right:
-                bufferWidth,
-                bufferHeight,
-                1f,
-                1f, //bottom right:
-                bufferWidth,
-                bufferHeight,
-                1f,
-                1f, //bottom left:
-                0f,
-                bufferHeight,
-                0f,
-                1f, //top left:
-                0f,
-                0f,
-                0f,
-                0f)
+    /**
+     * A visible rectangle of a view in compositor coordinates, together with everything needed to draw it. The
+     * texture box holds the position of the buffer in its textures and the size of those textures. A buffer that is
+     * not y-inverted starts with its bottom row and has to fill its textures.
+     */
+    private class Quad(val surfaceView: SurfaceView,
+                       val shaderProgram: Int,
+                       val target: Int,
+                       val textures: IntArray,
+                       textureBox: Rectangle,
+                       val rectangle: Rectangle,
+                       val yInverted: Boolean = true) {
+        val textureX = textureBox.x.toFloat()
+        val textureY = textureBox.y.toFloat()
+        val textureWidth = textureBox.width.toFloat()
+        val textureHeight = textureBox.height.toFloat()
     }
 
     companion object {
         private val LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+        //oldest back buffer we keep the damage history for
+        private val MAX_BUFFER_AGE = 4
+        //dmabuf import attributes of each plane
+        private val DMA_BUF_PLANE_FD = intArrayOf(EGL_DMA_BUF_PLANE0_FD_EXT,
+                                                  EGL_DMA_BUF_PLANE1_FD_EXT,
+                                                  EGL_DMA_BUF_PLANE2_FD_EXT,
+                                                  EGL_DMA_BUF_PLANE3_FD_EXT)
+        private val DMA_BUF_PLANE_OFFSET = intArrayOf(EGL_DMA_BUF_PLANE0_OFFSET_EXT,
+                                                      EGL_DMA_BUF_PLANE1_OFFSET_EXT,
+                                                      EGL_DMA_BUF_PLANE2_OFFSET_EXT,
+                                                      EGL_DMA_BUF_PLANE3_OFFSET_EXT)
+        private val DMA_BUF_PLANE_PITCH = intArrayOf(EGL_DMA_BUF_PLANE0_PITCH_EXT,
+                                                     EGL_DMA_BUF_PLANE1_PITCH_EXT,
+                                                     EGL_DMA_BUF_PLANE2_PITCH_EXT,
+                                                     EGL_DMA_BUF_PLANE3_PITCH_EXT)
+        private val DMA_BUF_PLANE_MODIFIER_LO = intArrayOf(EGL_DMA_BUF_PLANE0_MODIFIER_LO_EXT,
+                                                           EGL_DMA_BUF_PLANE1_MODIFIER_LO_EXT,
+                                                           EGL_DMA_BUF_PLANE2_MODIFIER_LO_EXT,
+                                                           EGL_DMA_BUF_PLANE3_MODIFIER_LO_EXT)
+        private val DMA_BUF_PLANE_MODIFIER_HI = intArrayOf(EGL_DMA_BUF_PLANE0_MODIFIER_HI_EXT,
+                                                           EGL_DMA_BUF_PLANE1_MODIFIER_HI_EXT,
+                                                           EGL_DMA_BUF_PLANE2_MODIFIER_HI_EXT,
+                                                           EGL_DMA_BUF_PLANE3_MODIFIER_HI_EXT)
     }
 }
@@ -19,6 +19,7 @@ package org.westford.compositor.gles2
 
 import dagger.Module
 import dagger.Provides
+import org.westford.compositor.core.DmabufImporter
 import org.westford.compositor.core.GlRenderer
 import org.westford.compositor.core.Renderer
 
@@ -33,4 +34,8 @@ import javax.inject.Singleton
     @Provides @Singleton internal fun createRenderer(glRenderer: GlRenderer): Renderer {
         return glRenderer
     }
+
+    @Provides @Singleton internal fun createDmabufImporter(gles2Renderer: Gles2Renderer): DmabufImporter {
+        return gles2Renderer
+    }
 }
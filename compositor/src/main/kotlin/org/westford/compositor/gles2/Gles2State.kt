@@ -0,0 +1,139 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.gles2
+
+import org.freedesktop.jaccall.Pointer
+import org.westford.compositor.core.calc.Mat4
+import org.westford.nativ.libGLESv2.LibGLESv2
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Shadows the state of the gl context so calls that would not change anything never reach the driver. All state
+ * changes that go through this class must only be done through this class.
+ */
+@Singleton class Gles2State @Inject internal constructor(private val libGLESv2: LibGLESv2) {
+
+    private var program = 0
+    private var activeTexture = LibGLESv2.GL_TEXTURE0
+    //texture bound to each (texture unit, target)
+    private val textures = mutableMapOf<Pair<Int, Int>, Int>()
+    private val capabilities = mutableMapOf<Int, Boolean>()
+    private val vertexAttribArrays = mutableSetOf<Int>()
+    //uniform values are program state, so they are remembered for each program.
+    private val uniforms = mutableMapOf<Int, MutableMap<Int, Any>>()
+
+    fun useProgram(program: Int) {
+        if (this.program != program) {
+            this.program = program
+            this.libGLESv2.glUseProgram(program)
+        }
+    }
+
+    fun activeTexture(texture: Int) {
+        if (this.activeTexture != texture) {
+            this.activeTexture = texture
+            this.libGLESv2.glActiveTexture(texture)
+        }
+    }
+
+    fun bindTexture(target: Int,
+                    texture: Int) {
+        val binding = Pair(this.activeTexture,
+                           target)
+        if (this.textures[binding] != texture) {
+            this.textures[binding] = texture
+            this.libGLESv2.glBindTexture(target,
+                                         texture)
+        }
+    }
+
+    fun deleteTexture(texture: Int) {
+        //gl reverts the bindings of a deleted texture to 0
+        this.textures.entries.filter { it.value == texture }.forEach {
+            it.setValue(0)
+        }
+        this.libGLESv2.glDeleteTextures(1,
+                                        Pointer.nref(texture).address)
+    }
+
+    fun enable(capability: Int) {
+        if (this.capabilities[capability] != true) {
+            this.capabilities[capability] = true
+            this.libGLESv2.glEnable(capability)
+        }
+    }
+
+    fun disable(capability: Int) {
+        //capabilities we never touched are assumed to be in their initial, disabled state.
+        if (this.capabilities[capability] == true) {
+            this.capabilities[capability] = false
+            this.libGLESv2.glDisable(capability)
+        }
+    }
+
+    fun enableVertexAttribArray(index: Int) {
+        if (this.vertexAttribArrays.add(index)) {
+            this.libGLESv2.glEnableVertexAttribArray(index)
+        }
+    }
+
+    fun disableVertexAttribArray(index: Int) {
+        if (this.vertexAttribArrays.remove(index)) {
+            this.libGLESv2.glDisableVertexAttribArray(index)
+        }
+    }
+
+    /**
+     * Set an integer uniform of the program currently in use.
+     */
+    fun uniform1i(location: Int,
+                  value: Int) {
+        if (updateUniform(location,
+                          value)) {
+            this.libGLESv2.glUniform1i(location,
+                                       value)
+        }
+    }
+
+    /**
+     * Set a matrix uniform of the program currently in use.
+     */
+    fun uniformMatrix4fv(location: Int,
+                         value: Mat4) {
+        if (updateUniform(location,
+                          value)) {
+            val matrix = Pointer.nref(*value.toArray())
+            this.libGLESv2.glUniformMatrix4fv(location,
+                                              1,
+                                              0,
+                                              matrix.address)
+            matrix.close()
+        }
+    }
+
+    private fun updateUniform(location: Int,
+                              value: Any): Boolean {
+        val uniforms = this.uniforms.getOrPut(this.program) { mutableMapOf() }
+        if (uniforms[location] == value) {
+            return false
+        }
+        uniforms[location] = value
+        return true
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.gles2
+
+import org.freedesktop.wayland.server.Client
+import org.westford.compositor.core.Output
+import java.util.LinkedHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Keeps track of the gpu memory held by surface textures and decides which textures have to be dropped once a memory
+ * budget is exceeded. Textures are registered with the object that owns them, eg. the surface of an shm texture or the
+ * buffer of an egl image. Dropped textures are imported again as soon as a surface that shows them has to be drawn.
+ */
+@Singleton class Gles2TextureResidency @Inject internal constructor() {
+
+    /**
+     * Number of bytes surface textures may use before the least recently drawn ones are evicted.
+     */
+    var budget = DEFAULT_BUDGET
+    /**
+     * Number of bytes currently held by surface textures.
+     */
+    var usage: Long = 0
+        private set
+
+    private var frame: Long = 0
+    //outputs drawn in the current frame
+    private val frameOutputs = mutableSetOf<Output>()
+    //in access order, least recently drawn first
+    private val entries = LinkedHashMap<Any, Entry>(16,
+                                                        0.75f,
+                                                        true)
+
+    /**
+     * Register the gpu memory held by the textures of an owner, replacing any previous registration.
+
+     * @param owner the object that owns the textures.
+     * *
+     * @param client the client that owns the textures.
+     * *
+     * @param bytes the number of bytes held.
+     */
+    fun resident(owner: Any,
+                 client: Client,
+                 bytes: Long) {
+        val entry = Entry(client,
+                          bytes)
+        entry.lastDrawn = this.frame
+        this.entries.put(owner,
+                         entry)?.let {
+            this.usage -= it.bytes
+        }
+        this.usage += bytes
+    }
+
+    /**
+     * Forget the textures of an owner, eg. because they were evicted or destroyed.
+     */
+    fun evicted(owner: Any) {
+        this.entries.remove(owner)?.let {
+            this.usage -= it.bytes
+        }
+    }
+
+    /**
+     * Mark the textures of an owner as drawn in the current frame.
+     */
+    fun drawn(owner: Any) {
+        this.entries[owner]?.lastDrawn = this.frame
+    }
+
+    /**
+     * Signal that an output is about to be drawn. A frame lasts until an output is drawn for the second time, so it
+     * spans one repaint of every output. Textures drawn in the current frame are never evicted.
+
+     * @param output the output that is drawn.
+     */
+    fun drawing(output: Output) {
+        if (!this.frameOutputs.add(output)) {
+            this.frame++
+            this.frameOutputs.clear()
+            this.frameOutputs += output
+        }
+    }
+
+    /**
+     * Find the owners of the least recently drawn textures that have to be evicted to get back within budget.
+
+     * @return the owners to evict, the caller is responsible for dropping their textures.
+     */
+    fun evictions(): List<Any> {
+        val evictions = mutableListOf<Any>()
+        var usage = this.usage
+        for ((owner, entry) in this.entries) {
+            if (usage <= this.budget) {
+                break
+            }
+            if (entry.lastDrawn == this.frame) {
+                continue
+            }
+            evictions += owner
+            usage -= entry.bytes
+        }
+        return evictions
+    }
+
+    /**
+     * The number of bytes held by the surface textures of a client.
+     */
+    fun usage(client: Client): Long = this.entries.values.filter { it.client == client }.map { it.bytes }.sum()
+
+    private class Entry(val client: Client,
+                        val bytes: Long) {
+        var lastDrawn: Long = 0
+    }
+
+    companion object {
+        //in MiB
+        private val DEFAULT_BUDGET = java.lang.Long.getLong("westford.gles2.texturebudget",
+                                                            256L) * 1024 * 1024
+    }
+}
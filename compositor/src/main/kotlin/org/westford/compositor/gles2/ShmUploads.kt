@@ -0,0 +1,94 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.gles2
+
+import org.westford.compositor.core.Rectangle
+
+/**
+ * Turns the damage of an shm buffer into the rectangles that have to be uploaded to its texture.
+ */
+object ShmUploads {
+
+    /**
+     * Find the parts of an shm buffer to upload.
+
+     * @param damage the damaged parts of the buffer in buffer coordinates, possibly out of its bounds.
+     * *
+     * @param width the width of the buffer in pixels.
+     * *
+     * @param height the height of the buffer in pixels.
+     * *
+     * @param rowLength true if gl can skip over the undamaged part of each row, eg. with GL_EXT_unpack_subimage.
+     * *
+     * *
+     * @return the rectangles to upload, inside the buffer. Without a row length each rectangle covers complete rows.
+     */
+    fun rectangles(damage: List<Rectangle>,
+                   width: Int,
+                   height: Int,
+                   rowLength: Boolean): List<Rectangle> {
+        val clipped = damage.mapNotNull {
+            clip(it,
+                 width,
+                 height)
+        }
+        if (rowLength) {
+            return clipped
+        }
+
+        //without a row length we can only upload complete rows. Overlapping and adjacent bands share their rows.
+        val bands = mutableListOf<Rectangle>()
+        clipped.sortedBy { it.y }.forEach {
+            val last = bands.lastOrNull()
+            if (last != null && it.y <= last.y + last.height) {
+                bands[bands.lastIndex] = Rectangle(0,
+                                                   last.y,
+                                                   width,
+                                                   Math.max(last.y + last.height,
+                                                            it.y + it.height) - last.y)
+            }
+            else {
+                bands += Rectangle(0,
+                                   it.y,
+                                   width,
+                                   it.height)
+            }
+        }
+        return bands
+    }
+
+    private fun clip(rectangle: Rectangle,
+                     width: Int,
+                     height: Int): Rectangle? {
+        val x1 = Math.max(rectangle.x,
+                          0)
+        val y1 = Math.max(rectangle.y,
+                          0)
+        val x2 = Math.min(rectangle.x + rectangle.width,
+                          width)
+        val y2 = Math.min(rectangle.y + rectangle.height,
+                          height)
+        if (x2 <= x1 || y2 <= y1) {
+            return null
+        }
+        return Rectangle(x1,
+                         y1,
+                         x2 - x1,
+                         y2 - y1)
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.headless
+
+import com.google.auto.factory.AutoFactory
+import com.google.auto.factory.Provided
+import org.freedesktop.wayland.server.Display
+import org.westford.compositor.core.Output
+import org.westford.compositor.core.PresentTracker
+import org.westford.compositor.core.RenderMetrics
+import org.westford.compositor.core.RepaintSchedulerFactory
+import org.westford.compositor.core.events.Presentation
+import org.westford.compositor.protocol.WlOutput
+import java.util.concurrent.TimeUnit
+
+/**
+ * Paces the frames of a headless output. Rendered frames are presented on a timer that stands in for the vertical
+ * retrace of a real display.
+
+ * @param gpuRendered true if frames are drawn by the gpu, false if they're drawn by the cpu.
+ */
+@AutoFactory(allowSubclasses = true,
+             className = "HeadlessFrameClockFactory") class HeadlessFrameClock(@param:Provided private val display: Display,
+                                                                               @param:Provided private val presentTracker: PresentTracker,
+                                                                               @param:Provided private val renderMetrics: RenderMetrics,
+                                                                               @param:Provided repaintSchedulerFactory: RepaintSchedulerFactory,
+                                                                               private val gpuRendered: Boolean) {
+
+    private val repaintScheduler = repaintSchedulerFactory.create()
+    //virtual vertical retraces happen at a fixed rate, starting from the creation of this clock.
+    private val vblankEpoch = System.nanoTime()
+    private val vblankEventSource = this.display.eventLoop.addTimer {
+        onVblank()
+        0
+    }
+    //output with a rendered frame that waits for the next virtual vertical retrace.
+    private var vblankOutput: Output? = null
+    private var vblankTime: Long = 0
+    private var afterVblankRender: (() -> Unit)? = null
+    private var enabled = true
+
+    fun disable() {
+        this.afterVblankRender = null
+        this.repaintScheduler.cancel()
+        this.enabled = false
+    }
+
+    fun enable() {
+        this.enabled = true
+    }
+
+    /**
+     * Schedule a repaint of an output.
+
+     * @param wlOutput the output to repaint.
+     * *
+     * @param paint draws the output, returns true if anything was redrawn.
+     */
+    fun render(wlOutput: WlOutput,
+               paint: (WlOutput) -> Boolean) {
+        if (!this.enabled) {
+            return
+        }
+
+        //schedule a new render once the current frame is presented, but only if we haven't scheduled one already
+        if (this.vblankOutput != null) {
+            if (this.afterVblankRender == null) {
+                this.afterVblankRender = {
+                    scheduleRepaint(wlOutput,
+                                    paint)
+                }
+            }
+        }
+        else {
+            //no-op if a repaint is already scheduled.
+            scheduleRepaint(wlOutput,
+                            paint)
+        }
+    }
+
+    private fun scheduleRepaint(wlOutput: WlOutput,
+                                paint: (WlOutput) -> Boolean) {
+        this.repaintScheduler.schedule {
+            doRender(wlOutput,
+                     paint)
+        }
+    }
+
+    private fun doRender(wlOutput: WlOutput,
+                         paint: (WlOutput) -> Boolean) {
+        val renderStart = System.nanoTime()
+        val output = wlOutput.output
+
+        val redraw = paint(wlOutput)
+        val now = System.nanoTime()
+        if (redraw) {
+            //wait for the next virtual vertical retrace to 'show' the frame.
+            this.vblankTime = this.vblankEpoch + (sequence(now,
+                                                           output) + 1) * output.refreshInterval
+            this.vblankOutput = output
+            //round up, the timer should never fire before the retrace.
+            val delay = TimeUnit.NANOSECONDS.toMillis(this.vblankTime - now + TimeUnit.MILLISECONDS.toNanos(1) - 1)
+            this.vblankEventSource.updateTimer(Math.max(1,
+                                                        delay.toInt()))
+            this.repaintScheduler.rendered(now - renderStart,
+                                           if (this.gpuRendered) this.renderMetrics.frameMetrics(output)?.gpuTime?.latest else 0)
+        }
+        else {
+            //nothing changed, whatever was painted is 'on screen' already.
+            this.presentTracker.presented(Presentation(output,
+                                                       now,
+                                                       output.refreshInterval,
+                                                       sequence(now,
+                                                                output),
+                                                       0))
+        }
+
+        this.display.flushClients()
+    }
+
+    private fun onVblank() {
+        val output = this.vblankOutput ?: return
+        this.vblankOutput = null
+
+        this.repaintScheduler.presented(this.vblankTime,
+                                        output.refreshInterval)
+        this.presentTracker.presented(Presentation(output,
+                                                   this.vblankTime,
+                                                   output.refreshInterval,
+                                                   sequence(this.vblankTime,
+                                                            output),
+                                                   Presentation.VSYNC))
+
+        this.afterVblankRender?.invoke()
+        this.afterVblankRender = null
+    }
+
+    private fun sequence(time: Long,
+                         output: Output): Long = (time - this.vblankEpoch) / output.refreshInterval
+}
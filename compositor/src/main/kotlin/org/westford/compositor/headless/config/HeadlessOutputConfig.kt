@@ -0,0 +1,30 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.headless.config
+
+import javax.annotation.Nonnegative
+
+/**
+ * A virtual output of the headless platform.
+
+ * @param refresh the refresh rate of the output in mHz, used to pace its frames.
+ */
+data class HeadlessOutputConfig(val name: String,
+                                @get:Nonnegative val width: Int,
+                                @get:Nonnegative val height: Int,
+                                @get:Nonnegative val refresh: Int)
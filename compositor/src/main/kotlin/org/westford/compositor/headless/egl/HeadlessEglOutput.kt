@@ -0,0 +1,100 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.headless.egl
+
+import com.google.auto.factory.AutoFactory
+import com.google.auto.factory.Provided
+import org.westford.compositor.core.EglOutput
+import org.westford.compositor.core.EglOutputState
+import org.westford.compositor.core.Scene
+import org.westford.compositor.gles2.Gles2PainterFactory
+import org.westford.compositor.headless.HeadlessFrameClockFactory
+import org.westford.compositor.headless.config.HeadlessOutputConfig
+import org.westford.compositor.protocol.WlOutput
+
+/**
+ * An output without a display, drawn with gles2 in an off screen egl surface.
+ */
+@AutoFactory(allowSubclasses = true,
+             className = "HeadlessEglOutputFactory") class HeadlessEglOutput(@param:Provided private val gles2PainterFactory: Gles2PainterFactory,
+                                                                             @param:Provided private val scene: Scene,
+                                                                             @param:Provided headlessFrameClockFactory: HeadlessFrameClockFactory,
+                                                                             val headlessOutputConfig: HeadlessOutputConfig,
+                                                                             override val eglSurface: Long,
+                                                                             override val eglContext: Long,
+                                                                             override val eglDisplay: Long) : EglOutput {
+
+    override var state: EglOutputState? = null
+
+    private val headlessFrameClock = headlessFrameClockFactory.create(true)
+
+    override fun disable() = this.headlessFrameClock.disable()
+
+    override fun enable(wlOutput: WlOutput) {
+        this.headlessFrameClock.enable()
+        render(wlOutput)
+    }
+
+    override fun render(wlOutput: WlOutput) = this.headlessFrameClock.render(wlOutput,
+                                                                             this::paint)
+
+    private fun paint(wlOutput: WlOutput): Boolean {
+
+        val subscene = this.scene.subsection(wlOutput.output.region)
+
+        val gles2Painter = this.gles2PainterFactory.create(this,
+                                                           wlOutput)
+
+        //naive generic single pass, bottom to top overdraw rendering.
+        val lockViews = subscene.lockViews
+        val fullscreenView = subscene.fullscreenView
+
+        //lockscreen(s) hide all other screens.
+        if (!lockViews.isEmpty()) {
+            lockViews.forEach {
+                gles2Painter.paint(it)
+            }
+        }
+        else {
+            val fullscreenPainted = fullscreenView?.let {
+                gles2Painter.paint(it)
+            } ?: false
+
+            if (!fullscreenPainted) {
+                //fullscreen view not visible, paint the rest of the subscene.
+                subscene.backgroundView?.let {
+                    gles2Painter.paint(it)
+                }
+                subscene.underViews.forEach {
+                    gles2Painter.paint(it)
+                }
+                subscene.applicationViews.forEach {
+                    gles2Painter.paint(it)
+                }
+                subscene.overViews.forEach {
+                    gles2Painter.paint(it)
+                }
+            }
+        }
+
+        subscene.cursorViews.forEach {
+            gles2Painter.paint(it)
+        }
+        return gles2Painter.commit()
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.headless.egl
+
+import org.freedesktop.jaccall.Pointer
+import org.freedesktop.wayland.shared.WlOutputTransform
+import org.westford.compositor.core.GlRenderer
+import org.westford.compositor.core.Output
+import org.westford.compositor.core.OutputFactory
+import org.westford.compositor.core.OutputGeometry
+import org.westford.compositor.core.OutputMode
+import org.westford.compositor.headless.config.HeadlessOutputConfig
+import org.westford.compositor.headless.config.HeadlessPlatformConfig
+import org.westford.compositor.protocol.WlOutputFactory
+import org.westford.nativ.libEGL.EglGetPlatformDisplayEXT
+import org.westford.nativ.libEGL.LibEGL
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_CLIENT_APIS
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_CONTEXT_CLIENT_VERSION
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_DEFAULT_DISPLAY
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_EXTENSIONS
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_HEIGHT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_NONE
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_NO_CONTEXT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_NO_DISPLAY
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_PBUFFER_BIT
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_PLATFORM_SURFACELESS_MESA
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_VENDOR
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_VERSION
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_WIDTH
+import java.lang.String.format
+import java.util.logging.Logger
+import javax.inject.Inject
+
+class HeadlessEglPlatformFactory @Inject internal constructor(private val libEGL: LibEGL,
+                                                              private val privateHeadlessEglPlatformFactory: PrivateHeadlessEglPlatformFactory,
+                                                              private val headlessPlatformConfig: HeadlessPlatformConfig,
+                                                              private val wlOutputFactory: WlOutputFactory,
+                                                              private val outputFactory: OutputFactory,
+                                                              private val glRenderer: GlRenderer,
+                                                              private val headlessEglOutputFactory: HeadlessEglOutputFactory) {
+
+    fun create(): HeadlessEglPlatform {
+
+        val eglDisplay = createEglDisplay()
+
+        val eglExtensions = Pointer.wrap<String>(String::class.java,
+                                                 this.libEGL.eglQueryString(eglDisplay,
+                                                                            EGL_EXTENSIONS)).get()
+        val eglClientApis = Pointer.wrap<String>(String::class.java,
+                                                 this.libEGL.eglQueryString(eglDisplay,
+                                                                            EGL_CLIENT_APIS)).get()
+        val eglVendor = Pointer.wrap<String>(String::class.java,
+                                             this.libEGL.eglQueryString(eglDisplay,
+                                                                        EGL_VENDOR)).get()
+        val eglVersion = Pointer.wrap<String>(String::class.java,
+                                              this.libEGL.eglQueryString(eglDisplay,
+                                                                         EGL_VERSION)).get()
+
+        LOGGER.info(format("Creating headless EGL output:\n" + "\tEGL client apis: %s\n" + "\tEGL vendor: %s\n" + "\tEGL version: %s\n" + "\tEGL extensions: %s",
+                           eglClientApis,
+                           eglVendor,
+                           eglVersion,
+                           eglExtensions))
+
+        val eglConfig = this.glRenderer.eglConfig(eglDisplay,
+                                                  eglExtensions,
+                                                  EGL_PBUFFER_BIT)
+        val eglContext = createEglContext(eglDisplay,
+                                          eglConfig)
+
+        //place the outputs next to each other, from left to right.
+        var x = 0
+        val wlOutputs = this.headlessPlatformConfig.headlessOutputConfigs.map {
+            if (it.refresh <= 0) {
+                throw IllegalArgumentException(format("Headless output %s needs a refresh rate to pace its frames.",
+                                                      it.name))
+            }
+
+            val headlessEglOutput = this.headlessEglOutputFactory.create(it,
+                                                                         createEglSurface(eglDisplay,
+                                                                                          eglConfig,
+                                                                                          it),
+                                                                         eglContext,
+                                                                         eglDisplay)
+            val wlOutput = this.wlOutputFactory.create(createOutput(headlessEglOutput,
+                                                                    x))
+            x += it.width
+            wlOutput
+        }
+
+        return this.privateHeadlessEglPlatformFactory.create(wlOutputs,
+                                                              eglDisplay,
+                                                              eglContext,
+                                                              eglExtensions)
+    }
+
+    private fun createEglDisplay(): Long {
+
+        val noDisplayExtensions = Pointer.wrap<String>(String::class.java,
+                                                       this.libEGL.eglQueryString(EGL_NO_DISPLAY,
+                                                                                  EGL_EXTENSIONS))
+        if (noDisplayExtensions.address == 0L) {
+            throw RuntimeException("Could not query egl extensions.")
+        }
+        val extensions = noDisplayExtensions.get()
+
+        val eglDisplay: Long
+        if (extensions.contains("EGL_MESA_platform_surfaceless")) {
+            //no window system at all, exactly what we need.
+            val eglGetPlatformDisplayEXT = Pointer.wrap<EglGetPlatformDisplayEXT>(EglGetPlatformDisplayEXT::class.java,
+                                                                                  this.libEGL.eglGetProcAddress(Pointer.nref("eglGetPlatformDisplayEXT").address))
+            eglDisplay = eglGetPlatformDisplayEXT.get()(EGL_PLATFORM_SURFACELESS_MESA,
+                                                        EGL_DEFAULT_DISPLAY,
+                                                        0L)
+        }
+        else {
+            //fall back to whatever the egl implementation thinks is best, we only need pbuffer support.
+            eglDisplay = this.libEGL.eglGetDisplay(EGL_DEFAULT_DISPLAY)
+        }
+        if (eglDisplay == 0L) {
+            throw RuntimeException("eglGetDisplay() failed")
+        }
+        if (this.libEGL.eglInitialize(eglDisplay,
+                                      0L,
+                                      0L) == 0) {
+            throw RuntimeException("eglInitialize() failed")
+        }
+
+        return eglDisplay
+    }
+
+    private fun createEglContext(eglDisplay: Long,
+                                 config: Long): Long {
+        val eglContextAttribs = Pointer.nref(//@formatter:off
+                                             EGL_CONTEXT_CLIENT_VERSION, 2,
+                                             EGL_NONE
+                                             //@formatter:on
+                                            )
+        val context = this.libEGL.eglCreateContext(eglDisplay,
+                                                   config,
+                                                   EGL_NO_CONTEXT,
+                                                   eglContextAttribs.address)
+        if (context == 0L) {
+            throw RuntimeException("eglCreateContext() failed")
+        }
+        return context
+    }
+
+    private fun createEglSurface(eglDisplay: Long,
+                                 config: Long,
+                                 headlessOutputConfig: HeadlessOutputConfig): Long {
+        val eglSurfaceAttribs = Pointer.nref(//@formatter:off
+                                             EGL_WIDTH, headlessOutputConfig.width,
+                                             EGL_HEIGHT, headlessOutputConfig.height,
+                                             EGL_NONE
+                                             //@formatter:on
+                                            )
+        val eglSurface = this.libEGL.eglCreatePbufferSurface(eglDisplay,
+                                                             config,
+                                                             eglSurfaceAttribs.address)
+        if (eglSurface == 0L) {
+            throw RuntimeException("eglCreatePbufferSurface() failed")
+        }
+
+        return eglSurface
+    }
+
+    private fun createOutput(headlessEglOutput: HeadlessEglOutput,
+                             x: Int): Output {
+        val headlessOutputConfig = headlessEglOutput.headlessOutputConfig
+
+        val outputGeometry = OutputGeometry(x = x,
+                                            y = 0,
+                                            subpixel = 0,
+                                            make = "Westford headless",
+                                            model = "Headless",
+                                            physicalWidth = 0,
+                                            physicalHeight = 0,
+                                            transform = WlOutputTransform.NORMAL.value)
+        val outputMode = OutputMode(flags = 0,
+                                    width = headlessOutputConfig.width,
+                                    height = headlessOutputConfig.height,
+                                    refresh = headlessOutputConfig.refresh)
+        return this.outputFactory.create(headlessEglOutput,
+                                         headlessOutputConfig.name,
+                                         outputGeometry,
+                                         outputMode)
+    }
+
+    companion object {
+
+        private val LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.headless.pixman
+
+import org.freedesktop.wayland.shared.WlOutputTransform
+import org.westford.compositor.core.Output
+import org.westford.compositor.core.OutputFactory
+import org.westford.compositor.core.OutputGeometry
+import org.westford.compositor.core.OutputMode
+import org.westford.compositor.headless.config.HeadlessPlatformConfig
+import org.westford.compositor.protocol.WlOutputFactory
+import org.westford.nativ.libpixman1.Libpixman1
+import java.lang.String.format
+import javax.inject.Inject
+
+class HeadlessPixmanPlatformFactory @Inject internal constructor(private val libpixman1: Libpixman1,
+                                                                 private val privateHeadlessPixmanPlatformFactory: PrivateHeadlessPixmanPlatformFactory,
+                                                                 private val headlessPlatformConfig: HeadlessPlatformConfig,
+                                                                 private val wlOutputFactory: WlOutputFactory,
+                                                                 private val outputFactory: OutputFactory,
+                                                                 private val headlessPixmanOutputFactory: HeadlessPixmanOutputFactory) {
+
+    fun create(): HeadlessPixmanPlatform {
+        //place the outputs next to each other, from left to right.
+        var x = 0
+        val wlOutputs = this.headlessPlatformConfig.headlessOutputConfigs.map {
+            if (it.refresh <= 0) {
+                throw IllegalArgumentException(format("Headless output %s needs a refresh rate to pace its frames.",
+                                                      it.name))
+            }
+
+            //let pixman allocate the memory of the framebuffer
+            val framebuffer = this.libpixman1.pixman_image_create_bits(Libpixman1.PIXMAN_x8r8g8b8,
+                                                                       it.width,
+                                                                       it.height,
+                                                                       0L,
+                                                                       0)
+            if (framebuffer == 0L) {
+                throw RuntimeException("pixman_image_create_bits() failed")
+            }
+
+            val wlOutput = this.wlOutputFactory.create(createOutput(this.headlessPixmanOutputFactory.create(it,
+                                                                                                            framebuffer),
+                                                                    x))
+            x += it.width
+            wlOutput
+        }
+
+        return this.privateHeadlessPixmanPlatformFactory.create(wlOutputs)
+    }
+
+    private fun createOutput(headlessPixmanOutput: HeadlessPixmanOutput,
+                             x: Int): Output {
+        val headlessOutputConfig = headlessPixmanOutput.headlessOutputConfig
+
+        val outputGeometry = OutputGeometry(x = x,
+                                            y = 0,
+                                            subpixel = 0,
+                                            make = "Westford headless",
+                                            model = "Headless",
+                                            physicalWidth = 0,
+                                            physicalHeight = 0,
+                                            transform = WlOutputTransform.NORMAL.value)
+        val outputMode = OutputMode(flags = 0,
+                                    width = headlessOutputConfig.width,
+                                    height = headlessOutputConfig.height,
+                                    refresh = headlessOutputConfig.refresh)
+        return this.outputFactory.create(headlessPixmanOutput,
+                                         headlessOutputConfig.name,
+                                         outputGeometry,
+                                         outputMode)
+    }
+}
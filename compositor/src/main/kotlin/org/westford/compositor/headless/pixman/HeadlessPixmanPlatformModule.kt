@@ -0,0 +1,30 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.headless.pixman
+
+import dagger.Module
+import dagger.Provides
+import org.westford.compositor.headless.HeadlessPlatformModule
+
+import javax.inject.Singleton
+
+@Module(includes = arrayOf(HeadlessPlatformModule::class)) class HeadlessPixmanPlatformModule {
+    @Provides @Singleton internal fun provideHeadlessPixmanPlatform(headlessPixmanPlatformFactory: HeadlessPixmanPlatformFactory): HeadlessPixmanPlatform {
+        return headlessPixmanPlatformFactory.create()
+    }
+}
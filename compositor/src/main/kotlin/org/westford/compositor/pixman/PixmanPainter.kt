@@ -0,0 +1,78 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.pixman
+
+import com.google.auto.factory.AutoFactory
+import com.google.auto.factory.Provided
+import org.westford.compositor.core.PixmanOutput
+import org.westford.compositor.core.PresentTracker
+import org.westford.compositor.core.SurfaceView
+import org.westford.compositor.protocol.WlOutput
+import org.westford.compositor.protocol.WlSurface
+
+/**
+ * Convenience class to lazily collect and draw using a [PixmanRenderer].
+ */
+@AutoFactory(allowSubclasses = true,
+             className = "PixmanPainterFactory") class PixmanPainter(@param:Provided private val pixmanRenderer: PixmanRenderer,
+                                                                     @param:Provided private val presentTracker: PresentTracker,
+                                                                     private val pixmanOutput: PixmanOutput,
+                                                                     private val wlOutput: WlOutput) {
+
+    private val surfaceViews = mutableListOf<SurfaceView>()
+
+    /**
+     * Paint a surface using a [PixmanRenderer]. The actual drawing is done when this painter is committed, so only
+     * the damaged parts of the output have to be redrawn.
+
+     * @param surfaceView the view to paint.
+     * *
+     * *
+     * @return true if the view will be painted, false if not due to eg. an absent buffer.
+     */
+    fun paint(surfaceView: SurfaceView): Boolean {
+
+        //if surface not visible, don't even bother.
+        if (!surfaceView.isEnabled || !surfaceView.isDrawable) {
+            return false
+        }
+
+        this.surfaceViews += surfaceView
+
+        return true
+    }
+
+    /**
+     * Draw all painted views. The frame callbacks of the painted surfaces are fired once the output presents them, see
+     * [PresentTracker].
+
+     * @return true if the output was redrawn, false if nothing was painted or nothing changed.
+     */
+    fun commit(): Boolean {
+        if (this.surfaceViews.isEmpty()) {
+            return false
+        }
+
+        val redraw = this.pixmanRenderer.draw(this.pixmanOutput,
+                                              this.wlOutput,
+                                              this.surfaceViews)
+        this.presentTracker.painted(this.wlOutput.output,
+                                    this.surfaceViews.map { (it.wlSurfaceResource.implementation as WlSurface).surface })
+        return redraw
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.pixman
+
+import org.freedesktop.jaccall.JNI
+import org.freedesktop.jaccall.Pointer
+import org.freedesktop.wayland.server.ShmBuffer
+import org.freedesktop.wayland.server.WlBufferResource
+import org.freedesktop.wayland.server.WlSurfaceResource
+import org.freedesktop.wayland.shared.WlShmFormat
+import org.westford.compositor.core.*
+import org.westford.compositor.core.calc.Mat4
+import org.westford.compositor.protocol.WlOutput
+import org.westford.compositor.protocol.WlSurface
+import org.westford.nativ.libpixman1.Libpixman1
+import java.util.logging.Logger
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Draws shm buffers using the cpu. Only the damaged parts of an output are composited, opaque parts of views are
+ * copied instead of blended and views hidden behind them are skipped. Dmabufs are not supported.
+ */
+@Singleton class PixmanRenderer @Inject internal constructor(private val libpixman1: Libpixman1,
+                                                             private val finiteRegionFactory: FiniteRegionFactory) : Renderer, DmabufImporter {
+
+    private val buffers = mutableMapOf<WlBufferResource, Buffer>()
+    //solid white, each of the 4 channels of a pixman_color_t is an unsigned short.
+    private val background by lazy { this.libpixman1.pixman_image_create_solid_fill(Pointer.nref(-1L).address) }
+
+    override fun onApply(surface: Surface) {
+        //shm buffers are composited straight from client memory, there is nothing to import.
+    }
+
+    override fun onDestroy(wlSurfaceResource: WlSurfaceResource) {
+        //no surface state to clean up.
+    }
+
+    override fun queryBuffer(wlBufferResource: WlBufferResource): Buffer {
+        return this.buffers[wlBufferResource] ?: createBuffer(wlBufferResource).also {
+            this.buffers[wlBufferResource] = it
+            wlBufferResource.register {
+                this.buffers.remove(wlBufferResource)
+            }
+        }
+    }
+
+    private fun createBuffer(wlBufferResource: WlBufferResource): Buffer {
+        val shmBuffer = ShmBuffer.get(wlBufferResource) ?: return UnsupportedBuffer(wlBufferResource)
+        return SmBuffer(shmBuffer.width,
+                        shmBuffer.height,
+                        wlBufferResource,
+                        shmBuffer,
+                        shmBuffer.stride,
+                        shmBuffer.format)
+    }
+
+    override fun dmabufFormats(): Map<Int, List<Long>> = emptyMap()
+
+    override fun canImport(dmabufAttributes: DmabufAttributes): Boolean = false
+
+    /**
+     * Draw views on an output. Only the parts of the output that changed since its current framebuffer was drawn are
+     * repainted. Nothing is drawn if nothing changed.
+
+     * @param pixmanOutput the output to draw on.
+     * *
+     * @param wlOutput the wayland output of the pixman output.
+     * *
+     * @param surfaceViews the views to draw, from bottom to top.
+     * *
+     * *
+     * @return true if the output was redrawn, false if not.
+     */
+    fun draw(pixmanOutput: PixmanOutput,
+             wlOutput: WlOutput,
+             surfaceViews: List<SurfaceView>): Boolean {
+        val output = wlOutput.output
+        val pixmanOutputState = pixmanOutput.state ?: PixmanOutputState().also { pixmanOutput.state = it }
+        val viewBoxes = surfaceViews.map {
+            Pair(it,
+                 it.bounds)
+        }
+
+        //gather everything that changed since the previous frame
+        var pendingDamage = output.flushDamage()
+        SceneDamage.between(pixmanOutputState.viewBoxes,
+                            viewBoxes).forEach {
+            pendingDamage += it
+        }
+        var damage = this.finiteRegionFactory.create()
+        output.region.asList().forEach {
+            pendingDamage.intersect(it).asList().forEach {
+                damage += it
+            }
+        }
+
+        if (damage.isEmpty()) {
+            return false
+        }
+
+        //the framebuffer is missing whatever was drawn in the other framebuffers since it was last used.
+        val framebuffer = pixmanOutput.framebuffer
+        val repaintRegion = (pixmanOutputState.damageHistory[framebuffer] ?: output.region) + damage
+
+        //front to back occlusion pass, find the visible part of each view.
+        var covered = this.finiteRegionFactory.create()
+        val opaqueRegions = arrayOfNulls<FiniteRegion>(viewBoxes.size)
+        val translucentRegions = arrayOfNulls<FiniteRegion>(viewBoxes.size)
+        viewBoxes.indices.reversed().forEach lit@ {
+            val (surfaceView, viewBox) = viewBoxes[it]
+            val visibleRegion = repaintRegion.intersect(viewBox) - covered
+            if (visibleRegion.isEmpty()) {
+                //undamaged or completely hidden behind opaque views
+                return@lit
+            }
+
+            val translucentRegion = visibleRegion - opaqueRegion(surfaceView,
+                                                                 viewBox)
+            val opaqueRegion = visibleRegion - translucentRegion
+            opaqueRegions[it] = opaqueRegion
+            translucentRegions[it] = translucentRegion
+            covered += opaqueRegion
+        }
+
+        //TODO remove when we have a shell that provides a solid background.
+        composite(this.background,
+                  framebuffer,
+                  output,
+                  repaintRegion - covered,
+                  Libpixman1.PIXMAN_OP_SRC)
+
+        //bottom to top, opaque parts are copied and translucent parts are blended with what's below.
+        viewBoxes.forEachIndexed { i, (surfaceView, _) ->
+            opaqueRegions[i]?.let {
+                compositeView(surfaceView,
+                              framebuffer,
+                              output,
+                              it,
+                              Libpixman1.PIXMAN_OP_SRC)
+            }
+            translucentRegions[i]?.let {
+                compositeView(surfaceView,
+                              framebuffer,
+                              output,
+                              it,
+                              Libpixman1.PIXMAN_OP_OVER)
+            }
+        }
+
+        pixmanOutputState.viewBoxes = viewBoxes
+        pixmanOutputState.damageHistory = pixmanOutputState.damageHistory.mapValues { it.value + damage } + Pair(framebuffer,
+                                                                                                                this.finiteRegionFactory.create())
+
+        return true
+    }
+
+    /**
+     * The parts of a view in compositor coordinates that are known to be opaque.
+     */
+    private fun opaqueRegion(surfaceView: SurfaceView,
+                             viewBox: Rectangle): FiniteRegion {
+        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
+        val surface = wlSurface.surface
+        var opaqueRegion = this.finiteRegionFactory.create()
+
+        val state = surface.state
+        val wlBufferResource = state.buffer ?: return opaqueRegion
+        //buffers without an alpha channel are opaque as a whole
+        if (ShmBuffer.get(wlBufferResource)?.format == WlShmFormat.XRGB8888.value) {
+            return opaqueRegion + viewBox
+        }
+
+        //TODO map the opaque region through the buffer transform
+        if (state.bufferTransform != Transforms.NORMAL) {
+            return opaqueRegion
+        }
+
+        //the opaque region is in surface coordinates, views map buffer coordinates.
+        val scale = state.scale
+        state.opaqueRegion?.asList()?.forEach {
+            opaqueRegion += surfaceView.global(Rectangle(it.x * scale,
+                                                         it.y * scale,
+                                                         it.width * scale,
+                                                         it.height * scale))
+        }
+        return opaqueRegion.intersect(viewBox)
+    }
+
+    private fun compositeView(surfaceView: SurfaceView,
+                              framebuffer: Long,
+                              output: Output,
+                              region: FiniteRegion,
+                              op: Int) {
+        val wlSurface = surfaceView.wlSurfaceResource.implementation as WlSurface
+        val wlBufferResource = wlSurface.surface.state.buffer ?: return
+        val shmBuffer = ShmBuffer.get(wlBufferResource) ?: return
+
+        val format = when (shmBuffer.format) {
+            WlShmFormat.ARGB8888.value -> Libpixman1.PIXMAN_a8r8g8b8
+            WlShmFormat.XRGB8888.value -> Libpixman1.PIXMAN_x8r8g8b8
+            else                       -> {
+                LOGGER.warning("Unsupported shm buffer format " + shmBuffer.format)
+                return
+            }
+        }
+
+        shmBuffer.beginAccess()
+        val image = this.libpixman1.pixman_image_create_bits(format,
+                                                             shmBuffer.width,
+                                                             shmBuffer.height,
+                                                             JNI.unwrap(shmBuffer.data),
+                                                             shmBuffer.stride)
+        //from framebuffer coordinates to buffer coordinates
+        val transform = surfaceView.inverseTransform * output.transform
+        this.libpixman1.pixman_image_set_transform(image,
+                                                   pixmanTransform(transform).address)
+        this.libpixman1.pixman_image_set_filter(image,
+                                                if (isTranslation(transform)) Libpixman1.PIXMAN_FILTER_NEAREST else Libpixman1.PIXMAN_FILTER_BILINEAR,
+                                                0L,
+                                                0)
+        composite(image,
+                  framebuffer,
+                  output,
+                  region,
+                  op)
+        this.libpixman1.pixman_image_unref(image)
+        shmBuffer.endAccess()
+    }
+
+    private fun composite(image: Long,
+                          framebuffer: Long,
+                          output: Output,
+                          region: FiniteRegion,
+                          op: Int) {
+        region.asList().forEach {
+            val rectangle = framebufferRectangle(output,
+                                                 it)
+            //the transform of the source image maps framebuffer coordinates to source coordinates.
+            this.libpixman1.pixman_image_composite32(op,
+                                                     image,
+                                                     0L,
+                                                     framebuffer,
+                                                     rectangle.x,
+                                                     rectangle.y,
+                                                     0,
+                                                     0,
+                                                     rectangle.x,
+                                                     rectangle.y,
+                                                     rectangle.width,
+                                                     rectangle.height)
+        }
+    }
+
+    private fun framebufferRectangle(output: Output,
+                                     rectangle: Rectangle): Rectangle {
+        val topLeft = output.local(rectangle.position)
+        val bottomRight = output.local(Point(rectangle.x + rectangle.width,
+                                             rectangle.y + rectangle.height))
+        return Rectangle(Math.min(topLeft.x,
+                                  bottomRight.x),
+                         Math.min(topLeft.y,
+                                  bottomRight.y),
+                         Math.abs(bottomRight.x - topLeft.x),
+                         Math.abs(bottomRight.y - topLeft.y))
+    }
+
+    /**
+     * Indicates if a transformation is a plain whole pixel translation, so pixels can be copied without filtering.
+     */
+    private fun isTranslation(transform: Mat4): Boolean = transform.m00 == 1f && transform.m10 == 0f && transform.m01 == 0f && transform.m11 == 1f && transform.m30 == Math.round(transform.m30).toFloat() && transform.m31 == Math.round(transform.m31).toFloat()
+
+    /**
+     * Convert the 2d part of a transformation to a pixman_transform_t, a 3x3 matrix of 16.16 fixed point numbers.
+     */
+    private fun pixmanTransform(transform: Mat4): Pointer<Int> {
+        //@formatter:off
+        return Pointer.nref(fixed(transform.m00), fixed(transform.m10), fixed(transform.m30),
+                            fixed(transform.m01), fixed(transform.m11), fixed(transform.m31),
+                            0,                    0,                    fixed(1f))
+        //@formatter:on
+    }
+
+    private fun fixed(value: Float): Int = Math.round(value * 65536.0).toInt()
+
+    companion object {
+
+        private val LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.protocol
+
+import com.google.auto.factory.AutoFactory
+import com.google.auto.factory.Provided
+import org.freedesktop.wayland.server.Client
+import org.freedesktop.wayland.server.WlBufferRequests
+import org.freedesktop.wayland.server.WlBufferResource
+import org.westford.compositor.core.DmabufAttributes
+import org.westford.nativ.glibc.Libc
+import java.util.*
+import javax.annotation.Nonnegative
+
+/**
+ * A client buffer made of linux dmabufs, created through [ZwpLinuxBufferParams]. The dmabuf file descriptors are
+ * closed once all resources of the buffer are destroyed.
+ */
+@AutoFactory(className = "WlBufferFactory",
+             allowSubclasses = true) class WlBuffer(@param:Provided private val libc: Libc,
+                                                    val dmabufAttributes: DmabufAttributes) : WlBufferRequests, ProtocolObject<WlBufferResource> {
+
+    override val resources: MutableSet<WlBufferResource> = Collections.newSetFromMap(WeakHashMap<WlBufferResource, Boolean>())
+
+    override fun create(client: Client,
+                        @Nonnegative version: Int,
+                        id: Int): WlBufferResource {
+        val wlBufferResource = WlBufferResource(client,
+                                                version,
+                                                id,
+                                                this)
+        wlBufferResource.register {
+            this.dmabufAttributes.planes.forEach {
+                this.libc.close(it.fd)
+            }
+        }
+        return wlBufferResource
+    }
+
+    override fun destroy(resource: WlBufferResource) = resource.destroy()
+}
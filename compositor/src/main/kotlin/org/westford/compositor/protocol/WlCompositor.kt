@@ -58,10 +58,12 @@ import javax.inject.Singleton
 
         //TODO unit test destroy handler
         wlSurfaceResource.register {
+            //repaint whatever was below the views of the surface
+            val damage = surface.views.map { it.bounds }
             this.scene.removeAllViews(wlSurfaceResource)
             surface.markDestroyed()
             this.renderer.onDestroy(wlSurfaceResource)
-            this.compositor.requestRender()
+            this.compositor.requestRender(damage)
         }
     }
 
@@ -173,8 +173,16 @@ import javax.annotation.Nonnegative
     override fun damageBuffer(requester: WlSurfaceResource,
                               x: Int,
                               y: Int,
-                              width: Int,
-                              height: Int) {
-        //TODO
+                              @Nonnegative width: Int,
+                              @Nonnegative height: Int) {
+        if (width < 0 || height < 0) {
+            //TODO protocol error
+            throw IllegalArgumentException("Got negative width or height")
+        }
+
+        surface.markBufferDamaged(Rectangle(x,
+                                            y,
+                                            width,
+                                            height))
     }
 }
@@ -0,0 +1,158 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.protocol
+
+import org.freedesktop.wayland.server.*
+import org.westford.compositor.core.RenderPlatform
+import org.westford.compositor.core.Surface
+import org.westford.compositor.core.SurfaceFrame
+import org.westford.compositor.core.SurfaceState
+import org.westford.compositor.core.events.Presentation
+import org.westford.compositor.protocol.presentation.WpPresentationFeedbackResource
+import org.westford.compositor.protocol.presentation.WpPresentationRequests
+import org.westford.compositor.protocol.presentation.WpPresentationResource
+import java.util.*
+import java.util.concurrent.TimeUnit
+import javax.annotation.Nonnegative
+import javax.inject.Inject
+import javax.inject.Singleton
+
+@Singleton class WpPresentation @Inject internal constructor(display: Display,
+                                                             private val renderPlatform: RenderPlatform,
+                                                             private val wpPresentationFeedbackFactory: WpPresentationFeedbackFactory) : Global<WpPresentationResource>(display,
+                                                                                                                                                                          WpPresentationResource::class.java,
+                                                                                                                                                                          WpPresentationRequests.VERSION), WpPresentationRequests, ProtocolObject<WpPresentationResource> {
+
+    override val resources: MutableSet<WpPresentationResource> = Collections.newSetFromMap(WeakHashMap<WpPresentationResource, Boolean>())
+
+    //feedback requested for the next commit of each surface
+    private val pendingFeedbacks = mutableMapOf<Surface, MutableList<WpPresentationFeedbackResource>>()
+    //surfaces we follow the commits and presentations of
+    private val surfaces = mutableSetOf<Surface>()
+
+    override fun destroy(requester: WpPresentationResource) = requester.destroy()
+
+    override fun feedback(requester: WpPresentationResource,
+                          surface: WlSurfaceResource,
+                          callback: Int) {
+        val wpPresentationFeedbackResource = this.wpPresentationFeedbackFactory.create().add(requester.client,
+                                                                                             requester.version,
+                                                                                             callback)
+        val wlSurface = surface.implementation as WlSurface
+        if (this.surfaces.add(wlSurface.surface)) {
+            listen(wlSurface.surface,
+                   surface)
+        }
+        val pendingFeedbacks = this.pendingFeedbacks.getOrPut(wlSurface.surface) { mutableListOf() }
+        pendingFeedbacks += wpPresentationFeedbackResource
+        //the list moves from pending to the committed frame as a whole
+        wpPresentationFeedbackResource.register {
+            pendingFeedbacks -= wpPresentationFeedbackResource
+        }
+    }
+
+    private fun listen(surface: Surface,
+                       wlSurfaceResource: WlSurfaceResource) {
+        val onCommit: (SurfaceState) -> Unit = {
+            this.pendingFeedbacks.remove(surface)?.let {
+                follow(surface.frame,
+                       it)
+            }
+        }
+        surface.applySurfaceStateSignal.connect(onCommit)
+        wlSurfaceResource.register {
+            this.surfaces -= surface
+            surface.applySurfaceStateSignal.disconnect(onCommit)
+            discard(this.pendingFeedbacks.remove(surface))
+        }
+    }
+
+    /**
+     * Answer feedback once the content it was committed with is presented or discarded. A frame can be presented again
+     * after it was discarded, the feedback is only answered the first time. Platforms that can't tell when a frame is
+     * shown discard all feedback.
+     */
+    private fun follow(frame: SurfaceFrame,
+                       feedbacks: MutableList<WpPresentationFeedbackResource>) {
+        frame.presentedSignal.connect {
+            if (this.renderPlatform.hasPresentationClock) {
+                present(feedbacks,
+                        it)
+            }
+            else {
+                discard(feedbacks)
+            }
+            feedbacks.clear()
+        }
+        frame.discardedSignal.connect {
+            discard(feedbacks)
+            feedbacks.clear()
+        }
+    }
+
+    private fun discard(feedbacks: List<WpPresentationFeedbackResource>?) {
+        feedbacks?.toList()?.forEach {
+            it.discarded()
+            it.destroy()
+        }
+    }
+
+    private fun present(feedbacks: List<WpPresentationFeedbackResource>,
+                        presentation: Presentation) {
+        val wlOutput = this.renderPlatform.wlOutputs.find { it.output === presentation.output }
+        val seconds = TimeUnit.NANOSECONDS.toSeconds(presentation.time)
+        val nanos = presentation.time - TimeUnit.SECONDS.toNanos(seconds)
+
+        feedbacks.toList().forEach { feedback ->
+            wlOutput?.resources?.filter { it.client == feedback.client }?.forEach {
+                feedback.syncOutput(it)
+            }
+            feedback.presented((seconds ushr 32).toInt(),
+                               seconds.toInt(),
+                               nanos.toInt(),
+                               presentation.refresh,
+                               (presentation.sequence ushr 32).toInt(),
+                               presentation.sequence.toInt(),
+                               presentation.flags)
+            feedback.destroy()
+        }
+    }
+
+    //FIXME check if we support requested version.
+    override fun onBindClient(client: Client,
+                              version: Int,
+                              id: Int): WpPresentationResource {
+        val wpPresentationResource = add(client,
+                                         version,
+                                         id)
+        //all our timestamps come from the monotonic clock
+        wpPresentationResource.clockId(CLOCK_MONOTONIC)
+        return wpPresentationResource
+    }
+
+    override fun create(client: Client,
+                        @Nonnegative version: Int,
+                        id: Int): WpPresentationResource = WpPresentationResource(client,
+                                                                                  version,
+                                                                                  id,
+                                                                                  this)
+
+    companion object {
+        private val CLOCK_MONOTONIC = 1
+    }
+}
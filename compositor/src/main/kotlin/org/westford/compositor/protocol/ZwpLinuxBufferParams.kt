@@ -0,0 +1,205 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.protocol
+
+import com.google.auto.factory.AutoFactory
+import com.google.auto.factory.Provided
+import org.freedesktop.wayland.server.Client
+import org.westford.compositor.core.DmabufAttributes
+import org.westford.compositor.core.DmabufImporter
+import org.westford.compositor.core.DmabufPlane
+import org.westford.compositor.protocol.dmabuf.ZwpLinuxBufferParamsV1Error
+import org.westford.compositor.protocol.dmabuf.ZwpLinuxBufferParamsV1RequestsV3
+import org.westford.compositor.protocol.dmabuf.ZwpLinuxBufferParamsV1Resource
+import org.westford.nativ.glibc.Libc
+import java.util.*
+import javax.annotation.Nonnegative
+
+/**
+ * Collects the planes of a dmabuf client buffer. A params object can create only one buffer.
+ */
+@AutoFactory(className = "ZwpLinuxBufferParamsFactory",
+             allowSubclasses = true) class ZwpLinuxBufferParams(@param:Provided private val libc: Libc,
+                                                                @param:Provided private val dmabufImporter: DmabufImporter,
+                                                                @param:Provided private val wlBufferFactory: WlBufferFactory) : ZwpLinuxBufferParamsV1RequestsV3, ProtocolObject<ZwpLinuxBufferParamsV1Resource> {
+
+    override val resources: MutableSet<ZwpLinuxBufferParamsV1Resource> = Collections.newSetFromMap(WeakHashMap<ZwpLinuxBufferParamsV1Resource, Boolean>())
+
+    private val planes = arrayOfNulls<DmabufPlane>(DmabufAttributes.MAX_PLANES)
+    //the file descriptors belong to the buffer once it's created
+    private var used = false
+
+    override fun create(client: Client,
+                        @Nonnegative version: Int,
+                        id: Int): ZwpLinuxBufferParamsV1Resource {
+        val zwpLinuxBufferParamsV1Resource = ZwpLinuxBufferParamsV1Resource(client,
+                                                                            version,
+                                                                            id,
+                                                                            this)
+        zwpLinuxBufferParamsV1Resource.register {
+            if (!this.used) {
+                closePlanes()
+            }
+        }
+        return zwpLinuxBufferParamsV1Resource
+    }
+
+    override fun destroy(resource: ZwpLinuxBufferParamsV1Resource) = resource.destroy()
+
+    override fun add(resource: ZwpLinuxBufferParamsV1Resource,
+                     fd: Int,
+                     planeIdx: Int,
+                     offset: Int,
+                     stride: Int,
+                     modifierHi: Int,
+                     modifierLo: Int) {
+        if (this.used) {
+            this.libc.close(fd)
+            resource.postError(ZwpLinuxBufferParamsV1Error.ALREADY_USED.value,
+                               "params was already used to create a wl_buffer")
+            return
+        }
+        if (planeIdx < 0 || planeIdx >= DmabufAttributes.MAX_PLANES) {
+            this.libc.close(fd)
+            resource.postError(ZwpLinuxBufferParamsV1Error.PLANE_IDX.value,
+                               "plane index $planeIdx is out of bounds")
+            return
+        }
+        if (this.planes[planeIdx] != null) {
+            this.libc.close(fd)
+            resource.postError(ZwpLinuxBufferParamsV1Error.PLANE_SET.value,
+                               "plane $planeIdx was already set")
+            return
+        }
+
+        this.planes[planeIdx] = DmabufPlane(fd,
+                                            offset,
+                                            stride,
+                                            (modifierHi.toLong() shl 32) or (modifierLo.toLong() and 0xffffffffL))
+    }
+
+    override fun create(resource: ZwpLinuxBufferParamsV1Resource,
+                        width: Int,
+                        height: Int,
+                        format: Int,
+                        flags: Int) {
+        val dmabufAttributes = dmabufAttributes(resource,
+                                                width,
+                                                height,
+                                                format,
+                                                flags) ?: return
+
+        if (this.dmabufImporter.canImport(dmabufAttributes)) {
+            //an id of 0 makes the server pick one
+            resource.created(this.wlBufferFactory.create(dmabufAttributes).add(resource.client,
+                                                                               1,
+                                                                               0))
+        }
+        else {
+            closePlanes()
+            resource.failed()
+        }
+    }
+
+    override fun createImmed(resource: ZwpLinuxBufferParamsV1Resource,
+                             bufferId: Int,
+                             width: Int,
+                             height: Int,
+                             format: Int,
+                             flags: Int) {
+        val dmabufAttributes = dmabufAttributes(resource,
+                                                width,
+                                                height,
+                                                format,
+                                                flags) ?: return
+
+        if (this.dmabufImporter.canImport(dmabufAttributes)) {
+            this.wlBufferFactory.create(dmabufAttributes).add(resource.client,
+                                                              1,
+                                                              bufferId)
+        }
+        else {
+            //the client already uses the buffer id, it has no way to handle a failure.
+            closePlanes()
+            resource.postError(ZwpLinuxBufferParamsV1Error.INVALID_WL_BUFFER.value,
+                               "importing the buffer failed")
+        }
+    }
+
+    /**
+     * Validate the params and hand the planes over to a new buffer.
+
+     * @return the attributes of the buffer, or null if a protocol error was posted.
+     */
+    private fun dmabufAttributes(resource: ZwpLinuxBufferParamsV1Resource,
+                                 width: Int,
+                                 height: Int,
+                                 format: Int,
+                                 flags: Int): DmabufAttributes? {
+        if (this.used) {
+            resource.postError(ZwpLinuxBufferParamsV1Error.ALREADY_USED.value,
+                               "params was already used to create a wl_buffer")
+            return null
+        }
+        this.used = true
+
+        //planes have to be added without gaps, starting at 0
+        val planeCount = this.planes.count { it != null }
+        val planes = this.planes.take(planeCount).filterNotNull()
+        if (planeCount == 0 || planes.size != planeCount) {
+            closePlanes()
+            resource.postError(ZwpLinuxBufferParamsV1Error.INCOMPLETE.value,
+                               "missing planes to create a buffer")
+            return null
+        }
+
+        if (width <= 0 || height <= 0) {
+            closePlanes()
+            resource.postError(ZwpLinuxBufferParamsV1Error.INVALID_DIMENSIONS.value,
+                               "invalid width $width or height $height")
+            return null
+        }
+
+        planes.forEachIndexed { i, plane ->
+            //offset and stride are unsigned
+            val offset = plane.offset.toLong() and 0xffffffffL
+            val stride = plane.stride.toLong() and 0xffffffffL
+            if (offset + stride > 0xffffffffL) {
+                closePlanes()
+                resource.postError(ZwpLinuxBufferParamsV1Error.OUT_OF_BOUNDS.value,
+                                   "size overflow for plane $i")
+                return null
+            }
+        }
+
+        return DmabufAttributes(width,
+                                height,
+                                format,
+                                flags,
+                                planes)
+    }
+
+    private fun closePlanes() {
+        this.planes.forEachIndexed { i, plane ->
+            plane?.let {
+                this.libc.close(it.fd)
+            }
+            this.planes[i] = null
+        }
+    }
+}
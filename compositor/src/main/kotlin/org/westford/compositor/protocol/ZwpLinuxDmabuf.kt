@@ -0,0 +1,75 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.protocol
+
+import org.freedesktop.wayland.server.*
+import org.westford.compositor.core.DmabufImporter
+import org.westford.compositor.protocol.dmabuf.ZwpLinuxDmabufV1RequestsV3
+import org.westford.compositor.protocol.dmabuf.ZwpLinuxDmabufV1Resource
+import java.util.*
+import javax.annotation.Nonnegative
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Lets clients share their buffers as linux dmabufs, so they can be shown without copying them.
+ */
+@Singleton class ZwpLinuxDmabuf @Inject internal constructor(display: Display,
+                                                             private val dmabufImporter: DmabufImporter,
+                                                             private val zwpLinuxBufferParamsFactory: ZwpLinuxBufferParamsFactory) : Global<ZwpLinuxDmabufV1Resource>(display,
+                                                                                                                                                                       ZwpLinuxDmabufV1Resource::class.java,
+                                                                                                                                                                       ZwpLinuxDmabufV1RequestsV3.VERSION), ZwpLinuxDmabufV1RequestsV3, ProtocolObject<ZwpLinuxDmabufV1Resource> {
+
+    override val resources: MutableSet<ZwpLinuxDmabufV1Resource> = Collections.newSetFromMap(WeakHashMap<ZwpLinuxDmabufV1Resource, Boolean>())
+
+    override fun onBindClient(client: Client,
+                              version: Int,
+                              id: Int): ZwpLinuxDmabufV1Resource {
+        val zwpLinuxDmabufV1Resource = add(client,
+                                           version,
+                                           id)
+        //the renderer is initialized by the time the first client binds.
+        this.dmabufImporter.dmabufFormats().forEach { (format, modifiers) ->
+            zwpLinuxDmabufV1Resource.format(format)
+            if (version >= 3) {
+                modifiers.forEach {
+                    zwpLinuxDmabufV1Resource.modifier(format,
+                                                      (it ushr 32).toInt(),
+                                                      it.toInt())
+                }
+            }
+        }
+        return zwpLinuxDmabufV1Resource
+    }
+
+    override fun destroy(requester: ZwpLinuxDmabufV1Resource) = requester.destroy()
+
+    override fun createParams(requester: ZwpLinuxDmabufV1Resource,
+                              paramsId: Int) {
+        this.zwpLinuxBufferParamsFactory.create().add(requester.client,
+                                                      requester.version,
+                                                      paramsId)
+    }
+
+    override fun create(client: Client,
+                        @Nonnegative version: Int,
+                        id: Int): ZwpLinuxDmabufV1Resource = ZwpLinuxDmabufV1Resource(client,
+                                                                                      version,
+                                                                                      id,
+                                                                                      this)
+}
@@ -33,7 +33,6 @@ import org.westford.compositor.protocol.WlSurface
 
 @AutoFactory(className = "PrivateShellSurfaceFactory",
              allowSubclasses = true) class ShellSurface(@Provided display: Display,
-                                                        @param:Provided private val compositor: Compositor,
                                                         @param:Provided private val scene: Scene,
                                                         private val surfaceView: SurfaceView,
                                                         private val pingSerial: Int) : Role {
@@ -45,16 +44,8 @@ import org.westford.compositor.protocol.WlSurface
         private set
 
     var clazz: String? = null
-        set(value) {
-            field = value
-            this.compositor.requestRender()
-        }
 
     var title: String? = null
-        set(value) {
-            field = value
-            this.compositor.requestRender()
-        }
 
     init {
         this.timerEventSource = display.eventLoop.addTimer {
@@ -22,7 +22,11 @@ import com.google.auto.factory.Provided
 import org.freedesktop.wayland.server.Display
 import org.westford.compositor.core.EglOutput
 import org.westford.compositor.core.EglOutputState
+import org.westford.compositor.core.PresentTracker
+import org.westford.compositor.core.RenderMetrics
+import org.westford.compositor.core.RepaintSchedulerFactory
 import org.westford.compositor.core.Scene
+import org.westford.compositor.core.events.Presentation
 import org.westford.compositor.protocol.WlOutput
 import org.westford.compositor.x11.X11Output
 
@@ -30,36 +34,51 @@ import org.westford.compositor.x11.X11Output
              className = "X11EglOutputFactory") class X11EglOutput(@param:Provided private val display: Display,
                                                                    private @Provided val gles2PainterFactory: org.westford.compositor.gles2.Gles2PainterFactory,
                                                                    @param:Provided private val scene: Scene,
+                                                                   @param:Provided private val presentTracker: PresentTracker,
+                                                                   @param:Provided private val renderMetrics: RenderMetrics,
+                                                                   @param:Provided repaintSchedulerFactory: RepaintSchedulerFactory,
                                                                    val x11Output: X11Output,
                                                                    override val eglSurface: Long,
                                                                    override val eglContext: Long,
                                                                    override val eglDisplay: Long) : EglOutput {
 
-    private var renderScheduled = false
+    //x11 doesn't tell us about vertical retraces, our own presentations pace the repaints at the refresh rate and
+    //count the sequence instead.
+    private val repaintScheduler = repaintSchedulerFactory.create()
+    private var sequence: Long = 0
 
     override var state: EglOutputState? = null
 
     override fun render(wlOutput: WlOutput) {
-        //TODO unit test 2 cases here: schedule idle, no-op when already scheduled
-        whenIdleDoRender(wlOutput)
-    }
-
-    private fun whenIdleDoRender(wlOutput: WlOutput) {
-        if (!this.renderScheduled) {
-            this.renderScheduled = true
-            this.display.eventLoop.addIdle { doRender(wlOutput) }
-        }
+        //no-op if a repaint is already scheduled.
+        this.repaintScheduler.schedule { doRender(wlOutput) }
     }
 
     private fun doRender(wlOutput: WlOutput) {
+        val renderStart = System.nanoTime()
         paint(wlOutput)
+        //the swap is queued by now, it's as close to presentation as we can tell. Good enough for frame callbacks,
+        //presentation feedback is discarded, see X11EglPlatform.hasPresentationClock.
+        val output = wlOutput.output
+        val time = System.nanoTime()
+        this.repaintScheduler.rendered(time - renderStart,
+                                       this.renderMetrics.frameMetrics(output)?.gpuTime?.latest)
+        this.repaintScheduler.presented(time,
+                                        output.refreshInterval)
+        this.presentTracker.presented(Presentation(output,
+                                                   time,
+                                                   output.refreshInterval,
+                                                   ++this.sequence,
+                                                   0))
         this.display.flushClients()
-        this.renderScheduled = false
     }
 
     private fun paint(wlOutput: WlOutput) {
 
+        val frameMetrics = this.renderMetrics.frameMetrics(wlOutput.output)
+        val sceneStart = if (frameMetrics != null) System.nanoTime() else 0L
         val subscene = this.scene.subsection(wlOutput.output.region)
+        frameMetrics?.sceneTime?.record(System.nanoTime() - sceneStart)
 
         val gles2Painter = this.gles2PainterFactory.create(this,
                                                            wlOutput)
@@ -31,4 +31,6 @@ import org.westford.compositor.protocol.WlOutput
                                                           override val eglExtensions: String) : EglPlatform {
     override val renderOutputNewSignal = Signal<RenderOutputNew>()
     override val renderOutputDestroyedSignal = Signal<RenderOutputDestroyed>()
+    //x11 doesn't tell us when a frame is shown.
+    override val hasPresentationClock = false
 }
@@ -38,6 +38,7 @@ import org.westford.nativ.libEGL.LibEGL.Companion.EGL_PLATFORM_X11_KHR
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_RENDER_BUFFER
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_VENDOR
 import org.westford.nativ.libEGL.LibEGL.Companion.EGL_VERSION
+import org.westford.nativ.libEGL.LibEGL.Companion.EGL_WINDOW_BIT
 import org.westford.nativ.libxcb.Libxcb
 import org.westford.nativ.libxcb.Libxcb.Companion.XCB_CLIENT_MESSAGE
 import org.westford.nativ.libxcb.xcb_client_message_event_t
@@ -79,7 +80,8 @@ class X11EglPlatformFactory @Inject internal constructor(private val libxcb: Lib
                            eglExtensions))
 
         val eglConfig = this.glRenderer.eglConfig(eglDisplay,
-                                                  eglExtensions)
+                                                  eglExtensions,
+                                                  EGL_WINDOW_BIT)
         val eglContext = createEglContext(eglDisplay,
                                           eglConfig)
 
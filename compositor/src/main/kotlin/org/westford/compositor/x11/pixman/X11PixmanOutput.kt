@@ -0,0 +1,185 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.x11.pixman
+
+import com.google.auto.factory.AutoFactory
+import com.google.auto.factory.Provided
+import org.freedesktop.jaccall.Pointer
+import org.freedesktop.wayland.server.Display
+import org.westford.compositor.core.PixmanOutput
+import org.westford.compositor.core.PixmanOutputState
+import org.westford.compositor.core.PresentTracker
+import org.westford.compositor.core.RepaintSchedulerFactory
+import org.westford.compositor.core.Scene
+import org.westford.compositor.core.events.Presentation
+import org.westford.compositor.pixman.PixmanPainterFactory
+import org.westford.compositor.protocol.WlOutput
+import org.westford.compositor.x11.X11Output
+import org.westford.compositor.x11.X11Platform
+import org.westford.nativ.libxcb.Libxcb
+import org.westford.nativ.libxcb.xcb_generic_error_t
+import org.westford.nativ.libxcbshm.Libxcbshm
+import java.util.logging.Logger
+
+/**
+ * An X11 window, drawn by the cpu in shared memory and copied to the window by the X server.
+ */
+@AutoFactory(allowSubclasses = true,
+             className = "X11PixmanOutputFactory") class X11PixmanOutput(@param:Provided private val display: Display,
+                                                                         @param:Provided private val libxcb: Libxcb,
+                                                                         @param:Provided private val libxcbshm: Libxcbshm,
+                                                                         @param:Provided private val x11Platform: X11Platform,
+                                                                         @param:Provided private val pixmanPainterFactory: PixmanPainterFactory,
+                                                                         @param:Provided private val scene: Scene,
+                                                                         @param:Provided private val presentTracker: PresentTracker,
+                                                                         @param:Provided repaintSchedulerFactory: RepaintSchedulerFactory,
+                                                                         val x11Output: X11Output,
+                                                                         val x11ShmImage: X11ShmImage,
+                                                                         val gc: Int) : PixmanOutput {
+
+    //x11 doesn't tell us about vertical retraces, our own presentations pace the repaints at the refresh rate and
+    //count the sequence instead.
+    private val repaintScheduler = repaintSchedulerFactory.create()
+    private var sequence: Long = 0
+    private var enabled = true
+
+    override val framebuffer = this.x11ShmImage.image
+
+    override var state: PixmanOutputState? = null
+
+    override fun disable() {
+        this.repaintScheduler.cancel()
+        this.enabled = false
+    }
+
+    override fun enable(wlOutput: WlOutput) {
+        this.enabled = true
+        render(wlOutput)
+    }
+
+    override fun render(wlOutput: WlOutput) {
+        if (this.enabled) {
+            //no-op if a repaint is already scheduled.
+            this.repaintScheduler.schedule { doRender(wlOutput) }
+        }
+    }
+
+    private fun doRender(wlOutput: WlOutput) {
+        val renderStart = System.nanoTime()
+
+        if (paint(wlOutput)) {
+            putImage()
+        }
+        //the image is sent by now, it's as close to presentation as we can tell. Good enough for frame callbacks,
+        //presentation feedback is discarded, see X11PixmanPlatform.hasPresentationClock.
+        val output = wlOutput.output
+        val time = System.nanoTime()
+        this.repaintScheduler.rendered(time - renderStart,
+                                       0)
+        this.repaintScheduler.presented(time,
+                                        output.refreshInterval)
+        this.presentTracker.presented(Presentation(output,
+                                                   time,
+                                                   output.refreshInterval,
+                                                   ++this.sequence,
+                                                   0))
+        this.display.flushClients()
+    }
+
+    private fun putImage() {
+        val xcbConnection = this.x11Platform.xcbConnection
+        val width = this.x11Output.width
+        val height = this.x11Output.height
+
+        //wait for the X server to copy the image, else we might draw the next frame while it's still reading this one.
+        val error = this.libxcb.xcb_request_check(xcbConnection,
+                                                  this.libxcbshm.xcb_shm_put_image_checked(xcbConnection,
+                                                                                           this.x11Output.xWindow,
+                                                                                           this.gc,
+                                                                                           width.toShort(),
+                                                                                           height.toShort(),
+                                                                                           0,
+                                                                                           0,
+                                                                                           width.toShort(),
+                                                                                           height.toShort(),
+                                                                                           0,
+                                                                                           0,
+                                                                                           this.x11Output.screen.root_depth,
+                                                                                           Libxcb.XCB_IMAGE_FORMAT_Z_PIXMAP.toByte(),
+                                                                                           0,
+                                                                                           this.x11ShmImage.shmSeg,
+                                                                                           0))
+        if (error != 0L) {
+            Pointer.wrap<xcb_generic_error_t>(xcb_generic_error_t::class.java,
+                                              error).use {
+                LOGGER.warning(String.format("xcb_shm_put_image() failed. [%d]",
+                                             it.get().error_code))
+            }
+        }
+    }
+
+    private fun paint(wlOutput: WlOutput): Boolean {
+
+        val subscene = this.scene.subsection(wlOutput.output.region)
+
+        val pixmanPainter = this.pixmanPainterFactory.create(this,
+                                                             wlOutput)
+
+        //naive generic single pass, bottom to top overdraw rendering.
+        val lockViews = subscene.lockViews
+        val fullscreenView = subscene.fullscreenView
+
+        //lockscreen(s) hide all other screens.
+        if (!lockViews.isEmpty()) {
+            lockViews.forEach {
+                pixmanPainter.paint(it)
+            }
+        }
+        else {
+            val fullscreenPainted = fullscreenView?.let {
+                pixmanPainter.paint(it)
+            } ?: false
+
+            if (!fullscreenPainted) {
+                //fullscreen view not visible, paint the rest of the subscene.
+                subscene.backgroundView?.let {
+                    pixmanPainter.paint(it)
+                }
+                subscene.underViews.forEach {
+                    pixmanPainter.paint(it)
+                }
+                subscene.applicationViews.forEach {
+                    pixmanPainter.paint(it)
+                }
+                subscene.overViews.forEach {
+                    pixmanPainter.paint(it)
+                }
+            }
+        }
+
+        subscene.cursorViews.forEach {
+            pixmanPainter.paint(it)
+        }
+        return pixmanPainter.commit()
+    }
+
+    companion object {
+
+        private val LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.x11.pixman
+
+import org.freedesktop.jaccall.Pointer
+import org.freedesktop.wayland.shared.WlOutputTransform
+import org.westford.compositor.core.Output
+import org.westford.compositor.core.OutputFactory
+import org.westford.compositor.core.OutputGeometry
+import org.westford.compositor.core.OutputMode
+import org.westford.compositor.core.events.RenderOutputDestroyed
+import org.westford.compositor.protocol.WlOutput
+import org.westford.compositor.protocol.WlOutputFactory
+import org.westford.compositor.x11.X11Platform
+import org.westford.nativ.libxcb.Libxcb
+import org.westford.nativ.libxcb.Libxcb.Companion.XCB_CLIENT_MESSAGE
+import org.westford.nativ.libxcb.xcb_client_message_event_t
+import org.westford.nativ.libxcbshm.Libxcbshm
+import java.lang.String.format
+import javax.inject.Inject
+import kotlin.experimental.and
+
+class X11PixmanPlatformFactory @Inject internal constructor(private val libxcb: Libxcb,
+                                                            private val libxcbshm: Libxcbshm,
+                                                            private val privateX11PixmanPlatformFactory: PrivateX11PixmanPlatformFactory,
+                                                            private val x11Platform: X11Platform,
+                                                            private val wlOutputFactory: WlOutputFactory,
+                                                            private val outputFactory: OutputFactory,
+                                                            private val x11ShmImageFactory: X11ShmImageFactory,
+                                                            private val x11PixmanOutputFactory: X11PixmanOutputFactory) {
+
+    fun create(): X11PixmanPlatform {
+        val xcbConnection = this.x11Platform.xcbConnection
+
+        val reply = this.libxcbshm.xcb_shm_query_version_reply(xcbConnection,
+                                                               this.libxcbshm.xcb_shm_query_version(xcbConnection),
+                                                               0L)
+        if (reply == 0L) {
+            throw RuntimeException("Required X extension MIT-SHM not available.")
+        }
+        Pointer.wrap<Long>(Long::class.java,
+                           reply).close()
+
+        val wlOutputs = this.x11Platform.renderOutputs.mapTo(mutableListOf<WlOutput>()) {
+            //our pixman images are 32 bit xrgb, the windows have to match.
+            if (it.screen.root_depth.toInt() != 24) {
+                throw RuntimeException(format("Unsupported X screen depth %d, need 24.",
+                                              it.screen.root_depth))
+            }
+
+            val x11ShmImage = this.x11ShmImageFactory.create(xcbConnection,
+                                                             it.width,
+                                                             it.height)
+            val gc = this.libxcb.xcb_generate_id(xcbConnection)
+            this.libxcb.xcb_create_gc(xcbConnection,
+                                      gc,
+                                      it.xWindow,
+                                      0,
+                                      0L)
+
+            this.wlOutputFactory.create(createOutput(this.x11PixmanOutputFactory.create(it,
+                                                                                        x11ShmImage,
+                                                                                        gc)))
+        }
+
+        val x11PixmanPlatform = this.privateX11PixmanPlatformFactory.create(wlOutputs)
+
+        this.x11Platform.x11EventBus.xEventSignal.connect {
+            val responseType = (it.get().response_type and 0x7f).toInt()
+            when (responseType) {
+                XCB_CLIENT_MESSAGE -> {
+                    handle(it.castp(xcb_client_message_event_t::class.java),
+                           x11PixmanPlatform)
+                }
+            }
+        }
+
+        return x11PixmanPlatform
+    }
+
+    private fun createOutput(x11PixmanOutput: X11PixmanOutput): Output {
+        val x11Output = x11PixmanOutput.x11Output
+
+        val screen = x11Output.screen
+        val width = x11Output.width
+        val height = x11Output.height
+
+        val outputGeometry = OutputGeometry(x = x11Output.x,
+                                            y = x11Output.y,
+                                            subpixel = 0,
+                                            make = "Westford xcb",
+                                            model = "X11",
+                                            physicalWidth = (width / screen.width_in_pixels * screen.width_in_millimeters),
+                                            physicalHeight = (height / screen.height_in_pixels * screen.height_in_millimeters),
+                                            transform = WlOutputTransform.NORMAL.value)
+        val outputMode = OutputMode(flags = 0,
+                                    width = width,
+                                    height = height,
+                                    refresh = 60)
+        return this.outputFactory.create(x11PixmanOutput,
+                                         x11Output.name,
+                                         outputGeometry,
+                                         outputMode)
+    }
+
+    private fun handle(event: Pointer<xcb_client_message_event_t>,
+                       x11PixmanPlatform: X11PixmanPlatform) {
+        val atom = event.get().data().data32.get()
+        val sourceWindow = event.get().window
+
+        if (atom == this.x11Platform.x11Atoms["WM_DELETE_WINDOW"]) {
+
+            val wlOutputIterator = x11PixmanPlatform.wlOutputs.iterator()
+            while (wlOutputIterator.hasNext()) {
+                val wlOutput = wlOutputIterator.next()
+                val x11PixmanOutput = wlOutput.output.renderOutput as X11PixmanOutput
+                val x11Output = x11PixmanOutput.x11Output
+
+                if (x11Output.xWindow == sourceWindow) {
+                    x11PixmanOutput.disable()
+                    val xcbConnection = this.x11Platform.xcbConnection
+                    this.libxcb.xcb_free_gc(xcbConnection,
+                                            x11PixmanOutput.gc)
+                    x11PixmanOutput.x11ShmImage.close()
+                    this.libxcb.xcb_destroy_window(xcbConnection,
+                                                   sourceWindow)
+                    wlOutputIterator.remove()
+                    x11PixmanPlatform.renderOutputDestroyedSignal.emit(RenderOutputDestroyed(wlOutput))
+                    return
+                }
+            }
+        }
+    }
+}
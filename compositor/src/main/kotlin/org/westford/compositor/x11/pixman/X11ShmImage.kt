@@ -0,0 +1,48 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.x11.pixman
+
+import com.google.auto.factory.AutoFactory
+import com.google.auto.factory.Provided
+import org.westford.nativ.glibc.Libc
+import org.westford.nativ.libpixman1.Libpixman1
+import org.westford.nativ.libxcbshm.Libxcbshm
+
+/**
+ * A cpu drawn image in a shared memory segment, attached to the X server.
+
+ * @param shmSeg the MIT-SHM segment id, as known by the X server.
+ * *
+ * @param image a pixman image of the shared memory.
+ */
+@AutoFactory(allowSubclasses = true,
+             className = "PrivateX11ShmImageFactory") class X11ShmImage(@param:Provided private val libc: Libc,
+                                                                        @param:Provided private val libxcbshm: Libxcbshm,
+                                                                        @param:Provided private val libpixman1: Libpixman1,
+                                                                        private val xcbConnection: Long,
+                                                                        private val data: Long,
+                                                                        val shmSeg: Int,
+                                                                        val image: Long) : AutoCloseable {
+
+    override fun close() {
+        this.libxcbshm.xcb_shm_detach(this.xcbConnection,
+                                      this.shmSeg)
+        this.libpixman1.pixman_image_unref(this.image)
+        this.libc.shmdt(this.data)
+    }
+}
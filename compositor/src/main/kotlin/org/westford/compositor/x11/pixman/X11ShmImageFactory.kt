@@ -0,0 +1,99 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.x11.pixman
+
+import org.freedesktop.jaccall.Pointer
+import org.westford.nativ.glibc.Libc
+import org.westford.nativ.libpixman1.Libpixman1
+import org.westford.nativ.libxcb.Libxcb
+import org.westford.nativ.libxcb.xcb_generic_error_t
+import org.westford.nativ.libxcbshm.Libxcbshm
+import javax.inject.Inject
+
+class X11ShmImageFactory @Inject internal constructor(private val libc: Libc,
+                                                      private val libxcb: Libxcb,
+                                                      private val libxcbshm: Libxcbshm,
+                                                      private val libpixman1: Libpixman1,
+                                                      private val privateX11ShmImageFactory: PrivateX11ShmImageFactory) {
+
+    /**
+     * Create a 32 bit xrgb image that can be drawn on by the cpu and read by the X server without a copy over the
+     * socket.
+
+     * @param xcbConnection the X server connection to attach the image to.
+     * *
+     * @param width the width of the image in pixels.
+     * *
+     * @param height the height of the image in pixels.
+     * *
+     * *
+     * @return an image in a shared memory segment, attached to the X server.
+     */
+    fun create(xcbConnection: Long,
+               width: Int,
+               height: Int): X11ShmImage {
+        val stride = width * 4
+        //only readable & writable by the user that runs the compositor (0600).
+        val shmId = this.libc.shmget(Libc.IPC_PRIVATE,
+                                     stride.toLong() * height,
+                                     Libc.IPC_CREAT or 0x180)
+        if (shmId == -1) {
+            throw RuntimeException(String.format("failed to create shared memory segment. [%d]",
+                                                 this.libc.errno))
+        }
+
+        val data = this.libc.shmat(shmId,
+                                   0L,
+                                   0)
+        //the segment is destroyed once both we and the X server have detached from it, also when we crash.
+        this.libc.shmctl(shmId,
+                         Libc.IPC_RMID,
+                         0L)
+        //shmat returns (void *) -1 on failure
+        if (data == -1L) {
+            throw RuntimeException(String.format("failed to attach shared memory segment. [%d]",
+                                                 this.libc.errno))
+        }
+
+        val shmSeg = this.libxcb.xcb_generate_id(xcbConnection)
+        val error = this.libxcb.xcb_request_check(xcbConnection,
+                                                  this.libxcbshm.xcb_shm_attach_checked(xcbConnection,
+                                                                                        shmSeg,
+                                                                                        shmId,
+                                                                                        1.toByte()))
+        if (error != 0L) {
+            this.libc.shmdt(data)
+            Pointer.wrap<xcb_generic_error_t>(xcb_generic_error_t::class.java,
+                                              error).use {
+                throw RuntimeException(String.format("xcb_shm_attach() failed. [%d]",
+                                                     it.get().error_code))
+            }
+        }
+
+        val image = this.libpixman1.pixman_image_create_bits(Libpixman1.PIXMAN_x8r8g8b8,
+                                                             width,
+                                                             height,
+                                                             data,
+                                                             stride)
+
+        return this.privateX11ShmImageFactory.create(xcbConnection,
+                                                     data,
+                                                     shmSeg,
+                                                     image)
+    }
+}
@@ -47,6 +47,8 @@ import org.westford.nativ.libudev.Libudev
 import org.westford.nativ.libudev.Libudev_Symbols
 import org.westford.nativ.libxcb.Libxcb
 import org.westford.nativ.libxcb.Libxcb_Symbols
+import org.westford.nativ.libxcbshm.Libxcbshm
+import org.westford.nativ.libxcbshm.Libxcbshm_Symbols
 import org.westford.nativ.libxkbcommon.Libxkbcommon
 import org.westford.nativ.libxkbcommon.Libxkbcommon_Symbols
 import org.westford.nativ.libxkbcommonx11.Libxkbcommonx11
@@ -122,6 +124,11 @@ import javax.inject.Singleton
         return Libxcb()
     }
 
+    @Singleton @Provides internal fun provideLibxcbshm(): Libxcbshm {
+        Libxcbshm_Symbols().link()
+        return Libxcbshm()
+    }
+
     @Singleton @Provides internal fun provideLibX11xcb(): LibX11xcb {
         LibX11xcb_Symbols().link()
         return LibX11xcb()
@@ -97,6 +97,33 @@ class Libc {
                            fildes: Int,
                            off: Int): Long
 
+    /**
+     * Like mmap but with a 64 bit offset, needed to map eg. drm buffers.
+     */
+    @Ptr external fun mmap64(@Ptr addr: Long,
+                             @Ptr len: Long,
+                             prot: Int,
+                             flags: Int,
+                             fildes: Int,
+                             off: Long): Long
+
+    external fun munmap(@Ptr addr: Long,
+                        @Ptr len: Long): Int
+
+    external fun shmget(key: Int,
+                        @Lng size: Long,
+                        shmflg: Int): Int
+
+    @Ptr external fun shmat(shmid: Int,
+                            @Ptr shmaddr: Long,
+                            shmflg: Int): Long
+
+    external fun shmdt(@Ptr shmaddr: Long): Int
+
+    external fun shmctl(shmid: Int,
+                        cmd: Int,
+                        @Ptr buf: Long): Int
+
     @Ptr external fun strcpy(@Ptr dest: Long,
                              @Ptr src: Long): Long
 
@@ -209,6 +236,7 @@ class Libc {
         val POLLNVAL = 0x0020
 
         val AF_LOCAL = 1
+        val SOCK_STREAM = 1
         val SOCK_SEQPACKET = 5
 
         /**
@@ -463,6 +491,18 @@ class Libc {
         val MAP_PRIVATE = 0x02
         //-1
         val MAP_FAILED: Long = 0xFFFFFFFF
+        /**
+         * Private key, always creates a new shared memory segment.
+         */
+        val IPC_PRIVATE = 0
+        /**
+         * Create the shared memory segment if it doesn't exist.
+         */
+        val IPC_CREAT = 0x200
+        /**
+         * Remove the shared memory segment once the last process detaches from it.
+         */
+        val IPC_RMID = 0
     }
 
 }
@@ -53,6 +53,10 @@ import javax.inject.Singleton
                                              @Ptr native_window: Long,
                                              @Ptr attrib_list: Long): Long
 
+    @Ptr external fun eglCreatePbufferSurface(@Ptr display: Long,
+                                              @Ptr config: Long,
+                                              @Ptr attrib_list: Long): Long
+
     @Ptr external fun eglQueryString(@Ptr dpy: Long,
                                      name: Int): Long
 
@@ -79,6 +83,11 @@ import javax.inject.Singleton
                                   attribute: Int,
                                   value: Int): Int
 
+    external fun eglQuerySurface(@Ptr display: Long,
+                                 @Ptr surface: Long,
+                                 attribute: Int,
+                                 @Ptr value: Long): Int
+
     @Throws(RuntimeException::class) fun throwError(failedFunction: String) {
         val eglError = eglGetError()
         when (eglError) {
@@ -141,10 +150,13 @@ import javax.inject.Singleton
 
         val EGL_WAYLAND_Y_INVERTED_WL = 0x31DB
 
+        val EGL_BUFFER_AGE_EXT = 0x313D
+
         val EGL_PLATFORM_WAYLAND_KHR = 0x31D8
         val EGL_PLATFORM_GBM_KHR = 0x31D7
         val EGL_PLATFORM_X11_KHR = 0x31D5
         val EGL_PLATFORM_X11_SCREEN_KHR = 0x31D6
+        val EGL_PLATFORM_SURFACELESS_MESA = 0x31DD
 
         val EGL_ALPHA_SIZE = 0x3021
         val EGL_BAD_ACCESS = 0x3002
@@ -316,5 +328,27 @@ import javax.inject.Singleton
         val EGL_IMAGE_PRESERVED = 0x30D2
         val EGL_NO_IMAGE = 0L
         val EGL_NO_IMAGE_KHR = 0L
+        val EGL_LINUX_DMA_BUF_EXT = 0x3270
+        val EGL_LINUX_DRM_FOURCC_EXT = 0x3271
+        val EGL_DMA_BUF_PLANE0_FD_EXT = 0x3272
+        val EGL_DMA_BUF_PLANE0_OFFSET_EXT = 0x3273
+        val EGL_DMA_BUF_PLANE0_PITCH_EXT = 0x3274
+        val EGL_DMA_BUF_PLANE1_FD_EXT = 0x3275
+        val EGL_DMA_BUF_PLANE1_OFFSET_EXT = 0x3276
+        val EGL_DMA_BUF_PLANE1_PITCH_EXT = 0x3277
+        val EGL_DMA_BUF_PLANE2_FD_EXT = 0x3278
+        val EGL_DMA_BUF_PLANE2_OFFSET_EXT = 0x3279
+        val EGL_DMA_BUF_PLANE2_PITCH_EXT = 0x327A
+        val EGL_DMA_BUF_PLANE3_FD_EXT = 0x3440
+        val EGL_DMA_BUF_PLANE3_OFFSET_EXT = 0x3441
+        val EGL_DMA_BUF_PLANE3_PITCH_EXT = 0x3442
+        val EGL_DMA_BUF_PLANE0_MODIFIER_LO_EXT = 0x3443
+        val EGL_DMA_BUF_PLANE0_MODIFIER_HI_EXT = 0x3444
+        val EGL_DMA_BUF_PLANE1_MODIFIER_LO_EXT = 0x3445
+        val EGL_DMA_BUF_PLANE1_MODIFIER_HI_EXT = 0x3446
+        val EGL_DMA_BUF_PLANE2_MODIFIER_LO_EXT = 0x3447
+        val EGL_DMA_BUF_PLANE2_MODIFIER_HI_EXT = 0x3448
+        val EGL_DMA_BUF_PLANE3_MODIFIER_LO_EXT = 0x3449
+        val EGL_DMA_BUF_PLANE3_MODIFIER_HI_EXT = 0x344A
     }
 }
@@ -30,6 +30,11 @@ import javax.inject.Singleton
                             width: Int,
                             height: Int)
 
+    external fun glScissor(x: Int,
+                           y: Int,
+                           width: Int,
+                           height: Int)
+
     external fun glClear(mask: Int)
 
     external fun glBindBuffer(target: Int,
@@ -178,6 +183,9 @@ import javax.inject.Singleton
 
     external fun glFinish()
 
+    external fun glGetIntegerv(pname: Int,
+                               @Ptr data: Long)
+
     external fun glEnable(cap: Int)
 
     external fun glDisable(cap: Int)
@@ -196,6 +204,10 @@ import javax.inject.Singleton
 
         val GL_BGRA_EXT = 0x80E1
 
+        val GL_UNPACK_ROW_LENGTH_EXT = 0x0CF2
+        val GL_UNPACK_SKIP_ROWS_EXT = 0x0CF3
+        val GL_UNPACK_SKIP_PIXELS_EXT = 0x0CF4
+
         val GL_DEPTH_BUFFER_BIT = 0x00000100
         val GL_STENCIL_BUFFER_BIT = 0x00000400
         val GL_COLOR_BUFFER_BIT = 0x00004000
@@ -500,6 +512,11 @@ import javax.inject.Singleton
         val GL_RENDERBUFFER_BINDING = 0x8CA7
         val GL_MAX_RENDERBUFFER_SIZE = 0x84E8
         val GL_INVALID_FRAMEBUFFER_OPERATION = 0x0506
+        val GL_PROGRAM_BINARY_LENGTH_OES = 0x8741
+        val GL_QUERY_RESULT_EXT = 0x8866
+        val GL_QUERY_RESULT_AVAILABLE_EXT = 0x8867
+        val GL_TIME_ELAPSED_EXT = 0x88BF
+        val GL_GPU_DISJOINT_EXT = 0x8FBB
     }
 
 }
\ No newline at end of file
@@ -137,6 +137,90 @@ import javax.inject.Singleton
 
     external fun drmModeFreePlane(@Ptr(drmModePlane::class) ptr: Long)
 
+    /**
+     * Set the cursor image of a crtc, a buffer handle of 0 hides the cursor.
+     */
+    external fun drmModeSetCursor(fd: Int,
+                                  @Unsigned crtcId: Int,
+                                  @Unsigned bo_handle: Int,
+                                  @Unsigned width: Int,
+                                  @Unsigned height: Int): Int
+
+    /**
+     * Move the cursor of a crtc, in crtc coordinates.
+     */
+    external fun drmModeMoveCursor(fd: Int,
+                                   @Unsigned crtcId: Int,
+                                   x: Int,
+                                   y: Int): Int
+
+    external fun drmGetCap(fd: Int,
+                           @Unsigned capability: Long,
+                           @Ptr(Long::class) value: Long): Int
+
+    external fun drmSetClientCap(fd: Int,
+                                 @Unsigned capability: Long,
+                                 @Unsigned value: Long): Int
+
+    @Ptr(drmModeObjectProperties::class) external fun drmModeObjectGetProperties(fd: Int,
+                                                                                 @Unsigned object_id: Int,
+                                                                                 @Unsigned object_type: Int): Long
+
+    external fun drmModeFreeObjectProperties(@Ptr(drmModeObjectProperties::class) ptr: Long)
+
+    @Ptr(drmModePropertyRes::class) external fun drmModeGetProperty(fd: Int,
+                                                                    @Unsigned propertyId: Int): Long
+
+    external fun drmModeFreeProperty(@Ptr(drmModePropertyRes::class) ptr: Long)
+
+    external fun drmModeCreatePropertyBlob(fd: Int,
+                                           @Ptr data: Long,
+                                           @Ptr size: Long,
+                                           @Ptr(Int::class) id: Long): Int
+
+    external fun drmModeDestroyPropertyBlob(fd: Int,
+                                            @Unsigned id: Int): Int
+
+    /**
+     * Allocate an empty atomic request.
+     */
+    @Ptr external fun drmModeAtomicAlloc(): Long
+
+    external fun drmModeAtomicFree(@Ptr req: Long)
+
+    /**
+     * The number of properties in an atomic request, to roll back to with drmModeAtomicSetCursor.
+     */
+    external fun drmModeAtomicGetCursor(@Ptr req: Long): Int
+
+    /**
+     * Drop all properties that were added to an atomic request after the cursor was taken.
+     */
+    external fun drmModeAtomicSetCursor(@Ptr req: Long,
+                                        cursor: Int)
+
+    /**
+     * Add a property change to an atomic request.
+
+     * @return the new number of properties in the request, or a negative value on error.
+     */
+    external fun drmModeAtomicAddProperty(@Ptr req: Long,
+                                          @Unsigned object_id: Int,
+                                          @Unsigned property_id: Int,
+                                          @Unsigned value: Long): Int
+
+    /**
+     * Apply all property changes of an atomic request at once, or none at all.
+     */
+    external fun drmModeAtomicCommit(fd: Int,
+                                     @Ptr req: Long,
+                                     @Unsigned flags: Int,
+                                     @Ptr user_data: Long): Int
+
+    external fun drmIoctl(fd: Int,
+                          @Unsigned request: Long,
+                          @Ptr arg: Long): Int
+
     companion object {
         val DRM_MODE_PAGE_FLIP_EVENT = 0x01
 
@@ -154,5 +238,29 @@ import javax.inject.Singleton
         val DRM_MODE_SUBPIXEL_VERTICAL_RGB = 4
         val DRM_MODE_SUBPIXEL_VERTICAL_BGR = 5
         val DRM_MODE_SUBPIXEL_NONE = 6
+
+        val DRM_CAP_CURSOR_WIDTH = 0x8L
+        val DRM_CAP_CURSOR_HEIGHT = 0x9L
+
+        val DRM_CLIENT_CAP_UNIVERSAL_PLANES = 2L
+        val DRM_CLIENT_CAP_ATOMIC = 3L
+
+        val DRM_MODE_ATOMIC_TEST_ONLY = 0x0100
+        val DRM_MODE_ATOMIC_NONBLOCK = 0x0200
+        val DRM_MODE_ATOMIC_ALLOW_MODESET = 0x0400
+
+        val DRM_MODE_OBJECT_CRTC = 0xcccccccc.toInt()
+        val DRM_MODE_OBJECT_CONNECTOR = 0xc0c0c0c0.toInt()
+        val DRM_MODE_OBJECT_PLANE = 0xeeeeeeee.toInt()
+
+        val DRM_PLANE_TYPE_OVERLAY = 0L
+        val DRM_PLANE_TYPE_PRIMARY = 1L
+        val DRM_PLANE_TYPE_CURSOR = 2L
+
+        const val DRM_PROP_NAME_LEN = 32
+
+        val DRM_IOCTL_MODE_CREATE_DUMB = 0xC02064B2L
+        val DRM_IOCTL_MODE_MAP_DUMB = 0xC01064B3L
+        val DRM_IOCTL_MODE_DESTROY_DUMB = 0xC00464B4L
     }
 }
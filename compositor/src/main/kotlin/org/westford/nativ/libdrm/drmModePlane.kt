@@ -6,24 +6,24 @@ import org.freedesktop.jaccall.Struct
 
 @Struct(Field(name = "count_formats",
               type = CType.UNSIGNED_INT),
+        Field(name = "formats",
+              type = CType.POINTER,
+              dataType = Int::class),
+        Field(name = "plane_id",
+              type = CType.UNSIGNED_INT),
         Field(name = "crtc_id",
               type = CType.UNSIGNED_INT),
+        Field(name = "fb_id",
+              type = CType.UNSIGNED_INT),
         Field(name = "crtc_x",
               type = CType.UNSIGNED_INT),
         Field(name = "crtc_y",
               type = CType.UNSIGNED_INT),
-        Field(name = "fb_id",
-              type = CType.UNSIGNED_INT),
-        Field(name = "formats",
-              type = CType.POINTER,
-              dataType = Int::class),
-        Field(name = "gamma_size",
+        Field(name = "x",
               type = CType.UNSIGNED_INT),
-        Field(name = "plane_id",
+        Field(name = "y",
               type = CType.UNSIGNED_INT),
         Field(name = "possible_crtcs",
               type = CType.UNSIGNED_INT),
-        Field(name = "x",
-              type = CType.UNSIGNED_INT),
-        Field(name = "y",
+        Field(name = "gamma_size",
               type = CType.UNSIGNED_INT)) class drmModePlane : Struct_drmModePlane()
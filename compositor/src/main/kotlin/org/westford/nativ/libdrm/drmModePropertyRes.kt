@@ -0,0 +1,47 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.nativ.libdrm
+
+import org.freedesktop.jaccall.CType
+import org.freedesktop.jaccall.Field
+import org.freedesktop.jaccall.Struct
+import org.westford.nativ.libdrm.Libdrm.Companion.DRM_PROP_NAME_LEN
+
+@Struct(Field(name = "prop_id",
+              type = CType.UNSIGNED_INT),
+        Field(name = "flags",
+              type = CType.UNSIGNED_INT),
+        Field(name = "name",
+              type = CType.CHAR,
+              dataType = String::class,
+              cardinality = DRM_PROP_NAME_LEN),
+        Field(name = "count_values",
+              type = CType.INT),
+        Field(name = "values",
+              type = CType.POINTER,
+              dataType = Long::class),
+        Field(name = "count_enums",
+              type = CType.INT),
+        Field(name = "enums",
+              type = CType.POINTER,
+              dataType = drmModePropertyEnum::class),
+        Field(name = "count_blobs",
+              type = CType.INT),
+        Field(name = "blob_ids",
+              type = CType.POINTER,
+              dataType = Int::class)) class drmModePropertyRes : Struct_drmModePropertyRes()
@@ -167,6 +167,55 @@ import org.freedesktop.jaccall.Unsigned
      */
     external fun gbm_bo_get_handle(@Ptr bo: Long): Long
 
+    /**
+     * Get the number of planes of the buffer object
+
+     * @param bo The buffer object
+     * *
+     * *
+     * @return The number of planes, one for all single planar formats
+     */
+    external fun gbm_bo_get_plane_count(@Ptr bo: Long): Int
+
+    /**
+     * Get the handle of one plane of the buffer object
+
+     * @param bo The buffer object
+     * *
+     * @param plane The index of the plane
+     * *
+     * *
+     * @return Returns the handle of the plane
+     */
+    external fun gbm_bo_get_handle_for_plane(@Ptr bo: Long,
+                                             plane: Int): Long
+
+    /**
+     * Get the stride of one plane of the buffer object
+
+     * @param bo The buffer object
+     * *
+     * @param plane The index of the plane
+     * *
+     * *
+     * @return The stride of the plane in bytes
+     */
+    @Unsigned external fun gbm_bo_get_stride_for_plane(@Ptr bo: Long,
+                                                       plane: Int): Int
+
+    /**
+     * Get the offset of one plane of the buffer object
+
+     * @param bo The buffer object
+     * *
+     * @param plane The index of the plane
+     * *
+     * *
+     * @return The offset of the plane in its buffer, in bytes
+     */
+    @Unsigned external fun gbm_bo_get_offset(@Ptr bo: Long,
+                                             plane: Int): Int
+
     /**
      * Lock the surface's current front buffer
      *
@@ -193,6 +242,52 @@ import org.freedesktop.jaccall.Unsigned
      */
     @Ptr external fun gbm_surface_lock_front_buffer(@Ptr surface: Long): Long
 
+    /**
+     * Allocate a buffer object for the given dimensions
+
+     * @param gbm The gbm device returned from gbm_create_device()
+     * *
+     * @param width The width for the buffer
+     * *
+     * @param height The height for the buffer
+     * *
+     * @param format The format to use for the buffer, one of the GBM_FORMAT_* codes
+     * *
+     * @param flags The union of the GBM_BO_USE_* usage flags for this buffer
+     * *
+     * *
+     * @return A newly allocated buffer that should be freed with gbm_bo_destroy() when no longer needed. If an error
+     * * occurs during allocation `0L` will be returned.
+     */
+    @Ptr external fun gbm_bo_create(@Ptr gbm: Long,
+                                    @Unsigned width: Int,
+                                    @Unsigned height: Int,
+                                    @Unsigned format: Int,
+                                    @Unsigned flags: Int): Long
+
+    /**
+     * Write data into the buffer object
+     *
+     *
+     * If the buffer object was created with the GBM_BO_USE_WRITE flag,
+     * this function can be used to write data into the buffer object.  The
+     * data is copied directly into the object and it's the responsibility
+     * of the caller to make sure the data represents valid pixel data,
+     * according to the width, height, stride and format of the buffer object.
+
+     * @param bo The buffer object
+     * *
+     * @param buf The data to write
+     * *
+     * @param count The number of bytes to write
+     * *
+     * *
+     * @return Returns 0 on success, otherwise -1 is returned an errno set
+     */
+    external fun gbm_bo_write(@Ptr bo: Long,
+                              @Ptr buf: Long,
+                              @Ptr count: Long): Int
+
     external fun gbm_surface_release_buffer(@Ptr surface: Long,
                                             @Ptr bo: Long)
 
@@ -248,6 +343,14 @@ import org.freedesktop.jaccall.Unsigned
 
         val GBM_BO_IMPORT_WL_BUFFER = 0x5501
         val GBM_BO_IMPORT_EGL_IMAGE = 0x5502
+        /**
+         * Import a single plane dmabuf, see struct gbm_import_fd_data
+         */
+        val GBM_BO_IMPORT_FD = 0x5503
+        /**
+         * Import a multi plane dmabuf with a format modifier, see struct gbm_import_fd_modifier_data
+         */
+        val GBM_BO_IMPORT_FD_MODIFIER = 0x5504
 
         /**
          * RGB with 8 bits per channel in a 32 bit value
@@ -75,10 +75,54 @@ import javax.inject.Singleton
     external fun pixman_region32_copy(@Ptr dest: Long,
                                       @Ptr source: Long): Int
 
+    @Ptr external fun pixman_image_create_bits(format: Int,
+                                               width: Int,
+                                               height: Int,
+                                               @Ptr bits: Long,
+                                               rowstride_bytes: Int): Long
+
+    @Ptr external fun pixman_image_create_solid_fill(@Ptr color: Long): Long
+
+    external fun pixman_image_unref(@Ptr image: Long): Int
+
+    external fun pixman_image_set_transform(@Ptr image: Long,
+                                            @Ptr transform: Long): Int
+
+    external fun pixman_image_set_filter(@Ptr image: Long,
+                                         filter: Int,
+                                         @Ptr filter_params: Long,
+                                         n_filter_params: Int): Int
+
+    external fun pixman_image_composite32(op: Int,
+                                          @Ptr src: Long,
+                                          @Ptr mask: Long,
+                                          @Ptr dest: Long,
+                                          src_x: Int,
+                                          src_y: Int,
+                                          mask_x: Int,
+                                          mask_y: Int,
+                                          dest_x: Int,
+                                          dest_y: Int,
+                                          width: Int,
+                                          height: Int)
+
     companion object {
 
         val PIXMAN_REGION_OUT = 0
         val PIXMAN_REGION_IN = 1
         val PIXMAN_REGION_PART = 2
+
+        val PIXMAN_OP_CLEAR = 0
+        val PIXMAN_OP_SRC = 1
+        val PIXMAN_OP_OVER = 3
+
+        val PIXMAN_FILTER_FAST = 0
+        val PIXMAN_FILTER_GOOD = 1
+        val PIXMAN_FILTER_BEST = 2
+        val PIXMAN_FILTER_NEAREST = 3
+        val PIXMAN_FILTER_BILINEAR = 4
+
+        val PIXMAN_a8r8g8b8 = 0x20028888
+        val PIXMAN_x8r8g8b8 = 0x20020888
     }
 }
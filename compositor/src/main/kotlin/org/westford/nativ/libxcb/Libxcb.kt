@@ -91,6 +91,18 @@ import javax.inject.Singleton
     external fun xcb_destroy_window(@Ptr c: Long,
                                     window: Int): Int
 
+    external fun xcb_create_gc(@Ptr c: Long,
+                               cid: Int,
+                               drawable: Int,
+                               value_mask: Int,
+                               @Ptr value_list: Long): Int
+
+    external fun xcb_free_gc(@Ptr c: Long,
+                             gc: Int): Int
+
+    @Ptr external fun xcb_request_check(@Ptr c: Long,
+                                        cookie: Int): Long
+
     companion object {
 
         val XCB_ATOM_ATOM = 4
@@ -125,5 +137,6 @@ import javax.inject.Singleton
         val XCB_MAPPING_MODIFIER = 0
         val XCB_MAPPING_KEYBOARD = 1
         val XCB_MAPPING_POINTER = 2
+        val XCB_IMAGE_FORMAT_Z_PIXMAP = 2
     }
 }
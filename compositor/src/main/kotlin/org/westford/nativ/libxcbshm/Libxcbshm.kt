@@ -0,0 +1,61 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.nativ.libxcbshm
+
+import org.freedesktop.jaccall.Lib
+import org.freedesktop.jaccall.Ptr
+
+import javax.inject.Singleton
+
+/**
+ * The MIT-SHM extension, lets the X server read images straight from shared memory.
+ */
+@Singleton @Lib(value = "xcb-shm",
+                version = 0) class Libxcbshm {
+
+    external fun xcb_shm_query_version(@Ptr c: Long): Int
+
+    @Ptr external fun xcb_shm_query_version_reply(@Ptr c: Long,
+                                                  cookie: Int,
+                                                  @Ptr e: Long): Long
+
+    external fun xcb_shm_attach_checked(@Ptr c: Long,
+                                        shmseg: Int,
+                                        shmid: Int,
+                                        read_only: Byte): Int
+
+    external fun xcb_shm_detach(@Ptr c: Long,
+                                shmseg: Int): Int
+
+    external fun xcb_shm_put_image_checked(@Ptr c: Long,
+                                           drawable: Int,
+                                           gc: Int,
+                                           total_width: Short,
+                                           total_height: Short,
+                                           src_x: Short,
+                                           src_y: Short,
+                                           src_width: Short,
+                                           src_height: Short,
+                                           dst_x: Short,
+                                           dst_y: Short,
+                                           depth: Byte,
+                                           format: Byte,
+                                           send_event: Byte,
+                                           shmseg: Int,
+                                           offset: Int): Int
+}
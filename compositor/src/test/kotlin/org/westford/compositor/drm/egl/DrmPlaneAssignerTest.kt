@@ -0,0 +1,350 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.drm.egl
+
+import org.junit.Test
+import org.westford.compositor.core.Rectangle
+import org.westford.compositor.core.Transforms
+import org.westford.compositor.core.calc.Mat4
+import org.westford.nativ.libdrm.Libdrm
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class DrmPlaneAssignerTest {
+
+    private val screen = Rectangle(0,
+                                   0,
+                                   1920,
+                                   1080)
+
+    private fun drmPlane(planeId: Int,
+                         possibleCrtcs: Int = 1,
+                         formats: Set<Int> = setOf(XRGB8888)) = DrmPlane(planeId,
+                                                                        possibleCrtcs,
+                                                                        formats,
+                                                                        Libdrm.DRM_PLANE_TYPE_OVERLAY)
+
+    private fun candidate(view: String,
+                          rectangle: Rectangle,
+                          transform: Mat4 = Transforms.TRANSLATE(rectangle.x,
+                                                                 rectangle.y)) = DrmPlaneAssigner.Candidate(view,
+                                                                                                            rectangle,
+                                                                                                            transform)
+
+    @Test
+    fun testAssign() {
+        //given
+        val drmPlane = drmPlane(1)
+        val candidates = listOf(candidate("a",
+                                          Rectangle(100,
+                                                    100,
+                                                    640,
+                                                    480)))
+
+        //when
+        val assignments = DrmPlaneAssigner().assign(listOf(drmPlane),
+                                                    candidates,
+                                                    emptyList(),
+                                                    this.screen) { XRGB8888 }
+
+        //then
+        assertEquals(mapOf("a" to drmPlane),
+                     assignments)
+    }
+
+    @Test
+    fun testAssignFormatMismatch() {
+        //given
+        val argbPlane = drmPlane(1,
+                                 formats = setOf(ARGB8888))
+        val xrgbPlane = drmPlane(2)
+        val candidates = listOf(candidate("a",
+                                          Rectangle(0,
+                                                    0,
+                                                    100,
+                                                    100)),
+                                candidate("b",
+                                          Rectangle(200,
+                                                    0,
+                                                    100,
+                                                    100)))
+
+        //when
+        val assignments = DrmPlaneAssigner().assign(listOf(argbPlane,
+                                                           xrgbPlane),
+                                                    candidates,
+                                                    emptyList(),
+                                                    this.screen) {
+            if (it == "a") XRGB8888 else NV12
+        }
+
+        //then
+        //the first plane doesn't support the format of a, no plane supports the format of b.
+        assertEquals(mapOf("a" to xrgbPlane),
+                     assignments)
+    }
+
+    @Test
+    fun testAssignNoFormat() {
+        //given
+        val candidates = listOf(candidate("a",
+                                          Rectangle(0,
+                                                    0,
+                                                    100,
+                                                    100)))
+
+        //when
+        val assignments = DrmPlaneAssigner().assign(listOf(drmPlane(1)),
+                                                    candidates,
+                                                    emptyList(),
+                                                    this.screen) { 0 }
+
+        //then
+        assertTrue(assignments.isEmpty())
+    }
+
+    @Test
+    fun testAssignOccludedByHigherView() {
+        //given
+        val topPlane = drmPlane(1)
+        val candidates = listOf(candidate("top",
+                                          Rectangle(0,
+                                                    0,
+                                                    200,
+                                                    200)),
+                                candidate("occluded",
+                                          Rectangle(100,
+                                                    100,
+                                                    200,
+                                                    200)),
+                                candidate("free",
+                                          Rectangle(500,
+                                                    500,
+                                                    200,
+                                                    200)))
+        val formats = mutableListOf<String>()
+
+        //when
+        val assignments = DrmPlaneAssigner().assign(listOf(topPlane,
+                                                           drmPlane(2),
+                                                           drmPlane(3)),
+                                                    candidates,
+                                                    emptyList(),
+                                                    this.screen) {
+            formats += it
+            XRGB8888
+        }
+
+        //then
+        assertEquals(setOf("top",
+                           "free"),
+                     assignments.keys)
+        assertEquals(topPlane,
+                     assignments["top"])
+        //the occluded view is not imported at all.
+        assertEquals(listOf("top",
+                            "free"),
+                     formats)
+    }
+
+    @Test
+    fun testAssignOccludedByObstacle() {
+        //given
+        val candidates = listOf(candidate("a",
+                                          Rectangle(0,
+                                                    0,
+                                                    200,
+                                                    200)))
+
+        //when
+        val assignments = DrmPlaneAssigner().assign(listOf(drmPlane(1)),
+                                                    candidates,
+                                                    listOf(Rectangle(190,
+                                                                     190,
+                                                                     32,
+                                                                     32)),
+                                                    this.screen) { XRGB8888 }
+
+        //then
+        assertTrue(assignments.isEmpty())
+    }
+
+    @Test
+    fun testAssignOffScreen() {
+        //given
+        val candidates = listOf(candidate("a",
+                                          Rectangle(1800,
+                                                    0,
+                                                    200,
+                                                    200)))
+
+        //when
+        val assignments = DrmPlaneAssigner().assign(listOf(drmPlane(1)),
+                                                    candidates,
+                                                    emptyList(),
+                                                    this.screen) { XRGB8888 }
+
+        //then
+        assertTrue(assignments.isEmpty())
+    }
+
+    @Test
+    fun testAssignMoreCandidatesThanPlanes() {
+        //given
+        val drmPlanes = listOf(drmPlane(1),
+                               drmPlane(2))
+        val candidates = (0..3).map {
+            candidate("view$it",
+                      Rectangle(it * 300,
+                                0,
+                                200,
+                                200))
+        }
+        val formats = mutableListOf<String>()
+
+        //when
+        val assignments = DrmPlaneAssigner().assign(drmPlanes,
+                                                    candidates,
+                                                    emptyList(),
+                                                    this.screen) {
+            formats += it
+            XRGB8888
+        }
+
+        //then
+        //the topmost views get the planes, the rest is not even imported.
+        assertEquals(mapOf("view0" to drmPlanes[0],
+                           "view1" to drmPlanes[1]),
+                     assignments)
+        assertEquals(listOf("view0",
+                            "view1"),
+                     formats)
+    }
+
+    @Test
+    fun testAssignTransformed() {
+        //given
+        val rectangle = Rectangle(100,
+                                  100,
+                                  200,
+                                  200)
+        val candidates = listOf(candidate("rotated",
+                                          rectangle,
+                                          Transforms.TRANSLATE(100,
+                                                               100) * Transforms._90),
+                                candidate("above",
+                                          Rectangle(100,
+                                                    400,
+                                                    200,
+                                                    200)))
+
+        //when
+        val assignments = DrmPlaneAssigner().assign(listOf(drmPlane(1),
+                                                           drmPlane(2)),
+                                                    candidates,
+                                                    emptyList(),
+                                                    this.screen) { XRGB8888 }
+
+        //then
+        assertEquals(setOf("above"),
+                     assignments.keys)
+    }
+
+    @Test
+    fun testAssignScaled() {
+        //given
+        val candidates = listOf(candidate("scaled",
+                                          Rectangle(0,
+                                                    0,
+                                                    400,
+                                                    400),
+                                          Transforms.SCALE(2f)),
+                                candidate("subpixel",
+                                          Rectangle(500,
+                                                    0,
+                                                    200,
+                                                    200),
+                                          Mat4.IDENTITY.copy(m30 = 500.5f)))
+
+        //when
+        val assignments = DrmPlaneAssigner().assign(listOf(drmPlane(1),
+                                                           drmPlane(2)),
+                                                    candidates,
+                                                    emptyList(),
+                                                    this.screen) { XRGB8888 }
+
+        //then
+        assertTrue(assignments.isEmpty())
+    }
+
+    @Test
+    fun testDivideCrtcMismatch() {
+        //given
+        val crtc0Plane = drmPlane(1,
+                                  possibleCrtcs = 0b01)
+        val crtc1Plane = drmPlane(2,
+                                  possibleCrtcs = 0b10)
+        val otherCrtcPlane = drmPlane(3,
+                                      possibleCrtcs = 0b100)
+        val primaryPlane = DrmPlane(4,
+                                    0b11,
+                                    setOf(XRGB8888),
+                                    Libdrm.DRM_PLANE_TYPE_PRIMARY)
+
+        //when
+        val overlayPlanes = DrmPlaneAssigner().divide(listOf(crtc0Plane,
+                                                             crtc1Plane,
+                                                             otherCrtcPlane,
+                                                             primaryPlane),
+                                                      listOf(0,
+                                                             1)) { it }
+
+        //then
+        assertEquals(mapOf(0 to listOf(crtc0Plane),
+                           1 to listOf(crtc1Plane)),
+                     overlayPlanes)
+    }
+
+    @Test
+    fun testDivideSharedPlanes() {
+        //given
+        val drmPlanes = (1..4).map {
+            drmPlane(it,
+                     possibleCrtcs = 0b11)
+        }
+
+        //when
+        val overlayPlanes = DrmPlaneAssigner().divide(drmPlanes,
+                                                      listOf(0,
+                                                             1)) { it }
+
+        //then
+        //a plane can only be used by one crtc at a time, they are spread evenly.
+        assertEquals(2,
+                     overlayPlanes.getValue(0).size)
+        assertEquals(2,
+                     overlayPlanes.getValue(1).size)
+        assertTrue(overlayPlanes.getValue(0).none { overlayPlanes.getValue(1).contains(it) })
+    }
+
+    companion object {
+        val XRGB8888 = 0x34325258
+        val ARGB8888 = 0x34325241
+        val NV12 = 0x3231564e
+    }
+}
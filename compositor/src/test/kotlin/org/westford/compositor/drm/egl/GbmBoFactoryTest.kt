@@ -0,0 +1,214 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.drm.egl
+
+import org.freedesktop.jaccall.Pointer
+import org.junit.Test
+import org.westford.compositor.core.DmabufAttributes
+import org.westford.compositor.core.DmabufPlane
+import org.westford.nativ.libgbm.Libgbm
+import javax.inject.Provider
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class GbmBoFactoryTest {
+
+    /**
+     * Keeps a copy of the import data, as it is only valid for the duration of the import.
+     */
+    private class GbmBoImporterStub(private val gbmBo: Long) : GbmBoImporter {
+        var type = 0
+        var usage = 0
+        var importData = IntArray(0)
+        var modifier = 0L
+        val destroyed = mutableListOf<Long>()
+
+        override fun import(gbmDevice: Long,
+                            type: Int,
+                            buffer: Long,
+                            usage: Int): Long {
+            this.type = type
+            this.usage = usage
+            val data = Pointer.wrap<Int>(Int::class.java,
+                                         buffer)
+            if (type == Libgbm.GBM_BO_IMPORT_FD) {
+                //struct gbm_import_fd_data: fd, width, height, stride, format
+                this.importData = IntArray(5) { data.get(it) }
+            }
+            else {
+                //struct gbm_import_fd_modifier_data: width, height, format, num_fds, fds[4], strides[4], offsets[4], modifier
+                this.importData = IntArray(16) { data.get(it) }
+                this.modifier = Pointer.wrap<Long>(Long::class.java,
+                                                   buffer + 64).get()
+            }
+            return this.gbmBo
+        }
+
+        override fun destroy(gbmBo: Long) {
+            this.destroyed += gbmBo
+        }
+    }
+
+    private fun gbmBoFactory(gbmBoImporter: GbmBoImporter): GbmBoFactory {
+        //only used for server side buffers
+        val libgbm = Libgbm()
+        return GbmBoFactory(libgbm,
+                            gbmBoImporter,
+                            PrivateGbmBoClientFactory(Provider { gbmBoImporter }),
+                            PrivateGbmBoServerFactory(Provider { libgbm }))
+    }
+
+    @Test
+    fun testCreateSinglePlane() {
+        //given
+        val gbmBoImporter = GbmBoImporterStub(123L)
+        val dmabufAttributes = DmabufAttributes(640,
+                                                480,
+                                                DmabufAttributes.FORMAT_XRGB8888,
+                                                0,
+                                                listOf(DmabufPlane(7,
+                                                                   0,
+                                                                   2560,
+                                                                   DmabufAttributes.MOD_INVALID)))
+
+        //when
+        val gbmBo = gbmBoFactory(gbmBoImporter).create(456L,
+                                                       dmabufAttributes)
+
+        //then
+        assertEquals(123L,
+                     gbmBo.gbmBo)
+        assertEquals(Libgbm.GBM_BO_IMPORT_FD,
+                     gbmBoImporter.type)
+        assertEquals(Libgbm.GBM_BO_USE_SCANOUT,
+                     gbmBoImporter.usage)
+        assertTrue(intArrayOf(7,
+                              640,
+                              480,
+                              2560,
+                              DmabufAttributes.FORMAT_XRGB8888) contentEquals gbmBoImporter.importData)
+    }
+
+    @Test
+    fun testCreateMultiPlane() {
+        //given
+        val gbmBoImporter = GbmBoImporterStub(123L)
+        val modifier = 0x0100000000000001L
+        val dmabufAttributes = DmabufAttributes(640,
+                                                480,
+                                                DmabufAttributes.FORMAT_XRGB8888,
+                                                0,
+                                                listOf(DmabufPlane(7,
+                                                                   0,
+                                                                   2560,
+                                                                   modifier),
+                                                       DmabufPlane(8,
+                                                                   1228800,
+                                                                   128,
+                                                                   modifier)))
+
+        //when
+        gbmBoFactory(gbmBoImporter).create(456L,
+                                           dmabufAttributes)
+
+        //then
+        assertEquals(Libgbm.GBM_BO_IMPORT_FD_MODIFIER,
+                     gbmBoImporter.type)
+        assertTrue(intArrayOf(//@formatter:off
+                              640, 480, DmabufAttributes.FORMAT_XRGB8888, 2,
+                              7, 8, 0, 0,
+                              2560, 128, 0, 0,
+                              0, 1228800, 0, 0
+                              //@formatter:on
+                             ) contentEquals gbmBoImporter.importData)
+        assertEquals(modifier,
+                     gbmBoImporter.modifier)
+    }
+
+    @Test
+    fun testCreateSinglePlaneWithOffset() {
+        //given
+        val gbmBoImporter = GbmBoImporterStub(123L)
+        val dmabufAttributes = DmabufAttributes(640,
+                                                480,
+                                                DmabufAttributes.FORMAT_XRGB8888,
+                                                0,
+                                                listOf(DmabufPlane(7,
+                                                                   4096,
+                                                                   2560,
+                                                                   DmabufAttributes.MOD_INVALID)))
+
+        //when
+        gbmBoFactory(gbmBoImporter).create(456L,
+                                           dmabufAttributes)
+
+        //then
+        //a plain fd import has no offset, only the modifier import can express it.
+        assertEquals(Libgbm.GBM_BO_IMPORT_FD_MODIFIER,
+                     gbmBoImporter.type)
+        assertEquals(4096,
+                     gbmBoImporter.importData[12])
+        assertEquals(DmabufAttributes.MOD_INVALID,
+                     gbmBoImporter.modifier)
+    }
+
+    @Test
+    fun testCreateFailed() {
+        //given
+        val gbmBoImporter = GbmBoImporterStub(0L)
+        val dmabufAttributes = DmabufAttributes(640,
+                                                480,
+                                                DmabufAttributes.FORMAT_XRGB8888,
+                                                0,
+                                                listOf(DmabufPlane(7,
+                                                                   0,
+                                                                   2560,
+                                                                   DmabufAttributes.MOD_INVALID)))
+
+        //when
+        val gbmBo = gbmBoFactory(gbmBoImporter).create(456L,
+                                                       dmabufAttributes)
+
+        //then
+        //a failed import can't be scanned out, the cache checks for a null bo.
+        assertEquals(0L,
+                     gbmBo.gbmBo)
+    }
+
+    @Test
+    fun testClose() {
+        //given
+        val gbmBoImporter = GbmBoImporterStub(123L)
+        val gbmBo = gbmBoFactory(gbmBoImporter).create(456L,
+                                                       DmabufAttributes(640,
+                                                                        480,
+                                                                        DmabufAttributes.FORMAT_XRGB8888,
+                                                                        0,
+                                                                        listOf(DmabufPlane(7,
+                                                                                           0,
+                                                                                           2560,
+                                                                                           DmabufAttributes.MOD_INVALID))))
+
+        //when
+        gbmBo.close()
+
+        //then
+        assertEquals(listOf(123L),
+                     gbmBoImporter.destroyed)
+    }
+}
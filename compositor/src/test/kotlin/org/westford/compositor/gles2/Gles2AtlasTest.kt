@@ -0,0 +1,190 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.gles2
+
+import org.junit.Test
+import org.westford.compositor.core.Rectangle
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class Gles2AtlasTest {
+
+    @Test
+    fun testFillShelf() {
+        //given
+        val gles2Atlas = Gles2Atlas(1)
+
+        //when
+        val rectangles = (0..7).map {
+            gles2Atlas.allocate(128,
+                                128)
+        }
+
+        //then
+        //entries are placed left to right with a pixel of padding, the entry that no longer fits opens a new shelf.
+        (0..6).forEach {
+            assertEquals(Rectangle(it * 129,
+                                   0,
+                                   128,
+                                   128),
+                         rectangles[it])
+        }
+        assertEquals(Rectangle(0,
+                               129,
+                               128,
+                               128),
+                     rectangles[7])
+    }
+
+    @Test
+    fun testAllocateTooLarge() {
+        //given
+        val gles2Atlas = Gles2Atlas(1)
+
+        //when
+        val tooWide = gles2Atlas.allocate(Gles2Atlas.MAX_ENTRY_SIZE + 1,
+                                          10)
+        val tooHigh = gles2Atlas.allocate(10,
+                                          Gles2Atlas.MAX_ENTRY_SIZE + 1)
+        val largest = gles2Atlas.allocate(Gles2Atlas.MAX_ENTRY_SIZE,
+                                          Gles2Atlas.MAX_ENTRY_SIZE)
+
+        //then
+        assertNull(tooWide)
+        assertNull(tooHigh)
+        assertNotNull(largest)
+    }
+
+    @Test
+    fun testFreeReuse() {
+        //given
+        val gles2Atlas = Gles2Atlas(1)
+        val first = gles2Atlas.allocate(50,
+                                        50)!!
+        gles2Atlas.allocate(50,
+                            50)
+
+        //when
+        gles2Atlas.free(first)
+        val reused = gles2Atlas.allocate(50,
+                                         50)
+
+        //then
+        assertEquals(first,
+                     reused)
+    }
+
+    @Test
+    fun testMergeRightSpan() {
+        //given
+        val gles2Atlas = Gles2Atlas(1)
+        val rectangles = fillShelf(gles2Atlas)
+
+        //when
+        gles2Atlas.free(rectangles[2])
+        gles2Atlas.free(rectangles[1])
+        val merged = gles2Atlas.allocate(120,
+                                         50)
+
+        //then
+        //only fits in the space of both freed entries together
+        assertEquals(Rectangle(61,
+                               0,
+                               120,
+                               50),
+                     merged)
+    }
+
+    @Test
+    fun testMergeLeftSpan() {
+        //given
+        val gles2Atlas = Gles2Atlas(1)
+        val rectangles = fillShelf(gles2Atlas)
+
+        //when
+        gles2Atlas.free(rectangles[1])
+        gles2Atlas.free(rectangles[2])
+        val merged = gles2Atlas.allocate(120,
+                                         50)
+
+        //then
+        //only fits in the space of both freed entries together
+        assertEquals(Rectangle(61,
+                               0,
+                               120,
+                               50),
+                     merged)
+    }
+
+    @Test
+    fun testDropEmptyShelf() {
+        //given
+        val gles2Atlas = Gles2Atlas(1)
+        val low = gles2Atlas.allocate(100,
+                                      20)!!
+
+        //when
+        gles2Atlas.free(low)
+        val empty = gles2Atlas.isEmpty
+        val high = gles2Atlas.allocate(100,
+                                       100)
+
+        //then
+        //the strip of the removed shelf is reused by a higher shelf.
+        assertTrue(empty)
+        assertEquals(Rectangle(0,
+                               0,
+                               100,
+                               100),
+                     high)
+    }
+
+    @Test
+    fun testFull() {
+        //given
+        val gles2Atlas = Gles2Atlas(1)
+        //7 shelves of 7 entries
+        val rectangles = (1..49).map {
+            gles2Atlas.allocate(128,
+                                128)
+        }
+
+        //when
+        val full = gles2Atlas.allocate(128,
+                                       128)
+        gles2Atlas.free(rectangles[20]!!)
+        val afterFree = gles2Atlas.allocate(128,
+                                            128)
+
+        //then
+        rectangles.forEach { assertNotNull(it) }
+        assertNull(full)
+        assertEquals(rectangles[20],
+                     afterFree)
+    }
+
+    /**
+     * Fill the first shelf with entries of 60x50, leaving too little space for another one.
+     */
+    private fun fillShelf(gles2Atlas: Gles2Atlas): List<Rectangle> = (1..16).map {
+        gles2Atlas.allocate(60,
+                            50)!!
+    }
+}
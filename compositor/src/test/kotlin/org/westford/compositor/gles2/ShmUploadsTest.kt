@@ -0,0 +1,167 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.gles2
+
+import org.junit.Test
+import org.westford.compositor.core.Rectangle
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class ShmUploadsTest {
+
+    @Test
+    fun testFullDamage() {
+        //given
+        val damage = listOf(Rectangle(0,
+                                      0,
+                                      100,
+                                      50))
+
+        //when
+        val rowLengthRectangles = ShmUploads.rectangles(damage,
+                                                        100,
+                                                        50,
+                                                        true)
+        val rowRectangles = ShmUploads.rectangles(damage,
+                                                  100,
+                                                  50,
+                                                  false)
+
+        //then
+        assertEquals(damage,
+                     rowLengthRectangles)
+        assertEquals(damage,
+                     rowRectangles)
+    }
+
+    @Test
+    fun testPartialDamageRowLength() {
+        //given
+        val damage = listOf(Rectangle(10,
+                                      5,
+                                      20,
+                                      10),
+                            Rectangle(60,
+                                      30,
+                                      5,
+                                      5))
+
+        //when
+        val rectangles = ShmUploads.rectangles(damage,
+                                               100,
+                                               50,
+                                               true)
+
+        //then
+        assertEquals(damage,
+                     rectangles)
+    }
+
+    @Test
+    fun testPartialDamageCompleteRows() {
+        //given
+        val damage = listOf(Rectangle(60,
+                                      30,
+                                      5,
+                                      5),
+                            Rectangle(10,
+                                      5,
+                                      20,
+                                      10),
+                            Rectangle(50,
+                                      10,
+                                      20,
+                                      10))
+
+        //when
+        val rectangles = ShmUploads.rectangles(damage,
+                                               100,
+                                               50,
+                                               false)
+
+        //then
+        //overlapping bands are uploaded once, separate bands apart.
+        assertEquals(listOf(Rectangle(0,
+                                      5,
+                                      100,
+                                      15),
+                            Rectangle(0,
+                                      30,
+                                      100,
+                                      5)),
+                     rectangles)
+    }
+
+    @Test
+    fun testOutOfBoundsDamage() {
+        //given
+        val damage = listOf(Rectangle(-10,
+                                      -10,
+                                      30,
+                                      20),
+                            Rectangle(90,
+                                      40,
+                                      50,
+                                      50),
+                            Rectangle(200,
+                                      0,
+                                      10,
+                                      10))
+
+        //when
+        val rectangles = ShmUploads.rectangles(damage,
+                                               100,
+                                               50,
+                                               true)
+
+        //then
+        assertEquals(listOf(Rectangle(0,
+                                      0,
+                                      20,
+                                      10),
+                            Rectangle(90,
+                                      40,
+                                      10,
+                                      10)),
+                     rectangles)
+    }
+
+    @Test
+    fun testEmptyDamage() {
+        //given
+        val damage = listOf(Rectangle(10,
+                                      10,
+                                      0,
+                                      5),
+                            Rectangle.ZERO)
+
+        //when
+        val rowLengthRectangles = ShmUploads.rectangles(damage,
+                                                        100,
+                                                        50,
+                                                        true)
+        val rowRectangles = ShmUploads.rectangles(emptyList(),
+                                                  100,
+                                                  50,
+                                                  false)
+
+        //then
+        assertTrue(rowLengthRectangles.isEmpty())
+        assertTrue(rowRectangles.isEmpty())
+    }
+}
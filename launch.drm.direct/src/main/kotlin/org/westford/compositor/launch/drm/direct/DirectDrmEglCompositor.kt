@@ -18,17 +18,10 @@
 package org.westford.compositor.launch.drm.direct
 
 import dagger.Component
-import org.freedesktop.wayland.server.Display
 import org.westford.compositor.core.CoreModule
-import org.westford.compositor.core.KeyBindingFactory
-import org.westford.compositor.core.LifeCycle
 import org.westford.compositor.drm.egl.DrmEglPlatformModule
 import org.westford.compositor.gles2.Gles2RendererModule
-import org.westford.compositor.input.LibinputSeatFactory
-import org.westford.launch.LifeCycleSignals
 import org.westford.launch.direct.DirectModule
-import org.westford.nativ.glibc.Libc
-import org.westford.tty.Tty
 import org.westford.tty.TtyModule
 import javax.inject.Singleton
 
@@ -36,19 +29,4 @@ import javax.inject.Singleton
                                         Gles2RendererModule::class,
                                         DrmEglPlatformModule::class,
                                         TtyModule::class,
-                                        DirectModule::class)) interface DirectDrmEglCompositor {
-
-    fun display(): Display
-
-    fun lifeCycle(): LifeCycle
-
-    fun lifeCycleSignals(): LifeCycleSignals
-
-    fun libc(): Libc
-
-    fun seatFactory(): LibinputSeatFactory
-
-    fun keyBindingFactory(): KeyBindingFactory
-
-    fun tty(): Tty
-}
+                                        DirectModule::class)) interface DirectDrmEglCompositor : DirectDrmCompositor
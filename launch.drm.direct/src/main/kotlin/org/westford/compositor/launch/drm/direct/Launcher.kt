@@ -33,19 +33,19 @@ import java.util.logging.SimpleFormatter
 
 class Launcher {
 
-    private fun launch(drmEglCompositor: DirectDrmEglCompositor) {
+    private fun launch(drmCompositor: DirectDrmCompositor) {
 
-        val lifeCycle = drmEglCompositor.lifeCycle()
+        val lifeCycle = drmCompositor.lifeCycle()
 
         /*
          * Create a libinput seat that will listen for native input events on seat0.
          */
-        val wlSeat = drmEglCompositor.seatFactory().create("seat0",
-                                                           "",
-                                                           "",
-                                                           "",
-                                                           "",
-                                                           "")
+        val wlSeat = drmCompositor.seatFactory().create("seat0",
+                                                        "",
+                                                        "",
+                                                        "",
+                                                        "",
+                                                        "")
 
         /*
          * Setup keyboard focus tracking to follow mouse pointer & touch
@@ -69,7 +69,7 @@ class Launcher {
         /*
          * setup tty switching key bindings
          */
-        setupTtySwitching(drmEglCompositor,
+        setupTtySwitching(drmCompositor,
                           keyboardDevice)
 
         /*
@@ -78,10 +78,10 @@ class Launcher {
         lifeCycle.start()
     }
 
-    private fun setupTtySwitching(drmEglCompositor: DirectDrmEglCompositor,
+    private fun setupTtySwitching(drmCompositor: DirectDrmCompositor,
                                   keyboardDevice: KeyboardDevice) {
-        val tty = drmEglCompositor.tty()
-        val libc = drmEglCompositor.libc()
+        val tty = drmCompositor.tty()
+        val libc = drmCompositor.libc()
 
         /*
         * SIGRTMIN is used as global VT-acquire+release signal. Note that
@@ -106,8 +106,8 @@ class Launcher {
             throw RuntimeException("Failed to take control of vt handling: " + libc.strError)
         }
 
-        val display = drmEglCompositor.display()
-        val lifeCycleSignals = drmEglCompositor.lifeCycleSignals()
+        val display = drmCompositor.display()
+        val lifeCycleSignals = drmCompositor.lifeCycleSignals()
         tty.vtEnterSignal.connect {
             lifeCycleSignals.activateSignal.emit(Activate())
         }
@@ -121,15 +121,15 @@ class Launcher {
             vtSource.remove()
         }
 
-        addTtyKeyBindings(drmEglCompositor,
+        addTtyKeyBindings(drmCompositor,
                           keyboardDevice,
                           tty)
     }
 
-    private fun addTtyKeyBindings(drmEglCompositor: DirectDrmEglCompositor,
+    private fun addTtyKeyBindings(drmCompositor: DirectDrmCompositor,
                                   keyboardDevice: KeyboardDevice,
                                   tty: Tty) {
-        val keyBindingFactory = drmEglCompositor.keyBindingFactory()
+        val keyBindingFactory = drmCompositor.keyBindingFactory()
 
         keyBindingFactory.create(keyboardDevice,
                                  setOf(InputEventCodes.KEY_LEFTCTRL,
@@ -193,7 +193,13 @@ class Launcher {
                 configureLogger()
                 LOGGER.info("Starting Westford")
 
-                Launcher().launch(DaggerDirectDrmEglCompositor.create())
+                //render on the cpu when asked to, eg. on machines with broken gl drivers.
+                if (System.getProperty("westford.renderer") == "pixman") {
+                    Launcher().launch(DaggerDirectDrmPixmanCompositor.create())
+                }
+                else {
+                    Launcher().launch(DaggerDirectDrmEglCompositor.create())
+                }
             }
             catch (t: Throwable) {
                 LOGGER.throwing(Launcher::class.java.name,
@@ -0,0 +1,33 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.launch.drm.indirect
+
+import dagger.Component
+import org.westford.compositor.core.CoreModule
+import org.westford.compositor.drm.pixman.DrmPixmanPlatformModule
+import org.westford.compositor.pixman.PixmanRendererModule
+import org.westford.launch.indirect.IndirectModule
+import org.westford.tty.TtyModule
+
+import javax.inject.Singleton
+
+@Singleton @Component(modules = arrayOf(CoreModule::class,
+                                        PixmanRendererModule::class,
+                                        DrmPixmanPlatformModule::class,
+                                        TtyModule::class,
+                                        IndirectModule::class)) interface IndirectDrmPixmanCompositor : IndirectDrmCompositor
@@ -27,19 +27,19 @@ import java.util.logging.SimpleFormatter
 
 class Launcher {
 
-    fun launch(drmEglCompositor: IndirectDrmEglCompositor) {
+    fun launch(drmCompositor: IndirectDrmCompositor) {
 
-        val lifeCycle = drmEglCompositor.lifeCycle()
+        val lifeCycle = drmCompositor.lifeCycle()
 
         /*
          * Create a libinput seat that will listen for native input events on seat0.
          */
-        val wlSeat = drmEglCompositor.seatFactory().create("seat0",
-                                                           "",
-                                                           "",
-                                                           "",
-                                                           "",
-                                                           "")
+        val wlSeat = drmCompositor.seatFactory().create("seat0",
+                                                        "",
+                                                        "",
+                                                        "",
+                                                        "",
+                                                        "")
 
         /*
          * Setup keyboard focus tracking to follow mouse pointer & touch
@@ -63,8 +63,8 @@ class Launcher {
         /*
          * setup tty switching key bindings
          */
-        val tty = drmEglCompositor.tty()
-        addTtyKeyBindings(drmEglCompositor,
+        val tty = drmCompositor.tty()
+        addTtyKeyBindings(drmCompositor,
                           keyboardDevice,
                           tty)
 
@@ -74,11 +74,11 @@ class Launcher {
         lifeCycle.start()
     }
 
-    private fun addTtyKeyBindings(drmEglCompositor: IndirectDrmEglCompositor,
+    private fun addTtyKeyBindings(drmCompositor: IndirectDrmCompositor,
                                   keyboardDevice: KeyboardDevice,
                                   tty: Tty) {
 
-        val keyBindingFactory = drmEglCompositor.keyBindingFactory()
+        val keyBindingFactory = drmCompositor.keyBindingFactory()
 
         keyBindingFactory.create(keyboardDevice,
                                  setOf(InputEventCodes.KEY_LEFTCTRL,
@@ -143,7 +143,13 @@ class Launcher {
                 configureLogger()
                 LOGGER.info("Starting Westford")
 
-                Launcher().launch(DaggerIndirectDrmEglCompositor.create())
+                //render on the cpu when asked to, eg. on machines with broken gl drivers.
+                if (System.getProperty("westford.renderer") == "pixman") {
+                    Launcher().launch(DaggerIndirectDrmPixmanCompositor.create())
+                }
+                else {
+                    Launcher().launch(DaggerIndirectDrmEglCompositor.create())
+                }
             }
             catch (t: Throwable) {
                 LOGGER.throwing(Launcher::class.java.name,
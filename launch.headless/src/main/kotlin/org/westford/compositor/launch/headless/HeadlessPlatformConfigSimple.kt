@@ -0,0 +1,41 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.launch.headless
+
+import org.westford.compositor.headless.config.HeadlessOutputConfig
+import org.westford.compositor.headless.config.HeadlessPlatformConfig
+
+/**
+ * Reads the virtual outputs from the westford.headless.outputs system property, a comma separated list of
+ * `<width>x<height>@<refresh in mHz>` modes eg. `1920x1080@60000,1920x1080@60000`.
+ */
+class HeadlessPlatformConfigSimple : HeadlessPlatformConfig {
+
+    override val headlessOutputConfigs: List<HeadlessOutputConfig> = System.getProperty("westford.headless.outputs",
+                                                                                        "1024x768@60000").split(',').mapIndexed { i, mode ->
+        val match = MODE.matchEntire(mode.trim()) ?: throw IllegalArgumentException("Invalid headless output mode: " + mode)
+        HeadlessOutputConfig(name = "headless" + i,
+                             width = match.groupValues[1].toInt(),
+                             height = match.groupValues[2].toInt(),
+                             refresh = match.groupValues[3].toInt())
+    }
+
+    companion object {
+        private val MODE = Regex("(\\d+)x(\\d+)@(\\d+)")
+    }
+}
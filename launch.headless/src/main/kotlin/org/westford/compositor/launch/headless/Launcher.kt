@@ -0,0 +1,92 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.launch.headless
+
+import org.westford.compositor.headless.HeadlessPlatformModule
+import java.io.IOException
+import java.util.logging.FileHandler
+import java.util.logging.Logger
+import java.util.logging.SimpleFormatter
+
+class Launcher {
+
+    private fun launch(builder: DaggerHeadlessEglCompositor.Builder) {
+
+        /*
+         * Inject headless config.
+         */
+        val headlessEglCompositor = builder.headlessPlatformModule(HeadlessPlatformModule(HeadlessPlatformConfigSimple())).build()
+
+        /*
+         * There is no input, clients are expected to drive themselves eg. benchmark or test clients.
+         */
+        val lifeCycle = headlessEglCompositor.lifeCycle()
+
+        /*
+         * Start the compositor.
+         */
+        lifeCycle.start()
+    }
+
+    private fun launch(builder: DaggerHeadlessPixmanCompositor.Builder) {
+
+        /*
+         * Inject headless config.
+         */
+        val headlessPixmanCompositor = builder.headlessPlatformModule(HeadlessPlatformModule(HeadlessPlatformConfigSimple())).build()
+
+        /*
+         * There is no input, clients are expected to drive themselves eg. benchmark or test clients.
+         */
+        val lifeCycle = headlessPixmanCompositor.lifeCycle()
+
+        /*
+         * Start the compositor.
+         */
+        lifeCycle.start()
+    }
+
+    companion object {
+
+        private val LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+
+        @Throws(IOException::class) @JvmStatic fun main(args: Array<String>) {
+            configureLogger()
+            LOGGER.info("Starting Westford")
+
+            //render on the cpu when asked to, eg. on machines without any gl driver.
+            if (System.getProperty("westford.renderer") == "pixman") {
+                Launcher().launch(DaggerHeadlessPixmanCompositor.builder())
+            }
+            else {
+                Launcher().launch(DaggerHeadlessEglCompositor.builder())
+            }
+        }
+
+        @Throws(IOException::class) private fun configureLogger() {
+            val fileHandler = FileHandler("westford.log")
+            fileHandler.formatter = SimpleFormatter()
+            LOGGER.addHandler(fileHandler)
+
+            Thread.setDefaultUncaughtExceptionHandler { _, throwable ->
+                LOGGER.severe("Got uncaught exception " + throwable.message)
+                throwable.printStackTrace()
+            }
+        }
+    }
+}
@@ -25,22 +25,17 @@ import java.util.logging.SimpleFormatter
 
 class Launcher {
 
-    private fun launch(builder: DaggerX11EglCompositor.Builder) {
-
-        /*
-         * Inject X11 config.
-         */
-        val x11EglCompositor = builder.x11PlatformModule(X11PlatformModule(X11PlatformConfigSimple())).build()
+    private fun launch(x11Compositor: X11Compositor) {
 
         /*
          * Keep this first as weston demo clients *really* like their globals
          * to be initialized in a certain order, else they segfault...
          */
-        val lifeCycle = x11EglCompositor.lifeCycle()
+        val lifeCycle = x11Compositor.lifeCycle()
 
         /*Get the seat that listens for input on the X connection and passes it on to a wayland seat.
          */
-        val wlSeat = x11EglCompositor.wlSeat()
+        val wlSeat = x11Compositor.wlSeat()
 
         /*
          * Setup keyboard focus tracking to follow mouse pointer.
@@ -65,7 +60,18 @@ class Launcher {
             configureLogger()
             LOGGER.info("Starting Westford")
 
-            Launcher().launch(DaggerX11EglCompositor.builder())
+            /*
+             * Inject X11 config.
+             */
+            val x11PlatformModule = X11PlatformModule(X11PlatformConfigSimple())
+
+            //render on the cpu when asked to, eg. on machines without any gl driver.
+            if (System.getProperty("westford.renderer") == "pixman") {
+                Launcher().launch(DaggerX11PixmanCompositor.builder().x11PlatformModule(x11PlatformModule).build())
+            }
+            else {
+                Launcher().launch(DaggerX11EglCompositor.builder().x11PlatformModule(x11PlatformModule).build())
+            }
         }
 
         @Throws(IOException::class) private fun configureLogger() {
@@ -0,0 +1,43 @@
+/*
+ * Westford Wayland Compositor.
+ * Copyright (C) 2016  Erik De Rijcke
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.westford.compositor.launch.x11
+
+import org.freedesktop.wayland.server.Display
+import org.westford.compositor.core.LifeCycle
+import org.westford.compositor.protocol.WlSeat
+import org.westford.nativ.glibc.Libc
+import org.westford.nativ.glibc.Libpthread
+
+/**
+ * What the launcher needs from an X11 compositor, whatever renderer it uses.
+ */
+interface X11Compositor {
+
+    fun lifeCycle(): LifeCycle
+
+    /*
+     * X11 platform provides a single seat.
+     */
+    fun wlSeat(): WlSeat
+
+    fun display(): Display
+
+    fun libc(): Libc
+
+    fun libpthread(): Libpthread
+}
@@ -18,15 +18,10 @@
 package org.westford.compositor.launch.x11
 
 import dagger.Component
-import org.freedesktop.wayland.server.Display
 import org.westford.compositor.core.CoreModule
-import org.westford.compositor.core.LifeCycle
 import org.westford.compositor.gles2.Gles2RendererModule
-import org.westford.compositor.protocol.WlSeat
 import org.westford.compositor.x11.egl.X11EglPlatformModule
 import org.westford.launch.direct.DirectModule
-import org.westford.nativ.glibc.Libc
-import org.westford.nativ.glibc.Libpthread
 
 import javax.inject.Singleton
 
@@ -34,18 +29,4 @@ import javax.inject.Singleton
                                         CoreModule::class,
                                         Gles2RendererModule::class,
                                         X11EglPlatformModule::class,
-                                        X11EglPlatformAdaptorModule::class)) interface X11EglCompositor {
-
-    fun lifeCycle(): LifeCycle
-
-    /*
-     * X11 egl platform provides a single seat.
-     */
-    fun wlSeat(): WlSeat
-
-    fun display(): Display
-
-    fun libc(): Libc
-
-    fun libpthread(): Libpthread
-}
+                                        X11EglPlatformAdaptorModule::class)) interface X11EglCompositor : X11Compositor